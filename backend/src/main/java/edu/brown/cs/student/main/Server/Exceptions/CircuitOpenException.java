@@ -0,0 +1,28 @@
+package edu.brown.cs.student.main.Server.Exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending an upstream request while that upstream's circuit breaker is open. It
+ * is an IOException so it travels the same paths as any other failed request.
+ */
+public class CircuitOpenException extends IOException {
+  public CircuitOpenException(String upstream) {
+    super(upstream + " is failing; not sending requests to it for now");
+  }
+
+  /**
+   * Checks whether a failure was caused by an open circuit breaker.
+   *
+   * @param error The failure.
+   * @return true if it, or anything in its cause chain, is a CircuitOpenException.
+   */
+  public static boolean causedBy(Throwable error) {
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CircuitOpenException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -9,7 +9,7 @@ public class DatasourceException extends Exception {
   }
 
   public DatasourceException(String message, Throwable cause) {
-    super(message);
+    super(message, cause);
     this.cause = cause;
   }
 }
@@ -0,0 +1,28 @@
+package edu.brown.cs.student.main.Server.Exceptions;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending an upstream request that would exceed the quota set for its host. It is
+ * an IOException so it travels the same paths as any other failed request.
+ */
+public class QuotaExceededException extends IOException {
+  public QuotaExceededException(String host) {
+    super("Upstream quota for " + host + " exceeded");
+  }
+
+  /**
+   * Checks whether a failure was caused by an exhausted quota.
+   *
+   * @param error The failure.
+   * @return true if it, or anything in its cause chain, is a QuotaExceededException.
+   */
+  public static boolean causedBy(Throwable error) {
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof QuotaExceededException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
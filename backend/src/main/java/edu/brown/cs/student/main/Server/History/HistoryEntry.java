@@ -0,0 +1,26 @@
+package edu.brown.cs.student.main.Server.History;
+
+/** One search: the place searched for and when. */
+public class HistoryEntry {
+  private final String place;
+  private final long time;
+
+  /**
+   * Constructs a history entry.
+   *
+   * @param place The place searched for.
+   * @param time When it was searched for, in epoch milliseconds.
+   */
+  public HistoryEntry(String place, long time) {
+    this.place = place;
+    this.time = time;
+  }
+
+  public String getPlace() {
+    return place;
+  }
+
+  public long getTime() {
+    return time;
+  }
+}
@@ -0,0 +1,63 @@
+package edu.brown.cs.student.main.Server.History;
+
+import edu.brown.cs.student.main.Server.LoginHandler.SessionFilter;
+import edu.brown.cs.student.main.json.ErrorResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import edu.brown.cs.student.main.json.SuccessResponse;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Pages through a user's search history: /history?user=...&offset=...&limit=... */
+public class HistoryHandler implements Route {
+  private static final int DEFAULT_LIMIT = 20;
+  private static final int MAX_LIMIT = 100;
+
+  private final SearchHistory history;
+
+  /**
+   * Constructs a HistoryHandler.
+   *
+   * @param history The history to read from.
+   */
+  public HistoryHandler(SearchHistory history) {
+    this.history = history;
+  }
+
+  /**
+   * Handles a request for a page of search history, newest first. The user is the one the session
+   * token was issued to, or the {@code user} parameter when no session filter runs before this
+   * route. Without either, the searches made without a user are returned.
+   *
+   * @param request The HTTP request object.
+   * @param response The HTTP response object.
+   * @return The serialized page, or an error.
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    String user = SessionFilter.user(request);
+    if (user == null) {
+      user = request.queryParams("user");
+    }
+    int offset;
+    int limit;
+    try {
+      offset = parse(request.queryParams("offset"), 0);
+      limit = parse(request.queryParams("limit"), DEFAULT_LIMIT);
+    } catch (NumberFormatException e) {
+      return Serializer.ERROR.toJson(
+          new ErrorResponse("bad_request", "offset and limit must be whole numbers"));
+    }
+    if (offset < 0 || limit < 1 || limit > MAX_LIMIT) {
+      return Serializer.ERROR.toJson(
+          new ErrorResponse(
+              "bad_request", "offset must be at least 0 and limit between 1 and " + MAX_LIMIT));
+    }
+    HistoryPage page = history.page(user == null ? SearchHistory.ANONYMOUS : user, offset, limit);
+    return Serializer.HISTORY.toJson(new SuccessResponse<>(page));
+  }
+
+  private static int parse(String value, int fallback) {
+    return value == null ? fallback : Integer.parseInt(value);
+  }
+}
@@ -0,0 +1,439 @@
+package edu.brown.cs.student.main.Server.History;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An append-only log of searches, kept as fixed-size memory-mapped segment files.
+ *
+ * <p>Each record is {@code [int length][long time][short userLength][user][place]}, with strings in
+ * UTF-8; a zero length marks the end of a segment's records. Appends are copies into the mapped
+ * segment, so they survive the process exiting without a write call per search. Each append claims
+ * its bytes with an atomic add, so appends don't wait on each other, and writes its length last; a
+ * crash mid-record ends the segment there.
+ *
+ * <p>When the log grows past {@code maxSegments}, and to twice its size after the last compaction,
+ * appends move on to a fresh segment and a background thread rewrites what the in-memory rings held
+ * at that moment into {@code history-N.compact}, where N is that fresh segment. The file is written
+ * under a temporary name and renamed into place, and the older segments deleted only after. On
+ * opening, the newest compacted file stands in for every segment before its N, so a crash at any
+ * point replays each search once.
+ */
+final class HistoryLog implements Closeable {
+
+  /** Receives each record read back when the log is opened. */
+  interface Replay {
+    void accept(String user, HistoryEntry entry);
+  }
+
+  private static final String PREFIX = "history-";
+  private static final String SUFFIX = ".log";
+  private static final String COMPACTED = ".compact";
+  private static final String TMP = ".tmp";
+  // length, time and user length
+  private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES + Short.BYTES;
+
+  /** A mapped segment and where the next record in it goes. */
+  private static final class Segment {
+    final MappedByteBuffer buffer;
+    // Claimed by appends before they write, so it runs past the end once the segment is full
+    final AtomicInteger end;
+
+    Segment(MappedByteBuffer buffer, int end) {
+      this.buffer = buffer;
+      this.end = new AtomicInteger(end);
+    }
+  }
+
+  private final Path dir;
+  private final int segmentBytes;
+  private final int maxSegments;
+  private final Map<String, HistoryRing> rings;
+  private final ExecutorService compactor =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "history-compactor");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Appends hold the read lock; a compaction copies the rings under the write lock
+  private final ReadWriteLock cut = new ReentrantReadWriteLock();
+  // Replaced under this
+  private volatile Segment current;
+
+  // Guarded by this
+  private final Deque<Path> segments = new ArrayDeque<>();
+  private long nextSegment;
+  private Path compacted;
+  private int compactedSegments;
+  // Replaced by a compaction, but not yet deleted
+  private int retiredSegments;
+  private int segmentsAfterCompaction = 1;
+  private boolean compacting;
+
+  /**
+   * Opens the log in a directory, replaying every record already in it.
+   *
+   * @param dir The directory the segments are kept in.
+   * @param segmentBytes The size of each segment file.
+   * @param maxSegments How many segments the log may grow to before it is compacted.
+   * @param rings The rings compaction rewrites the log from.
+   * @param replay Receives each existing record, oldest first.
+   * @throws IOException If the directory or a segment can't be read.
+   */
+  HistoryLog(
+      Path dir, int segmentBytes, int maxSegments, Map<String, HistoryRing> rings, Replay replay)
+      throws IOException {
+    this.dir = dir;
+    this.segmentBytes = segmentBytes;
+    this.maxSegments = maxSegments;
+    this.rings = rings;
+    Files.createDirectories(dir);
+
+    List<Path> listed;
+    try (Stream<Path> files = Files.list(dir)) {
+      listed = files.collect(Collectors.toList());
+    }
+    long liveStart = -1;
+    for (Path file : listed) {
+      if (file.getFileName().toString().endsWith(TMP)) {
+        // A compaction the process died during; the segments it would replace are all still here
+        Files.delete(file);
+      } else if (compactedNumber(file) > liveStart) {
+        liveStart = compactedNumber(file);
+        compacted = file;
+      }
+    }
+    if (compacted != null) {
+      deleteBefore(liveStart);
+      try (FileChannel channel = FileChannel.open(compacted, StandardOpenOption.READ)) {
+        replay(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), replay);
+        compactedSegments = segmentsFor(channel.size());
+      }
+      nextSegment = liveStart;
+    }
+
+    long firstLive = Math.max(0, liveStart);
+    List<Path> existing =
+        listed.stream()
+            .filter(file -> segmentNumber(file) >= firstLive)
+            .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+            .collect(Collectors.toList());
+    for (Path segment : existing) {
+      MappedByteBuffer buffer = map(segment);
+      replay(buffer, replay);
+      segments.addLast(segment);
+      current = new Segment(buffer, buffer.position());
+      nextSegment = segmentNumber(segment) + 1;
+    }
+    if (current == null) {
+      roll();
+    }
+    segmentsAfterCompaction = compactedSegments + segments.size();
+  }
+
+  /**
+   * Adds a search to its user's ring and appends it to the log, starting a compaction if the log
+   * has grown too large. Records too large for a segment are kept only in the ring. Appends run
+   * concurrently; only a compaction copying the rings holds them off, so its copy has exactly the
+   * searches in the segments it replaces.
+   *
+   * @param user The user who searched.
+   * @param entry The search.
+   * @param ring The user's ring.
+   * @throws IOException If a new segment can't be created.
+   */
+  void append(String user, HistoryEntry entry, HistoryRing ring) throws IOException {
+    boolean rolled;
+    cut.readLock().lock();
+    try {
+      ring.add(entry);
+      rolled = write(user, entry);
+    } finally {
+      cut.readLock().unlock();
+    }
+    // The log only grows by a segment at a time, so only the append that added one checks
+    if (rolled) {
+      cut.writeLock().lock();
+      try {
+        synchronized (this) {
+          if (!compacting
+              && !compactor.isShutdown()
+              && compactedSegments + retiredSegments + segments.size()
+                  > Math.max(maxSegments, 2 * segmentsAfterCompaction)) {
+            startCompaction();
+          }
+        }
+      } finally {
+        cut.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * @return The number of files the log is kept in, the compacted one included.
+   */
+  synchronized int segmentCount() {
+    return segments.size() + retiredSegments + (compacted == null ? 0 : 1);
+  }
+
+  /** Waits for a running compaction, then forces the current segment to disk. */
+  @Override
+  public void close() {
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (this) {
+      current.buffer.force();
+    }
+  }
+
+  /**
+   * Moves appends to a fresh segment and copies the rings, leaving the rewrite to the compactor
+   * thread. Runs with appends held off, and only forces the last segment, maps the next and copies
+   * references.
+   */
+  private void startCompaction() throws IOException {
+    current.buffer.force();
+    retiredSegments += segments.size();
+    segments.clear();
+    roll();
+    long liveStart = nextSegment - 1;
+    Map<String, List<HistoryEntry>> captured = new HashMap<>();
+    rings.forEach((user, ring) -> captured.put(user, ring.page(0, ring.size())));
+    compacting = true;
+    compactor.execute(
+        () -> {
+          try {
+            compactInto(captured, liveStart);
+          } catch (IOException e) {
+            // The old segments are all still there, so nothing is lost
+            System.err.println("Could not compact search history: " + e.getMessage());
+            synchronized (this) {
+              compacting = false;
+            }
+          }
+        });
+  }
+
+  /** Writes the captured rings to a compacted file, then drops what it replaces. */
+  private void compactInto(Map<String, List<HistoryEntry>> captured, long liveStart)
+      throws IOException {
+    Path file = dir.resolve(String.format("%s%08d%s", PREFIX, liveStart, COMPACTED));
+    Path tmp = dir.resolve(file.getFileName() + TMP);
+    long size;
+    try (FileChannel channel =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(segmentBytes);
+      for (Map.Entry<String, List<HistoryEntry>> ring : captured.entrySet()) {
+        byte[] user = ring.getKey().getBytes(StandardCharsets.UTF_8);
+        List<HistoryEntry> entries = ring.getValue();
+        // Oldest first, so replaying adds them to the ring in order
+        for (int i = entries.size() - 1; i >= 0; i--) {
+          byte[] place = entries.get(i).getPlace().getBytes(StandardCharsets.UTF_8);
+          int length = HEADER_BYTES + user.length + place.length;
+          if (length > segmentBytes || user.length > Short.MAX_VALUE) {
+            // Never logged in the first place
+            continue;
+          }
+          if (buffer.remaining() < length) {
+            buffer.flip();
+            channel.write(buffer);
+            buffer.clear();
+          }
+          put(buffer, buffer.position(), user, entries.get(i).getTime(), place);
+          buffer.position(buffer.position() + length);
+        }
+      }
+      buffer.flip();
+      channel.write(buffer);
+      channel.force(true);
+      size = channel.size();
+    }
+    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+    // The rename must reach the disk before the segments it replaces are deleted
+    forceDirectory(dir);
+
+    synchronized (this) {
+      compacted = file;
+      compactedSegments = segmentsFor(size);
+      segmentsAfterCompaction = compactedSegments + 1;
+    }
+    // The segments and compacted file this replaces; skipped on opening now that it exists
+    deleteBefore(liveStart);
+    synchronized (this) {
+      retiredSegments = 0;
+      compacting = false;
+    }
+  }
+
+  /**
+   * Writes a record into the current segment, starting a new one if it is full.
+   *
+   * @return Whether this write started a new segment.
+   */
+  private boolean write(String user, HistoryEntry entry) throws IOException {
+    byte[] userBytes = user.getBytes(StandardCharsets.UTF_8);
+    byte[] placeBytes = entry.getPlace().getBytes(StandardCharsets.UTF_8);
+    int length = HEADER_BYTES + userBytes.length + placeBytes.length;
+    if (length > segmentBytes || userBytes.length > Short.MAX_VALUE) {
+      return false;
+    }
+    boolean rolled = false;
+    while (true) {
+      Segment segment = current;
+      int start = segment.end.getAndAdd(length);
+      if (start + length <= segmentBytes) {
+        put(segment.buffer, start, userBytes, entry.getTime(), placeBytes);
+        return rolled;
+      }
+      // Whoever gets here first for this segment starts the next; the rest retry in it
+      synchronized (this) {
+        if (current == segment) {
+          segment.buffer.force();
+          roll();
+          rolled = true;
+        }
+      }
+    }
+  }
+
+  private static void put(ByteBuffer buffer, int at, byte[] user, long time, byte[] place) {
+    buffer.putLong(at + Integer.BYTES, time);
+    buffer.putShort(at + Integer.BYTES + Long.BYTES, (short) user.length);
+    buffer.put(at + HEADER_BYTES, user);
+    buffer.put(at + HEADER_BYTES + user.length, place);
+    // Last, so a record is never replayed before all of it is written
+    buffer.putInt(at, HEADER_BYTES - Integer.BYTES + user.length + place.length);
+  }
+
+  /** Forces a directory's entries, such as a rename into it, to disk. */
+  private static void forceDirectory(Path dir) throws IOException {
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+
+  /** Deletes the segments before a compacted file's first live one, and older compacted files. */
+  private void deleteBefore(long liveStart) throws IOException {
+    List<Path> stale;
+    try (Stream<Path> files = Files.list(dir)) {
+      stale =
+          files
+              .filter(
+                  file -> {
+                    long segment = segmentNumber(file);
+                    long compaction = compactedNumber(file);
+                    return (segment >= 0 && segment < liveStart)
+                        || (compaction >= 0 && compaction < liveStart);
+                  })
+              .collect(Collectors.toList());
+    }
+    for (Path file : stale) {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private int segmentsFor(long bytes) {
+    return (int) Math.max(1, (bytes + segmentBytes - 1) / segmentBytes);
+  }
+
+  private void roll() throws IOException {
+    Path segment = dir.resolve(String.format("%s%08d%s", PREFIX, nextSegment++, SUFFIX));
+    current = new Segment(map(segment), 0);
+    segments.addLast(segment);
+  }
+
+  private MappedByteBuffer map(Path segment) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(
+            segment,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+  }
+
+  /**
+   * Reads a segment's records, leaving the buffer positioned after the last one. A record cut short
+   * by a crash ends the segment, and is overwritten by the next append.
+   */
+  private static void replay(ByteBuffer buffer, Replay replay) {
+    while (buffer.remaining() >= HEADER_BYTES) {
+      int start = buffer.position();
+      int length = buffer.getInt();
+      if (length < HEADER_BYTES - Integer.BYTES || length > buffer.remaining()) {
+        buffer.position(start);
+        return;
+      }
+      long time = buffer.getLong();
+      int userLength = buffer.getShort();
+      int placeLength = length - (HEADER_BYTES - Integer.BYTES) - userLength;
+      if (userLength < 0 || placeLength < 0) {
+        buffer.position(start);
+        return;
+      }
+      byte[] user = new byte[userLength];
+      byte[] place = new byte[placeLength];
+      buffer.get(user);
+      buffer.get(place);
+      replay.accept(
+          new String(user, StandardCharsets.UTF_8),
+          new HistoryEntry(new String(place, StandardCharsets.UTF_8), time));
+    }
+  }
+
+  private static long segmentNumber(Path file) {
+    return number(file, SUFFIX);
+  }
+
+  /**
+   * @return The first segment a compacted file doesn't cover, or -1 if it isn't one.
+   */
+  private static long compactedNumber(Path file) {
+    return number(file, COMPACTED);
+  }
+
+  private static long number(Path file, String suffix) {
+    String name = file.getFileName().toString();
+    if (!name.startsWith(PREFIX) || !name.endsWith(suffix)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(name.substring(PREFIX.length(), name.length() - suffix.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
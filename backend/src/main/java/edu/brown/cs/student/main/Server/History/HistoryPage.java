@@ -0,0 +1,35 @@
+package edu.brown.cs.student.main.Server.History;
+
+import java.util.List;
+
+/** A page of one user's history, newest first. */
+public class HistoryPage {
+  private final List<HistoryEntry> entries;
+  private final int total;
+  private final Integer next;
+
+  /**
+   * Constructs a page.
+   *
+   * @param entries The entries on this page, newest first.
+   * @param total How many entries the user's history holds.
+   * @param next The offset of the following page, or null if this is the last.
+   */
+  public HistoryPage(List<HistoryEntry> entries, int total, Integer next) {
+    this.entries = entries;
+    this.total = total;
+    this.next = next;
+  }
+
+  public List<HistoryEntry> getEntries() {
+    return entries;
+  }
+
+  public int getTotal() {
+    return total;
+  }
+
+  public Integer getNext() {
+    return next;
+  }
+}
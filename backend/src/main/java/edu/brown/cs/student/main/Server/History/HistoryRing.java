@@ -0,0 +1,79 @@
+package edu.brown.cs.student.main.Server.History;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed-size ring of one user's most recent searches.
+ *
+ * <p>Writers claim a sequence number and publish into its slot without locking; once the ring is
+ * full each write replaces the oldest entry. Readers walk back from the newest sequence and skip
+ * any slot that has since been overwritten or is still being written, so a page is never torn.
+ */
+final class HistoryRing {
+
+  /** An entry tagged with the sequence number it was written at. */
+  private static final class Slot {
+    final long seq;
+    final HistoryEntry entry;
+
+    Slot(long seq, HistoryEntry entry) {
+      this.seq = seq;
+      this.entry = entry;
+    }
+  }
+
+  private final AtomicReferenceArray<Slot> slots;
+  private final AtomicLong next = new AtomicLong();
+  private final int capacity;
+
+  HistoryRing(int capacity) {
+    this.capacity = capacity;
+    this.slots = new AtomicReferenceArray<>(capacity);
+  }
+
+  void add(HistoryEntry entry) {
+    long seq = next.getAndIncrement();
+    int index = (int) (seq % capacity);
+    Slot slot = new Slot(seq, entry);
+    while (true) {
+      Slot current = slots.get(index);
+      // A writer that lapped this one has already put something newer here
+      if (current != null && current.seq > seq) {
+        return;
+      }
+      if (slots.compareAndSet(index, current, slot)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return How many entries the ring holds.
+   */
+  int size() {
+    return (int) Math.min(next.get(), capacity);
+  }
+
+  /**
+   * Reads entries newest first.
+   *
+   * @param offset How many of the newest entries to skip.
+   * @param limit The most entries to return.
+   * @return The entries, newest first.
+   */
+  List<HistoryEntry> page(int offset, int limit) {
+    long head = next.get();
+    long oldest = Math.max(0, head - capacity);
+    List<HistoryEntry> entries = new ArrayList<>(Math.min(limit, capacity));
+    for (long seq = head - 1 - offset; seq >= oldest && entries.size() < limit; seq--) {
+      Slot slot = slots.get((int) (seq % capacity));
+      if (slot != null && slot.seq == seq) {
+        entries.add(slot.entry);
+      }
+    }
+    return entries;
+  }
+}
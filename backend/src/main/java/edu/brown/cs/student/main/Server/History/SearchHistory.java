@@ -0,0 +1,142 @@
+package edu.brown.cs.student.main.Server.History;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Each user's most recent searches.
+ *
+ * <p>Every user gets a ring of at most {@code perUserLimit} entries, so history can't grow without
+ * bound. Reading a page copies only that page. A history opened on a directory also appends every
+ * search to a {@link HistoryLog} there and reads it back on startup.
+ *
+ * <p>Every search, whoever made it, is also counted in a {@link SuggestIndex} for autocomplete.
+ */
+public class SearchHistory implements Closeable {
+
+  /** The user searches are recorded under when the request doesn't name one. */
+  public static final String ANONYMOUS = "";
+
+  private final Map<String, HistoryRing> rings = new ConcurrentHashMap<>();
+  private final SuggestIndex suggestions = new SuggestIndex(10, 100_000);
+  private final int perUserLimit;
+  private final HistoryLog log;
+
+  /**
+   * Constructs a history kept only in memory.
+   *
+   * @param perUserLimit The most searches kept for each user.
+   */
+  public SearchHistory(int perUserLimit) {
+    this.perUserLimit = perUserLimit;
+    this.log = null;
+  }
+
+  private SearchHistory(int perUserLimit, Path dir, int segmentBytes, int maxSegments)
+      throws IOException {
+    this.perUserLimit = perUserLimit;
+    this.log =
+        new HistoryLog(
+            dir,
+            segmentBytes,
+            maxSegments,
+            rings,
+            (user, entry) -> {
+              ring(user).add(entry);
+              suggestions.add(entry.getPlace());
+            });
+  }
+
+  /**
+   * Opens a history persisted in a directory, loading the searches already logged there.
+   *
+   * @param dir The directory the log is kept in.
+   * @param perUserLimit The most searches kept for each user.
+   * @param segmentBytes The size of each log segment file.
+   * @param maxSegments How many segments the log may grow to before it is compacted.
+   * @return The history.
+   * @throws IOException If the log can't be read or created.
+   */
+  public static SearchHistory open(Path dir, int perUserLimit, int segmentBytes, int maxSegments)
+      throws IOException {
+    return new SearchHistory(perUserLimit, dir, segmentBytes, maxSegments);
+  }
+
+  /**
+   * Records a search.
+   *
+   * @param user The user who searched, or {@link #ANONYMOUS}.
+   * @param place The place searched for.
+   */
+  public void record(String user, String place) {
+    HistoryEntry entry = new HistoryEntry(place, System.currentTimeMillis());
+    HistoryRing ring = ring(user);
+    suggestions.add(place);
+    if (log == null) {
+      ring.add(entry);
+      return;
+    }
+    try {
+      log.append(user, entry, ring);
+    } catch (IOException e) {
+      System.err.println("Could not log search: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns a page of a user's searches, newest first.
+   *
+   * @param user The user, or {@link #ANONYMOUS}.
+   * @param offset How many of the newest searches to skip.
+   * @param limit The most searches to return.
+   * @return The page.
+   */
+  public HistoryPage page(String user, int offset, int limit) {
+    HistoryRing ring = rings.get(user);
+    if (ring == null) {
+      return new HistoryPage(List.of(), 0, null);
+    }
+    int total = ring.size();
+    List<HistoryEntry> entries = ring.page(offset, limit);
+    int end = offset + entries.size();
+    return new HistoryPage(entries, total, end < total && !entries.isEmpty() ? end : null);
+  }
+
+  /**
+   * @param user The user, or {@link #ANONYMOUS}.
+   * @return How many searches are kept for the user.
+   */
+  public int size(String user) {
+    HistoryRing ring = rings.get(user);
+    return ring == null ? 0 : ring.size();
+  }
+
+  /**
+   * @return The index of every place searched for.
+   */
+  public SuggestIndex suggestions() {
+    return suggestions;
+  }
+
+  /**
+   * @return The number of log segment files, or 0 if the history is only in memory.
+   */
+  public int segmentCount() {
+    return log == null ? 0 : log.segmentCount();
+  }
+
+  @Override
+  public void close() {
+    if (log != null) {
+      log.close();
+    }
+  }
+
+  private HistoryRing ring(String user) {
+    return rings.computeIfAbsent(user, missing -> new HistoryRing(perUserLimit));
+  }
+}
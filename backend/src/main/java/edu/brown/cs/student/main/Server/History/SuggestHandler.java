@@ -0,0 +1,51 @@
+package edu.brown.cs.student.main.Server.History;
+
+import edu.brown.cs.student.main.json.ErrorResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import edu.brown.cs.student.main.json.SuccessResponse;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Suggests previously searched places for a prefix: /suggest?prefix=...&limit=... */
+public class SuggestHandler implements Route {
+  private static final int DEFAULT_LIMIT = 5;
+
+  private final SuggestIndex index;
+
+  /**
+   * Constructs a SuggestHandler.
+   *
+   * @param index The index to suggest from.
+   */
+  public SuggestHandler(SuggestIndex index) {
+    this.index = index;
+  }
+
+  /**
+   * Handles a request for suggestions, most searched first.
+   *
+   * @param request The HTTP request object.
+   * @param response The HTTP response object.
+   * @return The serialized suggestions, or an error.
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    String prefix = request.queryParams("prefix");
+    if (prefix == null || prefix.isBlank()) {
+      return Serializer.ERROR.toJson(new ErrorResponse("bad_request", "prefix was not provided"));
+    }
+    int limit;
+    try {
+      String value = request.queryParams("limit");
+      limit = value == null ? DEFAULT_LIMIT : Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      limit = 0;
+    }
+    if (limit < 1) {
+      return Serializer.ERROR.toJson(
+          new ErrorResponse("bad_request", "limit must be a positive whole number"));
+    }
+    return Serializer.SUGGEST.toJson(new SuccessResponse<>(index.suggest(prefix, limit)));
+  }
+}
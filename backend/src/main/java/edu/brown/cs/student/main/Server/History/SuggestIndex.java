@@ -0,0 +1,183 @@
+package edu.brown.cs.student.main.Server.History;
+
+import edu.brown.cs.student.main.Server.SafeTravels.GeocodeCache;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A prefix index over searched places, answering the most searched places starting with a prefix.
+ *
+ * <p>Places are kept in a trie on their normalized spelling. Every node keeps its subtree's {@code
+ * k} most searched places, so a lookup walks the prefix and copies that list; it never visits the
+ * rest of the subtree. Counts only grow, which lets each search update the lists along its path
+ * incrementally.
+ *
+ * <p>Children and top lists are replaced rather than modified, so lookups read them without locking
+ * while searches are added under the index's monitor. At most {@code maxPlaces} distinct places are
+ * kept; once full, only places already known are counted.
+ */
+public class SuggestIndex {
+
+  private static final class Node {
+    final char key;
+    final Node parent;
+    // Sorted by key
+    volatile Node[] children = new Node[0];
+    volatile Node[] top = new Node[0];
+    // Set once the node ends a searched place
+    volatile String place;
+    volatile long count;
+
+    Node(char key, Node parent) {
+      this.key = key;
+      this.parent = parent;
+    }
+
+    Node child(char key) {
+      Node[] children = this.children;
+      int i = find(children, key);
+      return i < 0 ? null : children[i];
+    }
+
+    /** Binary search by key, returning -(insertion point) - 1 if absent. */
+    static int find(Node[] children, char key) {
+      int low = 0;
+      int high = children.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        char midKey = children[mid].key;
+        if (midKey < key) {
+          low = mid + 1;
+        } else if (midKey > key) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+  }
+
+  private final Node root = new Node('\0', null);
+  private final int k;
+  private final int maxPlaces;
+  private int places;
+
+  /**
+   * Constructs a suggestion index.
+   *
+   * @param k The most suggestions kept for each prefix.
+   * @param maxPlaces The most distinct places kept.
+   */
+  public SuggestIndex(int k, int maxPlaces) {
+    this.k = k;
+    this.maxPlaces = maxPlaces;
+  }
+
+  /**
+   * Counts a search for a place.
+   *
+   * @param place The place as typed.
+   */
+  public synchronized void add(String place) {
+    String key = GeocodeCache.normalize(place);
+    if (key.isEmpty()) {
+      return;
+    }
+    Node node = root;
+    for (int i = 0; i < key.length() && node != null; i++) {
+      Node next = node.child(key.charAt(i));
+      if (next == null && places < maxPlaces) {
+        next = insertChild(node, key.charAt(i));
+      }
+      node = next;
+    }
+    if (node == null) {
+      return;
+    }
+    if (node.place == null) {
+      if (places >= maxPlaces) {
+        return;
+      }
+      node.place = place.trim();
+      places++;
+    }
+    node.count++;
+    for (Node ancestor = node; ancestor != null; ancestor = ancestor.parent) {
+      promote(ancestor, node);
+    }
+  }
+
+  /**
+   * Returns the most searched places starting with a prefix, most searched first.
+   *
+   * @param prefix The prefix as typed.
+   * @param limit The most suggestions to return; no more than {@code k} are kept.
+   * @return The suggestions.
+   */
+  public List<Suggestion> suggest(String prefix, int limit) {
+    String key = GeocodeCache.normalize(prefix);
+    Node node = root;
+    for (int i = 0; i < key.length() && node != null; i++) {
+      node = node.child(key.charAt(i));
+    }
+    if (node == null) {
+      return List.of();
+    }
+    Node[] top = node.top;
+    List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, top.length));
+    for (int i = 0; i < top.length && i < limit; i++) {
+      suggestions.add(new Suggestion(top[i].place, top[i].count));
+    }
+    return suggestions;
+  }
+
+  /**
+   * @return The number of distinct places kept.
+   */
+  public synchronized int size() {
+    return places;
+  }
+
+  private static Node insertChild(Node node, char key) {
+    Node[] children = node.children;
+    int at = -Node.find(children, key) - 1;
+    Node[] updated = new Node[children.length + 1];
+    System.arraycopy(children, 0, updated, 0, at);
+    updated[at] = new Node(key, node);
+    System.arraycopy(children, at, updated, at + 1, children.length - at);
+    node.children = updated;
+    return updated[at];
+  }
+
+  /** Moves a place whose count just grew into its place in a node's top list. */
+  private void promote(Node node, Node place) {
+    Node[] top = node.top;
+    int at = -1;
+    for (int i = 0; i < top.length; i++) {
+      if (top[i] == place) {
+        at = i;
+        break;
+      }
+    }
+    Node[] updated;
+    if (at >= 0) {
+      updated = top.clone();
+    } else if (top.length < k) {
+      updated = Arrays.copyOf(top, top.length + 1);
+      at = top.length;
+    } else if (place.count > top[top.length - 1].count) {
+      updated = top.clone();
+      at = top.length - 1;
+    } else {
+      return;
+    }
+    updated[at] = place;
+    while (at > 0 && updated[at - 1].count < place.count) {
+      updated[at] = updated[at - 1];
+      updated[--at] = place;
+    }
+    node.top = updated;
+  }
+}
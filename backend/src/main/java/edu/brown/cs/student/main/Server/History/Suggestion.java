@@ -0,0 +1,26 @@
+package edu.brown.cs.student.main.Server.History;
+
+/** A place suggested for a prefix, and how often it has been searched for. */
+public class Suggestion {
+  private final String place;
+  private final long count;
+
+  /**
+   * Constructs a suggestion.
+   *
+   * @param place The place, as it was first searched for.
+   * @param count How many times it has been searched for.
+   */
+  public Suggestion(String place, long count) {
+    this.place = place;
+    this.count = count;
+  }
+
+  public String getPlace() {
+    return place;
+  }
+
+  public long getCount() {
+    return count;
+  }
+}
@@ -0,0 +1,166 @@
+package edu.brown.cs.student.main.Server.Http;
+
+import java.time.Duration;
+
+/**
+ * Stops calls to an upstream that is failing, so requests fail at once instead of each waiting for
+ * a timeout.
+ *
+ * <p>The breaker remembers the outcome of the last {@code window} calls. Once at least {@code
+ * minCalls} of them are recorded and the share that failed reaches {@code failureRate}, it opens
+ * and turns calls away for {@code openFor}. Then it lets a single probe through: if the probe
+ * succeeds the breaker closes with a clean window, otherwise it opens again.
+ */
+public class CircuitBreaker {
+
+  /** Whether calls are let through. */
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int minCalls;
+  private final double failureRate;
+  private final long openForNanos;
+
+  // Guarded by this
+  private final boolean[] failed;
+  private int next;
+  private int recorded;
+  private int failures;
+  private State state = State.CLOSED;
+  private long openedAt;
+  private boolean probing;
+  private long rejected;
+  private long opened;
+
+  /**
+   * Constructs a closed circuit breaker.
+   *
+   * @param window How many recent calls the failure rate is measured over.
+   * @param minCalls The fewest recorded calls the breaker will open on.
+   * @param failureRate The share of failed calls, between 0 and 1, that opens the breaker.
+   * @param openFor How long the breaker stays open before probing the upstream again.
+   */
+  public CircuitBreaker(int window, int minCalls, double failureRate, Duration openFor) {
+    if (window < 1 || minCalls < 1 || minCalls > window) {
+      throw new IllegalArgumentException("minCalls must be between 1 and window");
+    }
+    this.failed = new boolean[window];
+    this.minCalls = minCalls;
+    this.failureRate = failureRate;
+    this.openForNanos = openFor.toNanos();
+  }
+
+  /**
+   * Asks to make a call. A caller that is allowed must report the outcome with {@link
+   * #recordSuccess}, {@link #recordFailure} or {@link #recordIgnored}.
+   *
+   * @return true if the call may go ahead.
+   */
+  public synchronized boolean tryAcquire() {
+    switch (state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (System.nanoTime() - openedAt < openForNanos) {
+          rejected++;
+          return false;
+        }
+        state = State.HALF_OPEN;
+        probing = true;
+        return true;
+      default:
+        if (probing) {
+          rejected++;
+          return false;
+        }
+        probing = true;
+        return true;
+    }
+  }
+
+  /** Records a call that the upstream answered properly. */
+  public synchronized void recordSuccess() {
+    if (state == State.HALF_OPEN) {
+      // The probe got through; start counting afresh
+      state = State.CLOSED;
+      probing = false;
+      recorded = 0;
+      failures = 0;
+      next = 0;
+      return;
+    }
+    record(false);
+  }
+
+  /** Records a call that failed because of the upstream. */
+  public synchronized void recordFailure() {
+    if (state == State.HALF_OPEN) {
+      open();
+      return;
+    }
+    record(true);
+    if (state == State.CLOSED && recorded >= minCalls && failures >= failureRate * recorded) {
+      open();
+    }
+  }
+
+  /**
+   * Records a call that ended without a verdict on the upstream, because it failed before reaching
+   * it. A probe that ends this way frees the slot for the next call to probe again.
+   */
+  public synchronized void recordIgnored() {
+    if (state == State.HALF_OPEN) {
+      probing = false;
+    }
+  }
+
+  /**
+   * @return The breaker's current state. An open breaker whose wait is over still reports OPEN
+   *     until the next call probes the upstream.
+   */
+  public synchronized State state() {
+    return state;
+  }
+
+  /**
+   * @return The share of recent calls that failed.
+   */
+  public synchronized double failureRate() {
+    return recorded == 0 ? 0 : (double) failures / recorded;
+  }
+
+  /**
+   * @return How many calls have been turned away.
+   */
+  public synchronized long rejectedCount() {
+    return rejected;
+  }
+
+  /**
+   * @return How many times the breaker has opened.
+   */
+  public synchronized long openedCount() {
+    return opened;
+  }
+
+  private void record(boolean failure) {
+    if (recorded == failed.length) {
+      failures -= failed[next] ? 1 : 0;
+    } else {
+      recorded++;
+    }
+    failed[next] = failure;
+    failures += failure ? 1 : 0;
+    next = (next + 1) % failed.length;
+  }
+
+  private void open() {
+    state = State.OPEN;
+    openedAt = System.nanoTime();
+    probing = false;
+    opened++;
+  }
+}
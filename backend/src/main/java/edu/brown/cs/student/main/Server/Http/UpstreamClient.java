@@ -0,0 +1,335 @@
+package edu.brown.cs.student.main.Server.Http;
+
+import edu.brown.cs.student.main.Server.Exceptions.QuotaExceededException;
+import edu.brown.cs.student.main.Server.RateLimit.TokenBucket;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * The HTTP client every upstream call (Google, Amadeus, Mapbox) goes through.
+ *
+ * <p>It wraps one shared {@link HttpClient}, so connections are pooled and kept alive across
+ * requests instead of being opened per call. Requests are sent asynchronously, time out after a
+ * configurable connect and request timeout, and at most {@code maxConcurrentPerHost} requests are
+ * in flight to any one host; the rest wait their turn without holding a thread. At most {@code
+ * maxQueuedPerHost} may wait, and a request that waits longer than its timeout fails without being
+ * sent.
+ *
+ * <p>A host can also be given a request rate, shared by every caller, to keep our API quotas from
+ * being spent by a few busy clients. Requests over that rate fail at once with a {@link
+ * QuotaExceededException} instead of being sent.
+ */
+public class UpstreamClient {
+
+  /** How many requests may wait for a host unless told otherwise. */
+  public static final int DEFAULT_MAX_QUEUED_PER_HOST = 256;
+
+  private static final UpstreamClient shared =
+      new UpstreamClient(Duration.ofSeconds(5), Duration.ofSeconds(10), 16);
+
+  private final HttpClient http;
+  private final Duration requestTimeout;
+  private final int maxConcurrentPerHost;
+  private final int maxQueuedPerHost;
+  private final Map<String, HostLimiter> limiters = new ConcurrentHashMap<>();
+  private final Map<String, TokenBucket> quotas = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs an upstream client.
+   *
+   * @param connectTimeout How long to wait for a connection to be established.
+   * @param requestTimeout How long to wait for a response once the request is sent.
+   * @param maxConcurrentPerHost The most requests in flight to one host at a time.
+   */
+  public UpstreamClient(
+      Duration connectTimeout, Duration requestTimeout, int maxConcurrentPerHost) {
+    this(
+        HttpClient.newBuilder()
+            .connectTimeout(connectTimeout)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .build(),
+        requestTimeout,
+        maxConcurrentPerHost);
+  }
+
+  /**
+   * Constructs an upstream client around an existing HttpClient.
+   *
+   * @param http The client requests are sent with.
+   * @param requestTimeout How long to wait for a response once the request is sent.
+   * @param maxConcurrentPerHost The most requests in flight to one host at a time.
+   */
+  public UpstreamClient(HttpClient http, Duration requestTimeout, int maxConcurrentPerHost) {
+    this(http, requestTimeout, maxConcurrentPerHost, DEFAULT_MAX_QUEUED_PER_HOST);
+  }
+
+  /**
+   * Constructs an upstream client around an existing HttpClient.
+   *
+   * @param http The client requests are sent with.
+   * @param requestTimeout How long to wait for a response once the request is sent.
+   * @param maxConcurrentPerHost The most requests in flight to one host at a time.
+   * @param maxQueuedPerHost The most requests waiting for one host; more fail at once.
+   */
+  public UpstreamClient(
+      HttpClient http, Duration requestTimeout, int maxConcurrentPerHost, int maxQueuedPerHost) {
+    if (maxConcurrentPerHost < 1) {
+      throw new IllegalArgumentException("maxConcurrentPerHost must be positive");
+    }
+    if (maxQueuedPerHost < 0) {
+      throw new IllegalArgumentException("maxQueuedPerHost must not be negative");
+    }
+    this.http = http;
+    this.requestTimeout = requestTimeout;
+    this.maxConcurrentPerHost = maxConcurrentPerHost;
+    this.maxQueuedPerHost = maxQueuedPerHost;
+  }
+
+  /**
+   * Returns the client shared by the handlers.
+   *
+   * @return The shared client.
+   */
+  public static UpstreamClient getShared() {
+    return shared;
+  }
+
+  /**
+   * Caps the rate of requests to a host, across all callers of this client.
+   *
+   * @param host The host name, e.g. api.mapbox.com.
+   * @param perSecond Requests allowed per second, on average.
+   * @param burst Requests allowed at once after a quiet spell.
+   */
+  public void limitRate(String host, double perSecond, int burst) {
+    quotas.put(host, new TokenBucket(perSecond, burst));
+  }
+
+  /**
+   * Starts building a request to the given URL with this client's request timeout.
+   *
+   * @param url The URL to request.
+   * @return A request builder.
+   */
+  public HttpRequest.Builder newRequest(String url) {
+    return HttpRequest.newBuilder(URI.create(url)).timeout(requestTimeout);
+  }
+
+  /**
+   * Sends a request without blocking.
+   *
+   * @param request The request to send.
+   * @param bodyHandler How to read the response body.
+   * @return A future completing with the response, or failing with a {@link QuotaExceededException}
+   *     if the host's rate is exceeded, or an IOException if too many requests are already waiting
+   *     for the host or this one waited past its timeout.
+   */
+  public <T> CompletableFuture<HttpResponse<T>> sendAsync(
+      HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+    TokenBucket quota = quotas.get(request.uri().getHost());
+    if (quota != null && !quota.tryAcquire()) {
+      return CompletableFuture.failedFuture(new QuotaExceededException(request.uri().getHost()));
+    }
+    HostLimiter limiter =
+        limiters.computeIfAbsent(
+            request.uri().getAuthority(),
+            host -> new HostLimiter(host, maxConcurrentPerHost, maxQueuedPerHost));
+    long deadline = System.nanoTime() + request.timeout().orElse(requestTimeout).toNanos();
+    return limiter.submit(() -> http.sendAsync(request, bodyHandler), deadline);
+  }
+
+  /**
+   * Sends a request and waits for the response.
+   *
+   * @param request The request to send.
+   * @param bodyHandler How to read the response body.
+   * @return The response.
+   * @throws IOException If the request failed or timed out.
+   */
+  public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler)
+      throws IOException {
+    try {
+      return sendAsync(request, bodyHandler).get();
+    } catch (ExecutionException e) {
+      throw unwrap(e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for " + request.uri().getHost(), e);
+    }
+  }
+
+  /**
+   * Turns the failure of an async request back into the IOException it started as.
+   *
+   * @param error The failure.
+   * @return An IOException describing it.
+   */
+  public static IOException unwrap(Throwable error) {
+    while (error instanceof CompletionException && error.getCause() != null) {
+      error = error.getCause();
+    }
+    if (error instanceof IOException) {
+      return (IOException) error;
+    }
+    return new IOException(error.getMessage(), error);
+  }
+
+  /**
+   * Returns the standard reason phrase for a status code, since HTTP/2 responses don't carry one.
+   *
+   * @param status The status code.
+   * @return The reason phrase.
+   */
+  public static String reasonPhrase(int status) {
+    switch (status) {
+      case 400:
+        return "Bad Request";
+      case 401:
+        return "Unauthorized";
+      case 403:
+        return "Forbidden";
+      case 404:
+        return "Not Found";
+      case 429:
+        return "Too Many Requests";
+      case 500:
+        return "Internal Server Error";
+      case 502:
+        return "Bad Gateway";
+      case 503:
+        return "Service Unavailable";
+      case 504:
+        return "Gateway Timeout";
+      default:
+        return "HTTP " + status;
+    }
+  }
+
+  /** Caps the number of requests in flight to one host, queueing the rest. */
+  private static final class HostLimiter {
+    private final String host;
+    private final int maxInFlight;
+    private final int maxWaiting;
+
+    // Guarded by this
+    private int inFlight;
+    private boolean draining;
+    private final Queue<Waiter<?>> waiting = new ArrayDeque<>();
+
+    private HostLimiter(String host, int maxInFlight, int maxWaiting) {
+      this.host = host;
+      this.maxInFlight = maxInFlight;
+      this.maxWaiting = maxWaiting;
+    }
+
+    private <T> CompletableFuture<T> submit(
+        Supplier<CompletableFuture<T>> send, long deadlineNanos) {
+      Waiter<T> waiter = new Waiter<>(send, deadlineNanos);
+      synchronized (this) {
+        if (waiting.size() >= maxWaiting && inFlight >= maxInFlight) {
+          return CompletableFuture.failedFuture(
+              new IOException("Too many requests waiting for " + host));
+        }
+        waiting.add(waiter);
+      }
+      drain();
+      return waiter.result;
+    }
+
+    private void release() {
+      synchronized (this) {
+        inFlight--;
+      }
+      drain();
+    }
+
+    /**
+     * Starts waiting requests while there are free slots. Only one thread drains at a time, so a
+     * request that completes while being started frees its slot for this loop to reuse instead of
+     * starting the next one from deeper in the stack.
+     */
+    private void drain() {
+      synchronized (this) {
+        if (draining) {
+          return;
+        }
+        draining = true;
+      }
+      while (true) {
+        Waiter<?> next;
+        synchronized (this) {
+          if (inFlight >= maxInFlight || waiting.isEmpty()) {
+            draining = false;
+            return;
+          }
+          next = waiting.poll();
+          inFlight++;
+        }
+        if (!next.start()) {
+          synchronized (this) {
+            inFlight--;
+          }
+        }
+      }
+    }
+
+    /** A request waiting for a slot. */
+    private final class Waiter<T> {
+      private final Supplier<CompletableFuture<T>> send;
+      private final long deadlineNanos;
+      private final CompletableFuture<T> result = new CompletableFuture<>();
+
+      private Waiter(Supplier<CompletableFuture<T>> send, long deadlineNanos) {
+        this.send = send;
+        this.deadlineNanos = deadlineNanos;
+      }
+
+      /**
+       * Sends the request in the slot just taken for it.
+       *
+       * @return False if it was dropped instead, leaving the slot free.
+       */
+      private boolean start() {
+        // Cancelled by the caller, e.g. the losing attempt of a hedged request
+        if (result.isDone()) {
+          return false;
+        }
+        if (System.nanoTime() - deadlineNanos > 0) {
+          result.completeExceptionally(
+              new HttpTimeoutException("Timed out waiting to send to " + host));
+          return false;
+        }
+        CompletableFuture<T> sent;
+        try {
+          sent = send.get();
+        } catch (RuntimeException e) {
+          result.completeExceptionally(e);
+          return false;
+        }
+        sent.whenComplete(
+            (value, error) -> {
+              release();
+              if (error != null) {
+                result.completeExceptionally(error);
+              } else {
+                result.complete(value);
+              }
+            });
+        return true;
+      }
+    }
+  }
+}
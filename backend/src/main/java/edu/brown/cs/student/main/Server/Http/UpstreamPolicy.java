@@ -0,0 +1,349 @@
+package edu.brown.cs.student.main.Server.Http;
+
+import edu.brown.cs.student.main.Server.Exceptions.CircuitOpenException;
+import edu.brown.cs.student.main.Server.Exceptions.QuotaExceededException;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * How calls to one upstream are made: behind a circuit breaker, retried with jittered backoff, and
+ * hedged when slow.
+ *
+ * <p>A call is made of up to {@code maxAttempts} attempts. An attempt fails if the request fails
+ * with an IOException (a timeout, a refused connection) or the response is one the caller marks as
+ * a fault, such as a 5xx; both count against the circuit breaker, and the next attempt waits a
+ * random time up to {@code backoff} doubled for each attempt so far, capped at {@code maxBackoff}.
+ * Anything else the upstream answers, including a 4xx, ends the call as it is. Errors that aren't
+ * the upstream's, such as our own quota running out, end it too, and count neither way.
+ *
+ * <p>An attempt still unanswered after the 95th percentile of recent response times (and at least
+ * {@code minHedgeDelay}) is hedged: the same request is sent again and whichever answers first
+ * wins. Only idempotent requests should be made through a hedging policy.
+ */
+public class UpstreamPolicy {
+  private static final Map<String, UpstreamPolicy> shared = new ConcurrentHashMap<>();
+
+  private final String name;
+  private final CircuitBreaker breaker;
+  private final int maxAttempts;
+  private final long backoffNanos;
+  private final long maxBackoffNanos;
+  private final long minHedgeNanos;
+  private final LatencyWindow latencies = new LatencyWindow(256);
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong retries = new AtomicLong();
+  private final AtomicLong hedges = new AtomicLong();
+  private final AtomicLong hedgeWins = new AtomicLong();
+
+  /**
+   * Constructs a policy.
+   *
+   * @param name The upstream's name, used in errors and metrics.
+   * @param breaker The upstream's circuit breaker.
+   * @param maxAttempts The most attempts per call, including the first.
+   * @param backoff The longest wait before the first retry.
+   * @param maxBackoff The longest wait before any retry.
+   * @param minHedgeDelay The shortest time to wait before hedging, or null to never hedge.
+   */
+  public UpstreamPolicy(
+      String name,
+      CircuitBreaker breaker,
+      int maxAttempts,
+      Duration backoff,
+      Duration maxBackoff,
+      Duration minHedgeDelay) {
+    if (maxAttempts < 1) {
+      throw new IllegalArgumentException("maxAttempts must be positive");
+    }
+    this.name = name;
+    this.breaker = breaker;
+    this.maxAttempts = maxAttempts;
+    this.backoffNanos = backoff.toNanos();
+    this.maxBackoffNanos = maxBackoff.toNanos();
+    this.minHedgeNanos = minHedgeDelay == null ? -1 : minHedgeDelay.toNanos();
+  }
+
+  /**
+   * Returns the policy shared by every caller of an upstream, creating it with the defaults on
+   * first use: the breaker opens at half of the last 20 calls failing (once 10 are recorded) for 10
+   * seconds, calls are tried 3 times with backoff from 100ms to 1s, and hedged after at least
+   * 250ms.
+   *
+   * @param upstream The upstream's name.
+   * @return The policy.
+   */
+  public static UpstreamPolicy shared(String upstream) {
+    return shared.computeIfAbsent(
+        upstream,
+        name ->
+            new UpstreamPolicy(
+                name,
+                new CircuitBreaker(20, 10, 0.5, Duration.ofSeconds(10)),
+                3,
+                Duration.ofMillis(100),
+                Duration.ofSeconds(1),
+                Duration.ofMillis(250)));
+  }
+
+  /**
+   * @return Every shared policy, by upstream name.
+   */
+  public static Map<String, UpstreamPolicy> allShared() {
+    return Collections.unmodifiableMap(shared);
+  }
+
+  /**
+   * Makes a call whose only faults are failed requests.
+   *
+   * @param attempt Sends the request once.
+   * @return A future completing with the first good response, or the last failure.
+   */
+  public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> attempt) {
+    return call(attempt, response -> false);
+  }
+
+  /**
+   * Makes a call.
+   *
+   * @param attempt Sends the request once.
+   * @param isFault Whether a response is the upstream failing, e.g. a 5xx, and worth retrying.
+   * @return A future completing with the first good response. If every attempt failed, it completes
+   *     with the last faulty response, or fails with the last error if there was none; if the
+   *     breaker is open, it fails with a {@link CircuitOpenException}.
+   */
+  public <T> CompletableFuture<T> call(
+      Supplier<CompletableFuture<T>> attempt, Predicate<? super T> isFault) {
+    calls.incrementAndGet();
+    return attempt(attempt, isFault, 1);
+  }
+
+  private <T> CompletableFuture<T> attempt(
+      Supplier<CompletableFuture<T>> attempt, Predicate<? super T> isFault, int number) {
+    if (!breaker.tryAcquire()) {
+      return CompletableFuture.failedFuture(new CircuitOpenException(name));
+    }
+    return hedged(attempt, isFault)
+        .handle(
+            (outcome, error) -> {
+              Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+              boolean failed = cause != null ? isFault(cause) : isFault.test(outcome);
+              if (failed && number < maxAttempts) {
+                retries.incrementAndGet();
+                return CompletableFuture.supplyAsync(
+                        () -> null,
+                        CompletableFuture.delayedExecutor(backoff(number), TimeUnit.NANOSECONDS))
+                    .thenCompose(ignored -> attempt(attempt, isFault, number + 1));
+              }
+              return cause == null
+                  ? CompletableFuture.completedFuture(outcome)
+                  : CompletableFuture.<T>failedFuture(cause);
+            })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Sends a request, and sends it again if the first is slow. The breaker has already let the first
+   * one through.
+   *
+   * @return A future completing with the first good response; once both have failed, with the
+   *     faulty response, or the error if neither answered.
+   */
+  private <T> CompletableFuture<T> hedged(
+      Supplier<CompletableFuture<T>> attempt, Predicate<? super T> isFault) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    AtomicInteger pending = new AtomicInteger(1);
+    AtomicReference<T> faulty = new AtomicReference<>();
+    send(attempt, isFault, result, pending, faulty, false);
+
+    long delay = hedgeDelayNanos();
+    if (delay >= 0) {
+      CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS)
+          .execute(
+              () -> {
+                // A half-open breaker allows a single probe, so it won't let a hedge through
+                if (!result.isDone() && breaker.tryAcquire()) {
+                  pending.incrementAndGet();
+                  hedges.incrementAndGet();
+                  send(attempt, isFault, result, pending, faulty, true);
+                }
+              });
+    }
+    return result;
+  }
+
+  private <T> void send(
+      Supplier<CompletableFuture<T>> attempt,
+      Predicate<? super T> isFault,
+      CompletableFuture<T> result,
+      AtomicInteger pending,
+      AtomicReference<T> faulty,
+      boolean hedge) {
+    long start = System.nanoTime();
+    CompletableFuture<T> sent;
+    try {
+      sent = attempt.get();
+    } catch (RuntimeException e) {
+      sent = CompletableFuture.failedFuture(e);
+    }
+    sent.whenComplete(
+        (response, error) -> {
+          Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+          boolean fault = cause != null ? isFault(cause) : isFault.test(response);
+          if (fault) {
+            breaker.recordFailure();
+          } else if (cause != null) {
+            // Our own quota, an open breaker or a bug; says nothing about the upstream's health
+            breaker.recordIgnored();
+          } else {
+            breaker.recordSuccess();
+          }
+          if (cause == null && !fault) {
+            latencies.record(System.nanoTime() - start);
+            // Counted first, so the win is visible by the time the caller sees the answer
+            if (hedge && !result.isDone()) {
+              hedgeWins.incrementAndGet();
+            }
+            result.complete(response);
+            return;
+          }
+          if (cause == null) {
+            faulty.set(response);
+          }
+          if (pending.decrementAndGet() == 0) {
+            T last = faulty.get();
+            if (last != null) {
+              result.complete(last);
+            } else {
+              result.completeExceptionally(cause);
+            }
+          }
+        });
+  }
+
+  /**
+   * @return How long to wait before hedging, or -1 not to hedge.
+   */
+  private long hedgeDelayNanos() {
+    if (minHedgeNanos < 0) {
+      return -1;
+    }
+    long p95 = latencies.p95();
+    return p95 < 0 ? -1 : Math.max(minHedgeNanos, p95);
+  }
+
+  private long backoff(int attempts) {
+    long ceiling = Math.min(maxBackoffNanos, backoffNanos << Math.min(attempts - 1, 20));
+    // Full jitter, so callers that failed together don't all retry together
+    return ThreadLocalRandom.current().nextLong(ceiling + 1);
+  }
+
+  /**
+   * Decides whether a failed request was the upstream's fault. Our own quota and an open breaker
+   * aren't; the request never left.
+   */
+  private static boolean isFault(Throwable error) {
+    boolean io = false;
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof QuotaExceededException || cause instanceof CircuitOpenException) {
+        return false;
+      }
+      io |= cause instanceof IOException;
+    }
+    return io;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public CircuitBreaker getBreaker() {
+    return breaker;
+  }
+
+  /**
+   * @return How many calls have been made, not counting retries and hedges.
+   */
+  public long callCount() {
+    return calls.get();
+  }
+
+  /**
+   * @return How many attempts were retries.
+   */
+  public long retryCount() {
+    return retries.get();
+  }
+
+  /**
+   * @return How many hedged requests were sent.
+   */
+  public long hedgeCount() {
+    return hedges.get();
+  }
+
+  /**
+   * @return How many hedged requests answered before the request they hedged.
+   */
+  public long hedgeWinCount() {
+    return hedgeWins.get();
+  }
+
+  /**
+   * @return The 95th percentile of recent good response times in milliseconds, or -1 before there
+   *     are enough of them.
+   */
+  public double p95Millis() {
+    long p95 = latencies.p95();
+    return p95 < 0 ? -1 : p95 / 1e6;
+  }
+
+  /**
+   * The most recent response times. The percentile is recomputed every few samples rather than on
+   * each read, since every call reads it.
+   */
+  private static final class LatencyWindow {
+    private static final int RECOMPUTE_EVERY = 16;
+    private static final int MIN_SAMPLES = 20;
+
+    private final long[] samples;
+    // Guarded by this
+    private int next;
+    private int count;
+    private int sinceRecompute;
+    private volatile long p95 = -1;
+
+    private LatencyWindow(int size) {
+      this.samples = new long[size];
+    }
+
+    private synchronized void record(long nanos) {
+      samples[next] = nanos;
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+      if (count >= MIN_SAMPLES && (p95 < 0 || ++sinceRecompute >= RECOMPUTE_EVERY)) {
+        sinceRecompute = 0;
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        p95 = sorted[(int) Math.ceil(0.95 * count) - 1];
+      }
+    }
+
+    private long p95() {
+      return p95;
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package edu.brown.cs.student.main.Server.Http;
+
+/** A snapshot of how calls to one upstream are going. */
+public class UpstreamStats {
+  private final String name;
+  private final String breaker;
+  private final double failureRate;
+  private final long calls;
+  private final long retries;
+  private final long hedges;
+  private final long hedgeWins;
+  private final long rejected;
+  private final long opened;
+  private final double p95Millis;
+
+  /**
+   * Takes a snapshot of a policy's counters.
+   *
+   * @param policy The upstream's policy.
+   */
+  public UpstreamStats(UpstreamPolicy policy) {
+    CircuitBreaker circuit = policy.getBreaker();
+    this.name = policy.getName();
+    this.breaker = circuit.state().name();
+    this.failureRate = circuit.failureRate();
+    this.calls = policy.callCount();
+    this.retries = policy.retryCount();
+    this.hedges = policy.hedgeCount();
+    this.hedgeWins = policy.hedgeWinCount();
+    this.rejected = circuit.rejectedCount();
+    this.opened = circuit.openedCount();
+    this.p95Millis = policy.p95Millis();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getBreaker() {
+    return breaker;
+  }
+
+  public double getFailureRate() {
+    return failureRate;
+  }
+
+  public long getCalls() {
+    return calls;
+  }
+
+  public long getRetries() {
+    return retries;
+  }
+
+  public long getHedges() {
+    return hedges;
+  }
+
+  public long getHedgeWins() {
+    return hedgeWins;
+  }
+
+  public long getRejected() {
+    return rejected;
+  }
+
+  public long getOpened() {
+    return opened;
+  }
+
+  public double getP95Millis() {
+    return p95Millis;
+  }
+}
@@ -0,0 +1,29 @@
+package edu.brown.cs.student.main.Server.Http;
+
+import edu.brown.cs.student.main.json.Serializer;
+import edu.brown.cs.student.main.json.SuccessResponse;
+import java.util.ArrayList;
+import java.util.List;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Reports circuit breaker state and call counts for every shared upstream policy: /upstreams */
+public class UpstreamsHandler implements Route {
+
+  /**
+   * Handles a request for upstream stats.
+   *
+   * @param request The HTTP request object.
+   * @param response The HTTP response object.
+   * @return The serialized stats, one entry per upstream.
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    List<UpstreamStats> stats = new ArrayList<>();
+    for (UpstreamPolicy policy : UpstreamPolicy.allShared().values()) {
+      stats.add(new UpstreamStats(policy));
+    }
+    return Serializer.UPSTREAMS.toJson(new SuccessResponse<>(stats));
+  }
+}
@@ -0,0 +1,34 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores each user's hashed password in memory.
+ *
+ * <p>Safe to share between request threads: registration checks for an existing user and inserts
+ * the new one in a single atomic step, so two registrations of the same name can't both succeed.
+ */
+public class CredentialStore implements UserRepository {
+  private final Map<String, String> credentials = new ConcurrentHashMap<>();
+
+  @Override
+  public boolean register(String username, String hashedPassword) {
+    return credentials.putIfAbsent(username, hashedPassword) == null;
+  }
+
+  @Override
+  public boolean replace(String username, String expectedHash, String newHash) {
+    return credentials.replace(username, expectedHash, newHash);
+  }
+
+  @Override
+  public String get(String username) {
+    return credentials.get(username);
+  }
+
+  @Override
+  public int size() {
+    return credentials.size();
+  }
+}
@@ -0,0 +1,456 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * A user repository that survives restarts, kept as a memory-mapped snapshot plus a write-ahead log
+ * of the users registered since.
+ *
+ * <p>A registration or password change is appended to the log and forced to disk before it returns.
+ * One writer thread takes every registration waiting at that moment and forces them with a single
+ * fsync, so concurrent registrations share the cost. Lookups check the users logged since the
+ * snapshot, held in memory, and then the {@link UserSnapshot}, which is read through its mapping.
+ *
+ * <p>After {@code snapshotEvery} logged records the writer starts a new log segment and a
+ * background thread merges the old snapshot with the logged users into a new one, then deletes the
+ * segments it covers. Startup maps the snapshot and replays only the segments after it, so it takes
+ * about as long with millions of users as with a few.
+ *
+ * <p>Each log record is {@code [int length][int crc32][int userLength][user][hash]}. A record cut
+ * short or corrupted by a crash ends the replay, and the log is truncated there.
+ */
+public class DurableCredentialStore implements UserRepository, Closeable {
+  private static final String SNAPSHOT = "users.snapshot";
+  private static final String WAL_PREFIX = "users-";
+  private static final String WAL_SUFFIX = ".wal";
+  private static final int MAX_BATCH = 1024;
+
+  /** A user logged since the snapshot. */
+  private static final class Entry {
+    final String hash;
+    // Set by the writer once the entry's record is on disk
+    volatile boolean durable;
+
+    Entry(String hash, boolean durable) {
+      this.hash = hash;
+      this.durable = durable;
+    }
+  }
+
+  /** A record waiting for the writer. */
+  private static final class Pending {
+    final ByteBuffer record;
+    final Entry entry;
+    final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    Pending(ByteBuffer record, Entry entry) {
+      this.record = record;
+      this.entry = entry;
+    }
+  }
+
+  private final Path dir;
+  private final int snapshotEvery;
+  private final Map<String, Entry> logged = new ConcurrentHashMap<>();
+  private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+  private final Thread writer;
+  private final ExecutorService snapshotter =
+      Executors.newSingleThreadExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "user-snapshot");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private volatile UserSnapshot snapshot;
+  // Written under closeLock, so nothing is queued once close() has seen the queue empty
+  private volatile boolean running = true;
+  private final Object closeLock = new Object();
+
+  // Only touched by the writer thread once the store is open
+  private FileChannel wal;
+  private long walSegment;
+  private int loggedSinceSnapshot;
+  private CompletableFuture<Void> snapshotting = CompletableFuture.completedFuture(null);
+
+  private DurableCredentialStore(Path dir, int snapshotEvery) throws IOException {
+    this.dir = dir;
+    this.snapshotEvery = snapshotEvery;
+    Files.createDirectories(dir);
+    snapshot = UserSnapshot.open(dir.resolve(SNAPSHOT));
+
+    List<Path> segments;
+    try (Stream<Path> files = Files.list(dir)) {
+      segments =
+          files
+              .filter(file -> segmentNumber(file) >= 0)
+              .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+              .collect(Collectors.toList());
+    }
+    walSegment = snapshot.walStart();
+    for (Path segment : segments) {
+      long number = segmentNumber(segment);
+      if (number < snapshot.walStart()) {
+        // Already in the snapshot; left behind by a crash before it was deleted
+        Files.delete(segment);
+        continue;
+      }
+      loggedSinceSnapshot += replay(segment);
+      walSegment = number;
+    }
+    wal = openSegment(walSegment);
+
+    writer = new Thread(this::write, "user-wal");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Opens the store kept in a directory, creating it if needed.
+   *
+   * @param dir The directory the snapshot and log are kept in.
+   * @param snapshotEvery How many registrations are logged before a new snapshot is taken.
+   * @return The store.
+   * @throws IOException If the snapshot or log can't be read.
+   */
+  public static DurableCredentialStore open(Path dir, int snapshotEvery) throws IOException {
+    return new DurableCredentialStore(dir, snapshotEvery);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Returns once the user is on disk.
+   *
+   * @throws UncheckedIOException If the user couldn't be logged; the user is not added.
+   */
+  @Override
+  public boolean register(String username, String hashedPassword) {
+    if (get(username) != null) {
+      return false;
+    }
+    Entry entry = new Entry(hashedPassword, false);
+    if (logged.putIfAbsent(username, entry) != null) {
+      return false;
+    }
+    // A snapshot may have taken in, and dropped from memory, a user registered since the check
+    if (snapshot.get(username) != null) {
+      logged.remove(username, entry);
+      return false;
+    }
+    try {
+      log(username, entry);
+      return true;
+    } catch (UncheckedIOException e) {
+      logged.remove(username, entry);
+      throw e;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Returns once the new hash is on disk.
+   *
+   * @throws UncheckedIOException If the new hash couldn't be logged; the old one is kept.
+   */
+  @Override
+  public boolean replace(String username, String expectedHash, String newHash) {
+    Entry entry = new Entry(newHash, false);
+    Entry previous = logged.get(username);
+    if (previous != null) {
+      if (!previous.hash.equals(expectedHash) || !logged.replace(username, previous, entry)) {
+        return false;
+      }
+    } else if (!expectedHash.equals(snapshot.get(username))
+        || logged.putIfAbsent(username, entry) != null) {
+      return false;
+    }
+    try {
+      log(username, entry);
+      return true;
+    } catch (UncheckedIOException e) {
+      if (previous != null) {
+        logged.replace(username, entry, previous);
+      } else {
+        logged.remove(username, entry);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Hands an entry's record to the writer and waits until it is on disk.
+   *
+   * @throws UncheckedIOException If the record couldn't be written.
+   */
+  private void log(String username, Entry entry) {
+    Pending pending = new Pending(record(username, entry.hash), entry);
+    try {
+      synchronized (closeLock) {
+        if (!running) {
+          throw new IOException("User store is closed");
+        }
+        queue.add(pending);
+      }
+      pending.done.get();
+    } catch (IOException | ExecutionException e) {
+      Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+      throw new UncheckedIOException(
+          "Could not save user",
+          cause instanceof IOException ? (IOException) cause : new IOException(cause));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new UncheckedIOException("Interrupted while saving user", new IOException(e));
+    }
+  }
+
+  @Override
+  public String get(String username) {
+    Entry entry = logged.get(username);
+    return entry != null ? entry.hash : snapshot.get(username);
+  }
+
+  @Override
+  public int size() {
+    UserSnapshot current = snapshot;
+    int size = current.size();
+    for (String username : logged.keySet()) {
+      if (current.get(username) == null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return The number of users held in memory rather than in the snapshot.
+   */
+  public int loggedSinceSnapshot() {
+    return logged.size();
+  }
+
+  /**
+   * Stops accepting registrations, waits for the ones already logged and for any snapshot in
+   * progress, and closes the log.
+   *
+   * @throws IOException If the log can't be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (closeLock) {
+      running = false;
+    }
+    try {
+      // Everything queued before this is written before the writer stops
+      writer.join();
+      snapshotter.shutdown();
+      snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    wal.close();
+  }
+
+  /** The writer thread: forces each batch of waiting records with one fsync. */
+  private void write() {
+    List<Pending> batch = new ArrayList<>();
+    while (running || !queue.isEmpty()) {
+      try {
+        Pending first = queue.poll(50, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+      } catch (InterruptedException e) {
+        continue;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+      try {
+        ByteBuffer[] records = new ByteBuffer[batch.size()];
+        for (int i = 0; i < records.length; i++) {
+          records[i] = batch.get(i).record;
+        }
+        long remaining = 0;
+        for (ByteBuffer record : records) {
+          remaining += record.remaining();
+        }
+        while (remaining > 0) {
+          remaining -= wal.write(records);
+        }
+        wal.force(false);
+        for (Pending pending : batch) {
+          pending.entry.durable = true;
+          pending.done.complete(null);
+        }
+        loggedSinceSnapshot += batch.size();
+        if (loggedSinceSnapshot >= snapshotEvery && snapshotting.isDone()) {
+          startSnapshot();
+        }
+      } catch (IOException e) {
+        for (Pending pending : batch) {
+          pending.done.completeExceptionally(e);
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Starts a new log segment and, in the background, folds everything logged before it into a new
+   * snapshot. Runs on the writer thread between batches, so every user logged in the old segments
+   * is already durable.
+   */
+  private void startSnapshot() throws IOException {
+    wal.close();
+    long walStart = ++walSegment;
+    wal = openSegment(walStart);
+    loggedSinceSnapshot = 0;
+
+    Map<String, Entry> captured = new HashMap<>();
+    logged.forEach(
+        (username, entry) -> {
+          if (entry.durable) {
+            captured.put(username, entry);
+          }
+        });
+    snapshotting =
+        CompletableFuture.runAsync(
+            () -> {
+              try {
+                takeSnapshot(captured, walStart);
+              } catch (IOException e) {
+                // The old snapshot and every segment are still there, so nothing is lost
+                System.err.println("Could not snapshot users: " + e.getMessage());
+              }
+            },
+            snapshotter);
+  }
+
+  private void takeSnapshot(Map<String, Entry> captured, long walStart) throws IOException {
+    UserSnapshot previous = snapshot;
+    Map<String, String> users = new HashMap<>(previous.size() + captured.size());
+    previous.forEach(users::put);
+    captured.forEach((username, entry) -> users.put(username, entry.hash));
+    Path file = dir.resolve(SNAPSHOT);
+    UserSnapshot.write(file, walStart, users);
+    // The rename must reach the disk before the segments it replaces are deleted
+    forceDirectory(dir);
+    snapshot = UserSnapshot.open(file);
+
+    // Lookups find these in the new snapshot now; anything re-logged since is a different entry
+    captured.forEach(logged::remove);
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path segment : files.collect(Collectors.toList())) {
+        long number = segmentNumber(segment);
+        if (number >= 0 && number < walStart) {
+          Files.deleteIfExists(segment);
+        }
+      }
+    }
+  }
+
+  /** Forces a directory's entries, such as a rename into it, to disk. */
+  private static void forceDirectory(Path dir) throws IOException {
+    try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Replays a log segment into memory, truncating it after the last intact record.
+   *
+   * @return The number of records replayed.
+   */
+  private int replay(Path segment) throws IOException {
+    int replayed = 0;
+    try (FileChannel channel =
+        FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      while (buffer.remaining() >= 8) {
+        int start = buffer.position();
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (length < 4 || length > buffer.remaining()) {
+          buffer.position(start);
+          break;
+        }
+        ByteBuffer payload = buffer.slice().limit(length);
+        CRC32 check = new CRC32();
+        check.update(payload.duplicate());
+        int userLength = payload.getInt();
+        if ((int) check.getValue() != crc || userLength < 0 || userLength > length - 4) {
+          buffer.position(start);
+          break;
+        }
+        byte[] user = new byte[userLength];
+        byte[] hash = new byte[length - 4 - userLength];
+        payload.get(user).get(hash);
+        logged.put(
+            new String(user, StandardCharsets.UTF_8),
+            new Entry(new String(hash, StandardCharsets.UTF_8), true));
+        buffer.position(buffer.position() + length);
+        replayed++;
+      }
+      if (buffer.position() < channel.size()) {
+        channel.truncate(buffer.position());
+      }
+    }
+    return replayed;
+  }
+
+  private FileChannel openSegment(long number) throws IOException {
+    return FileChannel.open(
+        dir.resolve(String.format("%s%08d%s", WAL_PREFIX, number, WAL_SUFFIX)),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE,
+        StandardOpenOption.APPEND);
+  }
+
+  private static ByteBuffer record(String username, String hashedPassword) {
+    byte[] user = username.getBytes(StandardCharsets.UTF_8);
+    byte[] hash = hashedPassword.getBytes(StandardCharsets.UTF_8);
+    int length = 4 + user.length + hash.length;
+    ByteBuffer record = ByteBuffer.allocate(8 + length);
+    record.putInt(length).putInt(0).putInt(user.length).put(user).put(hash);
+    CRC32 crc = new CRC32();
+    crc.update(record.array(), 8, length);
+    record.putInt(4, (int) crc.getValue());
+    return record.flip();
+  }
+
+  private static long segmentNumber(Path file) {
+    String name = file.getFileName().toString();
+    if (!name.startsWith(WAL_PREFIX) || !name.endsWith(WAL_SUFFIX)) {
+      return -1;
+    }
+    try {
+      return Long.parseLong(
+          name.substring(WAL_PREFIX.length(), name.length() - WAL_SUFFIX.length()));
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+}
@@ -1,34 +1,71 @@
 package edu.brown.cs.student.main.Server.LoginHandler;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
-import com.squareup.moshi.Types;
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.Map;
+import edu.brown.cs.student.main.json.LoginResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
-/**
- * Handles login and registration requests.
- */
+/** Handles login and registration requests. */
 public class LoginManager implements Route {
 
-  private static Map<String, Integer> userCredentials;
+  private final UserRepository userCredentials;
+  private final PasswordHasher hasher;
+  private final SessionTokens sessions;
+
+  /** Constructor initializes user credentials with a default test user. */
+  public LoginManager() {
+    this(new CredentialStore());
+    userCredentials.register("test1", hasher.hash("test1"));
+  }
 
   /**
-   * Constructor initializes user credentials with a default test user.
+   * Constructs a LoginManager over an existing user repository, hashing on the shared hasher.
+   *
+   * @param userCredentials The repository users are registered in and authenticated against.
    */
-  public LoginManager() {
-    userCredentials = new HashMap<>();
-    userCredentials.put("test1", "test1".hashCode());
+  public LoginManager(UserRepository userCredentials) {
+    this(userCredentials, PasswordHasher.getShared());
+  }
+
+  /**
+   * Constructs a LoginManager.
+   *
+   * @param userCredentials The repository users are registered in and authenticated against.
+   * @param hasher Hashes and checks passwords.
+   */
+  public LoginManager(UserRepository userCredentials, PasswordHasher hasher) {
+    this(userCredentials, hasher, new SessionTokens(Duration.ofHours(12)));
+  }
+
+  /**
+   * Constructs a LoginManager.
+   *
+   * @param userCredentials The repository users are registered in and authenticated against.
+   * @param hasher Hashes and checks passwords.
+   * @param sessions Issues the session token returned by a successful login.
+   */
+  public LoginManager(
+      UserRepository userCredentials, PasswordHasher hasher, SessionTokens sessions) {
+    this.userCredentials = userCredentials;
+    this.hasher = hasher;
+    this.sessions = sessions;
+  }
+
+  /**
+   * @return The issuer of this manager's session tokens, for filters that check them.
+   */
+  public SessionTokens getSessions() {
+    return sessions;
   }
 
   /**
    * Handles incoming requests.
    *
-   * @param request  The HTTP request object.
+   * @param request The HTTP request object.
    * @param response The HTTP response object.
    * @return The response object based on the request type.
    * @throws Exception Throws an exception if there's an error processing the request.
@@ -39,15 +76,12 @@ public class LoginManager implements Route {
 
     // Check the path to determine the type of request
     if ("/login".equals(path)) {
-      return handleLogin(request);
+      return handleLogin(request, response);
     } else if ("/register".equals(path)) {
-      // Consider both "/register" and "/register/" as valid paths for registration
-      System.out.println("here");
-      return handleRegister(request);
+      return handleRegister(request, response);
     } else {
       // Handle other paths or return an error response
       response.status(404);
-      System.out.println("here!");
       return "Not Found";
     }
   }
@@ -56,34 +90,23 @@ public class LoginManager implements Route {
    * Handles the login process.
    *
    * @param request The HTTP request object containing user credentials.
+   * @param response The HTTP response object.
    * @return A response based on the success or failure of the login attempt.
    */
-  private Object handleLogin(Request request) {
+  private Object handleLogin(Request request, Response response) {
     String username = request.queryParams("username");
     String password = request.queryParams("password");
 
     try {
       authenticateUser(username, password);
 
-      // Authentication successful
-      Map<String, Object> successResponse = new HashMap<>();
-      successResponse.put("type", "success");
-      successResponse.put("message", "Login successful");
-      return toJson(successResponse);
+      // Authentication successful; later requests present the token instead of the password
+      return toJson(LoginResponse.success("Login successful", sessions.issue(username)));
     } catch (AuthenticationException e) {
-      // Handle the case where the user is not found
-      if ("User not found".equals(e.getMessage())) {
-        Map<String, Object> notFoundResponse = new HashMap<>();
-        notFoundResponse.put("type", "fail");
-        notFoundResponse.put("error", "User not found");
-        return toJson(notFoundResponse);
-      } else {
-        // Handle other authentication errors
-        Map<String, Object> failResponse = new HashMap<>();
-        failResponse.put("type", "fail");
-        failResponse.put("error", e.getMessage());
-        return toJson(failResponse);
-      }
+      // Covers both unknown users ("User not found") and wrong passwords
+      return toJson(LoginResponse.fail(e.getMessage()));
+    } catch (RejectedExecutionException e) {
+      return busy(response);
     }
   }
 
@@ -91,9 +114,10 @@ public class LoginManager implements Route {
    * Handles the registration process.
    *
    * @param request The HTTP request object containing user credentials.
+   * @param response The HTTP response object.
    * @return A response based on the success or failure of the registration attempt.
    */
-  private Object handleRegister(Request request) {
+  private Object handleRegister(Request request, Response response) {
     String username = request.queryParams("username");
     String password = request.queryParams("password");
 
@@ -101,48 +125,54 @@ public class LoginManager implements Route {
       registerUser(username, password);
 
       // Registration successful
-      Map<String, Object> successResponse = new HashMap<>();
-      successResponse.put("type", "success");
-      successResponse.put("message", "Registration successful");
-      return toJson(successResponse);
+      return toJson(LoginResponse.success("Registration successful"));
     } catch (AuthenticationException e) {
       // Registration failed
-      Map<String, Object> failResponse = new HashMap<>();
-      failResponse.put("type", "fail");
-      failResponse.put("error", e.getMessage());
-      return toJson(failResponse);
+      return toJson(LoginResponse.fail(e.getMessage()));
+    } catch (UncheckedIOException e) {
+      // The repository couldn't persist the user
+      return toJson(LoginResponse.fail("Could not save user"));
+    } catch (RejectedExecutionException e) {
+      return busy(response);
     }
   }
 
   /**
-   * Converts a map to its JSON string representation.
+   * Answers a request turned away because too many passwords are already waiting to be hashed.
    *
-   * @param responseMap The map to convert.
-   * @return The JSON string representation of the map.
+   * @param response The HTTP response object.
+   * @return The failure response.
    */
-  private String toJson(Map<String, Object> responseMap) {
-    Moshi moshi = new Moshi.Builder().build();
-    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
-    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
-    return adapter.toJson(responseMap);
+  private String busy(Response response) {
+    response.status(503);
+    response.header("Retry-After", "1");
+    return toJson(LoginResponse.fail("Too many login attempts, try again shortly"));
+  }
+
+  /**
+   * Converts a response to its JSON string representation.
+   *
+   * @param loginResponse The response to convert.
+   * @return The JSON string representation of the response.
+   */
+  private String toJson(LoginResponse loginResponse) {
+    return Serializer.LOGIN.toJson(loginResponse);
   }
   /**
    * Registers a new user.
    *
    * @param username The username of the new user.
    * @param password The password of the new user.
-   * @throws AuthenticationException If the username already exists.
+   * @throws AuthenticationException If the username already exists, or either field is missing.
+   * @throws RejectedExecutionException If too many passwords are waiting to be hashed.
    */
-
   public void registerUser(String username, String password) throws AuthenticationException {
-    if (userCredentials.containsKey(username)) {
+    requireCredentials(username, password);
+    // Checked before hashing too, so taken names don't cost a hash
+    if (userCredentials.get(username) != null
+        || !userCredentials.register(username, hasher.hash(password))) {
       throw new AuthenticationException("Username already exists");
     }
-    System.out.println(username);
-    System.out.println(password);
-    int hashedPassword = hashPassword(password);
-    userCredentials.put(username, hashedPassword);
-    System.out.println(userCredentials);
   }
 
   /**
@@ -151,35 +181,62 @@ public class LoginManager implements Route {
    * @param username The username of the user to authenticate.
    * @param password The password of the user to authenticate.
    * @throws AuthenticationException If the authentication fails.
+   * @throws RejectedExecutionException If too many passwords are waiting to be hashed.
    */
   public void authenticateUser(String username, String password) throws AuthenticationException {
-    System.out.println(username);
-    System.out.println(userCredentials);
-    if (userCredentials.containsKey(username)) {
-      int storedHashedPassword = userCredentials.get(username);
-      int enteredHashedPassword = hashPassword(password);
-
-      if (storedHashedPassword != enteredHashedPassword) {
-        throw new AuthenticationException("Invalid username or password");
-      }
-    } else {
+    requireCredentials(username, password);
+    String storedHashedPassword = userCredentials.get(username);
+    if (storedHashedPassword == null) {
       throw new AuthenticationException("User not found");
     }
+    PasswordHasher.Verification verification = hasher.verify(password, storedHashedPassword);
+    if (!verification.matches()) {
+      throw new AuthenticationException("Invalid username or password");
+    }
+    if (verification.needsRehash()) {
+      rehash(username, password, storedHashedPassword);
+    }
   }
 
   /**
-   * Hashes a password using its hash code.
+   * Upgrades a user's hash to the current settings in the background, now that the password is
+   * known. Skipped if the hashing queue is full or the hash has changed since; the next login tries
+   * again.
    *
-   * @param password The password to hash.
-   * @return The hash code of the password.
+   * @param username The username.
+   * @param password The password that just matched.
+   * @param storedHashedPassword The weaker hash it matched.
    */
-  public int hashPassword(String password) {
-    return password.hashCode();
+  private void rehash(String username, String password, String storedHashedPassword) {
+    try {
+      hasher
+          .hashAsync(password)
+          .thenAccept(newHash -> userCredentials.replace(username, storedHashedPassword, newHash))
+          .exceptionally(
+              error -> {
+                System.err.println("Could not rehash password: " + error.getMessage());
+                return null;
+              });
+    } catch (RejectedExecutionException e) {
+      // Busy; upgrading can wait
+    }
   }
 
   /**
-   * Custom exception for authentication issues.
+   * Rejects requests missing a username or password.
+   *
+   * @param username The username, or null if it wasn't given.
+   * @param password The password, or null if it wasn't given.
+   * @throws AuthenticationException If either is missing.
    */
+  private static void requireCredentials(String username, String password)
+      throws AuthenticationException {
+    if (username == null || password == null) {
+      throw new AuthenticationException("Username and password are required");
+    }
+  }
+
+  /** Custom exception for authentication issues. */
   public static class AuthenticationException extends Exception {
     public AuthenticationException(String message) {
       super(message);
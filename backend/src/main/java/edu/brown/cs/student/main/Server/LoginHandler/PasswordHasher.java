@@ -0,0 +1,242 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+import java.io.Closeable;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes and checks passwords with PBKDF2-HMAC-SHA256, on a pool of its own.
+ *
+ * <p>Hashes are stored as {@code pbkdf2-sha256$iterations$salt$hash}, with the salt and hash in
+ * base64, so the iteration count can be raised without invalidating existing hashes. Hashes with
+ * fewer iterations than configured, and the bare {@code String.hashCode} values stored before this
+ * format, still verify but are reported as needing a rehash.
+ *
+ * <p>Each hash takes tens to hundreds of milliseconds of CPU. It runs on {@code threads} dedicated
+ * threads with at most {@code maxQueued} more waiting, so a burst of logins can't take CPU from
+ * other routes; once the queue is full further requests are rejected straight away. A hasher should
+ * be closed when it is no longer needed, or the shared one used instead.
+ */
+public class PasswordHasher implements Closeable {
+
+  /** The outcome of checking a password. */
+  public static final class Verification {
+    private final boolean matches;
+    private final boolean needsRehash;
+
+    Verification(boolean matches, boolean needsRehash) {
+      this.matches = matches;
+      this.needsRehash = needsRehash;
+    }
+
+    /**
+     * @return true if the password matches the stored hash.
+     */
+    public boolean matches() {
+      return matches;
+    }
+
+    /**
+     * @return true if the password matched a hash weaker than the current settings produce.
+     */
+    public boolean needsRehash() {
+      return needsRehash;
+    }
+  }
+
+  private static final String SCHEME = "pbkdf2-sha256";
+  private static final int SALT_BYTES = 16;
+  private static final int HASH_BITS = 256;
+
+  // Created on first use, and never closed
+  private static volatile PasswordHasher shared;
+
+  private final int iterations;
+  private final ThreadPoolExecutor pool;
+  private final SecureRandom random = new SecureRandom();
+
+  /**
+   * Constructs a hasher with 600,000 iterations, as OWASP recommends for PBKDF2-HMAC-SHA256, on
+   * half the available cores with up to 64 requests waiting.
+   */
+  public PasswordHasher() {
+    this(600_000, Math.max(1, Runtime.getRuntime().availableProcessors() / 2), 64);
+  }
+
+  /**
+   * Constructs a hasher.
+   *
+   * @param iterations The PBKDF2 iteration count for new hashes.
+   * @param threads The number of threads hashing at once.
+   * @param maxQueued The most hashing requests waiting for a thread before more are rejected.
+   */
+  public PasswordHasher(int iterations, int threads, int maxQueued) {
+    this.iterations = iterations;
+    AtomicInteger count = new AtomicInteger();
+    this.pool =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(maxQueued),
+            runnable -> {
+              Thread thread = new Thread(runnable, "password-hasher-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Returns the hasher shared by every login manager built with the default settings, so they share
+   * one pool rather than each starting its own. It must not be closed.
+   *
+   * @return The shared hasher.
+   */
+  public static PasswordHasher getShared() {
+    PasswordHasher hasher = shared;
+    if (hasher == null) {
+      synchronized (PasswordHasher.class) {
+        hasher = shared;
+        if (hasher == null) {
+          hasher = new PasswordHasher();
+          shared = hasher;
+        }
+      }
+    }
+    return hasher;
+  }
+
+  /**
+   * Hashes a password with a fresh salt.
+   *
+   * @param password The password.
+   * @return A future completing with the versioned hash.
+   * @throws RejectedExecutionException If the queue is full.
+   */
+  public CompletableFuture<String> hashAsync(String password) {
+    return CompletableFuture.supplyAsync(() -> hashNow(password), pool);
+  }
+
+  /**
+   * Checks a password against a stored hash.
+   *
+   * @param password The password.
+   * @param stored The stored hash, in any format this hasher has produced.
+   * @return A future completing with whether it matched and whether it should be rehashed.
+   * @throws RejectedExecutionException If the queue is full.
+   */
+  public CompletableFuture<Verification> verifyAsync(String password, String stored) {
+    if (!stored.startsWith(SCHEME + "$")) {
+      // Stored before hashes were versioned; cheap to check, so no need for the pool
+      boolean matches = stored.equals(Integer.toString(password.hashCode()));
+      return CompletableFuture.completedFuture(new Verification(matches, matches));
+    }
+    return CompletableFuture.supplyAsync(() -> verifyNow(password, stored), pool);
+  }
+
+  /**
+   * Hashes a password, waiting for the result.
+   *
+   * @param password The password.
+   * @return The versioned hash.
+   * @throws RejectedExecutionException If the queue is full.
+   */
+  public String hash(String password) {
+    return join(hashAsync(password));
+  }
+
+  /**
+   * Checks a password, waiting for the result.
+   *
+   * @param password The password.
+   * @param stored The stored hash.
+   * @return Whether it matched and whether it should be rehashed.
+   * @throws RejectedExecutionException If the queue is full.
+   */
+  public Verification verify(String password, String stored) {
+    return join(verifyAsync(password, stored));
+  }
+
+  /**
+   * @return The number of hashing requests waiting for a thread.
+   */
+  public int queued() {
+    return pool.getQueue().size();
+  }
+
+  /**
+   * Stops the hashing threads once the requests already queued have finished. Later requests are
+   * rejected.
+   */
+  @Override
+  public void close() {
+    pool.shutdown();
+  }
+
+  private String hashNow(String password) {
+    byte[] salt = new byte[SALT_BYTES];
+    random.nextBytes(salt);
+    Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+    return SCHEME
+        + "$"
+        + iterations
+        + "$"
+        + base64.encodeToString(salt)
+        + "$"
+        + base64.encodeToString(pbkdf2(password, salt, iterations));
+  }
+
+  private Verification verifyNow(String password, String stored) {
+    String[] fields = stored.split("\\$");
+    if (fields.length != 4) {
+      return new Verification(false, false);
+    }
+    int storedIterations;
+    byte[] salt;
+    byte[] expected;
+    try {
+      storedIterations = Integer.parseInt(fields[1]);
+      salt = Base64.getDecoder().decode(fields[2]);
+      expected = Base64.getDecoder().decode(fields[3]);
+    } catch (IllegalArgumentException e) {
+      return new Verification(false, false);
+    }
+    boolean matches = MessageDigest.isEqual(expected, pbkdf2(password, salt, storedIterations));
+    return new Verification(matches, matches && storedIterations < iterations);
+  }
+
+  private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+    PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+    try {
+      return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("PBKDF2WithHmacSHA256 is unavailable", e);
+    } finally {
+      spec.clearPassword();
+    }
+  }
+
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw e;
+    }
+  }
+}
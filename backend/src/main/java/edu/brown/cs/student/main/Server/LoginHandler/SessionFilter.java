@@ -0,0 +1,77 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+import edu.brown.cs.student.main.json.ErrorResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+/**
+ * A before filter that checks the session token on a request and records whose it is in the {@link
+ * #USER} attribute.
+ *
+ * <p>The token is read from an {@code Authorization: Bearer} header, or from a {@code token} query
+ * parameter for clients that can't set headers. A forged or expired token is always rejected with
+ * 401; a missing one only when the filter is required.
+ */
+public class SessionFilter implements Filter {
+
+  /** The request attribute holding the authenticated username. */
+  public static final String USER = "session.user";
+
+  private static final String BEARER = "Bearer ";
+
+  private final SessionTokens tokens;
+  private final boolean required;
+
+  /**
+   * Constructs a SessionFilter.
+   *
+   * @param tokens Checks tokens.
+   * @param required Whether requests without a token are rejected.
+   */
+  public SessionFilter(SessionTokens tokens, boolean required) {
+    this.tokens = tokens;
+    this.required = required;
+  }
+
+  @Override
+  public void handle(Request request, Response response) {
+    String token = token(request);
+    if (token == null) {
+      if (required) {
+        reject(response, "Log in to use this route");
+      }
+      return;
+    }
+    String user = tokens.verify(token);
+    if (user == null) {
+      reject(response, "Session is invalid or has expired");
+    }
+    request.attribute(USER, user);
+  }
+
+  /**
+   * Returns the authenticated user of a request that has passed through a SessionFilter.
+   *
+   * @param request The HTTP request object.
+   * @return The username, or null if the request had no token.
+   */
+  public static String user(Request request) {
+    return request.attribute(USER);
+  }
+
+  private static String token(Request request) {
+    String authorization = request.headers("Authorization");
+    if (authorization != null && authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+      return authorization.substring(BEARER.length()).trim();
+    }
+    return request.queryParams("token");
+  }
+
+  private static void reject(Response response, String details) {
+    response.header("WWW-Authenticate", "Bearer");
+    Spark.halt(401, Serializer.ERROR.toJson(new ErrorResponse("unauthorized", details)));
+  }
+}
@@ -0,0 +1,139 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks stateless session tokens, so a logged-in client can prove who it is without
+ * sending its password again.
+ *
+ * <p>A token is {@code user.expiry.mac}: the base64url username, the expiry in epoch seconds, and
+ * an HMAC-SHA256 of the two under a server key. Checking one is a MAC and a constant-time compare;
+ * the credential store is never read. Tokens can't be revoked before they expire, and with the
+ * default random key they stop working when the server restarts.
+ */
+public class SessionTokens {
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int KEY_BYTES = 32;
+  private static final int MAX_POOLED_MACS = 64;
+
+  private final SecretKeySpec key;
+  private final long ttlSeconds;
+  // Mac instances aren't thread-safe, and looking one up per request is slower than the MAC itself.
+  // Pooled rather than per thread, since with virtual threads every request is a new thread.
+  private final Queue<Mac> macs = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger pooledMacs = new AtomicInteger();
+
+  /**
+   * Constructs a token issuer with a fresh random key.
+   *
+   * @param ttl How long a token is valid after it is issued.
+   */
+  public SessionTokens(Duration ttl) {
+    this(randomKey(), ttl);
+  }
+
+  /**
+   * Constructs a token issuer with a fixed key, so tokens survive restarts and are accepted by
+   * every server sharing it.
+   *
+   * @param key The HMAC key, at least 32 bytes.
+   * @param ttl How long a token is valid after it is issued.
+   */
+  public SessionTokens(byte[] key, Duration ttl) {
+    if (key.length < KEY_BYTES) {
+      throw new IllegalArgumentException("Session key must be at least " + KEY_BYTES + " bytes");
+    }
+    this.key = new SecretKeySpec(key.clone(), ALGORITHM);
+    this.ttlSeconds = ttl.toSeconds();
+  }
+
+  /**
+   * Issues a token for a user who has just authenticated.
+   *
+   * @param username The username.
+   * @return The token.
+   */
+  public String issue(String username) {
+    long expiry = System.currentTimeMillis() / 1000 + ttlSeconds;
+    String payload =
+        Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(username.getBytes(StandardCharsets.UTF_8))
+            + "."
+            + expiry;
+    return payload + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac(payload));
+  }
+
+  /**
+   * Checks a token.
+   *
+   * @param token The token, as issued by {@link #issue}.
+   * @return The username it was issued to, or null if it is malformed, forged or expired.
+   */
+  public String verify(String token) {
+    int macStart = token.lastIndexOf('.');
+    int expiryStart = macStart < 0 ? -1 : token.lastIndexOf('.', macStart - 1);
+    if (expiryStart < 0) {
+      return null;
+    }
+    String payload = token.substring(0, macStart);
+    try {
+      byte[] given = Base64.getUrlDecoder().decode(token.substring(macStart + 1));
+      if (!MessageDigest.isEqual(mac(payload), given)) {
+        return null;
+      }
+      long expiry = Long.parseLong(token.substring(expiryStart + 1, macStart));
+      if (expiry <= System.currentTimeMillis() / 1000) {
+        return null;
+      }
+      return new String(
+          Base64.getUrlDecoder().decode(token.substring(0, expiryStart)), StandardCharsets.UTF_8);
+    } catch (IllegalArgumentException e) {
+      // Bad base64 or a bad expiry; NumberFormatException is an IllegalArgumentException
+      return null;
+    }
+  }
+
+  private byte[] mac(String payload) {
+    Mac mac = macs.poll();
+    if (mac == null) {
+      mac = newMac();
+    } else {
+      pooledMacs.decrementAndGet();
+    }
+    byte[] result = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    // doFinal leaves the Mac reset, ready for the next caller; past the cap it's left to the GC
+    if (pooledMacs.incrementAndGet() <= MAX_POOLED_MACS) {
+      macs.offer(mac);
+    } else {
+      pooledMacs.decrementAndGet();
+    }
+    return result;
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException(ALGORITHM + " is unavailable", e);
+    }
+  }
+
+  private static byte[] randomKey() {
+    byte[] key = new byte[KEY_BYTES];
+    new SecureRandom().nextBytes(key);
+    return key;
+  }
+}
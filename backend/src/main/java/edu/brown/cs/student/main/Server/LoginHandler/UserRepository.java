@@ -0,0 +1,40 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+/**
+ * Where users and their hashed passwords are kept. Implementations must be safe to share between
+ * request threads.
+ */
+public interface UserRepository {
+
+  /**
+   * Adds a user unless the name is taken. Checking and adding happen in one atomic step.
+   *
+   * @param username The username.
+   * @param hashedPassword The user's hashed password.
+   * @return true if the user was added, false if the name was already taken.
+   */
+  boolean register(String username, String hashedPassword);
+
+  /**
+   * Replaces a user's hashed password, if it is still the one expected.
+   *
+   * @param username The username.
+   * @param expectedHash The hashed password the caller last read.
+   * @param newHash The new hashed password.
+   * @return true if the hash was replaced, false if the user is gone or the hash has changed.
+   */
+  boolean replace(String username, String expectedHash, String newHash);
+
+  /**
+   * Looks up a user's hashed password.
+   *
+   * @param username The username.
+   * @return The hashed password, or null if there is no such user.
+   */
+  String get(String username);
+
+  /**
+   * @return The number of registered users.
+   */
+  int size();
+}
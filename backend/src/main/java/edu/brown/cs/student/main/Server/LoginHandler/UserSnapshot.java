@@ -0,0 +1,206 @@
+package edu.brown.cs.student.main.Server.LoginHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * An immutable snapshot of every user, stored as an open-addressing hash table in a file and
+ * queried through a read-only memory mapping.
+ *
+ * <p>Opening a snapshot maps the file without reading it, so it costs the same at a thousand users
+ * as at millions; pages are read in by the OS as lookups touch them. The layout is:
+ *
+ * <pre>
+ *   int magic, int version, long walStart, int slotCount, int entryCount
+ *   int[slotCount] slots    offset of the record in each slot, 0 if empty
+ *   records                 int userLength, user, int hashLength, hash (UTF-8)
+ * </pre>
+ *
+ * <p>{@code walStart} is the first write-ahead log segment not already included in the snapshot.
+ * Offsets are ints, so one snapshot holds at most 2GB of users.
+ */
+final class UserSnapshot {
+  private static final int MAGIC = 0x55534552;
+  private static final int VERSION = 1;
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 4 + 4;
+
+  static final UserSnapshot EMPTY = new UserSnapshot(ByteBuffer.allocate(0), 0, 0, 0);
+
+  private final ByteBuffer buffer;
+  private final long walStart;
+  private final int slotCount;
+  private final int entryCount;
+
+  private UserSnapshot(ByteBuffer buffer, long walStart, int slotCount, int entryCount) {
+    this.buffer = buffer;
+    this.walStart = walStart;
+    this.slotCount = slotCount;
+    this.entryCount = entryCount;
+  }
+
+  /**
+   * Maps a snapshot file.
+   *
+   * @param file The snapshot file.
+   * @return The snapshot, or {@link #EMPTY} if the file doesn't exist.
+   * @throws IOException If the file can't be read or isn't a snapshot.
+   */
+  static UserSnapshot open(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return EMPTY;
+    }
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    if (buffer.capacity() < HEADER_BYTES
+        || buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != VERSION) {
+      throw new IOException("Not a user snapshot: " + file);
+    }
+    return new UserSnapshot(buffer, buffer.getLong(8), buffer.getInt(16), buffer.getInt(20));
+  }
+
+  /**
+   * Writes a snapshot file atomically: it is written beside the target, forced to disk and moved
+   * over it.
+   *
+   * @param file The snapshot file.
+   * @param walStart The first log segment the snapshot does not include.
+   * @param users Every user and hashed password.
+   * @throws IOException If the snapshot can't be written.
+   */
+  static void write(Path file, long walStart, Map<String, String> users) throws IOException {
+    int slotCount = Integer.highestOneBit(Math.max(4, users.size() * 2 - 1)) << 1;
+    int[] slots = new int[slotCount];
+    long recordsStart = HEADER_BYTES + 4L * slotCount;
+
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            tmp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      // Records first, after room for the header and slots, so the slots can be filled in as the
+      // records' offsets are known
+      channel.position(recordsStart);
+      ByteBuffer out = ByteBuffer.allocate(1 << 16);
+      long offset = recordsStart;
+      for (Map.Entry<String, String> user : users.entrySet()) {
+        byte[] name = user.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[] hash = user.getValue().getBytes(StandardCharsets.UTF_8);
+        int length = 8 + name.length + hash.length;
+        if (offset + length > Integer.MAX_VALUE) {
+          throw new IOException("Too many users for one snapshot");
+        }
+        if (out.remaining() < length) {
+          out.flip();
+          writeFully(channel, out);
+          out = ByteBuffer.allocate(Math.max(1 << 16, length));
+        }
+        out.putInt(name.length).put(name).putInt(hash.length).put(hash);
+
+        int slot = spread(user.getKey().hashCode()) & (slotCount - 1);
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & (slotCount - 1);
+        }
+        slots[slot] = (int) offset;
+        offset += length;
+      }
+      out.flip();
+      writeFully(channel, out);
+
+      ByteBuffer head = ByteBuffer.allocate((int) recordsStart);
+      head.putInt(MAGIC).putInt(VERSION).putLong(walStart).putInt(slotCount).putInt(users.size());
+      head.asIntBuffer().put(slots);
+      head.clear();
+      channel.position(0);
+      writeFully(channel, head);
+      channel.force(true);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Looks up a user's hashed password.
+   *
+   * @param username The username.
+   * @return The hashed password, or null if the snapshot has no such user.
+   */
+  String get(String username) {
+    if (entryCount == 0) {
+      return null;
+    }
+    byte[] name = username.getBytes(StandardCharsets.UTF_8);
+    int mask = slotCount - 1;
+    for (int slot = spread(username.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int offset = buffer.getInt(HEADER_BYTES + 4 * slot);
+      if (offset == 0) {
+        return null;
+      }
+      if (buffer.getInt(offset) == name.length && matches(offset + 4, name)) {
+        int hashOffset = offset + 4 + name.length;
+        byte[] hash = new byte[buffer.getInt(hashOffset)];
+        buffer.get(hashOffset + 4, hash);
+        return new String(hash, StandardCharsets.UTF_8);
+      }
+    }
+  }
+
+  /**
+   * Passes every user in the snapshot to an action.
+   *
+   * @param action Receives each username and hashed password.
+   */
+  void forEach(BiConsumer<String, String> action) {
+    for (int slot = 0; slot < slotCount; slot++) {
+      int offset = buffer.getInt(HEADER_BYTES + 4 * slot);
+      if (offset == 0) {
+        continue;
+      }
+      byte[] name = new byte[buffer.getInt(offset)];
+      buffer.get(offset + 4, name);
+      int hashOffset = offset + 4 + name.length;
+      byte[] hash = new byte[buffer.getInt(hashOffset)];
+      buffer.get(hashOffset + 4, hash);
+      action.accept(
+          new String(name, StandardCharsets.UTF_8), new String(hash, StandardCharsets.UTF_8));
+    }
+  }
+
+  long walStart() {
+    return walStart;
+  }
+
+  int size() {
+    return entryCount;
+  }
+
+  private boolean matches(int offset, byte[] name) {
+    byte[] stored = new byte[name.length];
+    buffer.get(offset, stored);
+    return Arrays.equals(stored, name);
+  }
+
+  private static int spread(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
@@ -0,0 +1,226 @@
+package edu.brown.cs.student.main.Server.Maps;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hashing;
+import edu.brown.cs.student.main.Server.SafeTravels.GeocodeCache;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of Mapbox geocoding responses keyed by access token and normalized place.
+ *
+ * <p>Only successful responses are kept, for {@code ttl}, and the cache holds at most {@code
+ * maxBytes} of response bodies; a single body larger than {@code maxEntryBytes} is served but not
+ * kept. Concurrent misses for the same place and token share one upstream request. Responses are
+ * never shared between tokens, since Mapbox answers an invalid token with an error, and a valid one
+ * with results the holder of an invalid one mustn't get. Every entry carries an ETag derived from
+ * its body, so clients can revalidate without downloading it again.
+ *
+ * <p>Responses can also be remembered for a longer {@code staleTtl}, to be served only when Mapbox
+ * fails: the request errors, its circuit breaker is open, or it answers 5xx or 429.
+ */
+public class MapBoxCache {
+
+  /** A Mapbox response. */
+  public static final class Entry {
+    private final int status;
+    private final String contentType;
+    private final byte[] body;
+    private final String etag;
+    private final long storedAt;
+
+    /**
+     * Constructs an entry.
+     *
+     * @param status The upstream status.
+     * @param contentType The upstream content type, or null if none was sent.
+     * @param body The response body.
+     */
+    public Entry(int status, String contentType, byte[] body) {
+      this.status = status;
+      this.contentType = contentType;
+      this.body = body;
+      this.etag = "\"" + Hashing.murmur3_128().hashBytes(body) + "\"";
+      this.storedAt = System.currentTimeMillis();
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public String getContentType() {
+      return contentType;
+    }
+
+    public byte[] getBody() {
+      return body;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+
+    /**
+     * @return When the response was received, in epoch milliseconds.
+     */
+    public long getStoredAt() {
+      return storedAt;
+    }
+  }
+
+  /** Requests a place from Mapbox. */
+  public interface Loader {
+    CompletableFuture<Entry> load(String place);
+  }
+
+  private final Cache<String, Entry> responses;
+  // Null when stale fallback is off
+  private final Cache<String, Entry> lastKnown;
+  private final AtomicLong staleHits = new AtomicLong();
+  private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+  private final Duration ttl;
+  private final int maxEntryBytes;
+
+  /**
+   * Constructs a Mapbox response cache.
+   *
+   * @param maxBytes The most response bytes kept across all places, evicting least recently used.
+   * @param maxEntryBytes The largest single response kept.
+   * @param ttl How long a response is kept.
+   */
+  public MapBoxCache(long maxBytes, int maxEntryBytes, Duration ttl) {
+    this(maxBytes, maxEntryBytes, ttl, null);
+  }
+
+  /**
+   * Constructs a Mapbox response cache that falls back to stale responses when Mapbox fails.
+   *
+   * @param maxBytes The most response bytes kept across all places, evicting least recently used.
+   * @param maxEntryBytes The largest single response kept.
+   * @param ttl How long a response is kept.
+   * @param staleTtl How long a response may be served in place of a failed one, or null to never
+   *     serve stale responses.
+   */
+  public MapBoxCache(long maxBytes, int maxEntryBytes, Duration ttl, Duration staleTtl) {
+    this.ttl = ttl;
+    // Fresh entries share their bodies with these, so they add little memory of their own
+    this.lastKnown =
+        staleTtl == null
+            ? null
+            : CacheBuilder.newBuilder()
+                .concurrencyLevel(1)
+                .maximumWeight(maxBytes)
+                .<String, Entry>weigher((place, entry) -> entry.body.length + place.length())
+                .expireAfterWrite(staleTtl)
+                .build();
+    this.maxEntryBytes = maxEntryBytes;
+    this.responses =
+        CacheBuilder.newBuilder()
+            // One segment, so the byte cap applies to the whole cache rather than to each quarter
+            // of it; only misses take the write lock
+            .concurrencyLevel(1)
+            .maximumWeight(maxBytes)
+            .<String, Entry>weigher((place, entry) -> entry.body.length + place.length())
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Returns the response for a place, requesting and caching it on a miss. Concurrent misses for
+   * the same place and token share one request.
+   *
+   * @param place The place as typed.
+   * @param accessToken The Mapbox access token the place is requested with.
+   * @param loader Requests the place from Mapbox on a miss.
+   * @return A future completing with the response, which may be an upstream error. If Mapbox fails
+   *     and a stale response is known, it completes with that instead.
+   */
+  public CompletableFuture<Entry> get(String place, String accessToken, Loader loader) {
+    // Hashed, so the cache doesn't hold on to tokens
+    String key =
+        Hashing.sha256().hashString(accessToken, StandardCharsets.UTF_8)
+            + " "
+            + GeocodeCache.normalize(place);
+    Entry cached = responses.getIfPresent(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+
+    CompletableFuture<Entry> lookup = new CompletableFuture<>();
+    CompletableFuture<Entry> existing = inFlight.putIfAbsent(key, lookup);
+    if (existing != null) {
+      return existing;
+    }
+    CompletableFuture<Entry> load;
+    try {
+      load = loader.load(place);
+    } catch (RuntimeException e) {
+      load = CompletableFuture.failedFuture(e);
+    }
+    load.whenComplete(
+        (entry, error) -> {
+          Entry stale = null;
+          if (error == null && entry.status == 200 && entry.body.length <= maxEntryBytes) {
+            responses.put(key, entry);
+            if (lastKnown != null) {
+              lastKnown.put(key, entry);
+            }
+          } else if (lastKnown != null
+              && (error != null || entry.status >= 500 || entry.status == 429)) {
+            stale = lastKnown.getIfPresent(key);
+          }
+          // Only stop sharing this request once its result is visible in the cache
+          inFlight.remove(key, lookup);
+          if (stale != null) {
+            staleHits.incrementAndGet();
+            lookup.complete(stale);
+          } else if (error == null) {
+            lookup.complete(entry);
+          } else {
+            lookup.completeExceptionally(
+                error instanceof CompletionException ? error.getCause() : error);
+          }
+        });
+    return lookup;
+  }
+
+  /**
+   * Returns how much longer an entry will be served from the cache.
+   *
+   * @param entry A response returned by {@link #get}.
+   * @return The remaining lifetime in whole seconds, never negative.
+   */
+  public long remainingSeconds(Entry entry) {
+    long age = System.currentTimeMillis() - entry.storedAt;
+    return Math.max(0, (ttl.toMillis() - age) / 1000);
+  }
+
+  /**
+   * @return Hit, miss and eviction counts.
+   */
+  public CacheStats stats() {
+    return responses.stats();
+  }
+
+  /**
+   * @return How many failed requests were answered with a stale response.
+   */
+  public long staleHitCount() {
+    return staleHits.get();
+  }
+
+  /**
+   * @return The number of cached places.
+   */
+  public long size() {
+    return responses.size();
+  }
+}
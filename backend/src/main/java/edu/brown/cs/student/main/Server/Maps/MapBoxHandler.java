@@ -1,30 +1,165 @@
 package edu.brown.cs.student.main.Server.Maps;
 
+import edu.brown.cs.student.main.Server.Exceptions.CircuitOpenException;
+import edu.brown.cs.student.main.Server.Exceptions.QuotaExceededException;
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import edu.brown.cs.student.main.Server.Http.UpstreamClient;
+import edu.brown.cs.student.main.Server.Http.UpstreamPolicy;
+import edu.brown.cs.student.main.Server.LoginHandler.SessionFilter;
+import edu.brown.cs.student.main.Server.Metrics.MetricsRegistry;
+import edu.brown.cs.student.main.Server.Metrics.Timing;
 import edu.brown.cs.student.main.Server.Server;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
 public class MapBoxHandler implements Route {
-  /** Constructs a ViewCSVHandler instance. */
-  public MapBoxHandler() {}
+  // Set -Dupstream.mapbox.url to send requests to a stand-in, such as a local stub
+  private static final String MAPBOX_URL =
+      System.getProperty("upstream.mapbox.url", "https://api.mapbox.com")
+          + "/geocoding/v5/mapbox.places/";
+  private static final int BUFFER_SIZE = 8192;
+  private static final String UPSTREAM = "mapbox";
+
+  // Shared by every handler; the frontend searches the same places on every keystroke
+  private static final MapBoxCache sharedCache =
+      new MapBoxCache(32L * 1024 * 1024, 256 * 1024, Duration.ofHours(6), Duration.ofDays(7));
+
+  // Each attempt, retries and hedges included; streamed requests until their headers arrive
+  private static final Timing timing =
+      MetricsRegistry.getShared()
+          .timing("upstream_request", "upstream requests", "upstream", UPSTREAM);
+
+  private final UpstreamClient http;
+  private final String baseUrl;
+  private final boolean streaming;
+  private final MapBoxCache cache;
+  private final UpstreamPolicy policy;
+
+  /** Constructs a MapBoxHandler that answers from the shared cache, using the shared client. */
+  public MapBoxHandler() {
+    this(UpstreamClient.getShared(), MAPBOX_URL, sharedCache);
+  }
+
+  /**
+   * Constructs a MapBoxHandler that buffers Mapbox responses.
+   *
+   * @param http The client Mapbox requests are sent with.
+   */
+  public MapBoxHandler(UpstreamClient http) {
+    this(http, MAPBOX_URL, false);
+  }
+
+  /**
+   * Constructs a MapBoxHandler.
+   *
+   * @param http The client Mapbox requests are sent with.
+   * @param baseUrl The Mapbox geocoding URL the place is appended to.
+   * @param streaming Whether to copy Mapbox responses to the client as they arrive, rather than
+   *     reading each one into memory first.
+   */
+  public MapBoxHandler(UpstreamClient http, String baseUrl, boolean streaming) {
+    this.http = http;
+    this.baseUrl = baseUrl;
+    this.streaming = streaming;
+    this.cache = null;
+    this.policy = UpstreamPolicy.shared(UPSTREAM);
+  }
+
+  /**
+   * Constructs a MapBoxHandler that answers repeated searches from a cache.
+   *
+   * @param http The client Mapbox requests are sent with.
+   * @param baseUrl The Mapbox geocoding URL the place is appended to.
+   * @param cache The cache responses are kept in.
+   */
+  public MapBoxHandler(UpstreamClient http, String baseUrl, MapBoxCache cache) {
+    this(http, baseUrl, cache, UpstreamPolicy.shared(UPSTREAM));
+  }
+
+  /**
+   * Constructs a MapBoxHandler that answers repeated searches from a cache, calling Mapbox under
+   * the given policy.
+   *
+   * @param http The client Mapbox requests are sent with.
+   * @param baseUrl The Mapbox geocoding URL the place is appended to.
+   * @param cache The cache responses are kept in.
+   * @param policy The circuit breaker, retries and hedging Mapbox requests are made with.
+   */
+  public MapBoxHandler(
+      UpstreamClient http, String baseUrl, MapBoxCache cache, UpstreamPolicy policy) {
+    this.http = http;
+    this.baseUrl = baseUrl;
+    this.streaming = false;
+    this.cache = cache;
+    this.policy = policy;
+  }
+
+  /**
+   * Constructs a MapBoxHandler using the shared client, in one of three modes: {@code cached}
+   * answers repeated searches from the shared cache, but reads each miss into memory first; {@code
+   * streaming} copies every response to the client as it arrives, keeping memory flat at the cost
+   * of sending every search to Mapbox; {@code buffered} does neither.
+   *
+   * @param mode The mode, one of {@code cached}, {@code streaming} or {@code buffered}.
+   * @return The handler.
+   * @throws IllegalArgumentException If the mode is none of these.
+   */
+  public static MapBoxHandler forMode(String mode) {
+    switch (mode) {
+      case "cached":
+        return new MapBoxHandler();
+      case "streaming":
+        return new MapBoxHandler(UpstreamClient.getShared(), MAPBOX_URL, true);
+      case "buffered":
+        return new MapBoxHandler(UpstreamClient.getShared(), MAPBOX_URL, false);
+      default:
+        throw new IllegalArgumentException("Unknown Mapbox mode: " + mode);
+    }
+  }
+
+  /**
+   * @return The host Mapbox requests are sent to, for rate limiting.
+   */
+  public static String getMapboxHost() {
+    return URI.create(MAPBOX_URL).getHost();
+  }
+
+  /**
+   * @return The cache shared by handlers built with the no-argument constructor.
+   */
+  public static MapBoxCache getSharedCache() {
+    return sharedCache;
+  }
 
   /**
-   * Handles an HTTP request to view loaded CSV data.
+   * Handles an HTTP request to geocode a place through Mapbox. The search is recorded in the
+   * history of the session's user, or as anonymous when there is no session; a session {@code
+   * token} parameter is also allowed. A {@code user} parameter is rejected, since it would let
+   * anyone write to another user's history.
    *
    * @param request The HTTP request object.
    * @param response The HTTP response object.
-   * @return A serialized response containing the loaded CSV data or an error message.
+   * @return The Mapbox geocoding response, or null if the request failed. In streaming mode the
+   *     response has already been written, and an empty body is returned; a cached response the
+   *     client already has is answered with 304 and an empty body.
    */
   @Override
   public Object handle(Request request, Response response) {
     Set<String> params = request.queryParams();
-    if (params.size() != 2) {
+    int expected = params.contains("token") ? 3 : 2;
+    if (params.size() != expected || !params.contains("place") || !params.contains("accessToken")) {
       response.status(400);
       return "Error: bad request";
     }
@@ -33,35 +168,205 @@ public class MapBoxHandler implements Route {
 
     try {
       String url =
-          "https://api.mapbox.com/geocoding/v5/mapbox.places/"
-              + place
+          baseUrl
+              + URLEncoder.encode(place, StandardCharsets.UTF_8).replace("+", "%20")
               + ".json?access_token="
-              + token;
-      Server.setHistory(place);
-      System.err.println(Server.getHistory());
+              + URLEncoder.encode(token, StandardCharsets.UTF_8);
+      String user = SessionFilter.user(request);
+      Server.getHistory().record(user == null ? SearchHistory.ANONYMOUS : user, place);
 
-      URL apiUrl = new URL(url);
-      HttpURLConnection connection = (HttpURLConnection) apiUrl.openConnection();
-      connection.setRequestMethod("GET");
+      if (cache != null) {
+        return cached(request, response, place, token, url);
+      }
+      if (streaming) {
+        return stream(request, response, url);
+      }
 
-      int responseCode = connection.getResponseCode();
+      HttpRequest apiRequest = http.newRequest(url).GET().build();
+      HttpResponse<String> apiResponse;
+      try {
+        apiResponse =
+            policy
+                .call(
+                    () ->
+                        timing.time(
+                            () -> http.sendAsync(apiRequest, HttpResponse.BodyHandlers.ofString()),
+                            MapBoxHandler::isFault),
+                    MapBoxHandler::isFault)
+                .join();
+      } catch (CompletionException e) {
+        throw UpstreamClient.unwrap(e);
+      }
+
+      int responseCode = apiResponse.statusCode();
       if (responseCode == HttpURLConnection.HTTP_OK) {
-        BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        String inputLine;
-        StringBuilder res = new StringBuilder();
-
-        while ((inputLine = in.readLine()) != null) {
-          res.append(inputLine);
-        }
-        in.close();
-        return res;
+        return apiResponse.body();
       } else {
-        System.out.println("Error: " + responseCode);
+        // Counted in the upstream metrics; forward the status like the other modes do
+        response.status(responseCode);
         return null;
       }
+    } catch (CircuitOpenException e) {
+      // Mapbox has been failing, and nothing is cached for this place; don't wait on it
+      response.status(503);
+      response.header("Retry-After", "10");
+      return "Error: " + e.getMessage();
+    } catch (QuotaExceededException e) {
+      // Our shared Mapbox quota is spent for now; the client can try again shortly
+      response.status(429);
+      response.header("Retry-After", "1");
+      return "Error: " + e.getMessage();
     } catch (Exception e) {
       e.printStackTrace();
       return null;
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Answers from the cache, requesting the place from Mapbox on a miss.
+   *
+   * <p>Successful responses carry an ETag and a Cache-Control lifetime matching what is left of the
+   * cache entry. A client sending the current ETag in If-None-Match gets 304 with no body.
+   *
+   * @param request The HTTP request object.
+   * @param response The HTTP response object.
+   * @param place The place being searched.
+   * @param token The client's Mapbox access token.
+   * @param url The Mapbox URL to request on a miss.
+   * @return The response body, or an empty body for 304.
+   * @throws Exception If the request to Mapbox failed.
+   */
+  private Object cached(Request request, Response response, String place, String token, String url)
+      throws Exception {
+    MapBoxCache.Entry entry;
+    try {
+      entry =
+          cache
+              .get(
+                  place,
+                  token,
+                  missing ->
+                      policy
+                          .call(
+                              () ->
+                                  timing.time(
+                                      () ->
+                                          http.sendAsync(
+                                              http.newRequest(url).GET().build(),
+                                              HttpResponse.BodyHandlers.ofByteArray()),
+                                      MapBoxHandler::isFault),
+                              MapBoxHandler::isFault)
+                          .thenApply(
+                              apiResponse ->
+                                  new MapBoxCache.Entry(
+                                      apiResponse.statusCode(),
+                                      apiResponse.headers().firstValue("Content-Type").orElse(null),
+                                      apiResponse.body())))
+              .join();
+    } catch (CompletionException e) {
+      throw UpstreamClient.unwrap(e);
+    }
+
+    response.status(entry.getStatus());
+    if (entry.getStatus() == HttpURLConnection.HTTP_OK) {
+      response.header("ETag", entry.getEtag());
+      response.header("Cache-Control", "public, max-age=" + cache.remainingSeconds(entry));
+      if (matches(request.headers("If-None-Match"), entry.getEtag())) {
+        response.status(HttpURLConnection.HTTP_NOT_MODIFIED);
+        return "";
+      }
+    }
+    if (entry.getContentType() != null) {
+      response.type(entry.getContentType());
+    }
+    return entry.getBody();
+  }
+
+  /**
+   * Decides whether a Mapbox response is Mapbox failing, and worth retrying.
+   *
+   * @param apiResponse The response.
+   * @return true for 5xx and 429.
+   */
+  private static boolean isFault(HttpResponse<?> apiResponse) {
+    return apiResponse.statusCode() >= 500 || apiResponse.statusCode() == 429;
+  }
+
+  /**
+   * Checks an If-None-Match header against an ETag.
+   *
+   * @param ifNoneMatch The header, or null if the client didn't send one.
+   * @param etag The current ETag, quoted.
+   * @return true if any listed tag, or a wildcard, matches.
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Copies the Mapbox response to the client as it arrives, in fixed-size chunks.
+   *
+   * <p>The status, content type and content encoding are forwarded. If the client accepts gzip,
+   * Mapbox is asked for gzip and the compressed bytes are passed through as they are.
+   *
+   * <p>Streamed requests bypass the retry policy: a response that lost a hedge, or was retried,
+   * would hold its connection until its unread stream was collected.
+   *
+   * @param request The HTTP request object.
+   * @param response The HTTP response object.
+   * @param url The Mapbox URL to request.
+   * @return An empty body; the response has already been written.
+   * @throws Exception If the request failed before anything was written.
+   */
+  private Object stream(Request request, Response response, String url) throws Exception {
+    HttpRequest.Builder apiRequest = http.newRequest(url).GET();
+    String acceptEncoding = request.headers("Accept-Encoding");
+    if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+      apiRequest.header("Accept-Encoding", "gzip");
+    }
+    HttpResponse<InputStream> apiResponse;
+    long start = timing.start();
+    boolean failed = true;
+    try {
+      apiResponse = http.send(apiRequest.build(), HttpResponse.BodyHandlers.ofInputStream());
+      failed = isFault(apiResponse);
+    } finally {
+      timing.stop(start, failed);
+    }
+
+    response.status(apiResponse.statusCode());
+    apiResponse.headers().firstValue("Content-Type").ifPresent(response::type);
+    apiResponse
+        .headers()
+        .firstValue("Content-Encoding")
+        .ifPresent(encoding -> response.header("Content-Encoding", encoding));
+    apiResponse
+        .headers()
+        .firstValue("Content-Length")
+        .ifPresent(length -> response.header("Content-Length", length));
+
+    try (InputStream body = apiResponse.body()) {
+      OutputStream out = response.raw().getOutputStream();
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while ((read = body.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+      // Commits the response, so Spark leaves the body we wrote alone
+      out.flush();
+    }
+    return "";
+  }
+}
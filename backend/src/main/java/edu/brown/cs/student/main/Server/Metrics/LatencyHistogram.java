@@ -0,0 +1,114 @@
+package edu.brown.cs.student.main.Server.Metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with bounded relative error, in the style of HdrHistogram.
+ *
+ * <p>Durations are counted in microseconds in log-linear buckets: each power of two is split into 8
+ * equal sub-buckets, so a bucket is never wider than 12.5% of the values in it, and about 300
+ * buckets cover a microsecond to several days. Recording is an index computation and two atomic
+ * adds, with no locks and no allocation, so it can run on every request.
+ */
+public final class LatencyHistogram {
+  private static final int SUB_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+  // Durations past 2^42us (about 50 days) share the last bucket
+  private static final int MAX_BITS = 42;
+  private static final int BUCKETS = (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder sumMicros = new LongAdder();
+
+  /**
+   * Records a duration.
+   *
+   * @param nanos The duration in nanoseconds.
+   */
+  public void recordNanos(long nanos) {
+    long micros = Math.max(0, nanos / 1000);
+    counts.incrementAndGet(index(micros));
+    sumMicros.add(micros);
+  }
+
+  /**
+   * @return The number of durations recorded.
+   */
+  public long count() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * @return The sum of the durations recorded, in seconds.
+   */
+  public double sumSeconds() {
+    return sumMicros.sum() / 1e6;
+  }
+
+  /**
+   * Counts the durations no longer than a bound, to within the width of the bucket the bound falls
+   * in.
+   *
+   * @param seconds The bound in seconds.
+   * @return The number of durations in buckets starting at or below the bound.
+   */
+  public long countAtOrBelow(double seconds) {
+    int last = index((long) (seconds * 1e6));
+    long count = 0;
+    for (int i = 0; i <= last; i++) {
+      count += counts.get(i);
+    }
+    return count;
+  }
+
+  /**
+   * Estimates a percentile.
+   *
+   * @param quantile The quantile, between 0 and 1.
+   * @return The upper edge of the bucket holding that quantile, in seconds; 0 if nothing has been
+   *     recorded.
+   */
+  public double quantileSeconds(double quantile) {
+    long total = count();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * total));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return upperMicros(i) / 1e6;
+      }
+    }
+    return upperMicros(BUCKETS - 1) / 1e6;
+  }
+
+  /**
+   * Finds the bucket of a duration. Below {@code SUB_BUCKETS} each microsecond has its own bucket;
+   * above, the top {@code SUB_BITS + 1} bits pick one.
+   */
+  private static int index(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BITS;
+    int index = (shift + 1) * SUB_BUCKETS + (int) ((micros >>> shift) - SUB_BUCKETS);
+    return Math.min(index, BUCKETS - 1);
+  }
+
+  /** The largest duration in a bucket. */
+  private static long upperMicros(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long sub = index % SUB_BUCKETS + SUB_BUCKETS;
+    return ((sub + 1) << shift) - 1;
+  }
+}
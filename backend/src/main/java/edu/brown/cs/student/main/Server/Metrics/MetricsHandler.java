@@ -0,0 +1,30 @@
+package edu.brown.cs.student.main.Server.Metrics;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/** Serves the server's metrics for Prometheus to scrape. */
+public class MetricsHandler implements Route {
+  private final MetricsRegistry registry;
+
+  /** Constructs a MetricsHandler for the shared registry. */
+  public MetricsHandler() {
+    this(MetricsRegistry.getShared());
+  }
+
+  /**
+   * Constructs a MetricsHandler.
+   *
+   * @param registry The metrics to serve.
+   */
+  public MetricsHandler(MetricsRegistry registry) {
+    this.registry = registry;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) {
+    response.type("text/plain; version=0.0.4; charset=utf-8");
+    return registry.scrape();
+  }
+}
@@ -0,0 +1,161 @@
+package edu.brown.cs.student.main.Server.Metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The server's metrics, written out in the Prometheus text format.
+ *
+ * <p>Every metric has one label, such as the route or upstream it measures. Timings are kept here
+ * and updated by whoever does the timing; gauges and counters are read from a supplier at each
+ * scrape, so existing counts such as cache statistics need no extra bookkeeping.
+ */
+public class MetricsRegistry {
+  private static final MetricsRegistry shared = new MetricsRegistry();
+
+  // Histogram bucket bounds, in seconds
+  private static final double[] BOUNDS = {
+    0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+  };
+
+  /** A metric name with its help text and one sample per label value. */
+  private static final class Family {
+    private final String type;
+    private final String help;
+    private final String label;
+    private final Map<String, Object> samples = new ConcurrentSkipListMap<>();
+
+    private Family(String type, String help, String label) {
+      this.type = type;
+      this.help = help;
+      this.label = label;
+    }
+  }
+
+  private final Map<String, Family> families = new ConcurrentHashMap<>();
+
+  /**
+   * @return The registry the server exports on /metrics.
+   */
+  public static MetricsRegistry getShared() {
+    return shared;
+  }
+
+  /**
+   * Returns a timing, creating it on first use. It is exported as {@code <name>_duration_seconds},
+   * {@code <name>_in_flight} and {@code <name>_errors_total}.
+   *
+   * @param name The metric name prefix.
+   * @param help What is being timed, as a plural noun such as "upstream requests".
+   * @param label The label name.
+   * @param value The label value.
+   * @return The timing for that label value.
+   */
+  public Timing timing(String name, String help, String label, String value) {
+    Timing timing =
+        (Timing)
+            family(name + "_duration_seconds", "histogram", "Time taken by " + help, label)
+                .samples
+                .computeIfAbsent(value, v -> new Timing());
+    family(name + "_in_flight", "gauge", "Number of " + help + " in progress", label)
+        .samples
+        .putIfAbsent(value, (DoubleSupplier) timing::inFlight);
+    family(name + "_errors_total", "counter", "Number of " + help + " that failed", label)
+        .samples
+        .putIfAbsent(value, (DoubleSupplier) timing::errorCount);
+    return timing;
+  }
+
+  /**
+   * Registers a gauge, replacing any with the same name and label value.
+   *
+   * @param name The metric name.
+   * @param help What the gauge measures.
+   * @param label The label name.
+   * @param value The label value.
+   * @param gauge Reads the current value.
+   */
+  public void gauge(String name, String help, String label, String value, DoubleSupplier gauge) {
+    family(name, "gauge", help, label).samples.put(value, gauge);
+  }
+
+  /**
+   * Registers a counter, replacing any with the same name and label value.
+   *
+   * @param name The metric name, ending in {@code _total}.
+   * @param help What the counter counts.
+   * @param label The label name.
+   * @param value The label value.
+   * @param counter Reads the current count.
+   */
+  public void counter(
+      String name, String help, String label, String value, DoubleSupplier counter) {
+    family(name, "counter", help, label).samples.put(value, counter);
+  }
+
+  /**
+   * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+   *
+   * @return The metrics, sorted by name.
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder(4096);
+    for (Map.Entry<String, Family> entry : new TreeMap<>(families).entrySet()) {
+      String name = entry.getKey();
+      Family family = entry.getValue();
+      out.append("# HELP ").append(name).append(' ').append(family.help).append('\n');
+      out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+      for (Map.Entry<String, Object> sample : family.samples.entrySet()) {
+        String labels = family.label + "=\"" + escape(sample.getKey()) + "\"";
+        if (sample.getValue() instanceof Timing) {
+          writeHistogram(out, name, labels, ((Timing) sample.getValue()).getLatency());
+        } else {
+          double value = ((DoubleSupplier) sample.getValue()).getAsDouble();
+          writeSample(out, name, labels, value);
+        }
+      }
+    }
+    return out.toString();
+  }
+
+  private Family family(String name, String type, String help, String label) {
+    Family family = families.computeIfAbsent(name, n -> new Family(type, help, label));
+    if (!family.type.equals(type) || !family.label.equals(label)) {
+      throw new IllegalArgumentException(
+          name + " is already a " + family.type + " labelled by " + family.label);
+    }
+    return family;
+  }
+
+  private static void writeHistogram(
+      StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+    // Read the total first, so no bucket can exceed +Inf even while requests are being recorded
+    long count = histogram.count();
+    for (double bound : BOUNDS) {
+      long below = Math.min(count, histogram.countAtOrBelow(bound));
+      writeSample(out, name + "_bucket", labels + ",le=\"" + bound + "\"", below);
+    }
+    writeSample(out, name + "_bucket", labels + ",le=\"+Inf\"", count);
+    writeSample(out, name + "_sum", labels, histogram.sumSeconds());
+    writeSample(out, name + "_count", labels, count);
+  }
+
+  private static void writeSample(StringBuilder out, String name, String labels, double value) {
+    out.append(name).append('{').append(labels).append("} ");
+    if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+      out.append((long) value);
+    } else if (Double.isNaN(value)) {
+      out.append("NaN");
+    } else {
+      out.append(value);
+    }
+    out.append('\n');
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
@@ -0,0 +1,38 @@
+package edu.brown.cs.student.main.Server.Metrics;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Times a route. Requests that throw, or leave a 5xx status, count as errors. Filters that run
+ * before the route, and halt, are not included.
+ */
+public class TimedRoute implements Route {
+  private final Route route;
+  private final Timing timing;
+
+  /**
+   * Constructs a TimedRoute.
+   *
+   * @param route The route to time.
+   * @param timing Where the times are recorded.
+   */
+  public TimedRoute(Route route, Timing timing) {
+    this.route = route;
+    this.timing = timing;
+  }
+
+  @Override
+  public Object handle(Request request, Response response) throws Exception {
+    long start = timing.start();
+    boolean failed = true;
+    try {
+      Object body = route.handle(request, response);
+      failed = response.status() >= 500;
+      return body;
+    } finally {
+      timing.stop(start, failed);
+    }
+  }
+}
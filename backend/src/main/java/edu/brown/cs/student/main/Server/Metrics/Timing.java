@@ -0,0 +1,87 @@
+package edu.brown.cs.student.main.Server.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/** Times one kind of operation: how long each took, how many are running, and how many failed. */
+public final class Timing {
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder errors = new LongAdder();
+
+  /**
+   * Marks the start of an operation.
+   *
+   * @return The start time, to pass to {@link #stop}.
+   */
+  public long start() {
+    inFlight.incrementAndGet();
+    return System.nanoTime();
+  }
+
+  /**
+   * Marks the end of an operation.
+   *
+   * @param start The time {@link #start} returned.
+   * @param failed Whether the operation failed.
+   */
+  public void stop(long start, boolean failed) {
+    latency.recordNanos(System.nanoTime() - start);
+    inFlight.decrementAndGet();
+    if (failed) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Times an asynchronous operation from when it is started until its future completes. It fails if
+   * its future does.
+   *
+   * @param operation Starts the operation.
+   * @return The operation's future.
+   */
+  public <T> CompletableFuture<T> time(Supplier<CompletableFuture<T>> operation) {
+    return time(operation, value -> false);
+  }
+
+  /**
+   * Times an asynchronous operation from when it is started until its future completes.
+   *
+   * @param operation Starts the operation.
+   * @param failed Decides whether a result, such as an error response, counts as a failure.
+   * @return The operation's future.
+   */
+  public <T> CompletableFuture<T> time(
+      Supplier<CompletableFuture<T>> operation, Predicate<? super T> failed) {
+    long start = start();
+    CompletableFuture<T> future;
+    try {
+      future = operation.get();
+    } catch (RuntimeException e) {
+      stop(start, true);
+      throw e;
+    }
+    return future.whenComplete((value, error) -> stop(start, error != null || failed.test(value)));
+  }
+
+  public LatencyHistogram getLatency() {
+    return latency;
+  }
+
+  /**
+   * @return How many operations have started and not yet stopped.
+   */
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return How many operations failed.
+   */
+  public long errorCount() {
+    return errors.sum();
+  }
+}
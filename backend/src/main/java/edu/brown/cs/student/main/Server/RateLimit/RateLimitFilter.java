@@ -0,0 +1,42 @@
+package edu.brown.cs.student.main.Server.RateLimit;
+
+import edu.brown.cs.student.main.Server.LoginHandler.SessionFilter;
+import edu.brown.cs.student.main.json.ErrorResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+/**
+ * A before filter that rejects requests over a client's rate with 429 and a Retry-After, before the
+ * route spends anything on them.
+ *
+ * <p>Clients are keyed by their session user when a {@link SessionFilter} has run first, and by
+ * address otherwise.
+ */
+public class RateLimitFilter implements Filter {
+  private final RateLimiter limiter;
+
+  /**
+   * Constructs a RateLimitFilter.
+   *
+   * @param limiter The per-client limits to enforce.
+   */
+  public RateLimitFilter(RateLimiter limiter) {
+    this.limiter = limiter;
+  }
+
+  @Override
+  public void handle(Request request, Response response) {
+    String user = SessionFilter.user(request);
+    String client = user != null ? "user:" + user : "ip:" + request.ip();
+    if (!limiter.tryAcquire(client)) {
+      response.header("Retry-After", Long.toString(limiter.retryAfterSeconds(client)));
+      Spark.halt(
+          429,
+          Serializer.ERROR.toJson(
+              new ErrorResponse("rate_limited", "Too many requests, slow down")));
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package edu.brown.cs.student.main.Server.RateLimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A token bucket per client, created on a client's first request.
+ *
+ * <p>Buckets live in a {@link ConcurrentHashMap}, so looking one up takes no lock and creating one
+ * locks a single bin. A bucket that has refilled completely behaves exactly like a new one, so idle
+ * clients are dropped without changing anyone's limit: every {@code SWEEP_EVERY} requests one
+ * caller sweeps out the full buckets. Once {@code maxClients} are tracked, a new client also
+ * triggers a sweep, at most once per {@code SWEEP_GAP_NANOS}; if none of the tracked clients is
+ * idle, the new one is turned away until a sweep makes room, so the map stays bounded and a flood
+ * of new clients can't make every request pay for a sweep.
+ */
+public class RateLimiter {
+  private static final int SWEEP_EVERY = 4096;
+  private static final long SWEEP_GAP_NANOS = 100_000_000L;
+
+  private final double perSecond;
+  private final int burst;
+  private final int maxClients;
+  private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final AtomicInteger untilSweep = new AtomicInteger(SWEEP_EVERY);
+  private final AtomicBoolean sweeping = new AtomicBoolean();
+  private final AtomicLong lastEarlySweep = new AtomicLong(System.nanoTime() - SWEEP_GAP_NANOS);
+
+  /**
+   * Constructs a rate limiter.
+   *
+   * @param perSecond Requests allowed per second per client, on average.
+   * @param burst Requests a client may make at once after being idle.
+   * @param maxClients How many clients may be tracked before idle ones are swept out early.
+   */
+  public RateLimiter(double perSecond, int burst, int maxClients) {
+    this.perSecond = perSecond;
+    this.burst = burst;
+    this.maxClients = maxClients;
+  }
+
+  /**
+   * Admits a request if the client has a token left.
+   *
+   * @param client The client's key, e.g. its user or address.
+   * @return true if the request may proceed; false for a new client while every tracked client is
+   *     busy.
+   */
+  public boolean tryAcquire(String client) {
+    // Swept first, so a bucket can't be dropped between being created and being drawn from
+    if (untilSweep.decrementAndGet() <= 0) {
+      evictIdle();
+    }
+    TokenBucket bucket = buckets.get(client);
+    if (bucket == null) {
+      if (buckets.size() >= maxClients && !makeRoom()) {
+        return false;
+      }
+      bucket = buckets.computeIfAbsent(client, key -> new TokenBucket(perSecond, burst));
+    }
+    return bucket.tryAcquire();
+  }
+
+  /**
+   * Returns how long a client should wait before retrying.
+   *
+   * @param client The client's key.
+   * @return Whole seconds until the client has a token, at least 1.
+   */
+  public long retryAfterSeconds(String client) {
+    TokenBucket bucket = buckets.get(client);
+    long nanos = bucket == null ? 0 : bucket.nanosUntilAvailable();
+    return Math.max(1, (nanos + 999_999_999L) / 1_000_000_000L);
+  }
+
+  /** Drops the buckets of clients that have been idle long enough to refill. */
+  public void evictIdle() {
+    if (!sweeping.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      untilSweep.set(SWEEP_EVERY);
+      buckets.values().removeIf(TokenBucket::isFull);
+    } finally {
+      sweeping.set(false);
+    }
+  }
+
+  /**
+   * Sweeps early for a new client when the map is full, unless another sweep ran too recently.
+   *
+   * @return true if there is room for the client.
+   */
+  private boolean makeRoom() {
+    long last = lastEarlySweep.get();
+    long now = System.nanoTime();
+    if (now - last >= SWEEP_GAP_NANOS && lastEarlySweep.compareAndSet(last, now)) {
+      evictIdle();
+    }
+    return buckets.size() < maxClients;
+  }
+
+  /**
+   * @return The number of clients currently tracked.
+   */
+  public int size() {
+    return buckets.size();
+  }
+}
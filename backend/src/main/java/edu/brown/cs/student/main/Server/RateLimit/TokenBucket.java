@@ -0,0 +1,66 @@
+package edu.brown.cs.student.main.Server.RateLimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket: up to {@code burst} requests at once, refilled at {@code perSecond}.
+ *
+ * <p>Rather than a token count and a refill timestamp, the bucket keeps one number, the time at
+ * which it will next be full (the generic cell rate algorithm). Taking a token pushes that time one
+ * refill interval later, and is refused if it would land more than a full bucket's worth of
+ * intervals from now. A single compare-and-set per request is all the synchronization needed.
+ */
+public final class TokenBucket {
+  private final long nanosPerToken;
+  private final long capacityNanos;
+  // The System.nanoTime() at which the bucket is full again
+  private final AtomicLong fullAt;
+
+  /**
+   * Constructs a full bucket.
+   *
+   * @param perSecond Tokens added per second.
+   * @param burst The most tokens the bucket holds.
+   */
+  public TokenBucket(double perSecond, int burst) {
+    if (perSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("perSecond and burst must be positive");
+    }
+    this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / perSecond));
+    this.capacityNanos = nanosPerToken * burst;
+    this.fullAt = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Takes a token if one is available.
+   *
+   * @return true if a token was taken, false if the bucket is empty.
+   */
+  public boolean tryAcquire() {
+    long now = System.nanoTime();
+    while (true) {
+      long full = fullAt.get();
+      long next = Math.max(full, now) + nanosPerToken;
+      if (next - now > capacityNanos) {
+        return false;
+      }
+      if (fullAt.compareAndSet(full, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return How long until a token is available, in nanoseconds; 0 if one is available now.
+   */
+  public long nanosUntilAvailable() {
+    return Math.max(0, fullAt.get() + nanosPerToken - capacityNanos - System.nanoTime());
+  }
+
+  /**
+   * @return true if the bucket has refilled completely, so it is indistinguishable from a new one.
+   */
+  public boolean isFull() {
+    return fullAt.get() - System.nanoTime() <= 0;
+  }
+}
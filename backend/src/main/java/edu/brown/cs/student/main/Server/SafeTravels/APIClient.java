@@ -1,193 +1,597 @@
 package edu.brown.cs.student.main.Server.SafeTravels;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
-import com.squareup.moshi.Types;
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
 import edu.brown.cs.student.main.Private.APIkeys;
 import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
-
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
+import edu.brown.cs.student.main.Server.Http.UpstreamClient;
+import edu.brown.cs.student.main.Server.Http.UpstreamPolicy;
+import edu.brown.cs.student.main.Server.Metrics.MetricsRegistry;
+import edu.brown.cs.student.main.Server.Metrics.Timing;
+import edu.brown.cs.student.main.json.Serializer;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
 import okio.Buffer;
-import java.net.URLEncoder;
 
 public class APIClient {
-  private final APIkeys apiKeys = new APIkeys();
+  private static final APIkeys apiKeys = new APIkeys();
+
+  // Upstream origins; set -Dupstream.google.url and -Dupstream.amadeus.url to send requests to a
+  // stand-in instead, such as a local stub when load testing
+  private static final String GOOGLE_URL =
+      System.getProperty("upstream.google.url", "https://maps.googleapis.com");
+  private static final String AMADEUS_URL =
+      System.getProperty("upstream.amadeus.url", "https://test.api.amadeus.com");
+
+  // Shared by every client so the token survives across requests
+  private static final AmadeusTokenManager sharedTokenManager =
+      new AmadeusTokenManager(() -> requestAccessToken(UpstreamClient.getShared()));
+
+  // Shared by every client; the same few hundred places are looked up over and over, and a
+  // month-old answer is better than none while Google is down
+  private static final GeocodeCache sharedGeocodeCache =
+      new GeocodeCache(10_000, Duration.ofDays(1), Duration.ofMinutes(10), Duration.ofDays(30));
+
+  // Shared by every client; ratings for a neighbourhood barely change within a day
+  private static final SafetyTileCache sharedTileCache =
+      new SafetyTileCache(13, Duration.ofHours(12), 200_000, 16);
+
+  // Amadeus pages safety ratings; a dense area takes several pages, and past this many the answer
+  // is marked incomplete instead of fetched further
+  private static final int MAX_SAFETY_PAGES = 10;
+
+  // Each attempt at each endpoint, retries and hedges included
+  private static final Timing geocodeTiming = upstreamTiming("geocode");
+  private static final Timing tokenTiming = upstreamTiming("token");
+  private static final Timing safetyTiming = upstreamTiming("safety");
+
+  private final AmadeusTokenManager tokenManager;
+  private final GeocodeCache geocodeCache;
+  private final SafetyTileCache tileCache;
+  private final UpstreamClient http;
+  private final UpstreamPolicy geocoding;
+  private final UpstreamPolicy amadeus;
+  // Answers safety queries in place of Amadeus when set; swapped whole when a new export arrives
+  private volatile SafetyDataset dataset;
 
   public APIClient() throws DatasourceException {
+    this(sharedTokenManager, sharedGeocodeCache);
+  }
+
+  /**
+   * Constructs a client that gets its Amadeus tokens from the given manager.
+   *
+   * @param tokenManager The token manager to use.
+   */
+  public APIClient(AmadeusTokenManager tokenManager) {
+    this(tokenManager, sharedGeocodeCache);
+  }
+
+  /**
+   * Constructs a client with the given token manager and geocode cache.
+   *
+   * @param tokenManager The token manager to use.
+   * @param geocodeCache The cache geocoding results are kept in.
+   */
+  public APIClient(AmadeusTokenManager tokenManager, GeocodeCache geocodeCache) {
+    this(tokenManager, geocodeCache, UpstreamClient.getShared());
+  }
+
+  /**
+   * Constructs a client that sends its upstream requests through the given HTTP client.
+   *
+   * @param tokenManager The token manager to use.
+   * @param geocodeCache The cache geocoding results are kept in.
+   * @param http The client upstream requests are sent with.
+   */
+  public APIClient(
+      AmadeusTokenManager tokenManager, GeocodeCache geocodeCache, UpstreamClient http) {
+    this(tokenManager, geocodeCache, sharedTileCache, http);
+  }
+
+  /**
+   * Constructs a client with its own caches, sending upstream requests through the given client.
+   *
+   * @param tokenManager The token manager to use.
+   * @param geocodeCache The cache geocoding results are kept in.
+   * @param tileCache The cache safety ratings are kept in.
+   * @param http The client upstream requests are sent with.
+   */
+  public APIClient(
+      AmadeusTokenManager tokenManager,
+      GeocodeCache geocodeCache,
+      SafetyTileCache tileCache,
+      UpstreamClient http) {
+    this(
+        tokenManager,
+        geocodeCache,
+        tileCache,
+        http,
+        UpstreamPolicy.shared("google-geocoding"),
+        UpstreamPolicy.shared("amadeus"));
+  }
+
+  /**
+   * Constructs a client with its own caches and upstream policies.
+   *
+   * @param tokenManager The token manager to use.
+   * @param geocodeCache The cache geocoding results are kept in.
+   * @param tileCache The cache safety ratings are kept in.
+   * @param http The client upstream requests are sent with.
+   * @param geocoding The circuit breaker, retries and hedging Geocoding API calls are made with.
+   * @param amadeus The circuit breaker, retries and hedging Amadeus calls are made with.
+   */
+  public APIClient(
+      AmadeusTokenManager tokenManager,
+      GeocodeCache geocodeCache,
+      SafetyTileCache tileCache,
+      UpstreamClient http,
+      UpstreamPolicy geocoding,
+      UpstreamPolicy amadeus) {
+    this.tokenManager = tokenManager;
+    this.geocodeCache = geocodeCache;
+    this.tileCache = tileCache;
+    this.http = http;
+    this.geocoding = geocoding;
+    this.amadeus = amadeus;
+  }
+
+  /**
+   * Returns the token manager shared by clients built with the default constructor.
+   *
+   * @return The shared token manager.
+   */
+  public static AmadeusTokenManager getSharedTokenManager() {
+    return sharedTokenManager;
+  }
+
+  /**
+   * @return The host Google geocoding requests are sent to, for rate limiting.
+   */
+  public static String getGoogleHost() {
+    return URI.create(GOOGLE_URL).getHost();
   }
-  private static final String base_url = "https://maps.googleapis.com/maps/api/geocode/json?";
 
   /**
-   * Method to connect to the URL which we want
-   * @param requestURL the URL to connect to
-   * @return The successful connection
-   * @throws IOException Throws if there is an error in connecting to the URL
+   * @return The host Amadeus requests are sent to, for rate limiting.
    */
-  private static HttpURLConnection connect(URL requestURL) throws DatasourceException, IOException {
+  public static String getAmadeusHost() {
+    return URI.create(AMADEUS_URL).getHost();
+  }
+
+  /**
+   * Returns the geocode cache shared by clients built with the default constructor.
+   *
+   * @return The shared geocode cache.
+   */
+  public static GeocodeCache getSharedGeocodeCache() {
+    return sharedGeocodeCache;
+  }
+
+  /**
+   * Returns the safety tile cache shared by clients built with the default constructor.
+   *
+   * @return The shared tile cache.
+   */
+  public static SafetyTileCache getSharedTileCache() {
+    return sharedTileCache;
+  }
+
+  /**
+   * Answers safety queries from an offline dataset instead of Amadeus, or from Amadeus again. The
+   * swap is atomic: each query sees either the old dataset or the new one, never a mix.
+   *
+   * @param dataset The dataset, or null to query Amadeus.
+   */
+  public void useDataset(SafetyDataset dataset) {
+    this.dataset = dataset;
+  }
+
+  /**
+   * @return The offline dataset answering safety queries, or null if Amadeus does.
+   */
+  public SafetyDataset getDataset() {
+    return dataset;
+  }
+
+  private static Timing upstreamTiming(String endpoint) {
+    return MetricsRegistry.getShared()
+        .timing("upstream_request", "upstream requests", "upstream", endpoint);
+  }
+
+  private static final String base_url = GOOGLE_URL + "/maps/api/geocode/json?";
+
+  /** Parses an upstream response. */
+  private interface ResponseParser<T> {
+    T parse(HttpResponse<byte[]> response) throws DatasourceException, IOException;
+  }
+
+  /**
+   * Decides whether an upstream response is the upstream failing, and worth retrying.
+   *
+   * @param response the response
+   * @return true for 5xx and 429
+   */
+  private static boolean isFault(HttpResponse<?> response) {
+    return response.statusCode() >= 500 || response.statusCode() == 429;
+  }
+
+  /**
+   * Decides whether a Geocoding API response is Google failing. Google reports quota and key
+   * problems as 200s with an error status, so the body's status is checked too.
+   *
+   * @param response the response
+   * @return true for 5xx, 429, and error statuses such as OVER_QUERY_LIMIT
+   */
+  private static boolean isGeocodeFault(HttpResponse<byte[]> response) {
+    if (isFault(response)) {
+      return true;
+    }
+    if (response.statusCode() != 200) {
+      return false;
+    }
     try {
-      URLConnection urlConnection = requestURL.openConnection();
-      if (!(urlConnection instanceof HttpURLConnection)) {
-        throw new DatasourceException("unexpected: result of connection wasn't HTTP");
-      }
-      HttpURLConnection clientConnection = (HttpURLConnection) urlConnection;
-      clientConnection.connect(); // GET
-      if (clientConnection.getResponseCode() != 200 && clientConnection.getResponseCode() != 204) {
-        throw new DatasourceException(
-            "unexpected: API connection not success status "
-                + clientConnection.getResponseMessage());
+      return UpstreamParsers.isGeocodeFault(
+          UpstreamParsers.readGeocodeStatus(JsonReader.of(new Buffer().write(response.body()))));
+    } catch (IOException | JsonDataException e) {
+      // Reported when the response is parsed
+      return false;
+    }
+  }
+
+  /**
+   * Adapts a parser so it can be used as a CompletableFuture stage.
+   *
+   * @param parser the parser to adapt
+   * @return a function rethrowing parse failures as DatasourceExceptions
+   */
+  private static <T> Function<HttpResponse<byte[]>, T> parsing(ResponseParser<T> parser) {
+    return response -> {
+      try {
+        return parser.parse(response);
+      } catch (DatasourceException e) {
+        throw new CompletionException(e);
+      } catch (Exception e) {
+        throw new CompletionException(new DatasourceException(e.getMessage(), e));
       }
-      if (clientConnection.getResponseCode() == 204) {
-        throw new DatasourceException("no content found");
+    };
+  }
+
+  /**
+   * Makes every failure of an upstream call a DatasourceException.
+   *
+   * @param call the upstream call
+   * @param prefix prepended to the message of failures that aren't already DatasourceExceptions
+   * @return a future failing only with DatasourceExceptions
+   */
+  private static <T> CompletableFuture<T> asDatasource(CompletableFuture<T> call, String prefix) {
+    return call.handle(
+            (value, error) -> {
+              if (error == null) {
+                return CompletableFuture.completedFuture(value);
+              }
+              Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+              if (cause instanceof DatasourceException) {
+                return CompletableFuture.<T>failedFuture(cause);
+              }
+              return CompletableFuture.<T>failedFuture(
+                  new DatasourceException(prefix + cause.getMessage(), cause));
+            })
+        .thenCompose(Function.identity());
+  }
+
+  /**
+   * Waits for an upstream call.
+   *
+   * @param call the upstream call
+   * @return its result
+   * @throws DatasourceException if the call failed
+   */
+  private static <T> T await(CompletableFuture<T> call) throws DatasourceException {
+    try {
+      return call.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DatasourceException) {
+        throw (DatasourceException) e.getCause();
       }
-      return clientConnection;
-    } catch (Exception e) {
-      throw new DatasourceException(e.getMessage());
+      throw new DatasourceException(e.getCause().getMessage(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasourceException("Interrupted while waiting for upstream API", e);
     }
   }
 
   /**
-   * Fetches the coordinates of a given address.
+   * Fetches the coordinates of a given address, answering repeated addresses from the cache.
+   *
    * @param address the address to geocode
    * @return List containing latitude and longitude
    * @throws DatasourceException if there's an issue with the datasource or parsing
    */
   public List<Double> getCoordinates(String address) throws DatasourceException {
-    try {
-      String encoded = URLEncoder.encode(address, "UTF-8");
-      URL url = new URL(base_url + "address=" + encoded + "&key=" + apiKeys.geocodingKey);
-      HttpURLConnection clientConnection = connect(url);
-      Moshi moshi = new Moshi.Builder().build();
+    return await(getCoordinatesAsync(address));
+  }
 
-      // Define a JsonAdapter to parse the JSON into a Map
-      JsonAdapter<Map<String, Object>> adapter =
-          moshi.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+  /**
+   * Fetches the coordinates of a given address without blocking.
+   *
+   * @param address the address to geocode
+   * @return a future completing with latitude and longitude, or failing with a DatasourceException
+   */
+  public CompletableFuture<List<Double>> getCoordinatesAsync(String address) {
+    return geocodeCache.getAsync(address, this::fetchCoordinates);
+  }
 
-      // Parse the JSON response into a Map
-      Map<String, Object> response =
-          adapter.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+  /**
+   * Fetches the coordinates of a given address from the Geocoding API.
+   *
+   * @param address the address to geocode
+   * @return a future completing with latitude and longitude
+   */
+  private CompletableFuture<List<Double>> fetchCoordinates(String address) {
+    String encoded = URLEncoder.encode(address, StandardCharsets.UTF_8);
+    HttpRequest request =
+        http.newRequest(base_url + "address=" + encoded + "&key=" + apiKeys.geocodingKey)
+            .GET()
+            .build();
+    return asDatasource(
+        geocoding
+            .call(
+                () ->
+                    geocodeTiming.time(
+                        () -> http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()),
+                        APIClient::isGeocodeFault),
+                APIClient::isGeocodeFault)
+            .thenApply(parsing(APIClient::parseCoordinates)),
+        "");
+  }
 
-      if (response == null || !response.containsKey("results")) {
-        throw new DatasourceException("Invalid response from Geocoding API");
-      }
+  /**
+   * Parses a Geocoding API response.
+   *
+   * @param httpResponse the response
+   * @return List containing latitude and longitude
+   * @throws DatasourceException if the request failed or nothing was found
+   * @throws IOException if the response isn't valid JSON
+   */
+  private static List<Double> parseCoordinates(HttpResponse<byte[]> httpResponse)
+      throws DatasourceException, IOException {
+    if (httpResponse.statusCode() != 200 && httpResponse.statusCode() != 204) {
+      throw new DatasourceException(
+          "unexpected: API connection not success status "
+              + UpstreamClient.reasonPhrase(httpResponse.statusCode()));
+    }
+    if (httpResponse.statusCode() == 204) {
+      throw new DatasourceException("no content found");
+    }
+    // Read just results[0].geometry.location, skipping the rest of the response
+    double[] location =
+        UpstreamParsers.readCoordinates(JsonReader.of(new Buffer().write(httpResponse.body())));
+    return List.of(location[0], location[1]);
+  }
 
-      // Extract the location data
-      List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("results");
-      if (results.isEmpty()) {
-        throw new DatasourceException("No results found");
-      }
+  /**
+   * Makes sure a valid Amadeus access token is cached, starting a fetch if needed.
+   *
+   * @return A future completing with the access token.
+   */
+  public CompletableFuture<String> prefetchAccessToken() {
+    return tokenManager.getTokenAsync();
+  }
 
-      Map<String, Object> geometry = (Map<String, Object>) results.get(0).get("geometry");
-      Map<String, Double> location = (Map<String, Double>) geometry.get("location");
-      Double lat = location.get("lat");
-      Double lng = location.get("lng");
+  /**
+   * Retrieves safety ratings for a specific location within a given radius.
+   *
+   * @param lat The latitude of the location.
+   * @param lon The longitude of the location.
+   * @param radius The radius within which to fetch safety ratings.
+   * @return The safety-rated locations within the radius.
+   * @throws DatasourceException If there's an issue with the datasource or while fetching the
+   *     safety ratings.
+   */
+  public SafetyRatings getSafetyRatings(double lat, double lon, int radius)
+      throws DatasourceException {
+    return await(getSafetyRatingsAsync(lat, lon, radius));
+  }
 
-      return List.of(lat, lng);
+  /**
+   * Retrieves safety ratings for a specific location within a given radius without blocking.
+   * Queries are answered from the offline dataset if one is in use, and otherwise from cached map
+   * tiles where possible.
+   *
+   * @param lat The latitude of the location.
+   * @param lon The longitude of the location.
+   * @param radius The radius within which to fetch safety ratings.
+   * @return A future completing with the safety ratings, or failing with a DatasourceException.
+   */
+  public CompletableFuture<SafetyRatings> getSafetyRatingsAsync(
+      double lat, double lon, int radius) {
+    SafetyDataset offline = dataset;
+    if (offline != null) {
+      return CompletableFuture.completedFuture(offline.withinRadius(lat, lon, radius));
+    }
+    if (radius <= 0 || Math.abs(lat) > 85 || Math.abs(lon) > 180) {
+      // Nothing the tiles could answer; let Amadeus respond as it does
+      return fetchSafetyRatings(lat, lon, radius);
+    }
+    return asDatasource(tileCache.get(lat, lon, radius, this::fetchSafetyRatings), "");
+  }
+
+  /**
+   * Fetches safety ratings for a specific location within a given radius from Amadeus, following
+   * its pages. Past {@link #MAX_SAFETY_PAGES} pages the ratings are returned marked incomplete.
+   *
+   * @param lat The latitude of the location.
+   * @param lon The longitude of the location.
+   * @param radius The radius within which to fetch safety ratings.
+   * @return A future completing with the safety ratings, or failing with a DatasourceException.
+   */
+  private CompletableFuture<SafetyRatings> fetchSafetyRatings(double lat, double lon, int radius) {
+    return asDatasource(fetchSafetyPages(lat, lon, radius, new ArrayList<>(), 1), "");
+  }
 
-    } catch (IOException e) {
-      throw new DatasourceException(e.getMessage());
-    } catch (Exception e) {
-      throw new DatasourceException(e.getMessage());
+  /**
+   * Fetches the page of safety ratings after those already found, then any pages after it.
+   *
+   * @param found The locations on earlier pages; this page's are added to it.
+   * @param page The number of this page, from 1.
+   */
+  private CompletableFuture<SafetyRatings> fetchSafetyPages(
+      double lat, double lon, int radius, List<SafetyLocation> found, int page) {
+    return fetchSafetyPage(lat, lon, radius, found.size())
+        .thenCompose(
+            ratings -> {
+              found.addAll(ratings.getData());
+              if (ratings.isComplete() || ratings.getData().isEmpty() || page == MAX_SAFETY_PAGES) {
+                return CompletableFuture.completedFuture(
+                    new SafetyRatings(found, ratings.isComplete()));
+              }
+              return fetchSafetyPages(lat, lon, radius, found, page + 1);
+            });
+  }
+
+  /**
+   * Fetches one page of safety ratings from Amadeus.
+   *
+   * @param lat The latitude of the location.
+   * @param lon The longitude of the location.
+   * @param radius The radius within which to fetch safety ratings.
+   * @param offset How many locations to skip.
+   * @return A future completing with the page, or failing with a DatasourceException.
+   */
+  private CompletableFuture<SafetyRatings> fetchSafetyPage(
+      double lat, double lon, int radius, int offset) {
+    String baseUrl = AMADEUS_URL + "/v1/safety/safety-rated-locations?";
+    String latitude = Double.toString(lat);
+    String longitude = Double.toString(lon);
+    String rad = Integer.toString(radius);
+    String url =
+        baseUrl
+            + "latitude="
+            + latitude
+            + "&longitude="
+            + longitude
+            + "&page%5Boffset%5D="
+            + offset
+            + "&radius="
+            + rad;
+
+    // Step 1: Get a cached access token, only minting a new one when it is about to expire
+    // Step 2: Use the token to get safety ratings
+    return asDatasource(
+        tokenManager
+            .getTokenAsync()
+            .thenCompose(
+                accessToken -> {
+                  HttpRequest request =
+                      http.newRequest(url)
+                          .header("Authorization", "Bearer " + accessToken)
+                          .GET()
+                          .build();
+                  return amadeus
+                      .call(
+                          () ->
+                              safetyTiming.time(
+                                  () ->
+                                      http.sendAsync(
+                                          request, HttpResponse.BodyHandlers.ofByteArray()),
+                                  APIClient::isFault),
+                          APIClient::isFault)
+                      .thenApply(parsing(response -> parseSafetyRatings(response, accessToken)));
+                }),
+        "IOException while fetching safety ratings or obtaining token: ");
+  }
+
+  /**
+   * Parses a safety-rated-locations response.
+   *
+   * @param connection the response
+   * @param accessToken the token the request was sent with
+   * @return the safety-rated locations
+   * @throws DatasourceException if the request failed
+   * @throws IOException if the response isn't valid JSON
+   */
+  private SafetyRatings parseSafetyRatings(HttpResponse<byte[]> connection, String accessToken)
+      throws DatasourceException, IOException {
+    // Check response code
+    if (connection.statusCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
+      // The token was revoked early; make sure the next lookup fetches a new one
+      tokenManager.invalidate(accessToken);
+    }
+    if (connection.statusCode() != HttpURLConnection.HTTP_OK) {
+      throw new DatasourceException(
+          "Failed to fetch safety ratings: "
+              + UpstreamClient.reasonPhrase(connection.statusCode()));
     }
+
+    // Read just the locations' ids, names, positions and scores
+    return UpstreamParsers.readSafetyRatings(JsonReader.of(new Buffer().write(connection.body())));
   }
 
   /**
-   * Retrieves safety ratings for a specific location within a given radius.
+   * Requests a new access token from the Amadeus OAuth endpoint.
    *
-   * @param lat     The latitude of the location.
-   * @param lon     The longitude of the location.
-   * @param radius  The radius within which to fetch safety ratings.
-   * @return        A map containing safety ratings and related information for the given location.
-   * @throws DatasourceException If there's an issue with the datasource or while fetching the safety ratings.
+   * @param http The client to send the request with.
+   * @return The access token and its lifetime.
+   * @throws DatasourceException If the token could not be obtained.
    */
-  public Map<String, Object> getSafetyRatings(double lat, double lon, int radius) throws DatasourceException {
+  private static AmadeusTokenManager.AccessToken requestAccessToken(UpstreamClient http)
+      throws DatasourceException {
     try {
-      // Step 1: Get a new access token
-      String tokenUrl = "https://test.api.amadeus.com/v1/security/oauth2/token";
-      URL tokenEndpoint = new URL(tokenUrl);
-      HttpURLConnection tokenConnection = (HttpURLConnection) tokenEndpoint.openConnection();
-      tokenConnection.setRequestMethod("POST");
-      tokenConnection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
-      tokenConnection.setDoOutput(true);
+      String tokenUrl = AMADEUS_URL + "/v1/security/oauth2/token";
 
       // Client credentials
-      APIkeys apIkeys= new APIkeys();
-      String clientId = apIkeys.safePlaceKey;
+      String clientId = apiKeys.safePlaceKey;
       String clientSecret = apiKeys.safePlaceSecret;
-      String urlParameters = "grant_type=client_credentials&client_id=" + clientId + "&client_secret=" + clientSecret;
+      String urlParameters =
+          "grant_type=client_credentials&client_id=" + clientId + "&client_secret=" + clientSecret;
 
       // Send the request
-      try (DataOutputStream wr = new DataOutputStream(tokenConnection.getOutputStream())) {
-        wr.writeBytes(urlParameters);
-        wr.flush();
+      HttpRequest request =
+          http.newRequest(tokenUrl)
+              .header("Content-Type", "application/x-www-form-urlencoded")
+              .POST(HttpRequest.BodyPublishers.ofString(urlParameters))
+              .build();
+      HttpResponse<String> tokenResponseBody;
+      long start = tokenTiming.start();
+      boolean failed = true;
+      try {
+        tokenResponseBody = http.send(request, HttpResponse.BodyHandlers.ofString());
+        failed = isFault(tokenResponseBody);
+      } finally {
+        tokenTiming.stop(start, failed);
       }
 
       // Check response and retrieve token
-      if (tokenConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-        throw new DatasourceException("Failed to obtain token: " + tokenConnection.getResponseMessage());
-      }
-
-      // Parse the token response
-      BufferedReader in = new BufferedReader(new InputStreamReader(tokenConnection.getInputStream()));
-      String inputLine;
-      StringBuilder content = new StringBuilder();
-      while ((inputLine = in.readLine()) != null) {
-        content.append(inputLine);
-      }
-      in.close();
-      tokenConnection.disconnect();
-
-      // Extract token from JSON response
-      Moshi moshi = new Moshi.Builder().build();
-      JsonAdapter<Map<String, String>> tokenAdapter =
-          moshi.adapter(Types.newParameterizedType(Map.class, String.class, String.class));
-      Map<String, String> tokenResponse = tokenAdapter.fromJson(content.toString());
-      String accessToken = tokenResponse.get("access_token");
-      String baseUrl = "https://test.api.amadeus.com/v1/safety/safety-rated-locations?";
-
-      // Step 2: Use the new token to get safety ratings
-      String latitude = Double.toString(lat);
-      String longitude = Double.toString(lon);
-      String rad = Integer.toString(radius);
-
-// Use the string variables in the URL
-
-      String alt = "https://test.api.amadeus.com/v1/safety/safety-rated-locations?latitude=41.397158&longitude=2.160873&page%5Boffset%5D=0&radius=2";
-      System.out.println(alt.equals(baseUrl+"latitude="+latitude+"&longitude="+longitude+"&page%5Boffset%5D=0&radius="+rad));
-      System.out.println(baseUrl+"latitude="+latitude+"&longitude="+longitude+"&page%5Boffset%5D=0&radius="+rad);
-
-      URL url = new URL(baseUrl+"latitude="+latitude+"&longitude="+longitude+"&page%5Boffset%5D=0&radius="+rad);
-      HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-      connection.setRequestMethod("GET");
-      connection.setRequestProperty("Authorization", "Bearer " + accessToken);
-
-      // Check response code
-      if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-        throw new DatasourceException("Failed to fetch safety ratings: " + connection.getResponseMessage());
+      if (tokenResponseBody.statusCode() != HttpURLConnection.HTTP_OK) {
+        throw new DatasourceException(
+            "Failed to obtain token: "
+                + UpstreamClient.reasonPhrase(tokenResponseBody.statusCode()));
       }
 
-      // Parse the JSON response for safety ratings
-      JsonAdapter<Map<String, Object>> adapter =
-          moshi.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
-      Map<String, Object> response = adapter.fromJson(new Buffer().readFrom(connection.getInputStream()));
-
-      connection.disconnect();
-
-      if (response == null) {
-        throw new DatasourceException("Invalid response from Amadeus API");
+      // Extract token and its lifetime (in seconds) from JSON response
+      AccessTokenResponse tokenResponse =
+          Serializer.ACCESS_TOKEN.fromJson(tokenResponseBody.body());
+      if (tokenResponse == null || tokenResponse.getAccessToken() == null) {
+        throw new DatasourceException("Failed to obtain token: missing access_token");
       }
-      System.out.println(response);
-      return response;
+      return new AmadeusTokenManager.AccessToken(
+          tokenResponse.getAccessToken(), tokenResponse.getExpiresIn());
 
-    } catch (IOException e) {
-      throw new DatasourceException("IOException while fetching safety ratings or obtaining token: " + e.getMessage());
+    } catch (IOException | JsonDataException e) {
+      throw new DatasourceException("Failed to obtain token: " + e.getMessage());
     }
   }
 }
@@ -0,0 +1,23 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import com.squareup.moshi.Json;
+
+/** The fields APIClient reads from an Amadeus OAuth token response. */
+public class AccessTokenResponse {
+  @Json(name = "access_token")
+  private String accessToken;
+
+  @Json(name = "expires_in")
+  private long expiresIn;
+
+  public String getAccessToken() {
+    return accessToken;
+  }
+
+  /**
+   * @return The token's lifetime in seconds, or 0 if the response didn't say.
+   */
+  public long getExpiresIn() {
+    return expiresIn;
+  }
+}
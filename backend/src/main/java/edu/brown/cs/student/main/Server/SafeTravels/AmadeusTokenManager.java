@@ -0,0 +1,227 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the Amadeus OAuth access token so safety lookups don't mint a new one per request.
+ *
+ * <p>The token is served from memory until it expires. Once it is within {@code refreshSkew} of
+ * expiring, the first caller kicks off a single background refresh and keeps using the old token in
+ * the meantime. Callers that find no valid token wait on the same in-flight refresh, so the token
+ * endpoint is only ever hit once at a time.
+ */
+public class AmadeusTokenManager {
+
+  /** Fetches a fresh token from the OAuth endpoint. */
+  public interface TokenFetcher {
+    AccessToken fetch() throws DatasourceException;
+  }
+
+  /** An access token and how long it stays valid. */
+  public static final class AccessToken {
+    private final String value;
+    private final long expiresInSeconds;
+
+    public AccessToken(String value, long expiresInSeconds) {
+      this.value = value;
+      this.expiresInSeconds = expiresInSeconds;
+    }
+
+    public String getValue() {
+      return value;
+    }
+
+    public long getExpiresInSeconds() {
+      return expiresInSeconds;
+    }
+  }
+
+  // A fetched token along with the (nanoTime-based) instants at which to refresh and drop it
+  private static final class CachedToken {
+    private final String value;
+    private final long refreshAt;
+    private final long expiresAt;
+
+    private CachedToken(String value, long refreshAt, long expiresAt) {
+      this.value = value;
+      this.refreshAt = refreshAt;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final TokenFetcher fetcher;
+  private final long refreshSkewNanos;
+  private final Executor refreshExecutor;
+  private final LongSupplier clock;
+
+  private volatile CachedToken current;
+
+  // Guarded by this
+  private CompletableFuture<CachedToken> inFlight;
+
+  private final AtomicLong refreshes = new AtomicLong();
+  private final AtomicLong refreshFailures = new AtomicLong();
+  private final AtomicLong cacheHits = new AtomicLong();
+
+  /**
+   * Constructs a token manager that refreshes a minute before expiry on a daemon thread.
+   *
+   * @param fetcher Fetches a new token from the OAuth endpoint.
+   */
+  public AmadeusTokenManager(TokenFetcher fetcher) {
+    this(
+        fetcher,
+        Duration.ofSeconds(60),
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread t = new Thread(r, "amadeus-token-refresh");
+              t.setDaemon(true);
+              return t;
+            }),
+        System::nanoTime);
+  }
+
+  /**
+   * Constructs a token manager.
+   *
+   * @param fetcher Fetches a new token from the OAuth endpoint.
+   * @param refreshSkew How long before expiry a background refresh is started.
+   * @param refreshExecutor Executor the refresh runs on.
+   * @param clock Monotonic clock in nanoseconds.
+   */
+  public AmadeusTokenManager(
+      TokenFetcher fetcher, Duration refreshSkew, Executor refreshExecutor, LongSupplier clock) {
+    this.fetcher = fetcher;
+    this.refreshSkewNanos = refreshSkew.toNanos();
+    this.refreshExecutor = refreshExecutor;
+    this.clock = clock;
+  }
+
+  /**
+   * Returns a valid access token, fetching one only if none is cached.
+   *
+   * @return The access token.
+   * @throws DatasourceException If no token is cached and fetching one fails.
+   */
+  public String getToken() throws DatasourceException {
+    CachedToken token = current;
+    long now = clock.getAsLong();
+    if (token != null && now < token.expiresAt) {
+      cacheHits.incrementAndGet();
+      if (now >= token.refreshAt) {
+        refresh();
+      }
+      return token.value;
+    }
+    try {
+      return refresh().join().value;
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof DatasourceException) {
+        throw (DatasourceException) e.getCause();
+      }
+      throw new DatasourceException("Failed to obtain token: " + e.getCause(), e.getCause());
+    }
+  }
+
+  /**
+   * Returns a valid access token without blocking, fetching one only if none is cached.
+   *
+   * @return A future completing with the access token, or failing with a DatasourceException.
+   */
+  public CompletableFuture<String> getTokenAsync() {
+    CachedToken token = current;
+    long now = clock.getAsLong();
+    if (token != null && now < token.expiresAt) {
+      cacheHits.incrementAndGet();
+      if (now >= token.refreshAt) {
+        refresh();
+      }
+      return CompletableFuture.completedFuture(token.value);
+    }
+    return refresh().thenApply(refreshed -> refreshed.value);
+  }
+
+  /**
+   * Drops the cached token if it is still the given one, e.g. after the API rejected it.
+   *
+   * @param token The token that was rejected.
+   */
+  public void invalidate(String token) {
+    synchronized (this) {
+      CachedToken cached = current;
+      if (cached != null && cached.value.equals(token)) {
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Starts a refresh unless one is already running, and returns the in-flight refresh.
+   *
+   * @return A future completing with the new token.
+   */
+  private synchronized CompletableFuture<CachedToken> refresh() {
+    if (inFlight != null) {
+      return inFlight;
+    }
+    CompletableFuture<CachedToken> refresh =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                long fetchedAt = clock.getAsLong();
+                AccessToken token = fetcher.fetch();
+                long lifetime = Duration.ofSeconds(token.getExpiresInSeconds()).toNanos();
+                // Tokens shorter-lived than the skew are refreshed halfway through instead
+                long refreshIn =
+                    lifetime > refreshSkewNanos ? lifetime - refreshSkewNanos : lifetime / 2;
+                return new CachedToken(
+                    token.getValue(), fetchedAt + refreshIn, fetchedAt + lifetime);
+              } catch (DatasourceException e) {
+                throw new CompletionException(e);
+              }
+            },
+            refreshExecutor);
+    inFlight = refresh;
+    refresh.whenComplete(
+        (token, error) -> {
+          synchronized (this) {
+            if (error == null) {
+              current = token;
+              refreshes.incrementAndGet();
+            } else {
+              refreshFailures.incrementAndGet();
+            }
+            inFlight = null;
+          }
+        });
+    return refresh;
+  }
+
+  /**
+   * @return How many tokens have been fetched from the OAuth endpoint.
+   */
+  public long getRefreshCount() {
+    return refreshes.get();
+  }
+
+  /**
+   * @return How many token fetches failed.
+   */
+  public long getRefreshFailureCount() {
+    return refreshFailures.get();
+  }
+
+  /**
+   * @return How many requests were served a cached token.
+   */
+  public long getCacheHitCount() {
+    return cacheHits.get();
+  }
+}
@@ -0,0 +1,75 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+/** Great-circle math on latitude/longitude pairs given in degrees. */
+public final class GeoUtils {
+
+  /** Mean radius of the earth in kilometers. */
+  public static final double EARTH_RADIUS_KM = 6371.0088;
+
+  private GeoUtils() {}
+
+  /**
+   * Computes the great-circle distance between two points with the haversine formula.
+   *
+   * @param lat1 Latitude of the first point.
+   * @param lon1 Longitude of the first point.
+   * @param lat2 Latitude of the second point.
+   * @param lon2 Longitude of the second point.
+   * @return The distance in kilometers.
+   */
+  public static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a =
+        Math.sin(dLat / 2) * Math.sin(dLat / 2)
+            + Math.cos(Math.toRadians(lat1))
+                * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2)
+                * Math.sin(dLon / 2);
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+  }
+
+  /**
+   * Averages two points' latitudes and longitudes. Close to the great-circle midpoint for the
+   * distances a route spans, and much cheaper.
+   *
+   * @param lat1 Latitude of the first point.
+   * @param lon1 Longitude of the first point.
+   * @param lat2 Latitude of the second point.
+   * @param lon2 Longitude of the second point.
+   * @return The latitude and longitude of the midpoint.
+   */
+  public static double[] midpoint(double lat1, double lon1, double lat2, double lon2) {
+    return new double[] {(lat1 + lat2) / 2.0, (lon1 + lon2) / 2.0};
+  }
+
+  /**
+   * Finds the point a given fraction of the way along the great circle between two points.
+   *
+   * @param lat1 Latitude of the first point.
+   * @param lon1 Longitude of the first point.
+   * @param lat2 Latitude of the second point.
+   * @param lon2 Longitude of the second point.
+   * @param fraction How far along the path, from 0 (first point) to 1 (second point).
+   * @return The latitude and longitude of the point.
+   */
+  public static double[] interpolate(
+      double lat1, double lon1, double lat2, double lon2, double fraction) {
+    double phi1 = Math.toRadians(lat1);
+    double lambda1 = Math.toRadians(lon1);
+    double phi2 = Math.toRadians(lat2);
+    double lambda2 = Math.toRadians(lon2);
+    double delta = distanceKm(lat1, lon1, lat2, lon2) / EARTH_RADIUS_KM;
+    if (delta == 0) {
+      return new double[] {lat1, lon1};
+    }
+    double a = Math.sin((1 - fraction) * delta) / Math.sin(delta);
+    double b = Math.sin(fraction * delta) / Math.sin(delta);
+    double x = a * Math.cos(phi1) * Math.cos(lambda1) + b * Math.cos(phi2) * Math.cos(lambda2);
+    double y = a * Math.cos(phi1) * Math.sin(lambda1) + b * Math.cos(phi2) * Math.sin(lambda2);
+    double z = a * Math.sin(phi1) + b * Math.sin(phi2);
+    return new double[] {
+      Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y))), Math.toDegrees(Math.atan2(y, x))
+    };
+  }
+}
@@ -0,0 +1,333 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded, in-process cache of geocoding results keyed by normalized address.
+ *
+ * <p>Successful lookups are kept for {@code ttl}; addresses the geocoder has no results for are
+ * remembered separately for {@code negativeTtl} so repeated typos don't go upstream either.
+ * Concurrent lookups of the same missing address share a single upstream call.
+ *
+ * <p>Successful lookups can also be remembered for a longer {@code staleTtl}. They are never served
+ * while the geocoder is answering, but when a lookup fails (the geocoder is down, or its circuit
+ * breaker is open) the last known coordinates are returned instead of the error. A place rarely
+ * moves, so a week-old answer beats none.
+ */
+public class GeocodeCache {
+
+  /** The message APIClient uses when the geocoder returns no results. */
+  public static final String NO_RESULTS = "No results found";
+
+  // Compiled once; normalize runs on every lookup and every suggestion keystroke
+  private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+  private static final Pattern COMMA = Pattern.compile(" ?, ?");
+
+  /** Looks up an address that isn't cached. */
+  public interface Loader {
+    List<Double> load(String address) throws DatasourceException;
+  }
+
+  /** Looks up an address that isn't cached without blocking. */
+  public interface AsyncLoader {
+    CompletableFuture<List<Double>> load(String address);
+  }
+
+  /** Coordinates and when they were looked up, which a snapshot carries across restarts. */
+  private static final class Located {
+    private final List<Double> coordinates;
+    private final long lookedUpAt;
+
+    private Located(List<Double> coordinates, long lookedUpAt) {
+      this.coordinates = coordinates;
+      this.lookedUpAt = lookedUpAt;
+    }
+  }
+
+  private final Cache<String, Located> results;
+  private final Cache<String, Boolean> noResults;
+  // Null when stale fallback is off
+  private final Cache<String, Located> lastKnown;
+  private final Map<String, CompletableFuture<List<Double>>> inFlight = new ConcurrentHashMap<>();
+  private final long ttlMillis;
+  private final long staleTtlMillis;
+  private final AtomicLong negativeHits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+
+  /**
+   * Constructs a geocode cache.
+   *
+   * @param maximumSize The maximum number of addresses to keep, evicting least recently used.
+   * @param ttl How long a successful lookup is kept.
+   * @param negativeTtl How long an address with no results is remembered.
+   */
+  public GeocodeCache(long maximumSize, Duration ttl, Duration negativeTtl) {
+    this(maximumSize, ttl, negativeTtl, null);
+  }
+
+  /**
+   * Constructs a geocode cache that falls back to stale coordinates when a lookup fails.
+   *
+   * @param maximumSize The maximum number of addresses to keep, evicting least recently used.
+   * @param ttl How long a successful lookup is kept.
+   * @param negativeTtl How long an address with no results is remembered.
+   * @param staleTtl How long a successful lookup may be served in place of a failed one, or null to
+   *     never serve stale coordinates.
+   */
+  public GeocodeCache(long maximumSize, Duration ttl, Duration negativeTtl, Duration staleTtl) {
+    this.ttlMillis = ttl.toMillis();
+    this.staleTtlMillis = staleTtl == null ? 0 : staleTtl.toMillis();
+    this.lastKnown =
+        staleTtl == null
+            ? null
+            : CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(staleTtl)
+                .<String, Located>build();
+    this.results =
+        CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+    this.noResults =
+        CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(negativeTtl)
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Normalizes an address so trivially different spellings share an entry.
+   *
+   * @param address The address as typed.
+   * @return The address lowercased with whitespace collapsed.
+   */
+  public static String normalize(String address) {
+    String collapsed = WHITESPACE.matcher(address.trim()).replaceAll(" ");
+    return COMMA.matcher(collapsed).replaceAll(", ").toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns the coordinates of an address, loading and caching them on a miss.
+   *
+   * @param address The address to geocode.
+   * @param loader Looks up the address upstream on a miss.
+   * @return List containing latitude and longitude.
+   * @throws DatasourceException If the lookup fails, or the address is known to have no results.
+   */
+  public List<Double> get(String address, Loader loader) throws DatasourceException {
+    CompletableFuture<List<Double>> lookup =
+        getAsync(
+            address,
+            missing -> {
+              try {
+                return CompletableFuture.completedFuture(loader.load(missing));
+              } catch (DatasourceException e) {
+                return CompletableFuture.failedFuture(e);
+              }
+            });
+    try {
+      return lookup.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof DatasourceException) {
+        throw (DatasourceException) e.getCause();
+      }
+      throw new DatasourceException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Returns the coordinates of an address without blocking, loading and caching them on a miss.
+   * Concurrent misses for the same address share one load.
+   *
+   * @param address The address to geocode.
+   * @param loader Looks up the address upstream on a miss.
+   * @return A future completing with latitude and longitude, or failing with a DatasourceException.
+   *     If the load fails and stale coordinates are known, it completes with those instead.
+   */
+  public CompletableFuture<List<Double>> getAsync(String address, AsyncLoader loader) {
+    String key = normalize(address);
+    if (noResults.getIfPresent(key) != null) {
+      negativeHits.incrementAndGet();
+      return CompletableFuture.failedFuture(new DatasourceException(NO_RESULTS));
+    }
+    Located cached = results.getIfPresent(key);
+    if (cached != null) {
+      // A restored entry keeps the age it had, which the cache's own expiry doesn't know about
+      if (System.currentTimeMillis() - cached.lookedUpAt <= ttlMillis) {
+        return CompletableFuture.completedFuture(cached.coordinates);
+      }
+      results.invalidate(key);
+    }
+
+    CompletableFuture<List<Double>> lookup = new CompletableFuture<>();
+    CompletableFuture<List<Double>> existing = inFlight.putIfAbsent(key, lookup);
+    if (existing != null) {
+      return existing;
+    }
+    CompletableFuture<List<Double>> load;
+    try {
+      load = loader.load(address);
+    } catch (RuntimeException e) {
+      load = CompletableFuture.failedFuture(e);
+    }
+    load.whenComplete(
+        (coordinates, error) -> {
+          Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+          List<Double> stale = null;
+          if (cause == null) {
+            Located located = new Located(coordinates, System.currentTimeMillis());
+            results.put(key, located);
+            if (lastKnown != null) {
+              lastKnown.put(key, located);
+            }
+          } else if (cause instanceof DatasourceException
+              && NO_RESULTS.equals(cause.getMessage())) {
+            noResults.put(key, Boolean.TRUE);
+          } else if (lastKnown != null) {
+            // Not cached as fresh, so the next lookup still tries the geocoder first
+            Located known = lastKnown.getIfPresent(key);
+            if (known != null && System.currentTimeMillis() - known.lookedUpAt <= staleTtlMillis) {
+              stale = known.coordinates;
+            }
+          }
+          // Only stop sharing this load once its result is visible in the cache
+          inFlight.remove(key, lookup);
+          if (cause == null) {
+            lookup.complete(coordinates);
+          } else if (stale != null) {
+            staleHits.incrementAndGet();
+            lookup.complete(stale);
+          } else {
+            lookup.completeExceptionally(cause);
+          }
+        });
+    return lookup;
+  }
+
+  /**
+   * @return Hit, miss and eviction counts for successful lookups.
+   */
+  public CacheStats stats() {
+    return results.stats();
+  }
+
+  /**
+   * @return How many lookups were answered from the no-results cache.
+   */
+  public long negativeHitCount() {
+    return negativeHits.get();
+  }
+
+  /**
+   * @return How many failed lookups were answered with stale coordinates.
+   */
+  public long staleHitCount() {
+    return staleHits.get();
+  }
+
+  /**
+   * @return The number of cached successful lookups.
+   */
+  public long size() {
+    return results.size();
+  }
+
+  /**
+   * Writes the cached successful lookups to disk so a restart doesn't begin cold. Each keeps the
+   * time it was looked up, so restarting doesn't extend its lifetime.
+   *
+   * @param path The file to write.
+   * @throws IOException If the snapshot can't be written.
+   */
+  public void saveSnapshot(Path path) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+      out.write(Long.toString(System.currentTimeMillis()));
+      out.newLine();
+      for (Map.Entry<String, Located> entry : results.asMap().entrySet()) {
+        Located located = entry.getValue();
+        out.write(
+            located.coordinates.get(0)
+                + "\t"
+                + located.coordinates.get(1)
+                + "\t"
+                + located.lookedUpAt
+                + "\t"
+                + entry.getKey());
+        out.newLine();
+      }
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Loads a snapshot written by {@link #saveSnapshot}. Lookups older than the TTL are left out, or
+   * restored only for stale fallback if they are still within the stale TTL; the rest expire when
+   * they would have without the restart.
+   *
+   * @param path The file to read.
+   * @return The number of entries loaded.
+   * @throws IOException If the snapshot can't be read.
+   */
+  public int loadSnapshot(Path path) throws IOException {
+    if (!Files.isReadable(path)) {
+      return 0;
+    }
+    int loaded = 0;
+    try (BufferedReader in = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      // The time the snapshot was saved
+      if (in.readLine() == null) {
+        return 0;
+      }
+      long now = System.currentTimeMillis();
+      String line;
+      while ((line = in.readLine()) != null) {
+        // Lines from before lookup times were kept have three fields, and are skipped
+        String[] fields = line.split("\t", 4);
+        if (fields.length != 4) {
+          continue;
+        }
+        Located located =
+            new Located(
+                List.of(Double.parseDouble(fields[0]), Double.parseDouble(fields[1])),
+                Long.parseLong(fields[2]));
+        long age = now - located.lookedUpAt;
+        if (lastKnown != null && age <= staleTtlMillis) {
+          lastKnown.put(fields[3], located);
+        }
+        if (age <= ttlMillis) {
+          results.put(fields[3], located);
+          loaded++;
+        }
+      }
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed geocode snapshot: " + path, e);
+    }
+    return loaded;
+  }
+}
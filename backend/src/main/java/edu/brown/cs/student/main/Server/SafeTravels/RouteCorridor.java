@@ -0,0 +1,137 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import edu.brown.cs.student.main.Server.Exceptions.InvalidArgsException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the points along a route at which safety ratings are looked up.
+ *
+ * <p>Points are spaced evenly along the route (a great circle between two points, or a polyline),
+ * always including both ends. If the spacing would need more than {@code maxSamples} points, the
+ * spacing is widened instead so long trips stay within a fixed number of upstream calls.
+ */
+public final class RouteCorridor {
+
+  private RouteCorridor() {}
+
+  /**
+   * Samples points along the great circle between two points.
+   *
+   * @param startLat Latitude of the start.
+   * @param startLon Longitude of the start.
+   * @param endLat Latitude of the end.
+   * @param endLon Longitude of the end.
+   * @param spacingKm The desired distance between samples.
+   * @param maxSamples The most points to return.
+   * @return The sampled latitude/longitude pairs, in route order.
+   */
+  public static List<double[]> sampleGreatCircle(
+      double startLat,
+      double startLon,
+      double endLat,
+      double endLon,
+      double spacingKm,
+      int maxSamples) {
+    return samplePolyline(
+        List.of(new double[] {startLat, startLon}, new double[] {endLat, endLon}),
+        spacingKm,
+        maxSamples);
+  }
+
+  /**
+   * Samples points along a polyline.
+   *
+   * @param polyline The route's vertices as latitude/longitude pairs.
+   * @param spacingKm The desired distance between samples.
+   * @param maxSamples The most points to return.
+   * @return The sampled latitude/longitude pairs, in route order.
+   */
+  public static List<double[]> samplePolyline(
+      List<double[]> polyline, double spacingKm, int maxSamples) {
+    if (polyline.isEmpty()) {
+      return List.of();
+    }
+    double[] legLengths = new double[polyline.size() - 1];
+    double total = 0;
+    for (int i = 0; i < legLengths.length; i++) {
+      double[] a = polyline.get(i);
+      double[] b = polyline.get(i + 1);
+      legLengths[i] = GeoUtils.distanceKm(a[0], a[1], b[0], b[1]);
+      total += legLengths[i];
+    }
+
+    int intervals = (int) Math.ceil(total / Math.max(spacingKm, 1e-9));
+    intervals = Math.max(1, Math.min(intervals, Math.max(1, maxSamples - 1)));
+    if (total == 0) {
+      return List.of(polyline.get(0));
+    }
+
+    List<double[]> samples = new ArrayList<>(intervals + 1);
+    int leg = 0;
+    double legStart = 0;
+    for (int i = 0; i <= intervals; i++) {
+      double target = total * i / intervals;
+      while (leg < legLengths.length - 1 && legStart + legLengths[leg] < target) {
+        legStart += legLengths[leg];
+        leg++;
+      }
+      double[] a = polyline.get(leg);
+      double[] b = polyline.get(leg + 1);
+      double fraction =
+          legLengths[leg] == 0 ? 0 : Math.min(1, (target - legStart) / legLengths[leg]);
+      samples.add(GeoUtils.interpolate(a[0], a[1], b[0], b[1], fraction));
+    }
+    return samples;
+  }
+
+  /**
+   * Computes the total length of the path through the given points.
+   *
+   * @param points Latitude/longitude pairs in route order.
+   * @return The length in kilometers.
+   */
+  public static double lengthKm(List<double[]> points) {
+    double total = 0;
+    for (int i = 0; i + 1 < points.size(); i++) {
+      double[] a = points.get(i);
+      double[] b = points.get(i + 1);
+      total += GeoUtils.distanceKm(a[0], a[1], b[0], b[1]);
+    }
+    return total;
+  }
+
+  /**
+   * Parses a polyline written as "lat,lon;lat,lon;...".
+   *
+   * @param path The polyline.
+   * @return The vertices as latitude/longitude pairs.
+   * @throws InvalidArgsException If the polyline is malformed.
+   */
+  public static List<double[]> parsePolyline(String path) throws InvalidArgsException {
+    List<double[]> points = new ArrayList<>();
+    for (String vertex : path.split(";")) {
+      String[] parts = vertex.trim().split(",");
+      if (parts.length != 2) {
+        throw new InvalidArgsException("Path vertices must be written as lat,lon: " + vertex);
+      }
+      try {
+        double lat = Double.parseDouble(parts[0].trim());
+        double lon = Double.parseDouble(parts[1].trim());
+        if (!Double.isFinite(lat)
+            || !Double.isFinite(lon)
+            || Math.abs(lat) > 90
+            || Math.abs(lon) > 180) {
+          throw new InvalidArgsException("Path vertex out of range: " + vertex);
+        }
+        points.add(new double[] {lat, lon});
+      } catch (NumberFormatException e) {
+        throw new InvalidArgsException("Path vertices must be numbers: " + vertex);
+      }
+    }
+    if (points.size() < 2) {
+      throw new InvalidArgsException("Path needs at least two vertices");
+    }
+    return points;
+  }
+}
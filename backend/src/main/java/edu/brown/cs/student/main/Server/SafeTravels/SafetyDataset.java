@@ -0,0 +1,469 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import com.squareup.moshi.JsonDataException;
+import com.squareup.moshi.JsonReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import okio.BufferedSource;
+import okio.Okio;
+
+/**
+ * An immutable set of safety-rated locations loaded from an offline export, answering the same
+ * radius queries as Amadeus without calling it.
+ *
+ * <p>Locations are stored column by column in primitive arrays: latitude and longitude as doubles,
+ * one byte per score in {@link SafetyIndex#CATEGORIES} order, one byte naming the sub-type, and the
+ * id and name as UTF-8 in one shared byte array. That is about 30 bytes per location plus its text,
+ * where a parsed {@link SafetyLocation} costs several hundred. Locations are sorted by grid cell,
+ * so a query binary-searches the cells each row of its bounding box overlaps and scans only those
+ * locations; {@link SafetyLocation} objects are built only for the locations a query returns.
+ *
+ * <p>Since a dataset never changes once built, a new export is loaded into a new dataset and
+ * swapped in whole, with no locking on the read path.
+ */
+public final class SafetyDataset {
+
+  private static final double CELL_DEGREES = 0.05;
+  private static final double KM_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_KM;
+  private static final int CATEGORY_COUNT = SafetyIndex.CATEGORIES.size();
+  private static final String TYPE = "safety-rated-location";
+  // Columns a CSV export must have, besides one per category
+  private static final List<String> CSV_COLUMNS =
+      List.of("id", "subType", "name", "latitude", "longitude");
+
+  private final double[] lats;
+  private final double[] lons;
+  private final byte[] scores;
+  private final byte[] subTypes;
+  private final String[] subTypeNames;
+  // Location i's id and name are text[textStarts[i], textStarts[i + 1]), the id's length first
+  private final byte[] text;
+  private final int[] textStarts;
+  // The distinct cells, sorted, and where each one's locations start
+  private final long[] cellKeys;
+  private final int[] cellStarts;
+
+  private final Path source;
+  private final long sourceSize;
+  private final long sourceModified;
+
+  private SafetyDataset(Builder builder, Path source, long sourceSize, long sourceModified) {
+    int size = builder.size;
+    long[] keys = new long[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = key(cell(builder.lats[i]), cell(builder.lons[i]));
+    }
+    long[] sorted = keys.clone();
+    Arrays.sort(sorted);
+    int cells = 0;
+    for (int i = 0; i < size; i++) {
+      if (i == 0 || sorted[i] != sorted[i - 1]) {
+        sorted[cells++] = sorted[i];
+      }
+    }
+    this.cellKeys = Arrays.copyOf(sorted, cells);
+
+    // Counting sort of the locations by cell
+    this.cellStarts = new int[cells + 1];
+    int[] cellOf = new int[size];
+    for (int i = 0; i < size; i++) {
+      cellOf[i] = Arrays.binarySearch(cellKeys, keys[i]);
+      cellStarts[cellOf[i] + 1]++;
+    }
+    for (int c = 0; c < cells; c++) {
+      cellStarts[c + 1] += cellStarts[c];
+    }
+    int[] fill = Arrays.copyOf(cellStarts, cells);
+    this.lats = new double[size];
+    this.lons = new double[size];
+    this.scores = new byte[size * CATEGORY_COUNT];
+    this.subTypes = new byte[size];
+    this.textStarts = new int[size + 1];
+    this.text = new byte[builder.textLength];
+    int[] order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[fill[cellOf[i]]++] = i;
+    }
+    int textAt = 0;
+    for (int slot = 0; slot < size; slot++) {
+      int i = order[slot];
+      lats[slot] = builder.lats[i];
+      lons[slot] = builder.lons[i];
+      System.arraycopy(
+          builder.scores, i * CATEGORY_COUNT, scores, slot * CATEGORY_COUNT, CATEGORY_COUNT);
+      subTypes[slot] = builder.subTypes[i];
+      int length = builder.textStarts[i + 1] - builder.textStarts[i];
+      System.arraycopy(builder.text, builder.textStarts[i], text, textAt, length);
+      textStarts[slot] = textAt;
+      textAt += length;
+    }
+    textStarts[size] = textAt;
+    this.subTypeNames = builder.subTypeNames.toArray(new String[0]);
+    this.source = source;
+    this.sourceSize = sourceSize;
+    this.sourceModified = sourceModified;
+  }
+
+  /**
+   * Builds a dataset one location at a time, keeping only the columns as it goes.
+   *
+   * <p>Not thread-safe.
+   */
+  public static final class Builder {
+    private double[] lats = new double[1024];
+    private double[] lons = new double[1024];
+    private byte[] scores = new byte[1024 * CATEGORY_COUNT];
+    private byte[] subTypes = new byte[1024];
+    private int[] textStarts = new int[1025];
+    private byte[] text = new byte[1 << 16];
+    private int textLength;
+    private int size;
+    // Sub-type 0 is none
+    private final List<String> subTypeNames = new ArrayList<>(List.of(""));
+    private final Map<String, Integer> subTypeCodes = new HashMap<>();
+
+    /**
+     * Adds a location.
+     *
+     * @param id The location's id, or null.
+     * @param subType The kind of place, such as "CITY", or null.
+     * @param name The place's name, or null.
+     * @param lat The location's latitude.
+     * @param lon The location's longitude.
+     * @param categoryScores Scores in {@link SafetyIndex#CATEGORIES} order, each 0-100.
+     * @return This builder.
+     * @throws IllegalArgumentException If the position is out of range, the id is over 255 bytes or
+     *     there are more than 255 sub-types.
+     */
+    public Builder add(
+        String id, String subType, String name, double lat, double lon, int[] categoryScores) {
+      if (!(Math.abs(lat) <= 90) || !(Math.abs(lon) <= 180)) {
+        throw new IllegalArgumentException("No such position: " + lat + ", " + lon);
+      }
+      byte[] idBytes = id == null ? new byte[0] : id.getBytes(StandardCharsets.UTF_8);
+      byte[] nameBytes = name == null ? new byte[0] : name.getBytes(StandardCharsets.UTF_8);
+      if (idBytes.length > 255) {
+        throw new IllegalArgumentException("Id too long: " + id);
+      }
+      int subTypeCode = 0;
+      if (subType != null) {
+        Integer code = subTypeCodes.get(subType);
+        if (code == null) {
+          if (subTypeNames.size() > 255) {
+            throw new IllegalArgumentException("Too many sub-types: " + subType);
+          }
+          code = subTypeNames.size();
+          subTypeNames.add(subType);
+          subTypeCodes.put(subType, code);
+        }
+        subTypeCode = code;
+      }
+
+      if (size == lats.length) {
+        int grown = size * 2;
+        lats = Arrays.copyOf(lats, grown);
+        lons = Arrays.copyOf(lons, grown);
+        scores = Arrays.copyOf(scores, grown * CATEGORY_COUNT);
+        subTypes = Arrays.copyOf(subTypes, grown);
+        textStarts = Arrays.copyOf(textStarts, grown + 1);
+      }
+      int length = 1 + idBytes.length + nameBytes.length;
+      if (textLength + length > text.length) {
+        text = Arrays.copyOf(text, Math.max(textLength + length, text.length * 2));
+      }
+      lats[size] = lat;
+      lons[size] = lon;
+      for (int c = 0; c < CATEGORY_COUNT; c++) {
+        int score = c < categoryScores.length ? categoryScores[c] : 0;
+        scores[size * CATEGORY_COUNT + c] = (byte) Math.max(0, Math.min(100, score));
+      }
+      subTypes[size] = (byte) subTypeCode;
+      text[textLength] = (byte) idBytes.length;
+      System.arraycopy(idBytes, 0, text, textLength + 1, idBytes.length);
+      System.arraycopy(nameBytes, 0, text, textLength + 1 + idBytes.length, nameBytes.length);
+      textLength += length;
+      size++;
+      textStarts[size] = textLength;
+      return this;
+    }
+
+    /**
+     * Adds a location as parsed from Amadeus. Locations without a position are skipped, since no
+     * query could find them.
+     *
+     * @param location The location.
+     * @return This builder.
+     * @throws IllegalArgumentException As {@link #add(String, String, String, double, double,
+     *     int[])} does.
+     */
+    public Builder add(SafetyLocation location) {
+      if (location.getGeoCode() == null) {
+        return this;
+      }
+      SafetyLocation.SafetyScores locationScores = location.getSafetyScores();
+      return add(
+          location.getId(),
+          location.getSubType(),
+          location.getName(),
+          location.getGeoCode().getLatitude(),
+          location.getGeoCode().getLongitude(),
+          locationScores == null ? new int[0] : locationScores.toArray());
+    }
+
+    /**
+     * @return The dataset, sorted by cell and trimmed to size.
+     */
+    public SafetyDataset build() {
+      return new SafetyDataset(this, null, -1, -1);
+    }
+  }
+
+  /**
+   * Loads an export, as CSV if its name ends in {@code .csv} and as JSON otherwise.
+   *
+   * @param path The export.
+   * @return The dataset, remembering the file so {@link #changed} can tell when it is replaced.
+   * @throws IOException If the file can't be read or isn't a valid export.
+   */
+  public static SafetyDataset open(Path path) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    Builder builder = new Builder();
+    if (path.getFileName().toString().toLowerCase().endsWith(".csv")) {
+      readCsv(path, builder);
+    } else {
+      readJson(path, builder);
+    }
+    return new SafetyDataset(
+        builder, path, attributes.size(), attributes.lastModifiedTime().toMillis());
+  }
+
+  /**
+   * Builds a dataset from CSV rows, as stored by {@code Server.setRows}: a header row naming the
+   * columns {@code id, subType, name, latitude, longitude} and one per category, then a row per
+   * location. Columns may come in any order, and others are ignored.
+   *
+   * @param rows The rows, header first.
+   * @return The dataset.
+   * @throws IOException If a column is missing or a row is malformed.
+   */
+  public static SafetyDataset fromRows(List<List<String>> rows) throws IOException {
+    if (rows.isEmpty()) {
+      throw new IOException("Safety dataset has no header row");
+    }
+    Builder builder = new Builder();
+    int[] columns = csvColumns(rows.get(0));
+    for (int i = 1; i < rows.size(); i++) {
+      addRow(builder, columns, rows.get(i), i + 1);
+    }
+    return builder.build();
+  }
+
+  /** Streams a JSON export through the Amadeus response reader, keeping only the columns. */
+  private static void readJson(Path path, Builder builder) throws IOException {
+    try (BufferedSource source = Okio.buffer(Okio.source(path))) {
+      UpstreamParsers.readLocations(JsonReader.of(source), builder::add);
+    } catch (JsonDataException | IllegalArgumentException e) {
+      throw new IOException("Invalid safety dataset " + path + ": " + e.getMessage(), e);
+    }
+  }
+
+  /** Streams a CSV export a line at a time. Quoted fields may not span lines. */
+  private static void readCsv(Path path, Builder builder) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      String header = reader.readLine();
+      if (header == null) {
+        throw new IOException("Safety dataset has no header row: " + path);
+      }
+      int[] columns = csvColumns(splitCsvLine(header));
+      int line = 1;
+      for (String row = reader.readLine(); row != null; row = reader.readLine()) {
+        line++;
+        if (!row.isBlank()) {
+          addRow(builder, columns, splitCsvLine(row), line);
+        }
+      }
+    }
+  }
+
+  /**
+   * Finds each needed column in a header row.
+   *
+   * @return The index of each of {@link #CSV_COLUMNS}, then of each category.
+   */
+  private static int[] csvColumns(List<String> header) throws IOException {
+    List<String> needed = new ArrayList<>(CSV_COLUMNS);
+    needed.addAll(SafetyIndex.CATEGORIES);
+    int[] columns = new int[needed.size()];
+    for (int i = 0; i < needed.size(); i++) {
+      columns[i] = header.indexOf(needed.get(i));
+      if (columns[i] < 0) {
+        throw new IOException("Safety dataset has no " + needed.get(i) + " column");
+      }
+    }
+    return columns;
+  }
+
+  private static void addRow(Builder builder, int[] columns, List<String> row, int line)
+      throws IOException {
+    try {
+      int[] categoryScores = new int[CATEGORY_COUNT];
+      for (int c = 0; c < CATEGORY_COUNT; c++) {
+        String score = row.get(columns[CSV_COLUMNS.size() + c]).trim();
+        categoryScores[c] = score.isEmpty() ? 0 : (int) Math.round(Double.parseDouble(score));
+      }
+      builder.add(
+          emptyToNull(row.get(columns[0])),
+          emptyToNull(row.get(columns[1])),
+          emptyToNull(row.get(columns[2])),
+          Double.parseDouble(row.get(columns[3]).trim()),
+          Double.parseDouble(row.get(columns[4]).trim()),
+          categoryScores);
+    } catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+      // NumberFormatException included
+      throw new IOException("Invalid safety dataset row " + line + ": " + e.getMessage(), e);
+    }
+  }
+
+  private static String emptyToNull(String value) {
+    return value.isEmpty() ? null : value;
+  }
+
+  /** Splits a CSV line on commas outside double quotes, unescaping doubled quotes. */
+  private static List<String> splitCsvLine(String line) {
+    List<String> fields = new ArrayList<>();
+    StringBuilder field = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c != '"') {
+          field.append(c);
+        } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          field.append('"');
+          i++;
+        } else {
+          quoted = false;
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        fields.add(field.toString());
+        field.setLength(0);
+      } else {
+        field.append(c);
+      }
+    }
+    fields.add(field.toString());
+    return fields;
+  }
+
+  /**
+   * Returns the locations within a radius of a point, as Amadeus would.
+   *
+   * @param lat The latitude of the point.
+   * @param lon The longitude of the point.
+   * @param radiusKm The radius in km.
+   * @return The matching locations, in no particular order.
+   */
+  public SafetyRatings withinRadius(double lat, double lon, double radiusKm) {
+    List<SafetyLocation> found = new ArrayList<>();
+    if (cellKeys.length == 0 || radiusKm < 0) {
+      return new SafetyRatings(found);
+    }
+    double latDelta = radiusKm / KM_PER_DEGREE;
+    double lonDelta = latDelta / Math.max(Math.cos(Math.toRadians(lat)), 1e-6);
+    int minX = cell(lon - lonDelta);
+    int maxX = cell(lon + lonDelta);
+    for (int y = cell(lat - latDelta); y <= cell(lat + latDelta); y++) {
+      long last = key(y, maxX);
+      int c = Arrays.binarySearch(cellKeys, key(y, minX));
+      for (c = c < 0 ? -c - 1 : c; c < cellKeys.length && cellKeys[c] <= last; c++) {
+        for (int i = cellStarts[c]; i < cellStarts[c + 1]; i++) {
+          if (GeoUtils.distanceKm(lat, lon, lats[i], lons[i]) <= radiusKm) {
+            found.add(location(i));
+          }
+        }
+      }
+    }
+    return new SafetyRatings(found);
+  }
+
+  /**
+   * @return The number of locations.
+   */
+  public int size() {
+    return lats.length;
+  }
+
+  /**
+   * @return Roughly how many bytes of heap the dataset's columns take.
+   */
+  public long heapBytes() {
+    return 16L * lats.length
+        + scores.length
+        + subTypes.length
+        + text.length
+        + 4L * textStarts.length
+        + 12L * cellKeys.length;
+  }
+
+  /**
+   * @return The file the dataset was loaded from, or null if it was built in memory.
+   */
+  public Path getSource() {
+    return source;
+  }
+
+  /**
+   * @return true if the source file's size or modification time differ from when it was loaded.
+   * @throws IOException If the file can't be read.
+   */
+  public boolean changed() throws IOException {
+    if (source == null) {
+      return false;
+    }
+    BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+    return attributes.size() != sourceSize
+        || attributes.lastModifiedTime().toMillis() != sourceModified;
+  }
+
+  private SafetyLocation location(int i) {
+    int start = textStarts[i];
+    int idLength = text[start] & 0xff;
+    int nameStart = start + 1 + idLength;
+    int nameLength = textStarts[i + 1] - nameStart;
+    int at = i * CATEGORY_COUNT;
+    return new SafetyLocation(
+        idLength == 0 ? null : new String(text, start + 1, idLength, StandardCharsets.UTF_8),
+        TYPE,
+        subTypes[i] == 0 ? null : subTypeNames[subTypes[i] & 0xff],
+        nameLength == 0 ? null : new String(text, nameStart, nameLength, StandardCharsets.UTF_8),
+        new SafetyLocation.GeoCode(lats[i], lons[i]),
+        new SafetyLocation.SafetyScores(
+            scores[at],
+            scores[at + 1],
+            scores[at + 2],
+            scores[at + 3],
+            scores[at + 4],
+            scores[at + 5],
+            scores[at + 6]));
+  }
+
+  private static int cell(double degrees) {
+    return (int) Math.floor(degrees / CELL_DEGREES);
+  }
+
+  /** Orders cells by row, then column, so a row's cells are contiguous. */
+  private static long key(int y, int x) {
+    return ((long) y << 32) + x;
+  }
+}
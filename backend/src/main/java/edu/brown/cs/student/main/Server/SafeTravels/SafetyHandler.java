@@ -1,82 +1,286 @@
 package edu.brown.cs.student.main.Server.SafeTravels;
 
-import com.squareup.moshi.JsonAdapter;
-import com.squareup.moshi.Moshi;
-import com.squareup.moshi.Types;
-import java.lang.reflect.Type;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import static java.lang.Math.max;
 
+import edu.brown.cs.student.main.Server.Exceptions.CircuitOpenException;
 import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.Exceptions.InvalidArgsException;
+import edu.brown.cs.student.main.Server.Exceptions.QuotaExceededException;
+import edu.brown.cs.student.main.json.ErrorResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import edu.brown.cs.student.main.json.SuccessResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
-import static java.awt.geom.Point2D.distance;
-import static java.lang.Math.max;
-
 public class SafetyHandler implements Route {
 
-  public SafetyHandler() {
+  // Amadeus only accepts whole-kilometer radii in this range
+  private static final int MIN_RADIUS_KM = 1;
+  private static final int MAX_RADIUS_KM = 20;
+
+  private final APIClient client;
+  private final Duration deadline;
+  private final double corridorSpacingKm;
+  private final int maxCorridorSamples;
+  private final Duration corridorBudget;
+
+  public SafetyHandler() throws DatasourceException {
+    this(new APIClient(), Duration.ofSeconds(10));
+  }
+
+  /**
+   * Constructs a handler that samples corridors every 2km, at most 25 times, within 5 seconds.
+   *
+   * @param client The client used for geocoding and safety lookups.
+   * @param deadline How long a single request may spend waiting on upstream APIs.
+   */
+  public SafetyHandler(APIClient client, Duration deadline) {
+    this(client, deadline, 2.0, 25, Duration.ofSeconds(5));
+  }
+
+  /**
+   * Constructs a handler.
+   *
+   * @param client The client used for geocoding and safety lookups.
+   * @param deadline How long a single request may spend waiting on upstream APIs.
+   * @param corridorSpacingKm Default distance between sampled points in corridor mode.
+   * @param maxCorridorSamples The most points sampled along one route.
+   * @param corridorBudget How long corridor lookups may take before answering with what has
+   *     arrived; never longer than the deadline.
+   */
+  public SafetyHandler(
+      APIClient client,
+      Duration deadline,
+      double corridorSpacingKm,
+      int maxCorridorSamples,
+      Duration corridorBudget) {
+    this.client = client;
+    this.deadline = deadline;
+    this.corridorSpacingKm = corridorSpacingKm;
+    this.maxCorridorSamples = maxCorridorSamples;
+    this.corridorBudget = corridorBudget.compareTo(deadline) < 0 ? corridorBudget : deadline;
   }
 
   /**
-   * @param request
-   * @param response
-   * @return
-   * @throws Exception
+   * Handles a request for the safety ratings along a route.
+   *
+   * <p>By default ratings are looked up around the midpoint of the start and end. With {@code
+   * mode=corridor} they are looked up at points sampled along the route every {@code spacing} km
+   * (or along the polyline given as {@code path=lat,lon;lat,lon;...}) and merged.
+   *
+   * @param request The HTTP request object.
+   * @param response The HTTP response object.
+   * @return The serialized safety ratings, or an error.
+   * @throws Exception If the response can't be serialized.
    */
   @Override
   public Object handle(Request request, Response response) throws Exception {
-    Map<String,Object> safetyRatings = new HashMap<>();
-    APIClient client = new APIClient();
+    SafetyRatings safetyRatings;
     String startLoc = request.queryParams("start");
     String endLoc = request.queryParams("end");
+    boolean corridor = "corridor".equals(request.queryParams("mode"));
+    String path = request.queryParams("path");
 
-    Moshi moshi = new Moshi.Builder().build();
-    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
-    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
-    Map<String, Object> responseMap = new HashMap<>();
-
-    // Validate start and end locations
-    if (startLoc == null || endLoc == null) {
-      responseMap.put("type", "error");
-      responseMap.put("error_type", "bad_request");
-      responseMap.put("details", "Starting or ending location was not provided");
-      return adapter.toJson(responseMap);
+    // Validate start and end locations; a corridor can be given as a path instead
+    if ((startLoc == null || endLoc == null) && !(corridor && path != null)) {
+      return Serializer.ERROR.toJson(
+          new ErrorResponse("bad_request", "Starting or ending location was not provided"));
     }
 
+    long deadlineNanos = System.nanoTime() + deadline.toNanos();
     try {
-      // Get coordinates for start and end locations
-      List<Double> startCoordinates = client.getCoordinates(startLoc);
-      List<Double> endCoordinates = client.getCoordinates(endLoc);
+      double spacing = corridor ? parseSpacing(request.queryParams("spacing")) : 0;
+      List<double[]> route;
+      if (corridor && path != null) {
+        route = RouteCorridor.parsePolyline(path);
+      } else {
+        // Get coordinates for start and end locations in parallel, warming the Amadeus token
+        // alongside them so the safety lookup doesn't have to wait for one
+        CompletableFuture<List<Double>> startLookup = client.getCoordinatesAsync(startLoc);
+        CompletableFuture<List<Double>> endLookup = client.getCoordinatesAsync(endLoc);
+        client.prefetchAccessToken();
 
-      List<Double> midpoint = calculateMidpoint(startCoordinates.get(0), startCoordinates.get(1), endCoordinates.get(0), endCoordinates.get(1));
+        List<Double> startCoordinates = await(startLookup, deadlineNanos);
+        List<Double> endCoordinates = await(endLookup, deadlineNanos);
+        route =
+            List.of(
+                new double[] {startCoordinates.get(0), startCoordinates.get(1)},
+                new double[] {endCoordinates.get(0), endCoordinates.get(1)});
+      }
 
-// Calculate radius
-      int radius = (int)max(distance(midpoint.get(0), midpoint.get(1), startCoordinates.get(0), startCoordinates.get(1)),
-          distance(midpoint.get(0), midpoint.get(1), endCoordinates.get(0), endCoordinates.get(1)));
+      if (corridor) {
+        safetyRatings = corridorRatings(route, spacing, deadlineNanos);
+      } else {
+        double[] start = route.get(0);
+        double[] end = route.get(route.size() - 1);
+        double[] midpoint = GeoUtils.midpoint(start[0], start[1], end[0], end[1]);
 
-// Use the midpoint and radius for the Amadeus API call
-      //safetyRatings = client.getSafetyRatings(midpoint.get(0), midpoint.get(1), radius);
-      safetyRatings = client.getSafetyRatings(midpoint.get(0), midpoint.get(1), 2);
+        // Calculate the radius (in km) needed to reach both ends from the midpoint
+        int radius =
+            clampRadius(
+                max(
+                    GeoUtils.distanceKm(midpoint[0], midpoint[1], start[0], start[1]),
+                    GeoUtils.distanceKm(midpoint[0], midpoint[1], end[0], end[1])));
 
+        // Use the midpoint and radius for the Amadeus API call
+        safetyRatings =
+            await(client.getSafetyRatingsAsync(midpoint[0], midpoint[1], radius), deadlineNanos);
+      }
+
+    } catch (InvalidArgsException e) {
+      return Serializer.ERROR.toJson(new ErrorResponse("bad_request", e.getMessage()));
+    } catch (TimeoutException e) {
+      return Serializer.ERROR.toJson(
+          new ErrorResponse(
+              "timeout", "Upstream lookups took longer than " + deadline.toMillis() + "ms"));
     } catch (DatasourceException e) {
-      responseMap.put("type", "error");
-      responseMap.put("error_type", "datasource");
-      responseMap.put("details", e.getMessage());
-      return adapter.toJson(responseMap);
+      if (QuotaExceededException.causedBy(e)) {
+        response.status(429);
+        response.header("Retry-After", "1");
+        return Serializer.ERROR.toJson(new ErrorResponse("rate_limited", e.getMessage()));
+      }
+      if (CircuitOpenException.causedBy(e)) {
+        response.status(503);
+        response.header("Retry-After", "10");
+        return Serializer.ERROR.toJson(new ErrorResponse("unavailable", e.getMessage()));
+      }
+      return Serializer.ERROR.toJson(new ErrorResponse("datasource", e.getMessage()));
+    }
+
+    return Serializer.SAFETY_SUCCESS.toJson(new SuccessResponse<>(safetyRatings));
+  }
+  /**
+   * Waits for a lookup, giving up once the request's deadline has passed.
+   *
+   * @param lookup The lookup to wait for.
+   * @param deadlineNanos The System.nanoTime() by which the request must be answered.
+   * @return The lookup's result.
+   * @throws DatasourceException If the lookup failed.
+   * @throws TimeoutException If the deadline passed first.
+   */
+  private static <T> T await(CompletableFuture<T> lookup, long deadlineNanos)
+      throws DatasourceException, TimeoutException {
+    try {
+      return lookup.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof DatasourceException) {
+        throw (DatasourceException) e.getCause();
+      }
+      throw new DatasourceException(e.getCause().getMessage(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasourceException("Interrupted while waiting for upstream lookups", e);
+    }
+  }
+
+  /**
+   * Looks up safety ratings at points sampled along a route and merges them.
+   *
+   * <p>All lookups are started at once. Whatever has arrived when the corridor budget runs out is
+   * returned, so one slow sample can't hold up the whole route.
+   *
+   * @param route The route's vertices as latitude/longitude pairs.
+   * @param spacingKm The distance between samples.
+   * @param deadlineNanos The System.nanoTime() by which the request must be answered.
+   * @return The merged ratings, with locations seen by several samples listed once.
+   * @throws DatasourceException If no sample could be looked up.
+   */
+  private SafetyRatings corridorRatings(List<double[]> route, double spacingKm, long deadlineNanos)
+      throws DatasourceException {
+    List<double[]> samples = RouteCorridor.samplePolyline(route, spacingKm, maxCorridorSamples);
+    // Each sample covers the stretch halfway to its neighbours, plus some overlap at the seams
+    double actualSpacing = RouteCorridor.lengthKm(route) / Math.max(1, samples.size() - 1);
+    int radius = clampRadius(actualSpacing * 0.6);
+
+    List<CompletableFuture<SafetyRatings>> lookups = new ArrayList<>();
+    for (double[] sample : samples) {
+      lookups.add(client.getSafetyRatingsAsync(sample[0], sample[1], radius));
+    }
+    long budgetNanos = Math.min(deadlineNanos, System.nanoTime() + corridorBudget.toNanos());
+    try {
+      CompletableFuture.allOf(lookups.toArray(new CompletableFuture<?>[0]))
+          .get(budgetNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException | ExecutionException e) {
+      // Use whatever finished in time; failures are counted below
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DatasourceException("Interrupted while waiting for upstream lookups", e);
+    }
+
+    Map<Object, SafetyLocation> locationsById = new LinkedHashMap<>();
+    int answered = 0;
+    DatasourceException firstFailure = null;
+    for (CompletableFuture<SafetyRatings> lookup : lookups) {
+      if (!lookup.isDone()) {
+        continue;
+      }
+      try {
+        List<SafetyLocation> data = lookup.join().getData();
+        answered++;
+        if (data != null) {
+          for (SafetyLocation location : data) {
+            Object id = location.getId();
+            locationsById.putIfAbsent(id == null ? location : id, location);
+          }
+        }
+      } catch (CompletionException e) {
+        if (firstFailure == null) {
+          firstFailure =
+              e.getCause() instanceof DatasourceException
+                  ? (DatasourceException) e.getCause()
+                  : new DatasourceException(e.getCause().getMessage(), e.getCause());
+        }
+      }
+    }
+    if (answered == 0 && firstFailure != null) {
+      throw firstFailure;
     }
 
-    responseMap.put("type", "success");
-    responseMap.put("data", safetyRatings);
-    return adapter.toJson(responseMap);
+    return new SafetyRatings(
+        new ArrayList<>(locationsById.values()),
+        new SafetyRatings.Meta(samples.size(), answered, radius));
   }
-  private List<Double> calculateMidpoint(double lat1, double lon1, double lat2, double lon2) {
-    double midLat = (lat1 + lat2) / 2.0;
-    double midLon = (lon1 + lon2) / 2.0;
-    return List.of(midLat, midLon);
+
+  /**
+   * Parses the corridor spacing parameter.
+   *
+   * @param spacing The spacing in km, or null for the default.
+   * @return The spacing in km.
+   * @throws InvalidArgsException If the spacing isn't a positive, finite number.
+   */
+  private double parseSpacing(String spacing) throws InvalidArgsException {
+    if (spacing == null) {
+      return corridorSpacingKm;
+    }
+    try {
+      double parsed = Double.parseDouble(spacing);
+      if (parsed > 0 && Double.isFinite(parsed)) {
+        return parsed;
+      }
+    } catch (NumberFormatException e) {
+      // Reported below
+    }
+    throw new InvalidArgsException("spacing must be a positive, finite number of km");
   }
 
+  /**
+   * Rounds a radius up to whole kilometers within the range Amadeus accepts.
+   *
+   * @param radiusKm The radius in km.
+   * @return The radius to query with.
+   */
+  private static int clampRadius(double radiusKm) {
+    return (int) Math.max(MIN_RADIUS_KM, Math.min(MAX_RADIUS_KM, Math.ceil(radiusKm)));
+  }
 }
@@ -0,0 +1,552 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+/**
+ * An in-memory spatial index over safety-rated locations.
+ *
+ * <p>Locations live in parallel primitive arrays (latitude, longitude, one byte per safety score)
+ * and are bucketed into a uniform grid of {@code cellDegrees}-sized cells. Each cell is a linked
+ * list threaded through an int array, and cells are found through an open-addressing table keyed by
+ * cell coordinates, so a query only touches the cells it overlaps and allocates nothing per point.
+ * Each location also keeps a reference to the record it came from, which queries return.
+ *
+ * <p>Locations are added and removed incrementally (by id) as tiles arrive and expire; removed
+ * slots are reclaimed by compacting once they outnumber live ones. Reads share a lock and writes
+ * take it exclusively.
+ *
+ * @param <T> The type of record kept for each location.
+ */
+public class SafetyIndex<T> {
+
+  /** The safety score categories stored per location, in Amadeus' names. */
+  public static final List<String> CATEGORIES =
+      List.of("overall", "lgbtq", "medical", "physicalHarm", "politicalFreedom", "theft", "women");
+
+  private static final double KM_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_KM;
+  private static final int NONE = -1;
+
+  private final double cellDegrees;
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  // Per-slot columns; slots [0, size) are in use, dead ones have alive[slot] == false
+  private double[] lats = new double[64];
+  private double[] lons = new double[64];
+  private byte[] scores = new byte[64 * CATEGORIES.size()];
+  private int[] next = new int[64];
+  private boolean[] alive = new boolean[64];
+  private String[] ids = new String[64];
+  private Object[] records = new Object[64];
+  private int size;
+  private int live;
+
+  // Open-addressing table from cell key to the first slot in that cell
+  private long[] cellKeys = new long[64];
+  private int[] cellHeads = new int[64];
+  private boolean[] cellUsed = new boolean[64];
+  private int cellCount;
+
+  private final Map<String, Integer> slotsById = new HashMap<>();
+
+  /**
+   * Constructs an index.
+   *
+   * @param cellDegrees The grid cell size in degrees; 0.01 is about 1km.
+   */
+  public SafetyIndex(double cellDegrees) {
+    this.cellDegrees = cellDegrees;
+  }
+
+  /**
+   * Adds or replaces a location.
+   *
+   * @param id The location's id; a location already indexed under it is replaced.
+   * @param lat The location's latitude.
+   * @param lon The location's longitude.
+   * @param categoryScores Scores in {@link #CATEGORIES} order, each 0-100.
+   * @param record The record to return for this location from queries.
+   */
+  public void put(String id, double lat, double lon, int[] categoryScores, T record) {
+    lock.writeLock().lock();
+    try {
+      Integer existing = slotsById.get(id);
+      if (existing != null) {
+        kill(existing);
+        compactIfSparse();
+      }
+      ensureCapacity(size + 1);
+      int slot = size++;
+      lats[slot] = lat;
+      lons[slot] = lon;
+      for (int c = 0; c < CATEGORIES.size(); c++) {
+        int score = c < categoryScores.length ? categoryScores[c] : 0;
+        scores[slot * CATEGORIES.size() + c] = (byte) Math.max(0, Math.min(100, score));
+      }
+      ids[slot] = id;
+      records[slot] = record;
+      alive[slot] = true;
+      link(slot);
+      slotsById.put(id, slot);
+      live++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes a location if it is still indexed with the given record.
+   *
+   * @param id The location's id.
+   * @param record The record it was added with; if it has been replaced since, nothing happens.
+   */
+  public void remove(String id, T record) {
+    lock.writeLock().lock();
+    try {
+      Integer slot = slotsById.get(id);
+      if (slot != null && records[slot] == record) {
+        kill(slot);
+        slotsById.remove(id);
+        compactIfSparse();
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Returns the records of all locations within a radius of a point.
+   *
+   * @param lat The latitude of the point.
+   * @param lon The longitude of the point.
+   * @param radiusKm The radius in km.
+   * @return The matching records.
+   */
+  public List<T> withinRadius(double lat, double lon, double radiusKm) {
+    List<T> found = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      forEachWithin(lat, lon, radiusKm, slot -> found.add(record(slot)));
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  /**
+   * Returns the records of all locations within a distance of a polyline.
+   *
+   * @param polyline The route's vertices as latitude/longitude pairs.
+   * @param widthKm The most a location may be from the route, in km.
+   * @return The matching records, each listed once.
+   */
+  public List<T> withinCorridor(List<double[]> polyline, double widthKm) {
+    List<T> found = new ArrayList<>();
+    lock.readLock().lock();
+    try {
+      boolean[] seen = new boolean[size];
+      for (int i = 0; i + 1 < polyline.size() || i == 0 && polyline.size() == 1; i++) {
+        double[] a = polyline.get(i);
+        double[] b = polyline.get(Math.min(i + 1, polyline.size() - 1));
+        double latDelta = widthKm / KM_PER_DEGREE;
+        double lonDelta =
+            latDelta
+                / Math.max(
+                    Math.cos(Math.toRadians(Math.max(Math.abs(a[0]), Math.abs(b[0])))), 1e-6);
+        // Cover long legs with a chain of small boxes rather than one box around the whole leg
+        int pieces =
+            (int)
+                Math.min(
+                    10_000,
+                    Math.max(
+                        1,
+                        Math.ceil(
+                            Math.max(Math.abs(b[0] - a[0]), Math.abs(b[1] - a[1]))
+                                / (2 * cellDegrees))));
+        for (int p = 0; p < pieces; p++) {
+          double lat1 = a[0] + (b[0] - a[0]) * p / pieces;
+          double lat2 = a[0] + (b[0] - a[0]) * (p + 1) / pieces;
+          double lon1 = a[1] + (b[1] - a[1]) * p / pieces;
+          double lon2 = a[1] + (b[1] - a[1]) * (p + 1) / pieces;
+          forEachInBox(
+              Math.min(lat1, lat2) - latDelta,
+              Math.max(lat1, lat2) + latDelta,
+              Math.min(lon1, lon2) - lonDelta,
+              Math.max(lon1, lon2) + lonDelta,
+              slot -> {
+                if (!seen[slot] && segmentDistanceKm(lats[slot], lons[slot], a, b) <= widthKm) {
+                  seen[slot] = true;
+                  found.add(record(slot));
+                }
+              });
+        }
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+    return found;
+  }
+
+  /**
+   * Returns the records of the k locations nearest a point, nearest first.
+   *
+   * @param lat The latitude of the point.
+   * @param lon The longitude of the point.
+   * @param k How many locations to return.
+   * @return Up to k records.
+   */
+  public List<T> nearest(double lat, double lon, int k) {
+    lock.readLock().lock();
+    try {
+      if (k <= 0 || live == 0) {
+        return List.of();
+      }
+      // Bounded max-heap of the best k so far, as parallel arrays
+      int[] heapSlots = new int[k];
+      double[] heapDistances = new double[k];
+      int[] heapSize = {0};
+      int centerY = cell(lat);
+      int centerX = cell(lon);
+      // Past this many cell lookups, scanning every point is cheaper than widening the rings
+      long cellBudget = 4L * Math.max(cellCount, live);
+      long cellsVisited = 0;
+      for (int ring = 0; ; ring++) {
+        // Everything outside the rings visited so far is at least this far away
+        double farthestLat = Math.min(89.9, Math.abs(lat) + ring * cellDegrees);
+        double ringKm =
+            (ring - 1) * cellDegrees * KM_PER_DEGREE * Math.cos(Math.toRadians(farthestLat));
+        if (heapSize[0] == live || heapSize[0] == k && ringKm > heapDistances[0]) {
+          break;
+        }
+        cellsVisited += ring == 0 ? 1 : 8L * ring;
+        if (cellsVisited > cellBudget) {
+          heapSize[0] = 0;
+          for (int slot = 0; slot < size; slot++) {
+            if (alive[slot]) {
+              double distance = GeoUtils.distanceKm(lat, lon, lats[slot], lons[slot]);
+              offer(heapSlots, heapDistances, heapSize, k, slot, distance);
+            }
+          }
+          break;
+        }
+        // Walk the ring's perimeter: full top and bottom rows, then the sides between them
+        for (int y = centerY - ring; y <= centerY + ring; y++) {
+          boolean edgeRow = y == centerY - ring || y == centerY + ring;
+          int step = edgeRow ? 1 : Math.max(1, 2 * ring);
+          for (int x = centerX - ring; x <= centerX + ring; x += step) {
+            for (int slot = head(key(y, x)); slot != NONE; slot = next[slot]) {
+              if (alive[slot]) {
+                double distance = GeoUtils.distanceKm(lat, lon, lats[slot], lons[slot]);
+                offer(heapSlots, heapDistances, heapSize, k, slot, distance);
+              }
+            }
+          }
+        }
+      }
+      // Pop the heap into nearest-first order
+      List<T> ordered = new ArrayList<>(Collections.nCopies(heapSize[0], null));
+      for (int i = heapSize[0] - 1; i >= 0; i--) {
+        ordered.set(i, record(heapSlots[0]));
+        heapSlots[0] = heapSlots[heapSize[0] - 1];
+        heapDistances[0] = heapDistances[heapSize[0] - 1];
+        heapSize[0]--;
+        siftDown(heapSlots, heapDistances, heapSize[0], 0);
+      }
+      return ordered;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Returns a location's score in one category.
+   *
+   * @param id The location's id.
+   * @param category The category, one of {@link #CATEGORIES}.
+   * @return The score, or -1 if the location isn't indexed.
+   */
+  public int score(String id, String category) {
+    lock.readLock().lock();
+    try {
+      Integer slot = slotsById.get(id);
+      int c = CATEGORIES.indexOf(category);
+      if (slot == null || c < 0) {
+        return -1;
+      }
+      return scores[slot * CATEGORIES.size() + c];
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The number of indexed locations.
+   */
+  public int size() {
+    lock.readLock().lock();
+    try {
+      return live;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return The number of slots in use, including dead ones not yet compacted away.
+   */
+  public int slotCount() {
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /** Calls the consumer with every live slot within a radius of a point. Caller holds a lock. */
+  private void forEachWithin(double lat, double lon, double radiusKm, IntConsumer consumer) {
+    double latDelta = radiusKm / KM_PER_DEGREE;
+    double lonDelta = latDelta / Math.max(Math.cos(Math.toRadians(lat)), 1e-6);
+    forEachInBox(
+        lat - latDelta,
+        lat + latDelta,
+        lon - lonDelta,
+        lon + lonDelta,
+        slot -> {
+          if (GeoUtils.distanceKm(lat, lon, lats[slot], lons[slot]) <= radiusKm) {
+            consumer.accept(slot);
+          }
+        });
+  }
+
+  /** Calls the consumer with every live slot in cells overlapping a box. Caller holds a lock. */
+  private void forEachInBox(
+      double minLat, double maxLat, double minLon, double maxLon, IntConsumer consumer) {
+    int minY = cell(minLat);
+    int maxY = cell(maxLat);
+    int minX = cell(minLon);
+    int maxX = cell(maxLon);
+    // Scanning every cell of a huge box is slower than scanning every point
+    if ((long) (maxY - minY + 1) * (maxX - minX + 1) > Math.max(cellCount, 1) * 4L) {
+      for (int slot = 0; slot < size; slot++) {
+        if (alive[slot]
+            && lats[slot] >= minLat
+            && lats[slot] <= maxLat
+            && lons[slot] >= minLon
+            && lons[slot] <= maxLon) {
+          consumer.accept(slot);
+        }
+      }
+      return;
+    }
+    for (int y = minY; y <= maxY; y++) {
+      for (int x = minX; x <= maxX; x++) {
+        for (int slot = head(key(y, x)); slot != NONE; slot = next[slot]) {
+          if (alive[slot]) {
+            consumer.accept(slot);
+          }
+        }
+      }
+    }
+  }
+
+  /** Approximates the distance from a point to a segment by projecting onto a local flat plane. */
+  private static double segmentDistanceKm(double lat, double lon, double[] a, double[] b) {
+    double cos = Math.cos(Math.toRadians(lat));
+    double ax = (a[1] - lon) * cos;
+    double ay = a[0] - lat;
+    double bx = (b[1] - lon) * cos;
+    double by = b[0] - lat;
+    double dx = bx - ax;
+    double dy = by - ay;
+    double lengthSquared = dx * dx + dy * dy;
+    double t =
+        lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared));
+    double px = ax + t * dx;
+    double py = ay + t * dy;
+    return Math.sqrt(px * px + py * py) * KM_PER_DEGREE;
+  }
+
+  private static void offer(
+      int[] heapSlots, double[] heapDistances, int[] heapSize, int k, int slot, double distance) {
+    if (heapSize[0] < k) {
+      int i = heapSize[0]++;
+      heapSlots[i] = slot;
+      heapDistances[i] = distance;
+      // Sift up
+      while (i > 0 && heapDistances[(i - 1) / 2] < heapDistances[i]) {
+        swap(heapSlots, heapDistances, i, (i - 1) / 2);
+        i = (i - 1) / 2;
+      }
+    } else if (distance < heapDistances[0]) {
+      heapSlots[0] = slot;
+      heapDistances[0] = distance;
+      siftDown(heapSlots, heapDistances, heapSize[0], 0);
+    }
+  }
+
+  private static void siftDown(int[] heapSlots, double[] heapDistances, int heapSize, int i) {
+    while (true) {
+      int largest = i;
+      int left = 2 * i + 1;
+      int right = left + 1;
+      if (left < heapSize && heapDistances[left] > heapDistances[largest]) {
+        largest = left;
+      }
+      if (right < heapSize && heapDistances[right] > heapDistances[largest]) {
+        largest = right;
+      }
+      if (largest == i) {
+        return;
+      }
+      swap(heapSlots, heapDistances, i, largest);
+      i = largest;
+    }
+  }
+
+  private static void swap(int[] heapSlots, double[] heapDistances, int i, int j) {
+    int slot = heapSlots[i];
+    heapSlots[i] = heapSlots[j];
+    heapSlots[j] = slot;
+    double distance = heapDistances[i];
+    heapDistances[i] = heapDistances[j];
+    heapDistances[j] = distance;
+  }
+
+  @SuppressWarnings("unchecked")
+  private T record(int slot) {
+    return (T) records[slot];
+  }
+
+  private int cell(double degrees) {
+    return (int) Math.floor(degrees / cellDegrees);
+  }
+
+  private static long key(int y, int x) {
+    return ((long) y << 32) | (x & 0xffffffffL);
+  }
+
+  /** Finds the first slot in a cell, or NONE. Caller holds a lock. */
+  private int head(long key) {
+    int mask = cellKeys.length - 1;
+    for (int i = hash(key) & mask; cellUsed[i]; i = (i + 1) & mask) {
+      if (cellKeys[i] == key) {
+        return cellHeads[i];
+      }
+    }
+    return NONE;
+  }
+
+  /** Pushes a slot onto the front of its cell's list. Caller holds the write lock. */
+  private void link(int slot) {
+    if ((cellCount + 1) * 2 > cellKeys.length) {
+      rehash(cellKeys.length * 2);
+    }
+    long key = key(cell(lats[slot]), cell(lons[slot]));
+    int mask = cellKeys.length - 1;
+    int i = hash(key) & mask;
+    while (cellUsed[i] && cellKeys[i] != key) {
+      i = (i + 1) & mask;
+    }
+    if (!cellUsed[i]) {
+      cellUsed[i] = true;
+      cellKeys[i] = key;
+      cellHeads[i] = NONE;
+      cellCount++;
+    }
+    next[slot] = cellHeads[i];
+    cellHeads[i] = slot;
+  }
+
+  private static int hash(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = cellKeys;
+    int[] oldHeads = cellHeads;
+    boolean[] oldUsed = cellUsed;
+    cellKeys = new long[capacity];
+    cellHeads = new int[capacity];
+    cellUsed = new boolean[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldUsed[i]) {
+        int j = hash(oldKeys[i]) & mask;
+        while (cellUsed[j]) {
+          j = (j + 1) & mask;
+        }
+        cellUsed[j] = true;
+        cellKeys[j] = oldKeys[i];
+        cellHeads[j] = oldHeads[i];
+      }
+    }
+  }
+
+  /** Marks a slot dead; it stays in its cell list until the next compaction. */
+  private void kill(int slot) {
+    if (alive[slot]) {
+      alive[slot] = false;
+      records[slot] = null;
+      live--;
+    }
+  }
+
+  /** Compacts once dead slots outnumber live ones. Caller holds the write lock. */
+  private void compactIfSparse() {
+    if (size - live > live && size > 64) {
+      compact();
+    }
+  }
+
+  /** Drops dead slots and rebuilds the grid. Caller holds the write lock. */
+  private void compact() {
+    int target = 0;
+    for (int slot = 0; slot < size; slot++) {
+      if (!alive[slot]) {
+        continue;
+      }
+      lats[target] = lats[slot];
+      lons[target] = lons[slot];
+      System.arraycopy(
+          scores, slot * CATEGORIES.size(), scores, target * CATEGORIES.size(), CATEGORIES.size());
+      ids[target] = ids[slot];
+      records[target] = records[slot];
+      alive[target] = true;
+      slotsById.put(ids[target], target);
+      target++;
+    }
+    Arrays.fill(alive, target, size, false);
+    Arrays.fill(ids, target, size, null);
+    Arrays.fill(records, target, size, null);
+    size = target;
+    cellKeys = new long[cellKeys.length];
+    cellHeads = new int[cellKeys.length];
+    cellUsed = new boolean[cellKeys.length];
+    cellCount = 0;
+    for (int slot = 0; slot < size; slot++) {
+      link(slot);
+    }
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= lats.length) {
+      return;
+    }
+    int grown = Math.max(capacity, lats.length * 2);
+    lats = Arrays.copyOf(lats, grown);
+    lons = Arrays.copyOf(lons, grown);
+    scores = Arrays.copyOf(scores, grown * CATEGORIES.size());
+    next = Arrays.copyOf(next, grown);
+    alive = Arrays.copyOf(alive, grown);
+    ids = Arrays.copyOf(ids, grown);
+    records = Arrays.copyOf(records, grown);
+  }
+}
@@ -0,0 +1,146 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+/**
+ * A safety-rated location from Amadeus. Its fields are named after the Amadeus JSON, so it
+ * serializes back into the shape the frontend reads.
+ */
+public class SafetyLocation {
+
+  /** A latitude/longitude pair. */
+  public static class GeoCode {
+    private final double latitude;
+    private final double longitude;
+
+    public GeoCode(double latitude, double longitude) {
+      this.latitude = latitude;
+      this.longitude = longitude;
+    }
+
+    public double getLatitude() {
+      return latitude;
+    }
+
+    public double getLongitude() {
+      return longitude;
+    }
+  }
+
+  /** Safety scores from 1 (safest) to 100 (least safe); 0 when Amadeus leaves one out. */
+  public static class SafetyScores {
+    private final int overall;
+    private final int lgbtq;
+    private final int medical;
+    private final int physicalHarm;
+    private final int politicalFreedom;
+    private final int theft;
+    private final int women;
+
+    public SafetyScores(
+        int overall,
+        int lgbtq,
+        int medical,
+        int physicalHarm,
+        int politicalFreedom,
+        int theft,
+        int women) {
+      this.overall = overall;
+      this.lgbtq = lgbtq;
+      this.medical = medical;
+      this.physicalHarm = physicalHarm;
+      this.politicalFreedom = politicalFreedom;
+      this.theft = theft;
+      this.women = women;
+    }
+
+    public int getOverall() {
+      return overall;
+    }
+
+    public int getLgbtq() {
+      return lgbtq;
+    }
+
+    public int getMedical() {
+      return medical;
+    }
+
+    public int getPhysicalHarm() {
+      return physicalHarm;
+    }
+
+    public int getPoliticalFreedom() {
+      return politicalFreedom;
+    }
+
+    public int getTheft() {
+      return theft;
+    }
+
+    public int getWomen() {
+      return women;
+    }
+
+    /**
+     * @return The scores in {@link SafetyIndex#CATEGORIES} order.
+     */
+    public int[] toArray() {
+      return new int[] {overall, lgbtq, medical, physicalHarm, politicalFreedom, theft, women};
+    }
+  }
+
+  private final String id;
+  private final String type;
+  private final String subType;
+  private final String name;
+  private final GeoCode geoCode;
+  private final SafetyScores safetyScores;
+
+  /**
+   * Constructs a location.
+   *
+   * @param id The Amadeus id.
+   * @param type The record type, "safety-rated-location".
+   * @param subType The kind of place, such as "CITY" or "DISTRICT".
+   * @param name The place's name.
+   * @param geoCode Where the place is, or null if Amadeus didn't say.
+   * @param safetyScores The place's scores, or null if Amadeus didn't give any.
+   */
+  public SafetyLocation(
+      String id,
+      String type,
+      String subType,
+      String name,
+      GeoCode geoCode,
+      SafetyScores safetyScores) {
+    this.id = id;
+    this.type = type;
+    this.subType = subType;
+    this.name = name;
+    this.geoCode = geoCode;
+    this.safetyScores = safetyScores;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getSubType() {
+    return subType;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public GeoCode getGeoCode() {
+    return geoCode;
+  }
+
+  public SafetyScores getSafetyScores() {
+    return safetyScores;
+  }
+}
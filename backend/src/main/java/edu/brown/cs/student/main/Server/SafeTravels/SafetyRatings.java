@@ -0,0 +1,92 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import java.util.List;
+
+/**
+ * The safety-rated locations answering one query, listed under "data" as Amadeus does. Corridor
+ * queries also describe how the route was sampled under "meta".
+ */
+public class SafetyRatings {
+
+  /** How a corridor query was sampled. */
+  public static class Meta {
+    private final int samples;
+    private final int answered;
+    private final int radius;
+    private final boolean partial;
+
+    /**
+     * @param samples How many points were sampled along the route.
+     * @param answered How many of them were looked up in time.
+     * @param radius The radius looked up around each point, in km.
+     */
+    public Meta(int samples, int answered, int radius) {
+      this.samples = samples;
+      this.answered = answered;
+      this.radius = radius;
+      this.partial = answered < samples;
+    }
+
+    public int getSamples() {
+      return samples;
+    }
+
+    public int getAnswered() {
+      return answered;
+    }
+
+    public int getRadius() {
+      return radius;
+    }
+
+    public boolean isPartial() {
+      return partial;
+    }
+  }
+
+  private final List<SafetyLocation> data;
+  private final Meta meta;
+  // Not sent to clients
+  private final transient boolean complete;
+
+  public SafetyRatings(List<SafetyLocation> data) {
+    this(data, null);
+  }
+
+  /**
+   * @param data The locations.
+   * @param complete false if upstream had more locations than these, on pages not fetched.
+   */
+  public SafetyRatings(List<SafetyLocation> data, boolean complete) {
+    this(data, null, complete);
+  }
+
+  /**
+   * @param data The locations.
+   * @param meta How a corridor query was sampled, or null for other queries.
+   */
+  public SafetyRatings(List<SafetyLocation> data, Meta meta) {
+    this(data, meta, true);
+  }
+
+  private SafetyRatings(List<SafetyLocation> data, Meta meta, boolean complete) {
+    this.data = data;
+    this.meta = meta;
+    this.complete = complete;
+  }
+
+  public List<SafetyLocation> getData() {
+    return data;
+  }
+
+  public Meta getMeta() {
+    return meta;
+  }
+
+  /**
+   * @return false if upstream had more locations than these, on pages that weren't fetched.
+   */
+  public boolean isComplete() {
+    return complete;
+  }
+}
@@ -0,0 +1,295 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches Amadeus safety-rated locations by map tile.
+ *
+ * <p>The world is cut into slippy-map tiles at a fixed zoom. A query for all locations within a
+ * radius of a point is answered from the tiles the circle touches; only tiles that aren't cached
+ * are fetched, each with one upstream query centered on the tile that covers it entirely. Tiles
+ * expire after a TTL, and the cache holds at most {@code maxLocations} locations in total.
+ *
+ * <p>Queries touching more than {@code maxTilesPerQuery} tiles go straight upstream instead, so one
+ * wide query can't fan out into hundreds of tile fetches.
+ *
+ * <p>Every cached location is also kept in a {@link SafetyIndex}, which answers the radius queries
+ * once their tiles are loaded. Locations enter the index as their tile arrives and leave it when
+ * the tile expires or is evicted.
+ */
+public class SafetyTileCache {
+
+  /** Fetches the safety ratings within a radius of a point from upstream. */
+  public interface Fetcher {
+    CompletableFuture<SafetyRatings> fetch(double lat, double lon, int radiusKm);
+  }
+
+  private final int zoom;
+  private final int maxTilesPerQuery;
+  private final Cache<Long, List<SafetyLocation>> tiles;
+  private final Map<Long, CompletableFuture<Tile>> inFlight = new ConcurrentHashMap<>();
+  private final AtomicLong bypasses = new AtomicLong();
+  private final SafetyIndex<SafetyLocation> index = new SafetyIndex<>(0.01);
+
+  /**
+   * Constructs a tile cache.
+   *
+   * @param zoom The slippy-map zoom level of the tiles; 13 is about 3-5km across.
+   * @param ttl How long a fetched tile is kept.
+   * @param maxLocations The most locations kept across all tiles.
+   * @param maxTilesPerQuery The most tiles a query may touch before it bypasses the cache.
+   */
+  public SafetyTileCache(int zoom, Duration ttl, long maxLocations, int maxTilesPerQuery) {
+    this.zoom = zoom;
+    this.maxTilesPerQuery = maxTilesPerQuery;
+    this.tiles =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxLocations)
+            .<Long, List<SafetyLocation>>weigher((tile, locations) -> locations.size() + 1)
+            .expireAfterWrite(ttl)
+            .<Long, List<SafetyLocation>>removalListener(
+                removal -> {
+                  // Identity checks keep a replaced tile from removing its replacement's locations
+                  if (removal.getValue() != null) {
+                    for (SafetyLocation location : removal.getValue()) {
+                      index.remove(id(location), location);
+                    }
+                  }
+                })
+            .recordStats()
+            .build();
+  }
+
+  /**
+   * Returns the safety-rated locations within a radius of a point.
+   *
+   * @param lat The latitude of the point.
+   * @param lon The longitude of the point.
+   * @param radiusKm The radius in km.
+   * @param fetcher Fetches tiles (or the whole query, if it is too wide) from upstream.
+   * @return A future completing with the locations within the radius.
+   */
+  public CompletableFuture<SafetyRatings> get(
+      double lat, double lon, int radiusKm, Fetcher fetcher) {
+    // Bounding box of the circle, in tile coordinates
+    double latDelta = Math.toDegrees(radiusKm / GeoUtils.EARTH_RADIUS_KM);
+    double lonDelta = latDelta / Math.max(Math.cos(Math.toRadians(lat)), 1e-6);
+    int minX = tileX(lon - lonDelta);
+    int maxX = tileX(lon + lonDelta);
+    int minY = tileY(Math.min(85.05, lat + latDelta));
+    int maxY = tileY(Math.max(-85.05, lat - latDelta));
+    // Circles crossing the antimeridian wrap around and also go straight upstream
+    if (minX > maxX || (long) (maxX - minX + 1) * (maxY - minY + 1) > maxTilesPerQuery) {
+      bypasses.incrementAndGet();
+      return fetcher.fetch(lat, lon, radiusKm);
+    }
+
+    List<CompletableFuture<Tile>> covering = new ArrayList<>();
+    for (int x = minX; x <= maxX; x++) {
+      for (int y = minY; y <= maxY; y++) {
+        covering.add(tile(x, y, fetcher));
+      }
+    }
+    return CompletableFuture.allOf(covering.toArray(new CompletableFuture<?>[0]))
+        .thenApply(
+            done -> {
+              List<SafetyLocation> found = index.withinRadius(lat, lon, radiusKm);
+              boolean complete = true;
+              // Tiles upstream couldn't list in full aren't indexed; use what they did list
+              for (CompletableFuture<Tile> tile : covering) {
+                if (!tile.join().complete) {
+                  complete = false;
+                  for (SafetyLocation location : tile.join().locations) {
+                    SafetyLocation.GeoCode position = location.getGeoCode();
+                    if (GeoUtils.distanceKm(
+                            lat, lon, position.getLatitude(), position.getLongitude())
+                        <= radiusKm) {
+                      found.add(location);
+                    }
+                  }
+                }
+              }
+              return new SafetyRatings(found, complete);
+            });
+  }
+
+  /** A tile's locations, and whether they are all of them and so cached. */
+  private static final class Tile {
+    private final List<SafetyLocation> locations;
+    private final boolean complete;
+
+    private Tile(List<SafetyLocation> locations, boolean complete) {
+      this.locations = locations;
+      this.complete = complete;
+    }
+  }
+
+  /**
+   * Returns a tile's locations, fetching the tile if it isn't cached. Concurrent misses for the
+   * same tile share one fetch.
+   *
+   * <p>A fetch that upstream answers only in part, with more pages than were followed, is used for
+   * the queries waiting on it but neither cached nor indexed, since later queries would silently
+   * miss the rest of the tile.
+   *
+   * @param x The tile's x coordinate.
+   * @param y The tile's y coordinate.
+   * @param fetcher Fetches the tile from upstream.
+   * @return A future completing with the locations in the tile.
+   */
+  private CompletableFuture<Tile> tile(int x, int y, Fetcher fetcher) {
+    long key = key(x, y);
+    List<SafetyLocation> cached = tiles.getIfPresent(key);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(new Tile(cached, true));
+    }
+    CompletableFuture<Tile> load = new CompletableFuture<>();
+    CompletableFuture<Tile> existing = inFlight.putIfAbsent(key, load);
+    if (existing != null) {
+      return existing;
+    }
+
+    double north = tileLat(y);
+    double south = tileLat(y + 1);
+    double west = tileLon(x);
+    double east = tileLon(x + 1);
+    double centerLat = (north + south) / 2;
+    double centerLon = (west + east) / 2;
+    // A circle through the tile's corners covers all of it
+    int radius =
+        (int) Math.min(20, Math.ceil(GeoUtils.distanceKm(centerLat, centerLon, north, west)));
+
+    CompletableFuture<SafetyRatings> fetched;
+    try {
+      fetched = fetcher.fetch(centerLat, centerLon, radius);
+    } catch (RuntimeException e) {
+      fetched = CompletableFuture.failedFuture(e);
+    }
+    fetched.whenComplete(
+        (response, error) -> {
+          if (error != null) {
+            inFlight.remove(key, load);
+            load.completeExceptionally(
+                error instanceof CompletionException ? error.getCause() : error);
+            return;
+          }
+          // Keep only this tile's locations; the rest belong to (and are fetched with) neighbours
+          List<SafetyLocation> inTile = new ArrayList<>();
+          if (response != null && response.getData() != null) {
+            for (SafetyLocation location : response.getData()) {
+              SafetyLocation.GeoCode position = location.getGeoCode();
+              if (position != null
+                  && tileX(position.getLongitude()) == x
+                  && tileY(position.getLatitude()) == y) {
+                inTile.add(location);
+              }
+            }
+          }
+          if (response != null && !response.isComplete()) {
+            inFlight.remove(key, load);
+            load.complete(new Tile(inTile, false));
+            return;
+          }
+          for (SafetyLocation location : inTile) {
+            SafetyLocation.GeoCode position = location.getGeoCode();
+            index.put(
+                id(location),
+                position.getLatitude(),
+                position.getLongitude(),
+                scores(location),
+                location);
+          }
+          tiles.put(key, inTile);
+          inFlight.remove(key, load);
+          load.complete(new Tile(inTile, true));
+        });
+    return load;
+  }
+
+  /**
+   * Returns a location's id, falling back to its position for locations without one.
+   *
+   * @param location A safety-rated location with a position.
+   * @return Its id.
+   */
+  private static String id(SafetyLocation location) {
+    if (location.getId() != null) {
+      return location.getId();
+    }
+    return location.getGeoCode().getLatitude() + "," + location.getGeoCode().getLongitude();
+  }
+
+  /**
+   * Returns a location's scores in {@link SafetyIndex#CATEGORIES} order.
+   *
+   * @param location A safety-rated location.
+   * @return Its scores; all 0 if it has none.
+   */
+  private static int[] scores(SafetyLocation location) {
+    SafetyLocation.SafetyScores scores = location.getSafetyScores();
+    return scores == null ? new int[SafetyIndex.CATEGORIES.size()] : scores.toArray();
+  }
+
+  private int tileX(double lon) {
+    int n = 1 << zoom;
+    return Math.floorMod((int) Math.floor((lon + 180) / 360 * n), n);
+  }
+
+  private int tileY(double lat) {
+    int n = 1 << zoom;
+    double latRad = Math.toRadians(lat);
+    int y =
+        (int) Math.floor((1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2 * n);
+    return Math.max(0, Math.min(n - 1, y));
+  }
+
+  private double tileLon(int x) {
+    return (double) x / (1 << zoom) * 360 - 180;
+  }
+
+  private double tileLat(int y) {
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2.0 * y / (1 << zoom)))));
+  }
+
+  private static long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xffffffffL);
+  }
+
+  /**
+   * @return Hit, miss and eviction counts for tiles.
+   */
+  public CacheStats stats() {
+    return tiles.stats();
+  }
+
+  /**
+   * @return How many queries were too wide for the cache and went straight upstream.
+   */
+  public long bypassCount() {
+    return bypasses.get();
+  }
+
+  /**
+   * @return The index over every cached location.
+   */
+  public SafetyIndex<SafetyLocation> index() {
+    return index;
+  }
+
+  /**
+   * @return The number of cached tiles.
+   */
+  public long size() {
+    return tiles.size();
+  }
+}
@@ -0,0 +1,398 @@
+package edu.brown.cs.student.main.Server.SafeTravels;
+
+import com.squareup.moshi.JsonReader;
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads the few fields the server needs out of upstream responses, one token at a time.
+ *
+ * <p>Everything else (address components, links, warnings, the rest of the results) is skipped
+ * without being materialized, and numbers are read straight into primitives instead of boxed
+ * Doubles in a map tree.
+ */
+public final class UpstreamParsers {
+
+  // Field names are matched against these without allocating a String per name
+  private static final JsonReader.Options RESULTS_STATUS =
+      JsonReader.Options.of("results", "status", "error_message");
+  private static final JsonReader.Options STATUS = JsonReader.Options.of("status");
+  private static final JsonReader.Options GEOMETRY = JsonReader.Options.of("geometry");
+  private static final JsonReader.Options LOCATION = JsonReader.Options.of("location");
+  private static final JsonReader.Options LAT_LNG = JsonReader.Options.of("lat", "lng");
+  private static final JsonReader.Options DATA_META = JsonReader.Options.of("data", "meta");
+  private static final JsonReader.Options LINKS = JsonReader.Options.of("links");
+  private static final JsonReader.Options NEXT = JsonReader.Options.of("next");
+  private static final JsonReader.Options LOCATION_FIELDS =
+      JsonReader.Options.of("id", "type", "subType", "name", "geoCode", "safetyScores");
+  private static final JsonReader.Options LATITUDE_LONGITUDE =
+      JsonReader.Options.of("latitude", "longitude");
+  private static final JsonReader.Options CATEGORIES =
+      JsonReader.Options.of(SafetyIndex.CATEGORIES.toArray(new String[0]));
+  // Values repeated in every location are shared instead of decoded each time
+  private static final List<String> COMMON_VALUES =
+      List.of("safety-rated-location", "CITY", "DISTRICT", "POINT_OF_INTEREST");
+  private static final JsonReader.Options COMMON =
+      JsonReader.Options.of(COMMON_VALUES.toArray(new String[0]));
+
+  private static final Set<String> GEOCODE_FAULTS =
+      Set.of("OVER_QUERY_LIMIT", "OVER_DAILY_LIMIT", "REQUEST_DENIED", "UNKNOWN_ERROR");
+
+  private UpstreamParsers() {}
+
+  /**
+   * Reads {@code results[0].geometry.location} from a Geocoding API response.
+   *
+   * @param reader A reader positioned at the start of the response.
+   * @return The latitude and longitude.
+   * @throws DatasourceException If the response has no results, reports an error status, or isn't
+   *     shaped as expected. Only {@code ZERO_RESULTS} is reported as {@link
+   *     GeocodeCache#NO_RESULTS}.
+   * @throws IOException If the response isn't valid JSON.
+   */
+  public static double[] readCoordinates(JsonReader reader)
+      throws DatasourceException, IOException {
+    double[] location = null;
+    boolean sawResults = false;
+    boolean empty = true;
+    String status = null;
+    String errorMessage = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      int field = reader.selectName(RESULTS_STATUS);
+      if (field < 0) {
+        reader.skipName();
+        reader.skipValue();
+        continue;
+      }
+      JsonReader.Token expected =
+          field == 0 ? JsonReader.Token.BEGIN_ARRAY : JsonReader.Token.STRING;
+      if (reader.peek() != expected) {
+        reader.skipValue();
+        continue;
+      }
+      if (field == 1) {
+        status = reader.nextString();
+        continue;
+      }
+      if (field == 2) {
+        errorMessage = reader.nextString();
+        continue;
+      }
+      sawResults = true;
+      reader.beginArray();
+      if (reader.hasNext()) {
+        empty = false;
+        location = readFirstResult(reader);
+      }
+      while (reader.hasNext()) {
+        reader.skipValue();
+      }
+      reader.endArray();
+    }
+    reader.endObject();
+
+    // Google answers 200 with empty results for quota and key problems too
+    if ("ZERO_RESULTS".equals(status)) {
+      throw new DatasourceException(GeocodeCache.NO_RESULTS);
+    }
+    if (status != null && !"OK".equals(status)) {
+      throw new DatasourceException(
+          "Geocoding API error: " + status + (errorMessage == null ? "" : ": " + errorMessage));
+    }
+    if (!sawResults) {
+      throw new DatasourceException("Invalid response from Geocoding API");
+    }
+    if (empty) {
+      throw new DatasourceException(GeocodeCache.NO_RESULTS);
+    }
+    if (location == null) {
+      throw new DatasourceException("Invalid response from Geocoding API: result has no location");
+    }
+    return location;
+  }
+
+  /**
+   * Reads just the top-level {@code status} of a Geocoding API response.
+   *
+   * @param reader A reader positioned at the start of the response.
+   * @return The status, or null if there is none.
+   * @throws IOException If the response isn't valid JSON.
+   */
+  public static String readGeocodeStatus(JsonReader reader) throws IOException {
+    String status = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.selectName(STATUS) == 0 && reader.peek() == JsonReader.Token.STRING) {
+        status = reader.nextString();
+      } else {
+        if (reader.peek() == JsonReader.Token.NAME) {
+          reader.skipName();
+        }
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return status;
+  }
+
+  /**
+   * Decides whether a Geocoding API status is Google failing, rather than an answer: over quota, a
+   * rejected key, or a server error. {@code INVALID_REQUEST} is left out, since retrying the same
+   * request won't help and the breaker shouldn't open on bad input.
+   *
+   * @param status The response's status, or null.
+   * @return true if the status should count against the circuit breaker.
+   */
+  public static boolean isGeocodeFault(String status) {
+    return status != null && GEOCODE_FAULTS.contains(status);
+  }
+
+  /** Reads a result's geometry.location, or returns null if it has none. */
+  private static double[] readFirstResult(JsonReader reader) throws IOException {
+    double[] location = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.selectName(GEOMETRY) < 0) {
+        reader.skipName();
+        reader.skipValue();
+        continue;
+      }
+      if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.selectName(LOCATION) < 0) {
+          reader.skipName();
+          reader.skipValue();
+        } else if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+          location = readLatLng(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    reader.endObject();
+    return location;
+  }
+
+  /** Reads {"lat": ..., "lng": ...}, or returns null if either is missing. */
+  private static double[] readLatLng(JsonReader reader) throws IOException {
+    double lat = Double.NaN;
+    double lng = Double.NaN;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.selectName(LAT_LNG)) {
+        case 0:
+          lat = reader.nextDouble();
+          break;
+        case 1:
+          lng = reader.nextDouble();
+          break;
+        default:
+          reader.skipName();
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return Double.isNaN(lat) || Double.isNaN(lng) ? null : new double[] {lat, lng};
+  }
+
+  /**
+   * Reads the locations out of an Amadeus safety-rated-locations response.
+   *
+   * @param reader A reader positioned at the start of the response.
+   * @return The locations; empty if the response lists none. They are marked incomplete if the
+   *     response links to a next page.
+   * @throws IOException If the response isn't valid JSON.
+   */
+  public static SafetyRatings readSafetyRatings(JsonReader reader) throws IOException {
+    List<SafetyLocation> locations = new ArrayList<>();
+    boolean morePages = readLocationsAndLinks(reader, locations::add);
+    return new SafetyRatings(locations, !morePages);
+  }
+
+  /**
+   * Reads safety-rated locations one at a time, without holding them all, from a response shaped
+   * like Amadeus' or from a bare array of locations.
+   *
+   * @param reader A reader positioned at the start of the document.
+   * @param consumer Receives each location as it is read.
+   * @throws IOException If the document isn't valid JSON.
+   */
+  public static void readLocations(JsonReader reader, Consumer<SafetyLocation> consumer)
+      throws IOException {
+    readLocationsAndLinks(reader, consumer);
+  }
+
+  /**
+   * Reads locations as {@link #readLocations} does.
+   *
+   * @return true if the document has a {@code meta.links.next} page link.
+   */
+  private static boolean readLocationsAndLinks(JsonReader reader, Consumer<SafetyLocation> consumer)
+      throws IOException {
+    if (reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+      readLocationArray(reader, consumer);
+      return false;
+    }
+    boolean morePages = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      int field = reader.selectName(DATA_META);
+      if (field < 0) {
+        reader.skipName();
+        reader.skipValue();
+      } else if (field == 0 && reader.peek() == JsonReader.Token.BEGIN_ARRAY) {
+        readLocationArray(reader, consumer);
+      } else if (field == 1 && reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+        morePages = readHasNextLink(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return morePages;
+  }
+
+  /** Reads a {@code meta} object, returning whether it has a non-null {@code links.next}. */
+  private static boolean readHasNextLink(JsonReader reader) throws IOException {
+    boolean next = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      if (reader.selectName(LINKS) < 0) {
+        reader.skipName();
+        reader.skipValue();
+        continue;
+      }
+      if (reader.peek() != JsonReader.Token.BEGIN_OBJECT) {
+        reader.skipValue();
+        continue;
+      }
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if (reader.selectName(NEXT) < 0) {
+          reader.skipName();
+        } else if (reader.peek() != JsonReader.Token.NULL) {
+          next = true;
+        }
+        reader.skipValue();
+      }
+      reader.endObject();
+    }
+    reader.endObject();
+    return next;
+  }
+
+  private static void readLocationArray(JsonReader reader, Consumer<SafetyLocation> consumer)
+      throws IOException {
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (reader.peek() == JsonReader.Token.BEGIN_OBJECT) {
+        consumer.accept(readLocation(reader));
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endArray();
+  }
+
+  private static SafetyLocation readLocation(JsonReader reader) throws IOException {
+    String id = null;
+    String type = null;
+    String subType = null;
+    String name = null;
+    SafetyLocation.GeoCode geoCode = null;
+    SafetyLocation.SafetyScores scores = null;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      int field = reader.selectName(LOCATION_FIELDS);
+      if (field < 0) {
+        reader.skipName();
+        reader.skipValue();
+        continue;
+      }
+      if (reader.peek() == JsonReader.Token.NULL) {
+        reader.skipValue();
+        continue;
+      }
+      switch (field) {
+        case 0:
+          id = reader.nextString();
+          break;
+        case 1:
+          type = readCommonString(reader);
+          break;
+        case 2:
+          subType = readCommonString(reader);
+          break;
+        case 3:
+          name = reader.nextString();
+          break;
+        case 4:
+          geoCode = readGeoCode(reader);
+          break;
+        default:
+          scores = readScores(reader);
+      }
+    }
+    reader.endObject();
+    return new SafetyLocation(id, type, subType, name, geoCode, scores);
+  }
+
+  /** Reads a string, sharing the instance if it is one of the common values. */
+  private static String readCommonString(JsonReader reader) throws IOException {
+    int common = reader.selectString(COMMON);
+    return common >= 0 ? COMMON_VALUES.get(common) : reader.nextString();
+  }
+
+  private static SafetyLocation.GeoCode readGeoCode(JsonReader reader) throws IOException {
+    double latitude = Double.NaN;
+    double longitude = Double.NaN;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      switch (reader.selectName(LATITUDE_LONGITUDE)) {
+        case 0:
+          latitude = reader.nextDouble();
+          break;
+        case 1:
+          longitude = reader.nextDouble();
+          break;
+        default:
+          reader.skipName();
+          reader.skipValue();
+      }
+    }
+    reader.endObject();
+    if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+      return null;
+    }
+    return new SafetyLocation.GeoCode(latitude, longitude);
+  }
+
+  private static SafetyLocation.SafetyScores readScores(JsonReader reader) throws IOException {
+    int[] scores = new int[SafetyIndex.CATEGORIES.size()];
+    reader.beginObject();
+    while (reader.hasNext()) {
+      int category = reader.selectName(CATEGORIES);
+      if (category < 0) {
+        reader.skipName();
+        reader.skipValue();
+      } else if (reader.peek() == JsonReader.Token.NUMBER) {
+        scores[category] = (int) Math.round(reader.nextDouble());
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return new SafetyLocation.SafetyScores(
+        scores[0], scores[1], scores[2], scores[3], scores[4], scores[5], scores[6]);
+  }
+}
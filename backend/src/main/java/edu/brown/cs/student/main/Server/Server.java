@@ -1,14 +1,38 @@
 package edu.brown.cs.student.main.Server;
 
-import static spark.Spark.after;
+import static spark.Spark.before;
 
+import com.google.common.cache.CacheStats;
 import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.History.HistoryHandler;
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import edu.brown.cs.student.main.Server.History.SuggestHandler;
+import edu.brown.cs.student.main.Server.Http.UpstreamClient;
+import edu.brown.cs.student.main.Server.Http.UpstreamPolicy;
+import edu.brown.cs.student.main.Server.Http.UpstreamsHandler;
+import edu.brown.cs.student.main.Server.LoginHandler.DurableCredentialStore;
 import edu.brown.cs.student.main.Server.LoginHandler.LoginManager;
+import edu.brown.cs.student.main.Server.LoginHandler.SessionFilter;
 import edu.brown.cs.student.main.Server.Maps.MapBoxHandler;
+import edu.brown.cs.student.main.Server.Metrics.MetricsHandler;
+import edu.brown.cs.student.main.Server.Metrics.MetricsRegistry;
+import edu.brown.cs.student.main.Server.Metrics.TimedRoute;
+import edu.brown.cs.student.main.Server.RateLimit.RateLimitFilter;
+import edu.brown.cs.student.main.Server.RateLimit.RateLimiter;
+import edu.brown.cs.student.main.Server.SafeTravels.APIClient;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyDataset;
 import edu.brown.cs.student.main.Server.SafeTravels.SafetyHandler;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import spark.Route;
 import spark.Spark;
 
@@ -24,16 +48,31 @@ public class Server {
   // Flag to indicate if the CSV file has been loaded
   private static Boolean fileLoaded = Boolean.FALSE;
 
-  // Persistent search history
-  private static ArrayList<String> searchHistory = new ArrayList<String>();
+  // Where everything below is kept between restarts; -Dserver.dataDir keeps it elsewhere, so a
+  // load test doesn't fill the real history and caches
+  private static final String DATA_DIR = System.getProperty("server.dataDir", "data");
 
-  // Set search history
-  public static void setHistory(String h) {
-    searchHistory.add(h);
-  }
+  // Where cached geocoding results are kept between restarts
+  private static final String GEOCODE_SNAPSHOT = DATA_DIR + "/cache/geocode_snapshot.tsv";
+
+  // Where registered users are kept between restarts
+  private static final String USERS_DIR = DATA_DIR + "/users";
+
+  // Where search history is logged between restarts
+  private static final String HISTORY_DIR = DATA_DIR + "/history";
+
+  // Searches kept per user
+  private static final int HISTORY_PER_USER = 500;
 
-  // Get search history
-  public static ArrayList<String> getHistory() {
+  // Search history; in memory until main opens the persistent one
+  private static volatile SearchHistory searchHistory = new SearchHistory(HISTORY_PER_USER);
+
+  /**
+   * Get the search history.
+   *
+   * @return The history searches are recorded in.
+   */
+  public static SearchHistory getHistory() {
     return searchHistory;
   }
 
@@ -77,30 +116,279 @@ public class Server {
     rows.addAll(updatedRows);
   }
 
+  /**
+   * Closes a resource on shutdown, reporting rather than throwing failures.
+   *
+   * @param resource The resource to close.
+   */
+  private static void closeQuietly(Closeable resource) {
+    try {
+      resource.close();
+    } catch (IOException e) {
+      System.err.println("Could not close " + resource + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Chooses the threads Jetty handles requests on, from the {@code server.threads} system property:
+   * {@code virtual} for a virtual thread per request on Java 21 and later, or {@code platform} (the
+   * default) for Spark's pool, sized by {@code server.maxThreads} if set.
+   */
+  private static void configureThreads() {
+    if ("virtual".equals(System.getProperty("server.threads"))) {
+      if (VirtualThreadPool.install()) {
+        System.out.println("Handling requests on virtual threads");
+        return;
+      }
+      System.err.println("Virtual threads need Java 21 or later; using the platform pool");
+    }
+    String maxThreads = System.getProperty("server.maxThreads");
+    if (maxThreads != null) {
+      Spark.threadPool(Integer.parseInt(maxThreads));
+    }
+  }
+
+  /**
+   * Answers safety queries from an offline export instead of Amadeus, checking the file every
+   * {@code safety.datasetReloadSeconds} (60 by default) and swapping in a new dataset when it has
+   * been replaced. A new export should be written beside the old one and renamed over it; one that
+   * fails to load leaves the current dataset in use.
+   *
+   * @param client The client answering safety queries.
+   * @param path The export, as JSON or CSV.
+   */
+  private static void useSafetyDataset(APIClient client, Path path) {
+    Runnable reload =
+        () -> {
+          SafetyDataset current = client.getDataset();
+          try {
+            if (current == null || current.changed()) {
+              SafetyDataset loaded = SafetyDataset.open(path);
+              client.useDataset(loaded);
+              System.out.println(
+                  "Loaded " + loaded.size() + " safety-rated locations from " + path);
+            }
+          } catch (IOException e) {
+            System.err.println("Could not load safety dataset: " + e.getMessage());
+          }
+        };
+    reload.run();
+    if (client.getDataset() == null) {
+      System.err.println("Querying Amadeus until the safety dataset loads");
+    }
+    long seconds = Long.getLong("safety.datasetReloadSeconds", 60);
+    ScheduledExecutorService reloader =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "safety-dataset-reloader");
+              thread.setDaemon(true);
+              return thread;
+            });
+    reloader.scheduleWithFixedDelay(reload, seconds, seconds, TimeUnit.SECONDS);
+    MetricsRegistry.getShared()
+        .gauge(
+            "safety_dataset_locations",
+            "Locations in the offline safety dataset",
+            "source",
+            path.getFileName().toString(),
+            () -> {
+              SafetyDataset dataset = client.getDataset();
+              return dataset == null ? 0 : dataset.size();
+            });
+  }
+
+  /**
+   * Times a route, by its path, in the shared metrics.
+   *
+   * @param path The route's path.
+   * @param route The route.
+   * @return The route, timed.
+   */
+  private static Route timed(String path, Route route) {
+    return new TimedRoute(
+        route, MetricsRegistry.getShared().timing("http_request", "requests", "route", path));
+  }
+
+  /**
+   * Exports a cache's hit and miss counts, and its hit ratio, to the shared metrics.
+   *
+   * @param cache The cache's label.
+   * @param stats Reads the cache's current statistics.
+   */
+  private static void cacheMetrics(String cache, Supplier<CacheStats> stats) {
+    MetricsRegistry metrics = MetricsRegistry.getShared();
+    metrics.counter(
+        "cache_hits_total",
+        "Lookups answered from a cache",
+        "cache",
+        cache,
+        () -> stats.get().hitCount());
+    metrics.counter(
+        "cache_misses_total",
+        "Lookups a cache could not answer",
+        "cache",
+        cache,
+        () -> stats.get().missCount());
+    metrics.gauge(
+        "cache_hit_ratio",
+        "Share of lookups answered from a cache",
+        "cache",
+        cache,
+        () -> stats.get().hitRate());
+  }
+
+  /**
+   * Exports the caches' statistics and each upstream's circuit breaker, retries and hedges to the
+   * shared metrics. Request timings are registered as the routes and upstream calls are.
+   */
+  private static void registerMetrics() {
+    cacheMetrics("geocode", APIClient.getSharedGeocodeCache()::stats);
+    cacheMetrics("safety_tiles", APIClient.getSharedTileCache()::stats);
+    cacheMetrics("mapbox", MapBoxHandler.getSharedCache()::stats);
+    MetricsRegistry metrics = MetricsRegistry.getShared();
+    metrics.counter(
+        "cache_stale_hits_total",
+        "Failed lookups answered with a stale entry",
+        "cache",
+        "geocode",
+        APIClient.getSharedGeocodeCache()::staleHitCount);
+    metrics.counter(
+        "cache_stale_hits_total",
+        "Failed lookups answered with a stale entry",
+        "cache",
+        "mapbox",
+        MapBoxHandler.getSharedCache()::staleHitCount);
+
+    for (UpstreamPolicy policy : UpstreamPolicy.allShared().values()) {
+      String name = policy.getName();
+      metrics.gauge(
+          "upstream_circuit_state",
+          "Circuit breaker state: 0 closed, 1 open, 2 half-open",
+          "upstream",
+          name,
+          () -> policy.getBreaker().state().ordinal());
+      metrics.counter(
+          "upstream_circuit_rejections_total",
+          "Calls refused while the circuit was open",
+          "upstream",
+          name,
+          () -> policy.getBreaker().rejectedCount());
+      metrics.counter(
+          "upstream_retries_total",
+          "Upstream attempts that were retries",
+          "upstream",
+          name,
+          policy::retryCount);
+      metrics.counter(
+          "upstream_hedges_total",
+          "Upstream attempts that were hedges",
+          "upstream",
+          name,
+          policy::hedgeCount);
+    }
+  }
+
   /**
    * The main method to start the server application.
    *
+   * <p>Listens on port 3232 unless {@code server.port} is set. Setting {@code server.rateLimits} to
+   * {@code off} drops the per-client rate limits, for load tests where every request comes from one
+   * address. Setting {@code safety.dataset} to an exported JSON or CSV file answers safety queries
+   * from it instead of Amadeus.
+   *
    * @param args Command-line arguments (not used).
    * @throws DatasourceException If there is an issue with the data source.
    */
   public static void main(String[] args) throws DatasourceException {
-    int port = 3232;
+    int port = Integer.getInteger("server.port", 3232);
 
     Spark.staticFiles.location("/public");
 
     Spark.port(port);
 
-    after(
+    configureThreads();
+
+    // Set before the route runs, since streamed responses are committed before any after filter
+    before(
         (request, response) -> {
           response.header("Access-Control-Allow-Origin", "*");
           response.header("Access-Control-Allow-Methods", "*");
         });
-        
-    Spark.get("mapbox", new MapBoxHandler());
-    Spark.get("login", new LoginManager());
-    Spark.get("register", new LoginManager());
-    Spark.get("safestroute", new SafetyHandler());
 
+    try {
+      searchHistory = SearchHistory.open(Path.of(HISTORY_DIR), HISTORY_PER_USER, 1 << 20, 8);
+    } catch (IOException e) {
+      System.err.println("Could not open search history, keeping it in memory: " + e.getMessage());
+    }
+
+    // One manager for both routes, so they share a credential store
+    LoginManager loginManager;
+    try {
+      DurableCredentialStore users = DurableCredentialStore.open(Path.of(USERS_DIR), 10_000);
+      loginManager = new LoginManager(users);
+      try {
+        loginManager.registerUser("test1", "test1");
+      } catch (LoginManager.AuthenticationException e) {
+        // Registered on an earlier run
+      }
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> closeQuietly(users)));
+    } catch (IOException e) {
+      System.err.println("Could not open user store, keeping users in memory: " + e.getMessage());
+      loginManager = new LoginManager();
+    }
+    // Session tokens from /login: required to read history, optional when searching
+    Spark.before("/history", new SessionFilter(loginManager.getSessions(), true));
+    Spark.before("/mapbox", new SessionFilter(loginManager.getSessions(), false));
+    // Then per-client limits on the routes that spend upstream quota; a route takes several
+    // upstream calls, so it gets the lower rate
+    if (!"off".equals(System.getProperty("server.rateLimits"))) {
+      Spark.before("/mapbox", new RateLimitFilter(new RateLimiter(5, 20, 10_000)));
+      Spark.before("/safestroute", new RateLimitFilter(new RateLimiter(1, 5, 10_000)));
+    }
+    // And a rate for each upstream shared by all clients, a little under each provider's quota;
+    // on whichever hosts the upstream.*.url properties point them at
+    UpstreamClient.getShared().limitRate(APIClient.getGoogleHost(), 40, 100);
+    UpstreamClient.getShared().limitRate(APIClient.getAmadeusHost(), 8, 10);
+    UpstreamClient.getShared().limitRate(MapBoxHandler.getMapboxHost(), 9, 30);
+    // -Dmapbox.mode=streaming trades the cache for flat memory; see MapBoxHandler.forMode
+    Spark.get(
+        "mapbox",
+        timed("/mapbox", MapBoxHandler.forMode(System.getProperty("mapbox.mode", "cached"))));
+    Spark.get("history", timed("/history", new HistoryHandler(searchHistory)));
+    Spark.get("suggest", timed("/suggest", new SuggestHandler(searchHistory.suggestions())));
+    Spark.get("login", timed("/login", loginManager));
+    Spark.get("register", timed("/register", loginManager));
+    APIClient safetyClient = new APIClient();
+    String safetyDataset = System.getProperty("safety.dataset");
+    if (safetyDataset != null) {
+      useSafetyDataset(safetyClient, Path.of(safetyDataset));
+    }
+    Spark.get(
+        "safestroute",
+        timed("/safestroute", new SafetyHandler(safetyClient, Duration.ofSeconds(10))));
+    Spark.get("upstreams", timed("/upstreams", new UpstreamsHandler()));
+    Spark.get("metrics", new MetricsHandler());
+    // After the handlers, which create the shared upstream policies
+    registerMetrics();
+
+    // Start with the geocodes remembered from the last run, and save them again on shutdown
+    Path geocodeSnapshot = Path.of(GEOCODE_SNAPSHOT);
+    try {
+      APIClient.getSharedGeocodeCache().loadSnapshot(geocodeSnapshot);
+    } catch (IOException e) {
+      System.err.println("Could not load geocode snapshot: " + e.getMessage());
+    }
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(
+                () -> {
+                  searchHistory.close();
+                  try {
+                    APIClient.getSharedGeocodeCache().saveSnapshot(geocodeSnapshot);
+                  } catch (IOException e) {
+                    System.err.println("Could not save geocode snapshot: " + e.getMessage());
+                  }
+                }));
 
     Spark.init();
     Spark.awaitInitialization();
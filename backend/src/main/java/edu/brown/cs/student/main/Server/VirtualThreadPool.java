@@ -0,0 +1,108 @@
+package edu.brown.cs.student.main.Server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
+
+/**
+ * A Jetty thread pool that runs every task on a new virtual thread.
+ *
+ * <p>The handlers spend most of a request waiting on upstream APIs. On a fixed pool of platform
+ * threads each wait holds a thread, so a few hundred slow requests exhaust it; a virtual thread
+ * gives its carrier back while it waits, so concurrency is bounded by memory instead.
+ *
+ * <p>Virtual threads arrived in Java 21 and this project targets 17, so the executor is looked up
+ * reflectively; on an older runtime {@link #create} returns null and the server keeps Jetty's
+ * platform pool.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+  private final ExecutorService executor;
+  private final AtomicInteger running = new AtomicInteger();
+
+  private VirtualThreadPool(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Creates a pool if the runtime supports virtual threads.
+   *
+   * @return The pool, or null before Java 21.
+   */
+  public static VirtualThreadPool create() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return new VirtualThreadPool((ExecutorService) factory.invoke(null));
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Makes Spark servers started from now on handle requests on virtual threads.
+   *
+   * @return false, leaving Spark's default pool in place, if the runtime has no virtual threads.
+   */
+  public static boolean install() {
+    VirtualThreadPool pool = create();
+    if (pool == null) {
+      return false;
+    }
+    EmbeddedServers.add(
+        EmbeddedServers.Identifiers.JETTY, new EmbeddedJettyFactory().withThreadPool(pool));
+    return true;
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    running.incrementAndGet();
+    executor.execute(
+        () -> {
+          try {
+            task.run();
+          } finally {
+            running.decrementAndGet();
+          }
+        });
+  }
+
+  /** A new virtual thread is always available, so Jetty may hand off any task. */
+  @Override
+  public boolean tryExecute(Runnable task) {
+    execute(task);
+    return true;
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public int getThreads() {
+    return running.get();
+  }
+
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  @Override
+  public boolean isLowOnThreads() {
+    return false;
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    executor.shutdown();
+    // Jetty stops its acceptors and selectors first; give requests in flight a moment to finish
+    executor.awaitTermination(5, TimeUnit.SECONDS);
+  }
+}
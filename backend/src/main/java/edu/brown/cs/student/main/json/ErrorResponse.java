@@ -0,0 +1,34 @@
+package edu.brown.cs.student.main.json;
+
+import com.squareup.moshi.Json;
+
+/** The body of a failed response: {"type": "error", "error_type": ..., "details": ...}. */
+public class ErrorResponse {
+  private final String type = "error";
+
+  @Json(name = "error_type")
+  private final String errorType;
+
+  private final String details;
+
+  /**
+   * @param errorType What went wrong, such as "bad_request", "timeout" or "datasource".
+   * @param details A message describing the failure.
+   */
+  public ErrorResponse(String errorType, String details) {
+    this.errorType = errorType;
+    this.details = details;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getErrorType() {
+    return errorType;
+  }
+
+  public String getDetails() {
+    return details;
+  }
+}
@@ -2,40 +2,40 @@ package edu.brown.cs.student.main.json;
 
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.JsonDataException;
-import com.squareup.moshi.Moshi;
 import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
+import java.nio.file.Path;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import okio.BufferedSource;
 import okio.Okio;
 
+/**
+ * Named JSON datasets shared across the server.
+ *
+ * <p>Datasets can be parsed onto the heap, or mapped with {@link #loadJsonFromFileMapped}, which
+ * parses only the parts that are read. Loading or reloading a dataset replaces it in one step:
+ * readers never wait, and see either the old dataset or the new one.
+ */
 public class JSONData {
-  private static JSONData instance;
-  private Map<String, Object> jsonMap;
-  private Moshi moshi;
+  private static final JSONData instance = new JSONData();
 
-  private JSONData() {
-    jsonMap = new HashMap<>();
-    moshi = new Moshi.Builder().build();
-  }
+  private final Map<String, Object> jsonMap = new ConcurrentHashMap<>();
+  // The mapped files behind mapped datasets, to check for changes
+  private final Map<String, MappedJson> mappedFiles = new ConcurrentHashMap<>();
+
+  private JSONData() {}
 
   public static JSONData getInstance() {
-    if (instance == null) {
-      instance = new JSONData();
-    }
     return instance;
   }
 
   public void loadJsonFromFile(String jsonFilePath, String key) throws IOException {
     File jsonFile = new File(jsonFilePath);
     if (jsonFile.exists() && jsonFile.isFile() && jsonFile.canRead()) {
-      try {
-        JsonAdapter<Object> jsonAdapter = moshi.adapter(Object.class);
-        BufferedSource source = Okio.buffer(Okio.source(jsonFile));
-        Object jsonData = jsonAdapter.fromJson(source);
-        jsonMap.put(key, jsonData);
-        source.close();
+      try (BufferedSource source = Okio.buffer(Okio.source(jsonFile))) {
+        JsonAdapter<Object> jsonAdapter = Serializer.ANY;
+        store(key, jsonAdapter.fromJson(source), null);
       } catch (IOException e) {
         throw new IOException("Failed to read JSON file: " + jsonFilePath, e);
       } catch (JsonDataException e) {
@@ -46,11 +46,52 @@ public class JSONData {
     }
   }
 
+  /**
+   * Loads a JSON file through a memory mapping. Loading scans the file once to index its top level
+   * but parses nothing; objects and arrays read from the dataset are read-only views that parse
+   * each member as it is looked up. Suited to large reference files of which each request reads a
+   * little.
+   *
+   * <p>The file must not be modified in place while mapped. Replace it by renaming a new file over
+   * it, then call {@link #reloadIfChanged}.
+   *
+   * @param jsonFilePath The JSON file.
+   * @param key The name to store the dataset under.
+   * @throws IOException If the file can't be read, or isn't valid JSON at the top level; errors
+   *     deeper in the file surface when that part is read.
+   */
+  public void loadJsonFromFileMapped(String jsonFilePath, String key) throws IOException {
+    MappedJson mapped;
+    try {
+      mapped = MappedJson.open(Path.of(jsonFilePath));
+    } catch (IOException e) {
+      throw new IOException("Invalid or unreadable JSON file: " + jsonFilePath, e);
+    }
+    store(key, mapped.root(), mapped);
+  }
+
+  /**
+   * Reloads a mapped dataset if its file has changed since it was loaded. Readers keep using the
+   * old dataset until the new one is indexed.
+   *
+   * @param key The dataset's name.
+   * @return true if the dataset was reloaded.
+   * @throws IOException If the file can't be read or is no longer valid JSON; the old dataset is
+   *     kept.
+   */
+  public boolean reloadIfChanged(String key) throws IOException {
+    MappedJson current = mappedFiles.get(key);
+    if (current == null || !current.changed()) {
+      return false;
+    }
+    loadJsonFromFileMapped(current.path().toString(), key);
+    return true;
+  }
+
   public void loadJsonFromString(String jsonString, String key) throws IOException {
     try {
-      JsonAdapter<Object> jsonAdapter = moshi.adapter(Object.class);
-      Object jsonData = jsonAdapter.fromJson(jsonString);
-      jsonMap.put(key, jsonData);
+      JsonAdapter<Object> jsonAdapter = Serializer.ANY;
+      store(key, jsonAdapter.fromJson(jsonString), null);
     } catch (IOException e) {
       throw new IOException("Failed to parse JSON string.", e);
     } catch (JsonDataException e) {
@@ -61,4 +102,24 @@ public class JSONData {
   public Object getJsonData(String key) {
     return jsonMap.get(key);
   }
+
+  /**
+   * Replaces a dataset.
+   *
+   * @param key The dataset's name.
+   * @param jsonData The parsed JSON; a JSON null leaves no dataset under the name.
+   * @param mapped The mapped file behind it, or null if it was parsed onto the heap.
+   */
+  private synchronized void store(String key, Object jsonData, MappedJson mapped) {
+    if (jsonData == null) {
+      jsonMap.remove(key);
+    } else {
+      jsonMap.put(key, jsonData);
+    }
+    if (mapped == null) {
+      mappedFiles.remove(key);
+    } else {
+      mappedFiles.put(key, mapped);
+    }
+  }
 }
@@ -0,0 +1,60 @@
+package edu.brown.cs.student.main.json;
+
+/**
+ * The body of a login or registration response: {"type": "success", "message": ...} or {"type":
+ * "fail", "error": ...}. A successful login also carries a session {@code token}.
+ */
+public class LoginResponse {
+  private final String type;
+  private final String message;
+  private final String error;
+  private final String token;
+
+  private LoginResponse(String type, String message, String error, String token) {
+    this.type = type;
+    this.message = message;
+    this.error = error;
+    this.token = token;
+  }
+
+  /**
+   * @param message What succeeded.
+   * @return A success response.
+   */
+  public static LoginResponse success(String message) {
+    return new LoginResponse("success", message, null, null);
+  }
+
+  /**
+   * @param message What succeeded.
+   * @param token The session token to send with later requests.
+   * @return A success response carrying a session.
+   */
+  public static LoginResponse success(String message, String token) {
+    return new LoginResponse("success", message, null, token);
+  }
+
+  /**
+   * @param error Why the request failed.
+   * @return A failure response.
+   */
+  public static LoginResponse fail(String error) {
+    return new LoginResponse("fail", null, error, null);
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  public String getToken() {
+    return token;
+  }
+}
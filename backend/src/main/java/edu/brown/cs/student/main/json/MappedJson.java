@@ -0,0 +1,435 @@
+package edu.brown.cs.student.main.json;
+
+import com.squareup.moshi.JsonDataException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import okio.Buffer;
+
+/**
+ * A JSON file read through a memory mapping, parsed only as far as it is used.
+ *
+ * <p>Opening the file scans it once, without parsing any values, to find where each top-level
+ * member or element starts and ends; only the keys and their offsets are kept. The root is then a
+ * read-only {@link Map} or {@link List} view: looking up a member parses just that member's bytes.
+ * Members larger than {@value #LAZY_BYTES} bytes that are themselves objects or arrays become views
+ * of their own instead, indexed on first use, so {@code root.get("features").get(i)} on a large
+ * GeoJSON file parses one feature. Small members are parsed on every lookup and not kept, so the
+ * heap holds only the indexes.
+ *
+ * <p>Views stay valid while they are referenced, even after the file is reloaded, as long as files
+ * are replaced by renaming a new file over them; truncating or rewriting a mapped file in place can
+ * crash readers of the old mapping.
+ */
+final class MappedJson {
+  // Larger containers are indexed rather than parsed whole
+  static final int LAZY_BYTES = 64 * 1024;
+  private static final int CHUNK_BYTES = 16 * 1024;
+
+  // Where an index scan is, directly inside the container
+  private static final int EXPECT_KEY = 0;
+  private static final int EXPECT_COLON = 1;
+  private static final int EXPECT_VALUE = 2;
+  private static final int IN_VALUE = 3;
+
+  private final Path path;
+  private final long size;
+  private final long modified;
+  private final Object root;
+
+  private MappedJson(Path path, long size, long modified, Object root) {
+    this.path = path;
+    this.size = size;
+    this.modified = modified;
+    this.root = root;
+  }
+
+  /**
+   * Maps and indexes a JSON file.
+   *
+   * @param path The file.
+   * @return The mapped file.
+   * @throws IOException If the file can't be read, is over 2GB or isn't well-formed at the top
+   *     level.
+   */
+  static MappedJson open(Path path) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Too large to map: " + path);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    Object root;
+    try {
+      int start = skipWhitespace(buffer, 0);
+      int end = buffer.limit();
+      byte first = buffer.get(start);
+      if (first == '{') {
+        MappedObject object = new MappedObject(buffer, start);
+        root = object;
+        end = object.ranges.end;
+      } else if (first == '[') {
+        MappedArray array = new MappedArray(buffer, start);
+        root = array;
+        end = array.ranges.end;
+      } else {
+        // A lone scalar; Moshi checks it and anything after it
+        root = value(buffer, start, end, false);
+      }
+      if (skipWhitespace(buffer, end) != buffer.limit()) {
+        throw malformed(end);
+      }
+    } catch (IndexOutOfBoundsException e) {
+      throw new IOException("Invalid JSON format in file: " + path + " (truncated)", e);
+    } catch (JsonDataException | UncheckedIOException e) {
+      throw new IOException("Invalid JSON format in file: " + path, e);
+    }
+    return new MappedJson(path, attributes.size(), attributes.lastModifiedTime().toMillis(), root);
+  }
+
+  /**
+   * @return The root value: a Map or List view, or a plain value if the file holds a scalar.
+   */
+  Object root() {
+    return root;
+  }
+
+  Path path() {
+    return path;
+  }
+
+  /**
+   * @return true if the file's size or modification time differ from when it was opened.
+   * @throws IOException If the file can't be read.
+   */
+  boolean changed() throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    return attributes.size() != size || attributes.lastModifiedTime().toMillis() != modified;
+  }
+
+  /**
+   * Returns the value in a range of the file: a view if it is a large container (or {@code lazy} is
+   * set), otherwise the parsed value.
+   */
+  private static Object value(ByteBuffer buffer, int start, int end, boolean lazy) {
+    byte first = buffer.get(start);
+    if ((first == '{' || first == '[') && (lazy || end - start > LAZY_BYTES)) {
+      return first == '{' ? new MappedObject(buffer, start) : new MappedArray(buffer, start);
+    }
+    Buffer bytes = new Buffer();
+    try {
+      bytes.write(buffer.duplicate().limit(end).position(start));
+      return Serializer.ANY.fromJson(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** The start and end of each member or element of a container, grown as it is scanned. */
+  private static final class Ranges {
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+    // Just past the container's closing bracket
+    private int end;
+
+    private void add(int start, int end) {
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, count * 2);
+        ends = Arrays.copyOf(ends, count * 2);
+      }
+      starts[count] = start;
+      ends[count] = end;
+      count++;
+    }
+  }
+
+  /**
+   * Scans a container's members, or elements, and their separators, in one pass over the bytes
+   * copied out a chunk at a time. Nested values are only checked for matching quotes and depth;
+   * anything else wrong inside them is reported when they are parsed.
+   *
+   * @param keys Receives each member's key, in order, for objects; null for arrays.
+   */
+  private static Ranges index(ByteBuffer buffer, int start, Map<String, Integer> keys) {
+    boolean object = keys != null;
+    byte close = object ? (byte) '}' : (byte) ']';
+    Ranges ranges = new Ranges();
+    byte[] chunk = new byte[Math.min(CHUNK_BYTES, Math.max(1, buffer.limit() - start - 1))];
+    int state = object ? EXPECT_KEY : EXPECT_VALUE;
+    // Nesting relative to the container, so 1 is directly inside it
+    int depth = 1;
+    boolean inString = false;
+    boolean escaped = false;
+    // Whether the current value is a string or container that has been closed
+    boolean valueClosed = false;
+    int keyStart = 0;
+    int valueStart = 0;
+    int valueEnd = 0;
+    for (int base = start + 1; base < buffer.limit(); base += chunk.length) {
+      int n = Math.min(chunk.length, buffer.limit() - base);
+      buffer.get(base, chunk, 0, n);
+      for (int j = 0; j < n; j++) {
+        byte b = chunk[j];
+        int at = base + j;
+        if (inString) {
+          if (escaped) {
+            escaped = false;
+          } else if (b == '\\') {
+            escaped = true;
+          } else if (b == '"') {
+            inString = false;
+            if (state == EXPECT_KEY) {
+              String key = decodeKey(buffer, keyStart, at + 1);
+              if (keys.put(key, ranges.count) != null) {
+                // As Moshi does when parsing onto the heap
+                throw new JsonDataException(
+                    "Map key '" + key + "' has multiple values at byte " + keyStart);
+              }
+              state = EXPECT_COLON;
+            } else if (depth == 1) {
+              valueClosed = true;
+            }
+          }
+          valueEnd = at + 1;
+          continue;
+        }
+        if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+          continue;
+        }
+        if (depth > 1) {
+          if (b == '"') {
+            inString = true;
+          } else if (b == '{' || b == '[') {
+            depth++;
+          } else if ((b == '}' || b == ']') && --depth == 1) {
+            valueClosed = true;
+          }
+          valueEnd = at + 1;
+          continue;
+        }
+        if (state == EXPECT_KEY) {
+          if (b == '"') {
+            keyStart = at;
+            inString = true;
+          } else if (b == '}' && ranges.count == 0) {
+            ranges.end = at + 1;
+            return ranges;
+          } else {
+            throw malformed(at);
+          }
+        } else if (state == EXPECT_COLON) {
+          if (b != ':') {
+            throw malformed(at);
+          }
+          state = EXPECT_VALUE;
+        } else if (state == EXPECT_VALUE) {
+          if (b == ']' && !object && ranges.count == 0) {
+            ranges.end = at + 1;
+            return ranges;
+          } else if (b == ',' || b == ':' || b == '}' || b == ']') {
+            throw malformed(at);
+          }
+          state = IN_VALUE;
+          valueStart = at;
+          valueEnd = at + 1;
+          valueClosed = false;
+          if (b == '"') {
+            inString = true;
+          } else if (b == '{' || b == '[') {
+            depth++;
+          }
+        } else if (b == ',' || b == close) {
+          ranges.add(valueStart, valueEnd);
+          if (b == close) {
+            ranges.end = at + 1;
+            return ranges;
+          }
+          state = object ? EXPECT_KEY : EXPECT_VALUE;
+        } else if (valueClosed || at != valueEnd || b == '"' || b == '{' || b == '[') {
+          // Something after a complete value other than a separator
+          throw malformed(at);
+        } else {
+          valueEnd = at + 1;
+        }
+      }
+    }
+    throw new IndexOutOfBoundsException(buffer.limit());
+  }
+
+  private static String decodeKey(ByteBuffer buffer, int start, int end) {
+    for (int i = start + 1; i < end - 1; i++) {
+      if (buffer.get(i) == '\\') {
+        // Rare; let Moshi handle the escapes
+        return (String) value(buffer, start, end, false);
+      }
+    }
+    byte[] key = new byte[end - start - 2];
+    buffer.get(start + 1, key);
+    return new String(key, StandardCharsets.UTF_8);
+  }
+
+  private static int skipWhitespace(ByteBuffer buffer, int pos) {
+    while (pos < buffer.limit()) {
+      byte b = buffer.get(pos);
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        break;
+      }
+      pos++;
+    }
+    return pos;
+  }
+
+  private static JsonDataException malformed(int pos) {
+    return new JsonDataException("Malformed JSON at byte " + pos);
+  }
+
+  /** A JSON object in a mapped file, parsing each member when it is looked up. */
+  private static final class MappedObject extends AbstractMap<String, Object> {
+    private final ByteBuffer buffer;
+    private final String[] keys;
+    private final Map<String, Integer> positions;
+    private final Ranges ranges;
+    private final Map<Integer, Object> views = new ConcurrentHashMap<>();
+
+    private MappedObject(ByteBuffer buffer, int start) {
+      this.buffer = buffer;
+      this.positions = new HashMap<>();
+      this.ranges = index(buffer, start, positions);
+      this.keys = new String[ranges.count];
+      positions.forEach((key, i) -> keys[i] = key);
+    }
+
+    @Override
+    public Object get(Object key) {
+      Integer i = positions.get(key);
+      return i == null ? null : member(i);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return positions.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+      return positions.size();
+    }
+
+    @Override
+    public Set<String> keySet() {
+      // In file order, like entrySet, and read-only like the rest of the view
+      return new AbstractSet<>() {
+        @Override
+        public Iterator<String> iterator() {
+          return Arrays.asList(keys).iterator();
+        }
+
+        @Override
+        public boolean contains(Object key) {
+          return positions.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+          return keys.length;
+        }
+      };
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      return new AbstractSet<>() {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+          return new Iterator<>() {
+            private int next;
+
+            @Override
+            public boolean hasNext() {
+              return next < keys.length;
+            }
+
+            @Override
+            public Entry<String, Object> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              int i = next++;
+              return new SimpleImmutableEntry<>(keys[i], member(i));
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return positions.size();
+        }
+      };
+    }
+
+    private Object member(int i) {
+      Object view = views.get(i);
+      if (view != null) {
+        return view;
+      }
+      Object value = value(buffer, ranges.starts[i], ranges.ends[i], false);
+      if (value instanceof MappedObject || value instanceof MappedArray) {
+        views.putIfAbsent(i, value);
+      }
+      return value;
+    }
+  }
+
+  /** A JSON array in a mapped file, parsing each element when it is read. */
+  private static final class MappedArray extends AbstractList<Object> implements RandomAccess {
+    private final ByteBuffer buffer;
+    private final Ranges ranges;
+    private final Map<Integer, Object> views = new ConcurrentHashMap<>();
+
+    private MappedArray(ByteBuffer buffer, int start) {
+      this.buffer = buffer;
+      this.ranges = index(buffer, start, null);
+    }
+
+    @Override
+    public Object get(int i) {
+      if (i < 0 || i >= ranges.count) {
+        throw new IndexOutOfBoundsException(i);
+      }
+      Object view = views.get(i);
+      if (view != null) {
+        return view;
+      }
+      Object value = value(buffer, ranges.starts[i], ranges.ends[i], false);
+      if (value instanceof MappedObject || value instanceof MappedArray) {
+        views.putIfAbsent(i, value);
+      }
+      return value;
+    }
+
+    @Override
+    public int size() {
+      return ranges.count;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package edu.brown.cs.student.main.json;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.Server.History.HistoryPage;
+import edu.brown.cs.student.main.Server.History.Suggestion;
+import edu.brown.cs.student.main.Server.Http.UpstreamStats;
+import edu.brown.cs.student.main.Server.SafeTravels.AccessTokenResponse;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The one Moshi instance the server uses, with an adapter for each request and response shape.
+ *
+ * <p>Building a Moshi and resolving an adapter reflects over the target class, so it is done once
+ * here instead of per request. Moshi adapters are immutable and safe to share between threads.
+ */
+public final class Serializer {
+
+  private static final Moshi moshi = new Moshi.Builder().build();
+
+  /** {"type": "success", "data": {"data": [...]}} from /safestroute. */
+  public static final JsonAdapter<SuccessResponse<SafetyRatings>> SAFETY_SUCCESS =
+      moshi.adapter(Types.newParameterizedType(SuccessResponse.class, SafetyRatings.class));
+
+  /** {"type": "success", "data": {"entries": [...], "total": ..., "next": ...}} from /history. */
+  public static final JsonAdapter<SuccessResponse<HistoryPage>> HISTORY =
+      moshi.adapter(Types.newParameterizedType(SuccessResponse.class, HistoryPage.class));
+
+  /** {"type": "success", "data": [{"place": ..., "count": ...}, ...]} from /suggest. */
+  public static final JsonAdapter<SuccessResponse<List<Suggestion>>> SUGGEST =
+      moshi.adapter(
+          Types.newParameterizedType(
+              SuccessResponse.class, Types.newParameterizedType(List.class, Suggestion.class)));
+
+  /** {"type": "success", "data": [{"name": ..., "breaker": ..., ...}, ...]} from /upstreams. */
+  public static final JsonAdapter<SuccessResponse<List<UpstreamStats>>> UPSTREAMS =
+      moshi.adapter(
+          Types.newParameterizedType(
+              SuccessResponse.class, Types.newParameterizedType(List.class, UpstreamStats.class)));
+
+  /** {"type": "error", "error_type": ..., "details": ...} from any handler. */
+  public static final JsonAdapter<ErrorResponse> ERROR = moshi.adapter(ErrorResponse.class);
+
+  /** Responses from /login and /register. */
+  public static final JsonAdapter<LoginResponse> LOGIN = moshi.adapter(LoginResponse.class);
+
+  /** The Amadeus OAuth token response. */
+  public static final JsonAdapter<AccessTokenResponse> ACCESS_TOKEN =
+      moshi.adapter(AccessTokenResponse.class);
+
+  /** Arbitrary JSON as nested maps and lists. */
+  public static final JsonAdapter<Object> ANY = moshi.adapter(Object.class);
+
+  /** Arbitrary JSON objects. */
+  public static final JsonAdapter<Map<String, Object>> MAP =
+      moshi.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+
+  private Serializer() {}
+
+  /**
+   * Returns the shared Moshi, for shapes without an adapter here.
+   *
+   * @return The shared Moshi.
+   */
+  public static Moshi moshi() {
+    return moshi;
+  }
+}
@@ -0,0 +1,23 @@
+package edu.brown.cs.student.main.json;
+
+/**
+ * The body of a successful response: {"type": "success", "data": ...}.
+ *
+ * @param <T> The type of the data.
+ */
+public class SuccessResponse<T> {
+  private final String type = "success";
+  private final T data;
+
+  public SuccessResponse(T data) {
+    this.data = data;
+  }
+
+  public String getType() {
+    return type;
+  }
+
+  public T getData() {
+    return data;
+  }
+}
@@ -0,0 +1,45 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.SafeTravels.GeoUtils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the geometry behind each safety lookup: the midpoint of a trip, the haversine distance
+ * and a point along the great circle. The points are fields so the JIT can't fold them away.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoBenchmark {
+  public double lat1 = 41.8240;
+  public double lon1 = -71.4128;
+  public double lat2 = 42.3601;
+  public double lon2 = -71.0589;
+
+  @Benchmark
+  public double[] midpoint() {
+    return GeoUtils.midpoint(lat1, lon1, lat2, lon2);
+  }
+
+  @Benchmark
+  public double distanceKm() {
+    return GeoUtils.distanceKm(lat1, lon1, lat2, lon2);
+  }
+
+  @Benchmark
+  public double[] interpolate() {
+    return GeoUtils.interpolate(lat1, lon1, lat2, lon2, 0.25);
+  }
+}
@@ -0,0 +1,90 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.json.JSONData;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to load a GeoJSON feature collection of {@code features} polygons, each with 20 vertices and
+ * a few properties, through {@link JSONData#loadJsonFromString}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class JSONDataBenchmark {
+  @Param({"1000", "20000"})
+  public int features;
+
+  private String json;
+  private Path file;
+
+  @Setup
+  public void setUp() throws IOException {
+    Random random = new Random(7);
+    StringBuilder out = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < features; i++) {
+      out.append(i == 0 ? "" : ",");
+      out.append("{\"type\":\"Feature\",\"properties\":{\"name\":\"Area ").append(i);
+      out.append("\",\"grade\":\"").append((char) ('A' + i % 4)).append("\",\"holc_id\":");
+      out.append(i).append("},\"geometry\":{\"type\":\"Polygon\",\"coordinates\":[[");
+      double lat = 41 + random.nextDouble();
+      double lon = -72 + random.nextDouble();
+      for (int vertex = 0; vertex < 20; vertex++) {
+        out.append(vertex == 0 ? "" : ",");
+        out.append('[').append(lon + random.nextDouble() / 100).append(',');
+        out.append(lat + random.nextDouble() / 100).append(']');
+      }
+      out.append("]]}}");
+    }
+    json = out.append("]}").toString();
+    file = Files.createTempFile("features", ".json");
+    Files.writeString(file, json);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public Object load() throws IOException {
+    JSONData data = JSONData.getInstance();
+    data.loadJsonFromString(json, "benchmark");
+    return data.getJsonData("benchmark");
+  }
+
+  @Benchmark
+  public Object loadMapped() throws IOException {
+    JSONData data = JSONData.getInstance();
+    data.loadJsonFromFileMapped(file.toString(), "benchmark");
+    return data.getJsonData("benchmark");
+  }
+
+  @Benchmark
+  public Object loadMappedAndReadOne() throws IOException {
+    JSONData data = JSONData.getInstance();
+    data.loadJsonFromFileMapped(file.toString(), "benchmark");
+    List<?> loaded = (List<?>) ((Map<?, ?>) data.getJsonData("benchmark")).get("features");
+    return loaded.get(features / 2);
+  }
+}
@@ -0,0 +1,236 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.Metrics.LatencyHistogram;
+import edu.brown.cs.student.main.Server.Server;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import spark.Spark;
+
+/**
+ * Drives the real {@link Server}, pointed at {@link StubUpstreams}, and reports throughput and
+ * latency percentiles. Nothing leaves the machine, so it can run without network access or quota.
+ *
+ * <p>In {@code closed} mode, {@code load} clients each send a request as soon as the last one
+ * returns, as a fixed pool of users would. In {@code open} mode requests arrive at {@code load} per
+ * second whether or not earlier ones have returned, as independent users do; latency is measured
+ * from when each request was due, so a stalled server is charged for the requests it held up.
+ *
+ * <p>Requests go to {@code route} ({@code safestroute}, {@code mapbox} or {@code mixed}), choosing
+ * among {@code places} distinct places, which sets how often the server's caches hit. The stubs'
+ * latency and errors are set with {@code -Dstub.medianMs}, {@code -Dstub.p99Ms}, {@code
+ * -Dstub.errorRate} and {@code -Dstub.throttleRate}. The server's per-client rate limits are off,
+ * since every request comes from one address.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.brown.cs.student.benchmarks.LoadGenerator -Dexec.args="closed|open [load]
+ * [seconds] [route] [places] [warmupSeconds]"}.
+ */
+public class LoadGenerator {
+  private final HttpClient client =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+  private final String baseUrl;
+  private final String route;
+  private final int places;
+
+  private volatile boolean recording;
+  private final LatencyHistogram latency = new LatencyHistogram();
+  private final LongAdder ok = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final TreeMap<Integer, LongAdder> statuses = new TreeMap<>();
+
+  private LoadGenerator(String baseUrl, String route, int places) {
+    this.baseUrl = baseUrl;
+    this.route = route;
+    this.places = places;
+    for (int status : new int[] {200, 304, 400, 401, 404, 429, 500, 502, 503, 504}) {
+      statuses.put(status, new LongAdder());
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    String mode = args.length > 0 ? args[0] : "closed";
+    int load = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+    String route = args.length > 3 ? args[3] : "mixed";
+    int places = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+    int warmupSeconds = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+    if (!mode.equals("closed") && !mode.equals("open")) {
+      System.err.println("Mode must be closed or open");
+      return;
+    }
+
+    StubUpstreams stubs = new StubUpstreams(StubUpstreams.Behavior.fromSystemProperties());
+    int port;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      port = socket.getLocalPort();
+    }
+    System.setProperty("upstream.google.url", stubs.googleUrl());
+    System.setProperty("upstream.amadeus.url", stubs.amadeusUrl());
+    System.setProperty("upstream.mapbox.url", stubs.mapboxUrl());
+    System.setProperty("server.port", Integer.toString(port));
+    System.setProperty(
+        "server.dataDir", Files.createTempDirectory("load-test").toAbsolutePath().toString());
+    System.setProperty("server.rateLimits", "off");
+    Server.main(new String[0]);
+
+    LoadGenerator generator = new LoadGenerator("http://localhost:" + port, route, places);
+    System.out.printf(
+        "%s load %d, %s, %d places, %ds after %ds warmup; upstreams %s%n",
+        mode, load, route, places, seconds, warmupSeconds, stubs.getBehavior());
+    long start = System.nanoTime();
+    long measureFrom = start + warmupSeconds * 1_000_000_000L;
+    long end = measureFrom + seconds * 1_000_000_000L;
+    if (mode.equals("closed")) {
+      generator.closed(load, measureFrom, end);
+    } else {
+      generator.open(load, start, measureFrom, end);
+    }
+    generator.report(seconds);
+    System.out.println("Upstream requests: " + new TreeMap<>(stubs.requestCounts()));
+
+    Spark.stop();
+    stubs.close();
+    System.exit(0);
+  }
+
+  /** Runs {@code clients} threads, each sending its next request once the last returns. */
+  private void closed(int clients, long measureFrom, long end) throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < clients; i++) {
+      Thread thread =
+          new Thread(
+              () -> {
+                while (System.nanoTime() < end) {
+                  recording = System.nanoTime() >= measureFrom;
+                  long sent = System.nanoTime();
+                  try {
+                    HttpResponse<String> response =
+                        client.send(nextRequest(), HttpResponse.BodyHandlers.ofString());
+                    record(sent, response, null);
+                  } catch (Exception e) {
+                    record(sent, null, e);
+                  }
+                }
+              });
+      thread.start();
+      threads.add(thread);
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  /**
+   * Sends {@code perSecond} requests a second on a fixed schedule, not waiting for responses, then
+   * waits up to 30 seconds for the last ones.
+   */
+  private void open(int perSecond, long start, long measureFrom, long end)
+      throws InterruptedException {
+    long interval = 1_000_000_000L / perSecond;
+    AtomicLong outstanding = new AtomicLong();
+    for (long due = start; due < end; due += interval) {
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      recording = due >= measureFrom;
+      long scheduled = due;
+      outstanding.incrementAndGet();
+      client
+          .sendAsync(nextRequest(), HttpResponse.BodyHandlers.ofString())
+          .whenComplete(
+              (response, error) -> {
+                record(scheduled, response, error);
+                outstanding.decrementAndGet();
+              });
+    }
+    long deadline = System.nanoTime() + 30_000_000_000L;
+    while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  private HttpRequest nextRequest() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String place = URLEncoder.encode("Place " + random.nextInt(places), StandardCharsets.UTF_8);
+    boolean mapbox = route.equals("mapbox") || (route.equals("mixed") && random.nextInt(4) != 0);
+    String path;
+    if (mapbox) {
+      path = "/mapbox?accessToken=stub&place=" + place;
+    } else {
+      String other = URLEncoder.encode("Place " + random.nextInt(places), StandardCharsets.UTF_8);
+      path = "/safestroute?start=" + place + "&end=" + other;
+    }
+    return HttpRequest.newBuilder(URI.create(baseUrl + path))
+        .timeout(Duration.ofSeconds(30))
+        .build();
+  }
+
+  /**
+   * Records a response. A 200 whose body is an error, as /safestroute sends for upstream failures,
+   * counts as failed.
+   */
+  private void record(long sent, HttpResponse<String> response, Throwable error) {
+    if (!recording) {
+      return;
+    }
+    latency.recordNanos(System.nanoTime() - sent);
+    if (error != null) {
+      errors.increment();
+      return;
+    }
+    LongAdder count = statuses.get(response.statusCode());
+    if (count != null) {
+      count.increment();
+    }
+    if (response.statusCode() == 200 && !response.body().contains("\"error_type\"")) {
+      ok.increment();
+    } else {
+      failed.increment();
+    }
+  }
+
+  private void report(int seconds) {
+    long total = latency.count();
+    System.out.printf(
+        Locale.ROOT,
+        "%d requests, %.1f req/s: %d ok, %d failed, %d connection errors%n",
+        total,
+        total / (double) seconds,
+        ok.sum(),
+        failed.sum(),
+        errors.sum());
+    System.out.printf(
+        Locale.ROOT,
+        "latency ms: p50 %.1f, p99 %.1f, p999 %.1f, max %.1f, mean %.1f%n",
+        latency.quantileSeconds(0.5) * 1000,
+        latency.quantileSeconds(0.99) * 1000,
+        latency.quantileSeconds(0.999) * 1000,
+        latency.quantileSeconds(1) * 1000,
+        total == 0 ? 0 : latency.sumSeconds() * 1000 / total);
+    StringBuilder byStatus = new StringBuilder("statuses:");
+    statuses.forEach(
+        (status, count) -> {
+          if (count.sum() > 0) {
+            byStatus.append(' ').append(status).append('=').append(count.sum());
+          }
+        });
+    System.out.println(byStatus);
+  }
+}
@@ -0,0 +1,71 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.LoginHandler.CredentialStore;
+import edu.brown.cs.student.main.Server.LoginHandler.LoginManager;
+import edu.brown.cs.student.main.Server.LoginHandler.PasswordHasher;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Logins per second on one core: one benchmark thread checking a password against a hash made with
+ * {@code iterations}, on a single-threaded hasher. The {@code manager} benchmarks go through {@link
+ * LoginManager#handle}, adding the lookup, session token and response to each hash.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Threads(1)
+@Fork(1)
+public class LoginBenchmark {
+  @Param({"100000", "600000"})
+  public int iterations;
+
+  private static final String PASSWORD = "correct horse battery staple";
+
+  private PasswordHasher hasher;
+  private String stored;
+  private LoginManager manager;
+  private StubRequest login;
+  private int registered;
+
+  @Setup
+  public void setUp() throws Exception {
+    hasher = new PasswordHasher(iterations, 1, 16);
+    stored = hasher.hash(PASSWORD);
+    manager = new LoginManager(new CredentialStore(), hasher);
+    manager.registerUser("alice", PASSWORD);
+    login = new StubRequest("/login", Map.of("username", "alice", "password", PASSWORD));
+  }
+
+  @Benchmark
+  public boolean login() {
+    return hasher.verify(PASSWORD, stored).matches();
+  }
+
+  @Benchmark
+  public Object managerLogin() throws Exception {
+    return manager.handle(login, new StubResponse());
+  }
+
+  @Benchmark
+  public Object managerRegister() throws Exception {
+    StubRequest register =
+        new StubRequest(
+            "/register", Map.of("username", "user" + registered++, "password", PASSWORD));
+    return manager.handle(register, new StubResponse());
+  }
+}
@@ -0,0 +1,96 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.SafeTravels.APIClient;
+import edu.brown.cs.student.main.Server.SafeTravels.AmadeusTokenManager;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyHandler;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link SafetyHandler#handle} itself, with the upstreams answering instantly: parameter
+ * checks, the midpoint and radius or the corridor's samples, merging, and serializing 50 rated
+ * locations per lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SafetyHandlerBenchmark {
+
+  /** An APIClient whose upstream calls complete immediately. */
+  private static class StubClient extends APIClient {
+    StubClient() {
+      super(new AmadeusTokenManager(() -> new AmadeusTokenManager.AccessToken("token", 1799)));
+    }
+
+    @Override
+    public CompletableFuture<List<Double>> getCoordinatesAsync(String address) {
+      return CompletableFuture.completedFuture(
+          address.equals("start") ? List.of(41.80, -71.40) : List.of(41.88, -71.38));
+    }
+
+    @Override
+    public CompletableFuture<String> prefetchAccessToken() {
+      return CompletableFuture.completedFuture("token");
+    }
+
+    @Override
+    public CompletableFuture<SafetyRatings> getSafetyRatingsAsync(
+        double lat, double lon, int radius) {
+      List<SafetyLocation> locations = new ArrayList<>();
+      for (int i = 0; i < 50; i++) {
+        locations.add(
+            new SafetyLocation(
+                "Q" + (int) (lat * 1000) + "-" + i,
+                "safety-rated-location",
+                "DISTRICT",
+                "Providence " + i,
+                new SafetyLocation.GeoCode(lat + i * 0.0005, lon + i * 0.0005),
+                new SafetyLocation.SafetyScores(45, 39, 0, 36, 50, 44, 34)));
+      }
+      return CompletableFuture.completedFuture(new SafetyRatings(locations));
+    }
+  }
+
+  private SafetyHandler handler;
+  private StubRequest midpoint;
+  private StubRequest corridor;
+
+  @Setup
+  public void setUp() {
+    handler = new SafetyHandler(new StubClient(), Duration.ofSeconds(10));
+    midpoint = new StubRequest("/safestroute", Map.of("start", "start", "end", "end"));
+    corridor =
+        new StubRequest(
+            "/safestroute",
+            Map.of("mode", "corridor", "path", "41.80,-71.40;41.84,-71.40;41.88,-71.38"));
+  }
+
+  @Benchmark
+  public Object midpoint() throws Exception {
+    return handler.handle(midpoint, new StubResponse());
+  }
+
+  @Benchmark
+  public Object corridor() throws Exception {
+    return handler.handle(corridor, new StubResponse());
+  }
+}
@@ -0,0 +1,78 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyIndex;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures SafetyIndex query cost at 10k, 100k and 1M points spread over a metro-sized area.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.brown.cs.student.benchmarks.SafetyIndexBenchmark}.
+ */
+public class SafetyIndexBenchmark {
+  private static final int QUERIES = 20_000;
+
+  public static void main(String[] args) {
+    System.out.printf(
+        "%10s %12s %14s %14s %14s%n",
+        "points", "build ms", "radius 1km us", "knn 10 us", "corridor us");
+    for (int points : new int[] {10_000, 100_000, 1_000_000}) {
+      run(points);
+    }
+  }
+
+  private static void run(int points) {
+    Random random = new Random(7);
+    long buildStart = System.nanoTime();
+    SafetyIndex<String> index = new SafetyIndex<>(0.01);
+    int[] scores = {50, 50, 50, 50, 50, 50, 50};
+    for (int i = 0; i < points; i++) {
+      String id = Integer.toString(i);
+      index.put(id, 41.5 + random.nextDouble(), -72 + random.nextDouble(), scores, id);
+    }
+    double buildMs = (System.nanoTime() - buildStart) / 1e6;
+
+    double[][] centers = new double[QUERIES][];
+    for (int i = 0; i < QUERIES; i++) {
+      centers[i] = new double[] {41.5 + random.nextDouble(), -72 + random.nextDouble()};
+    }
+    List<double[]> route = List.of(new double[] {41.6, -71.9}, new double[] {42.4, -71.1});
+
+    // The first round warms up and the second is measured; the sink keeps the JIT from dropping
+    // the queries
+    long sink = 0;
+    long radiusNanos = 0;
+    long nearestNanos = 0;
+    for (int round = 0; round < 2; round++) {
+      long start = System.nanoTime();
+      for (double[] center : centers) {
+        sink += index.withinRadius(center[0], center[1], 1).size();
+      }
+      radiusNanos = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (double[] center : centers) {
+        sink += index.nearest(center[0], center[1], 10).size();
+      }
+      nearestNanos = System.nanoTime() - start;
+    }
+    int corridorQueries = 200;
+    long corridorNanos = 0;
+    for (int round = 0; round < 2; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < corridorQueries; i++) {
+        sink += index.withinCorridor(route, 0.5).size();
+      }
+      corridorNanos = System.nanoTime() - start;
+    }
+
+    System.out.printf(
+        "%10d %12.1f %14.2f %14.2f %14.2f   (%d)%n",
+        points,
+        buildMs,
+        radiusNanos / 1e3 / QUERIES,
+        nearestNanos / 1e3 / QUERIES,
+        corridorNanos / 1e3 / corridorQueries,
+        sink);
+  }
+}
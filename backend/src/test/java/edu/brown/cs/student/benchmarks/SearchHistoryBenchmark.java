@@ -0,0 +1,61 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Searches recorded by 8 threads at once into one persisted history, spread over 1000 users. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class SearchHistoryBenchmark {
+  private static final String[] PLACES = {
+    "69 Brown St, Providence", "Thayer St, Providence", "Boston Common", "Newport Cliff Walk"
+  };
+
+  private Path dir;
+  private SearchHistory history;
+
+  @Setup
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("history-bench");
+    history = SearchHistory.open(dir, 20, 1 << 20, 16);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    history.close();
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+
+  @Benchmark
+  public void record() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    history.record("user" + random.nextInt(1000), PLACES[random.nextInt(PLACES.length)]);
+  }
+}
@@ -0,0 +1,88 @@
+package edu.brown.cs.student.benchmarks;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import edu.brown.cs.student.main.json.LoginResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import edu.brown.cs.student.main.json.SuccessResponse;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-request cost of building a Moshi and adapter for each response, as the handlers used to,
+ * against the shared adapters in {@link Serializer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+  private SafetyRatings ratings;
+
+  @Setup
+  public void setUp() {
+    List<SafetyLocation> locations = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      locations.add(
+          new SafetyLocation(
+              "Q" + i,
+              "safety-rated-location",
+              "DISTRICT",
+              "Barcelona at " + i,
+              new SafetyLocation.GeoCode(41.38 + i * 0.001, 2.17 + i * 0.001),
+              new SafetyLocation.SafetyScores(45, 39, 0, 36, 50, 44, 34)));
+    }
+    ratings = new SafetyRatings(locations);
+  }
+
+  @Benchmark
+  public String safetyPerRequestMoshi() {
+    Moshi moshi = new Moshi.Builder().build();
+    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
+    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
+    Map<String, Object> responseMap = new HashMap<>();
+    responseMap.put("type", "success");
+    responseMap.put("data", ratings);
+    return adapter.toJson(responseMap);
+  }
+
+  @Benchmark
+  public String safetySharedAdapter() {
+    return Serializer.SAFETY_SUCCESS.toJson(new SuccessResponse<>(ratings));
+  }
+
+  @Benchmark
+  public String loginPerRequestMoshi() {
+    Moshi moshi = new Moshi.Builder().build();
+    Type mapStringObject = Types.newParameterizedType(Map.class, String.class, Object.class);
+    JsonAdapter<Map<String, Object>> adapter = moshi.adapter(mapStringObject);
+    Map<String, Object> successResponse = new HashMap<>();
+    successResponse.put("type", "success");
+    successResponse.put("message", "Login successful");
+    return adapter.toJson(successResponse);
+  }
+
+  @Benchmark
+  public String loginSharedAdapter() {
+    return Serializer.LOGIN.toJson(LoginResponse.success("Login successful"));
+  }
+}
@@ -0,0 +1,142 @@
+package edu.brown.cs.student.benchmarks;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.brown.cs.student.main.Server.Http.UpstreamClient;
+import edu.brown.cs.student.main.Server.Maps.MapBoxHandler;
+import edu.brown.cs.student.main.Server.VirtualThreadPool;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import spark.Service;
+
+/**
+ * Measures throughput and latency of /mapbox under many concurrent requests to a slow upstream,
+ * with Jetty on its default platform pool or on virtual threads.
+ *
+ * <p>A stub Mapbox answers every request after {@code delayMs}. The real MapBoxHandler, buffered,
+ * blocks a request thread for each call, so the platform pool caps throughput at about its size
+ * divided by the delay.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.brown.cs.student.benchmarks.ServerThreadsLoadTest
+ * -Dexec.args="platform|platform:maxThreads|virtual [concurrency] [requests] [delayMs]"}; virtual
+ * needs Java 21.
+ */
+public class ServerThreadsLoadTest {
+
+  public static void main(String[] args) throws Exception {
+    String mode = args.length > 0 ? args[0] : "platform";
+    int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+    int requests = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+    int delayMs = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+
+    if ("virtual".equals(mode) && !VirtualThreadPool.install()) {
+      System.err.println("Virtual threads need Java 21 or later");
+      return;
+    }
+
+    byte[] body =
+        "{\"type\":\"FeatureCollection\",\"features\":[]}".getBytes(StandardCharsets.UTF_8);
+    HttpServer mapbox = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+    ExecutorService upstreamThreads = Executors.newCachedThreadPool();
+    mapbox.setExecutor(upstreamThreads);
+    mapbox.createContext(
+        "/places/",
+        exchange -> {
+          try {
+            Thread.sleep(delayMs);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    mapbox.start();
+
+    UpstreamClient http =
+        new UpstreamClient(Duration.ofSeconds(5), Duration.ofSeconds(30), concurrency * 2);
+    String baseUrl = "http://localhost:" + mapbox.getAddress().getPort() + "/places/";
+    Service spark = Service.ignite().port(0);
+    if (mode.startsWith("platform:")) {
+      spark.threadPool(Integer.parseInt(mode.substring("platform:".length())));
+    }
+    spark.get("/mapbox", new MapBoxHandler(http, baseUrl, false));
+    spark.awaitInitialization();
+    String url = "http://localhost:" + spark.port() + "/mapbox?accessToken=t&place=Providence";
+
+    HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    try {
+      // Open the client's connections first, so connection setup isn't part of the measurement
+      run(client, url, concurrency, concurrency);
+      long start = System.nanoTime();
+      long[] latencies = run(client, url, concurrency, requests);
+      double seconds = (System.nanoTime() - start) / 1e9;
+
+      Arrays.sort(latencies);
+      System.out.printf(
+          "%s threads, %d concurrent, %d requests, %dms upstream (Java %s)%n",
+          mode, concurrency, requests, delayMs, Runtime.version().feature());
+      System.out.printf("  throughput  %8.0f req/s%n", requests / seconds);
+      System.out.printf("  p50         %8.1f ms%n", percentile(latencies, 0.50));
+      System.out.printf("  p99         %8.1f ms%n", percentile(latencies, 0.99));
+      System.out.printf("  max         %8.1f ms%n", latencies[latencies.length - 1] / 1e6);
+    } finally {
+      spark.stop();
+      spark.awaitStop();
+      mapbox.stop(0);
+      upstreamThreads.shutdownNow();
+    }
+  }
+
+  /**
+   * Sends requests with at most {@code concurrency} in flight.
+   *
+   * @return Each request's latency in nanoseconds.
+   */
+  private static long[] run(HttpClient client, String url, int concurrency, int requests)
+      throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url)).build();
+    Semaphore inFlight = new Semaphore(concurrency);
+    long[] latencies = new long[requests];
+    AtomicInteger failures = new AtomicInteger();
+    CompletableFuture<?>[] sent = new CompletableFuture<?>[requests];
+    for (int i = 0; i < requests; i++) {
+      inFlight.acquire();
+      int index = i;
+      long start = System.nanoTime();
+      sent[i] =
+          client
+              .sendAsync(request, HttpResponse.BodyHandlers.discarding())
+              .whenComplete(
+                  (response, error) -> {
+                    latencies[index] = System.nanoTime() - start;
+                    if (error != null || response.statusCode() != 200) {
+                      failures.incrementAndGet();
+                    }
+                    inFlight.release();
+                  });
+    }
+    CompletableFuture.allOf(sent).exceptionally(error -> null).join();
+    if (failures.get() > 0) {
+      System.out.println("  " + failures.get() + " requests failed");
+    }
+    return latencies;
+  }
+
+  private static double percentile(long[] sorted, double p) {
+    return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+  }
+}
@@ -0,0 +1,41 @@
+package edu.brown.cs.student.benchmarks;
+
+import java.util.Map;
+import java.util.Set;
+import spark.Request;
+
+/** A request with fixed query parameters, for calling handlers without a server or mocks. */
+class StubRequest extends Request {
+  private final String path;
+  private final Map<String, String> params;
+
+  StubRequest(String path, Map<String, String> params) {
+    this.path = path;
+    this.params = params;
+  }
+
+  @Override
+  public String pathInfo() {
+    return path;
+  }
+
+  @Override
+  public String queryParams(String name) {
+    return params.get(name);
+  }
+
+  @Override
+  public Set<String> queryParams() {
+    return params.keySet();
+  }
+
+  @Override
+  public String headers(String name) {
+    return null;
+  }
+
+  @Override
+  public <T> T attribute(String name) {
+    return null;
+  }
+}
@@ -0,0 +1,24 @@
+package edu.brown.cs.student.benchmarks;
+
+import spark.Response;
+
+/** A response that keeps only its status, for calling handlers without a server or mocks. */
+class StubResponse extends Response {
+  private int status = 200;
+
+  @Override
+  public void status(int statusCode) {
+    status = statusCode;
+  }
+
+  @Override
+  public int status() {
+    return status;
+  }
+
+  @Override
+  public void header(String header, String value) {}
+
+  @Override
+  public void type(String contentType) {}
+}
@@ -0,0 +1,309 @@
+package edu.brown.cs.student.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Local stand-ins for the Google Geocoding API, Amadeus (OAuth tokens and safety-rated locations)
+ * and Mapbox, each on its own port like the real hosts, answering with made-up but well-formed
+ * responses.
+ *
+ * <p>Every response is delayed by a log-normal latency with the given median and 99th percentile,
+ * and a share of responses are 500s or 429s instead, so the server's timeouts, retries, hedging and
+ * circuit breakers see something like production. Delays are waited out on a scheduler rather than
+ * a thread per request, so thousands of requests can be in flight.
+ *
+ * <p>Point the server at them with {@code -Dupstream.google.url}, {@code -Dupstream.amadeus.url}
+ * and {@code -Dupstream.mapbox.url}; {@link LoadGenerator} does this itself. To run them alone, use
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.brown.cs.student.benchmarks.StubUpstreams -Dexec.args="[medianMs] [p99Ms]
+ * [errorRate] [throttleRate]"}.
+ */
+public class StubUpstreams implements Closeable {
+
+  /** How the stubs respond. */
+  public static final class Behavior {
+    private final double medianMs;
+    private final double sigma;
+    private final double errorRate;
+    private final double throttleRate;
+
+    /**
+     * Constructs a behavior.
+     *
+     * @param medianMs The median response time.
+     * @param p99Ms The 99th percentile response time, at least the median.
+     * @param errorRate The share of requests answered with 500.
+     * @param throttleRate The share of requests answered with 429.
+     */
+    public Behavior(double medianMs, double p99Ms, double errorRate, double throttleRate) {
+      this.medianMs = medianMs;
+      // The 99th percentile of a standard normal is 2.326 standard deviations out
+      this.sigma = medianMs > 0 ? Math.log(Math.max(p99Ms, medianMs) / medianMs) / 2.326 : 0;
+      this.errorRate = errorRate;
+      this.throttleRate = throttleRate;
+    }
+
+    /**
+     * Reads a behavior from {@code stub.medianMs}, {@code stub.p99Ms}, {@code stub.errorRate} and
+     * {@code stub.throttleRate}, defaulting to 50ms median, 400ms p99, 1% errors and no 429s.
+     *
+     * @return The behavior.
+     */
+    public static Behavior fromSystemProperties() {
+      return new Behavior(
+          Double.parseDouble(System.getProperty("stub.medianMs", "50")),
+          Double.parseDouble(System.getProperty("stub.p99Ms", "400")),
+          Double.parseDouble(System.getProperty("stub.errorRate", "0.01")),
+          Double.parseDouble(System.getProperty("stub.throttleRate", "0")));
+    }
+
+    private long delayNanos() {
+      double millis = medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+      return (long) (millis * 1e6);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "median %.0fms, p99 %.0fms, %.1f%% errors, %.1f%% throttled",
+          medianMs,
+          medianMs * Math.exp(sigma * 2.326),
+          errorRate * 100,
+          throttleRate * 100);
+    }
+  }
+
+  private final Behavior behavior;
+  private final HttpServer google;
+  private final HttpServer amadeus;
+  private final HttpServer mapbox;
+  private final ExecutorService handlers = Executors.newFixedThreadPool(4);
+  private final ScheduledExecutorService responders = Executors.newScheduledThreadPool(4);
+  private final Map<String, AtomicLong> requests = new HashMap<>();
+
+  /**
+   * Starts the stubs on free ports.
+   *
+   * @param behavior How they respond.
+   * @throws IOException If a port can't be bound.
+   */
+  public StubUpstreams(Behavior behavior) throws IOException {
+    this.behavior = behavior;
+    google = start();
+    google.createContext("/maps/api/geocode/json", handler("geocode", StubUpstreams::geocode));
+    amadeus = start();
+    amadeus.createContext("/v1/security/oauth2/token", handler("token", StubUpstreams::token));
+    amadeus.createContext(
+        "/v1/safety/safety-rated-locations", handler("safety", StubUpstreams::safety));
+    mapbox = start();
+    mapbox.createContext("/geocoding/v5/mapbox.places/", handler("mapbox", StubUpstreams::mapbox));
+  }
+
+  public String googleUrl() {
+    return url(google);
+  }
+
+  public String amadeusUrl() {
+    return url(amadeus);
+  }
+
+  public String mapboxUrl() {
+    return url(mapbox);
+  }
+
+  /**
+   * @return How many requests each endpoint has received.
+   */
+  public Map<String, Long> requestCounts() {
+    Map<String, Long> counts = new HashMap<>();
+    requests.forEach((endpoint, count) -> counts.put(endpoint, count.get()));
+    return counts;
+  }
+
+  public Behavior getBehavior() {
+    return behavior;
+  }
+
+  @Override
+  public void close() {
+    google.stop(0);
+    amadeus.stop(0);
+    mapbox.stop(0);
+    responders.shutdownNow();
+    handlers.shutdownNow();
+  }
+
+  private HttpServer start() throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+    server.setExecutor(handlers);
+    server.start();
+    return server;
+  }
+
+  private static String url(HttpServer server) {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /**
+   * Answers an endpoint after a sampled delay, with an error or the body built from the request.
+   */
+  private HttpHandler handler(String endpoint, Function<URI, String> body) {
+    AtomicLong count = new AtomicLong();
+    requests.put(endpoint, count);
+    return exchange -> {
+      count.incrementAndGet();
+      exchange.getRequestBody().readAllBytes();
+      double roll = ThreadLocalRandom.current().nextDouble();
+      int status =
+          roll < behavior.errorRate
+              ? 500
+              : roll < behavior.errorRate + behavior.throttleRate ? 429 : 200;
+      String response =
+          status == 200 ? body.apply(exchange.getRequestURI()) : "{\"error\":" + status + "}";
+      responders.schedule(
+          () -> respond(exchange, status, response), behavior.delayNanos(), TimeUnit.NANOSECONDS);
+    };
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    try (OutputStream out = exchange.getResponseBody()) {
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, bytes.length);
+      out.write(bytes);
+    } catch (IOException e) {
+      // The client gave up; nothing to do
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static Map<String, String> query(URI uri) {
+    Map<String, String> params = new HashMap<>();
+    String raw = uri.getRawQuery();
+    if (raw == null) {
+      return params;
+    }
+    for (String pair : raw.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0) {
+        params.put(
+            URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+            URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+      }
+    }
+    return params;
+  }
+
+  /** A point around Providence, the same every time for the same place. */
+  private static double[] place(String name) {
+    int hash = name == null ? 0 : name.trim().toLowerCase(Locale.ROOT).hashCode();
+    return new double[] {
+      41.7 + (hash & 0xffff) / 65536.0 * 0.2, -71.5 + (hash >>> 16) / 65536.0 * 0.2
+    };
+  }
+
+  private static String geocode(URI uri) {
+    double[] point = place(query(uri).get("address"));
+    return "{\"results\":[{\"formatted_address\":\"Stub\",\"geometry\":{\"location\":{\"lat\":"
+        + point[0]
+        + ",\"lng\":"
+        + point[1]
+        + "},\"location_type\":\"APPROXIMATE\"}}],\"status\":\"OK\"}";
+  }
+
+  private static String token(URI uri) {
+    return "{\"type\":\"amadeusOAuth2Token\",\"access_token\":\"stub-token\","
+        + "\"expires_in\":1799,\"token_type\":\"Bearer\",\"state\":\"approved\"}";
+  }
+
+  /** Twenty rated locations spread over the requested circle. */
+  private static String safety(URI uri) {
+    Map<String, String> params = query(uri);
+    double lat = Double.parseDouble(params.getOrDefault("latitude", "41.8"));
+    double lon = Double.parseDouble(params.getOrDefault("longitude", "-71.4"));
+    double radiusDegrees = Double.parseDouble(params.getOrDefault("radius", "1")) / 111.0;
+    StringBuilder out = new StringBuilder("{\"data\":[");
+    for (int i = 0; i < 20; i++) {
+      double angle = i * 2 * Math.PI / 20;
+      double distance = radiusDegrees * (i % 4 + 1) / 4;
+      out.append(i == 0 ? "" : ",")
+          .append("{\"type\":\"safety-rated-location\",\"id\":\"Q")
+          .append(Math.abs((long) (lat * 1e4) * 31 + (long) (lon * 1e4)))
+          .append('-')
+          .append(i)
+          .append("\",\"subType\":\"DISTRICT\",\"name\":\"Stub district ")
+          .append(i)
+          .append("\",\"geoCode\":{\"latitude\":")
+          .append(lat + distance * Math.sin(angle))
+          .append(",\"longitude\":")
+          .append(lon + distance * Math.cos(angle))
+          .append("},\"safetyScores\":{\"lgbtq\":")
+          .append(20 + i)
+          .append(",\"medical\":0,\"overall\":")
+          .append(30 + i)
+          .append(",\"physicalHarm\":25,\"politicalFreedom\":40,\"theft\":")
+          .append(35 + i)
+          .append(",\"women\":30}}");
+    }
+    return out.append("],\"meta\":{\"count\":20}}").toString();
+  }
+
+  private static String mapbox(URI uri) {
+    String path = uri.getPath();
+    String name = path.substring(path.lastIndexOf('/') + 1).replace(".json", "");
+    double[] point = place(name);
+    StringBuilder out =
+        new StringBuilder("{\"type\":\"FeatureCollection\",\"query\":[\"" + name + "\"],");
+    out.append("\"features\":[");
+    for (int i = 0; i < 5; i++) {
+      out.append(i == 0 ? "" : ",")
+          .append("{\"id\":\"place.")
+          .append(i)
+          .append("\",\"type\":\"Feature\",\"place_name\":\"")
+          .append(name)
+          .append(' ')
+          .append(i)
+          .append(", Rhode Island, United States\",\"center\":[")
+          .append(point[1] + i * 0.01)
+          .append(',')
+          .append(point[0] + i * 0.01)
+          .append("]}");
+    }
+    return out.append("]}").toString();
+  }
+
+  public static void main(String[] args) throws IOException {
+    Behavior behavior =
+        new Behavior(
+            args.length > 0 ? Double.parseDouble(args[0]) : 50,
+            args.length > 1 ? Double.parseDouble(args[1]) : 400,
+            args.length > 2 ? Double.parseDouble(args[2]) : 0.01,
+            args.length > 3 ? Double.parseDouble(args[3]) : 0);
+    StubUpstreams stubs = new StubUpstreams(behavior);
+    System.out.println("Stub upstreams (" + behavior + "):");
+    System.out.println("  -Dupstream.google.url=" + stubs.googleUrl());
+    System.out.println("  -Dupstream.amadeus.url=" + stubs.amadeusUrl());
+    System.out.println("  -Dupstream.mapbox.url=" + stubs.mapboxUrl());
+  }
+}
@@ -0,0 +1,75 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.History.SuggestIndex;
+import edu.brown.cs.student.main.Server.History.Suggestion;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Suggestion lookups and search updates on an index of {@code places} distinct places. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SuggestIndexBenchmark {
+  private static final String[] STREETS = {
+    "Main St", "Thayer St", "Hope St", "Benefit St", "Wickenden St", "Angell St", "Waterman St"
+  };
+  private static final String[] CITIES = {
+    "Providence", "Pawtucket", "Portland", "Boston", "Brookline", "New Haven", "Newport"
+  };
+
+  @Param({"10000", "100000"})
+  public int places;
+
+  private SuggestIndex index;
+  private String[] prefixes;
+  private String[] searches;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(7);
+    index = new SuggestIndex(10, places);
+    searches = new String[places];
+    for (int i = 0; i < places; i++) {
+      searches[i] =
+          random.nextInt(400)
+              + " "
+              + STREETS[random.nextInt(STREETS.length)]
+              + ", "
+              + CITIES[random.nextInt(CITIES.length)]
+              + " "
+              + i;
+      index.add(searches[i]);
+    }
+    prefixes = new String[1024];
+    for (int i = 0; i < prefixes.length; i++) {
+      String search = searches[random.nextInt(places)];
+      prefixes[i] = search.substring(0, 1 + random.nextInt(Math.min(12, search.length())));
+    }
+  }
+
+  @Benchmark
+  public List<Suggestion> suggest() {
+    return index.suggest(prefixes[next++ & (prefixes.length - 1)], 5);
+  }
+
+  @Benchmark
+  public void add() {
+    index.add(searches[next++ % searches.length]);
+  }
+}
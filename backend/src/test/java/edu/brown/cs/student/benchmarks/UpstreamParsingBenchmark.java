@@ -0,0 +1,133 @@
+package edu.brown.cs.student.benchmarks;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.Server.SafeTravels.UpstreamParsers;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import okio.Buffer;
+
+/**
+ * Compares bytes allocated and time per parse for the old Map-tree decoding of upstream responses
+ * against the streaming UpstreamParsers.
+ *
+ * <p>Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=edu.brown.cs.student.benchmarks.UpstreamParsingBenchmark}.
+ */
+public class UpstreamParsingBenchmark {
+  private static final int ITERATIONS = 20_000;
+
+  /** Parses one response; returns something derived from it so the work isn't optimized away. */
+  private interface Parser {
+    double parse(byte[] body) throws Exception;
+  }
+
+  public static void main(String[] args) throws Exception {
+    byte[] geocode = geocodeResponse().getBytes(StandardCharsets.UTF_8);
+    byte[] safety = safetyResponse(50).getBytes(StandardCharsets.UTF_8);
+
+    System.out.printf("%-28s %14s %12s%n", "", "bytes/parse", "us/parse");
+    report("geocode, Map tree", geocode, UpstreamParsingBenchmark::geocodeAsMap);
+    report(
+        "geocode, streaming",
+        geocode,
+        body -> UpstreamParsers.readCoordinates(JsonReader.of(new Buffer().write(body)))[0]);
+    report("safety (50 locations), Map", safety, UpstreamParsingBenchmark::safetyAsMap);
+    report(
+        "safety (50 locations), stream",
+        safety,
+        body ->
+            UpstreamParsers.readSafetyRatings(JsonReader.of(new Buffer().write(body)))
+                .getData()
+                .size());
+  }
+
+  private static void report(String name, byte[] body, Parser parser) throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+    double sink = 0;
+    // Warm up
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink += parser.parse(body);
+    }
+    long bytesBefore = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink += parser.parse(body);
+    }
+    long nanos = System.nanoTime() - start;
+    long bytes = threads.getThreadAllocatedBytes(thread) - bytesBefore;
+    System.out.printf(
+        "%-28s %14d %12.2f   (%s)%n",
+        name, bytes / ITERATIONS, nanos / 1e3 / ITERATIONS, sink > 0 ? "ok" : "?");
+  }
+
+  /** The decoding APIClient used before: a fresh Moshi and a Map for the whole response. */
+  @SuppressWarnings("unchecked")
+  private static double geocodeAsMap(byte[] body) throws Exception {
+    Moshi moshi = new Moshi.Builder().build();
+    JsonAdapter<Map<String, Object>> adapter =
+        moshi.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+    Map<String, Object> response = adapter.fromJson(new Buffer().write(body));
+    List<Map<String, Object>> results = (List<Map<String, Object>>) response.get("results");
+    Map<String, Object> geometry = (Map<String, Object>) results.get(0).get("geometry");
+    Map<String, Double> location = (Map<String, Double>) geometry.get("location");
+    return location.get("lat");
+  }
+
+  private static double safetyAsMap(byte[] body) throws Exception {
+    Moshi moshi = new Moshi.Builder().build();
+    JsonAdapter<Map<String, Object>> adapter =
+        moshi.adapter(Types.newParameterizedType(Map.class, String.class, Object.class));
+    Map<String, Object> response = adapter.fromJson(new Buffer().write(body));
+    return ((List<?>) response.get("data")).size();
+  }
+
+  /** A Geocoding API response shaped like a real one for a street address. */
+  private static String geocodeResponse() {
+    String component =
+        "{\"long_name\":\"Sussex Drive\",\"short_name\":\"Sussex Dr\",\"types\":[\"route\"]}";
+    StringBuilder components = new StringBuilder();
+    for (int i = 0; i < 8; i++) {
+      components.append(i == 0 ? "" : ",").append(component);
+    }
+    return "{\"results\":[{\"address_components\":["
+        + components
+        + "],\"formatted_address\":\"24 Sussex Dr, Ottawa, ON K1M 1M4, Canada\","
+        + "\"geometry\":{\"location\":{\"lat\":45.4444101,\"lng\":-75.6938779},"
+        + "\"location_type\":\"ROOFTOP\",\"viewport\":{\"northeast\":{\"lat\":45.44,\"lng\":-75.69},"
+        + "\"southwest\":{\"lat\":45.44,\"lng\":-75.69}}},\"place_id\":\"ChIJ\","
+        + "\"plus_code\":{\"compound_code\":\"CAV4+QG\",\"global_code\":\"87Q6CAV4+QG\"},"
+        + "\"types\":[\"street_address\"]}],\"status\":\"OK\"}";
+  }
+
+  /** An Amadeus safety-rated-locations response with the given number of locations. */
+  private static String safetyResponse(int locations) {
+    StringBuilder data = new StringBuilder();
+    for (int i = 0; i < locations; i++) {
+      data.append(i == 0 ? "" : ",")
+          .append("{\"type\":\"safety-rated-location\",\"id\":\"Q")
+          .append(930402719 + i)
+          .append("\",\"self\":{\"type\":\"https://test.api.amadeus.com/v1/safety/")
+          .append("safety-rated-locations\",\"methods\":[\"GET\"]},\"subType\":\"DISTRICT\",")
+          .append("\"name\":\"Barcelona at ")
+          .append(i)
+          .append("\",\"geoCode\":{\"latitude\":")
+          .append(41.38 + i * 0.001)
+          .append(",\"longitude\":")
+          .append(2.17 + i * 0.001)
+          .append("},\"safetyScores\":{\"lgbtq\":39,\"medical\":0,\"overall\":45,")
+          .append("\"physicalHarm\":36,\"politicalFreedom\":50,\"theft\":44,\"women\":34}}");
+    }
+    return "{\"data\":["
+        + data
+        + "],\"meta\":{\"count\":"
+        + locations
+        + ",\"links\":{\"self\":\"https://test.api.amadeus.com/v1/safety/safety-rated-locations\"}}}";
+  }
+}
@@ -0,0 +1,83 @@
+package edu.brown.cs.student.benchmarks;
+
+import edu.brown.cs.student.main.Server.LoginHandler.DurableCredentialStore;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to open a DurableCredentialStore holding {@code users} users, all but the last 1000 of them
+ * in the snapshot, and answer one login.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserStoreStartupBenchmark {
+  private static final int TAIL = 1000;
+
+  @Param({"10000", "1000000"})
+  public int users;
+
+  private Path dir;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    dir = Files.createTempDirectory("users");
+    DurableCredentialStore store = DurableCredentialStore.open(dir, users - TAIL);
+    // Many registering threads, so their records share fsyncs
+    ExecutorService executor = Executors.newFixedThreadPool(64);
+    for (int t = 0; t < 64; t++) {
+      int thread = t;
+      executor.execute(
+          () -> {
+            for (int i = thread; i < users - TAIL; i += 64) {
+              store.register("user" + i, "hash" + i);
+            }
+          });
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.HOURS);
+    while (store.loggedSinceSnapshot() > 0) {
+      Thread.sleep(10);
+    }
+    for (int i = users - TAIL; i < users; i++) {
+      store.register("user" + i, "hash" + i);
+    }
+    store.close();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public String openAndLookUp() throws IOException {
+    try (DurableCredentialStore store = DurableCredentialStore.open(dir, Integer.MAX_VALUE)) {
+      return store.get("user" + (users / 2));
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package edu.brown.cs.student.geocodetests;
 import edu.brown.cs.student.main.Server.SafeTravels.APIClient;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
 import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -85,43 +87,41 @@ public class APIClientTest {
   @Test
   public void testSuccessfulApiCall() throws Exception {
 
-    Map<String, Object> result = client.getSafetyRatings(41.397158, 2.160873, 2);
+    SafetyRatings result = client.getSafetyRatings(41.397158, 2.160873, 2);
     assertNotNull(result);
-    assertTrue(result.containsKey("data"));
-    List<Map<String, Object>> dataList = (List<Map<String, Object>>) result.get("data");
-    Map<String, Object> firstEntry = dataList.get(0);
-    assertTrue(firstEntry.containsKey("type"), "Entry should contain type key");
-    assertTrue(firstEntry.containsKey("id"), "Entry should contain id key");
-    assertTrue(firstEntry.containsKey("geoCode"), "Entry should contain geoCode key");
-    assertTrue(firstEntry.containsKey("safetyScores"), "Entry should contain safetyScores key");
+    assertNotNull(result.getData());
+    List<SafetyLocation> dataList = result.getData();
+    SafetyLocation firstEntry = dataList.get(0);
+    assertNotNull(firstEntry.getType(), "Entry should contain type key");
+    assertNotNull(firstEntry.getId(), "Entry should contain id key");
 
     // Validate geoCode and safetyScores
-    Map<String, Double> geoCode = (Map<String, Double>) firstEntry.get("geoCode");
-    Map<String, Double> safetyScores = (Map<String, Double>) firstEntry.get("safetyScores");
+    SafetyLocation.GeoCode geoCode = firstEntry.getGeoCode();
+    SafetyLocation.SafetyScores safetyScores = firstEntry.getSafetyScores();
 
     assertNotNull(geoCode, "geoCode should not be null");
     assertNotNull(safetyScores, "safetyScores should not be null");
 
     // Validate specific safety scores
-    assertTrue(safetyScores.containsKey("overall"), "safetyScores should contain overall key");
-    assertTrue(safetyScores.containsKey("theft"), "safetyScores should contain theft key");
+    assertTrue(safetyScores.getOverall() > 0, "safetyScores should contain overall key");
+    assertTrue(safetyScores.getTheft() > 0, "safetyScores should contain theft key");
   }
 
   // Test method for zero radius
   @Test
   public void testZeroRadius() throws DatasourceException {
-    Map<String, Object> result = client.getSafetyRatings(41.397158, 2.160873, 0);
+    SafetyRatings result = client.getSafetyRatings(41.397158, 2.160873, 0);
     assertNotNull(result);
-    assertFalse(result.containsKey("data"));
+    assertTrue(result.getData().isEmpty());
   }
 
 
   // Test method for wrong coordinates
   @Test
   public void testWrongCoord() throws DatasourceException {
-    Map<String, Object> result = client.getSafetyRatings(-1018439, -10909209, 0);
+    SafetyRatings result = client.getSafetyRatings(-1018439, -10909209, 0);
     assertNotNull(result);
-    assertFalse(result.containsKey("data"));
+    assertTrue(result.getData().isEmpty());
   }
 
 
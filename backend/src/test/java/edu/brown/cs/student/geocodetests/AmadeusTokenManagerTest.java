@@ -0,0 +1,119 @@
+package edu.brown.cs.student.geocodetests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.SafeTravels.AmadeusTokenManager;
+import edu.brown.cs.student.main.Server.SafeTravels.AmadeusTokenManager.AccessToken;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+public class AmadeusTokenManagerTest {
+  private final AtomicLong now = new AtomicLong();
+  private final AtomicInteger fetches = new AtomicInteger();
+
+  private AmadeusTokenManager manager(long expiresInSeconds) {
+    return new AmadeusTokenManager(
+        () -> new AccessToken("token" + fetches.incrementAndGet(), expiresInSeconds),
+        Duration.ofSeconds(60),
+        Runnable::run,
+        now::get);
+  }
+
+  // Test that the token is reused until it needs refreshing
+  @Test
+  public void testTokenIsCached() throws DatasourceException {
+    AmadeusTokenManager tokens = manager(1799);
+    assertEquals("token1", tokens.getToken());
+    assertEquals("token1", tokens.getToken());
+    assertEquals("token1", tokens.getToken());
+    assertEquals(1, fetches.get());
+    assertEquals(1, tokens.getRefreshCount());
+    assertEquals(2, tokens.getCacheHitCount());
+  }
+
+  // Test that a token close to expiry triggers a refresh, and an expired one is never served
+  @Test
+  public void testRefreshBeforeExpiry() throws DatasourceException {
+    AmadeusTokenManager tokens = manager(1799);
+    assertEquals("token1", tokens.getToken());
+
+    // Inside the refresh window: the old token is served while the new one is fetched
+    now.set(Duration.ofSeconds(1750).toNanos());
+    assertEquals("token1", tokens.getToken());
+    assertEquals("token2", tokens.getToken());
+
+    // Past expiry of token2: the caller waits for a new token
+    now.addAndGet(Duration.ofSeconds(1800).toNanos());
+    assertEquals("token3", tokens.getToken());
+    assertEquals(3, tokens.getRefreshCount());
+  }
+
+  // Test that a rejected token is dropped
+  @Test
+  public void testInvalidate() throws DatasourceException {
+    AmadeusTokenManager tokens = manager(1799);
+    assertEquals("token1", tokens.getToken());
+    tokens.invalidate("someOtherToken");
+    assertEquals("token1", tokens.getToken());
+    tokens.invalidate("token1");
+    assertEquals("token2", tokens.getToken());
+  }
+
+  // Test that fetch failures are surfaced as DatasourceExceptions
+  @Test
+  public void testFetchFailure() {
+    AmadeusTokenManager tokens =
+        new AmadeusTokenManager(
+            () -> {
+              throw new DatasourceException("Failed to obtain token: Unauthorized");
+            },
+            Duration.ofSeconds(60),
+            Runnable::run,
+            now::get);
+    Exception exception = assertThrows(DatasourceException.class, tokens::getToken);
+    assertTrue(exception.getMessage().contains("Unauthorized"));
+    assertEquals(1, tokens.getRefreshFailureCount());
+  }
+
+  // Test that many concurrent callers with an empty cache share one fetch
+  @Test
+  public void testConcurrentCallersShareOneFetch() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AmadeusTokenManager tokens =
+        new AmadeusTokenManager(
+            () -> {
+              try {
+                release.await(5, TimeUnit.SECONDS);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return new AccessToken("token" + fetches.incrementAndGet(), 1799);
+            },
+            Duration.ofSeconds(60),
+            Executors.newSingleThreadExecutor(),
+            System::nanoTime);
+
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    List<Future<String>> results = new ArrayList<>();
+    for (int i = 0; i < 64; i++) {
+      results.add(pool.submit(tokens::getToken));
+    }
+    Thread.sleep(100);
+    release.countDown();
+    for (Future<String> result : results) {
+      assertEquals("token1", result.get(5, TimeUnit.SECONDS));
+    }
+    pool.shutdown();
+    assertEquals(1, fetches.get());
+  }
+}
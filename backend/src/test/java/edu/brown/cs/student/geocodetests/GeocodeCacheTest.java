@@ -0,0 +1,134 @@
+package edu.brown.cs.student.geocodetests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.SafeTravels.GeocodeCache;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GeocodeCacheTest {
+  private GeocodeCache cache;
+  private AtomicInteger lookups;
+
+  private final GeocodeCache.Loader loader =
+      address -> {
+        lookups.incrementAndGet();
+        if (address.contains("Imaginary")) {
+          throw new DatasourceException(GeocodeCache.NO_RESULTS);
+        }
+        if (address.isBlank()) {
+          throw new DatasourceException(
+              "unexpected: API connection not success status Bad Request");
+        }
+        return List.of(41.826, -71.403);
+      };
+
+  @BeforeEach
+  public void setUp() {
+    cache = new GeocodeCache(2, Duration.ofHours(1), Duration.ofMinutes(5));
+    lookups = new AtomicInteger();
+  }
+
+  // Test that differently spelled versions of one address share an entry
+  @Test
+  public void testNormalizedHits() throws DatasourceException {
+    assertEquals(List.of(41.826, -71.403), cache.get("69 Brown St, Providence", loader));
+    assertEquals(List.of(41.826, -71.403), cache.get("  69 brown st ,  PROVIDENCE ", loader));
+    assertEquals(1, lookups.get());
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+  }
+
+  // Test that addresses with no results are remembered, but other errors are not
+  @Test
+  public void testNegativeCaching() {
+    for (int i = 0; i < 3; i++) {
+      Exception e =
+          assertThrows(
+              DatasourceException.class,
+              () -> cache.get("1234 Unknown St, Imaginary City", loader));
+      assertEquals(GeocodeCache.NO_RESULTS, e.getMessage());
+    }
+    assertEquals(1, lookups.get());
+    assertEquals(2, cache.negativeHitCount());
+
+    assertThrows(DatasourceException.class, () -> cache.get("", loader));
+    assertThrows(DatasourceException.class, () -> cache.get("", loader));
+    assertEquals(3, lookups.get());
+  }
+
+  // Test that the cache stays within its size bound
+  @Test
+  public void testEviction() throws DatasourceException {
+    cache.get("a", loader);
+    cache.get("b", loader);
+    cache.get("c", loader);
+    assertTrue(cache.size() <= 2);
+    assertTrue(cache.stats().evictionCount() >= 1);
+  }
+
+  // Test that a snapshot restores the cached lookups
+  @Test
+  public void testSnapshotRoundTrip() throws Exception {
+    cache.get("69 Brown St, Providence", loader);
+    Path snapshot = Files.createTempFile("geocode", ".tsv");
+    cache.saveSnapshot(snapshot);
+
+    GeocodeCache restored = new GeocodeCache(2, Duration.ofHours(1), Duration.ofMinutes(5));
+    assertEquals(1, restored.loadSnapshot(snapshot));
+    assertEquals(List.of(41.826, -71.403), restored.get("69 Brown St, Providence", loader));
+    assertEquals(1, lookups.get());
+    Files.delete(snapshot);
+  }
+
+  // Test that restored lookups keep their age, so a restart doesn't extend their lifetime
+  @Test
+  public void testSnapshotKeepsAge() throws Exception {
+    cache.get("69 Brown St, Providence", loader);
+    Path snapshot = Files.createTempFile("geocode", ".tsv");
+    cache.saveSnapshot(snapshot);
+    Thread.sleep(100);
+
+    GeocodeCache restored =
+        new GeocodeCache(2, Duration.ofMillis(50), Duration.ofMinutes(5), Duration.ofHours(1));
+    assertEquals(0, restored.loadSnapshot(snapshot));
+    assertEquals(0, restored.size());
+    GeocodeCache.Loader down =
+        address -> {
+          lookups.incrementAndGet();
+          throw new DatasourceException("Service Unavailable");
+        };
+    assertEquals(List.of(41.826, -71.403), restored.get("69 Brown St, Providence", down));
+    assertEquals(2, lookups.get());
+    Files.delete(snapshot);
+  }
+
+  // Test that expired coordinates are served when the geocoder fails, but not while it answers
+  @Test
+  public void testStaleFallback() throws Exception {
+    GeocodeCache stale =
+        new GeocodeCache(10, Duration.ofMillis(50), Duration.ofMinutes(5), Duration.ofHours(1));
+    assertEquals(
+        List.of(41.826, -71.403), stale.get("Providence", address -> List.of(41.826, -71.403)));
+    Thread.sleep(100);
+
+    GeocodeCache.Loader down =
+        address -> {
+          lookups.incrementAndGet();
+          throw new DatasourceException("Service Unavailable");
+        };
+    assertEquals(List.of(41.826, -71.403), stale.get("providence", down));
+    assertEquals(List.of(41.826, -71.403), stale.get("providence", down));
+    assertEquals(2, lookups.get());
+    assertEquals(2, stale.staleHitCount());
+    assertThrows(DatasourceException.class, () -> stale.get("Boston", down));
+
+    assertEquals(List.of(1.0, 2.0), stale.get("providence", address -> List.of(1.0, 2.0)));
+  }
+}
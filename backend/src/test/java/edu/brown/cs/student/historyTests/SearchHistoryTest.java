@@ -0,0 +1,223 @@
+package edu.brown.cs.student.historyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import edu.brown.cs.student.main.Server.History.HistoryEntry;
+import edu.brown.cs.student.main.Server.History.HistoryHandler;
+import edu.brown.cs.student.main.Server.History.HistoryPage;
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import edu.brown.cs.student.main.json.Serializer;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import spark.Request;
+import spark.Response;
+
+public class SearchHistoryTest {
+  @TempDir Path dir;
+
+  private static List<String> places(HistoryPage page) {
+    return page.getEntries().stream().map(HistoryEntry::getPlace).collect(Collectors.toList());
+  }
+
+  // Test that each user keeps only their newest searches, paged newest first
+  @Test
+  public void testBoundedPaging() {
+    SearchHistory history = new SearchHistory(5);
+    for (int i = 0; i < 8; i++) {
+      history.record("ada", "place " + i);
+    }
+    history.record(SearchHistory.ANONYMOUS, "elsewhere");
+
+    assertEquals(5, history.size("ada"));
+    HistoryPage first = history.page("ada", 0, 3);
+    assertEquals(List.of("place 7", "place 6", "place 5"), places(first));
+    assertEquals(5, first.getTotal());
+    assertEquals(3, first.getNext());
+    HistoryPage last = history.page("ada", 3, 3);
+    assertEquals(List.of("place 4", "place 3"), places(last));
+    assertNull(last.getNext());
+
+    assertEquals(List.of("elsewhere"), places(history.page(SearchHistory.ANONYMOUS, 0, 10)));
+    assertEquals(0, history.page("nobody", 0, 10).getTotal());
+  }
+
+  // Test that concurrent writers never lose the newest entries or tear a page
+  @Test
+  public void testConcurrentWriters() throws Exception {
+    SearchHistory history = new SearchHistory(64);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      executor.execute(
+          () -> {
+            for (int i = 0; i < 1000; i++) {
+              history.record("ada", thread + ":" + i);
+              history.page("ada", 0, 10);
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+    List<String> kept = places(history.page("ada", 0, 64));
+    // A writer stalled for a whole lap of the ring leaves its slot to the newer entry
+    assertTrue(kept.size() > 56, Integer.toString(kept.size()));
+    assertEquals(kept.size(), new HashSet<>(kept).size());
+  }
+
+  // Test that a persisted history is read back, and compaction keeps the log bounded
+  @Test
+  public void testPersistenceAndCompaction() throws Exception {
+    SearchHistory history = SearchHistory.open(dir, 10, 256, 3);
+    for (int i = 0; i < 200; i++) {
+      history.record(i % 2 == 0 ? "ada" : "bob", "place " + i);
+      // Compaction runs in the background, so the log may briefly run ahead of it
+      for (int wait = 0; history.segmentCount() > 8 && wait < 500; wait++) {
+        Thread.sleep(10);
+      }
+      assertTrue(history.segmentCount() <= 8, Integer.toString(history.segmentCount()));
+    }
+    history.close();
+
+    SearchHistory reopened = SearchHistory.open(dir, 10, 256, 3);
+    assertEquals(places(history.page("ada", 0, 10)), places(reopened.page("ada", 0, 10)));
+    assertEquals(places(history.page("bob", 0, 10)), places(reopened.page("bob", 0, 10)));
+    assertEquals("place 198", reopened.page("ada", 0, 1).getEntries().get(0).getPlace());
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(reopened.segmentCount(), files.count());
+    }
+  }
+
+  // Test that concurrent appends, across segment rolls and compactions, are each read back once
+  @Test
+  public void testConcurrentPersistedWriters() throws Exception {
+    SearchHistory history = SearchHistory.open(dir, 1000, 256, 3);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      executor.execute(
+          () -> {
+            for (int i = 0; i < 200; i++) {
+              history.record("user" + thread, "place " + i);
+            }
+          });
+    }
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+    history.close();
+
+    SearchHistory reopened = SearchHistory.open(dir, 1000, 256, 3);
+    for (int t = 0; t < 8; t++) {
+      List<String> kept = places(reopened.page("user" + t, 0, 1000));
+      assertEquals(200, kept.size(), "user" + t);
+      assertEquals("place 199", kept.get(0));
+      assertEquals("place 0", kept.get(199));
+    }
+  }
+
+  // Test that a crash partway through compaction replays each search once
+  @Test
+  public void testCrashDuringCompaction() throws Exception {
+    SearchHistory history = SearchHistory.open(dir, 100, 256, 3);
+    for (int i = 0; i < 12; i++) {
+      history.record("ada", "place " + i);
+    }
+    // Copies of the segments compaction is about to replace
+    Path backup = Files.createDirectory(dir.resolve("backup"));
+    List<Path> segments;
+    try (Stream<Path> files = Files.list(dir)) {
+      segments = files.filter(Files::isRegularFile).collect(Collectors.toList());
+    }
+    for (Path segment : segments) {
+      Files.copy(segment, backup.resolve(segment.getFileName()));
+    }
+    for (int i = 12; i < 60; i++) {
+      history.record("ada", "place " + i);
+    }
+    history.close();
+    try (Stream<Path> files = Files.list(dir)) {
+      assertTrue(files.anyMatch(file -> file.toString().endsWith(".compact")));
+    }
+
+    // As if the process died after the compacted file was renamed into place, before the old
+    // segments were deleted, and during a later compaction
+    for (Path segment : segments) {
+      Files.copy(backup.resolve(segment.getFileName()), segment);
+    }
+    Files.writeString(dir.resolve("history-00009999.compact.tmp"), "half written");
+    SearchHistory reopened = SearchHistory.open(dir, 100, 256, 3);
+    assertEquals(places(history.page("ada", 0, 100)), places(reopened.page("ada", 0, 100)));
+    assertEquals(60, reopened.size("ada"));
+    for (Path segment : segments) {
+      assertFalse(Files.exists(segment), segment.toString());
+    }
+    assertFalse(Files.exists(dir.resolve("history-00009999.compact.tmp")));
+  }
+
+  // Test that a record cut short by a crash is dropped and then overwritten
+  @Test
+  public void testTornRecord() throws Exception {
+    SearchHistory history = SearchHistory.open(dir, 10, 4096, 3);
+    history.record("ada", "Providence");
+    history.record("ada", "Boston");
+    history.close();
+
+    // A length header pointing past the end of the segment, as if the process died mid-append
+    Path segment;
+    try (Stream<Path> files = Files.list(dir)) {
+      segment = files.findFirst().orElseThrow();
+    }
+    long end = 2 * (4 + 8 + 2 + 3) + "Providence".length() + "Boston".length();
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      file.seek(end);
+      file.writeInt(10_000);
+    }
+
+    SearchHistory reopened = SearchHistory.open(dir, 10, 4096, 3);
+    assertEquals(List.of("Boston", "Providence"), places(reopened.page("ada", 0, 10)));
+    reopened.record("ada", "Newport");
+    reopened.close();
+    assertEquals(
+        List.of("Newport", "Boston", "Providence"),
+        places(SearchHistory.open(dir, 10, 4096, 3).page("ada", 0, 10)));
+  }
+
+  // Test the /history response and its argument checks
+  @Test
+  public void testHandler() throws Exception {
+    SearchHistory history = new SearchHistory(10);
+    history.record("ada", "Providence");
+    history.record("ada", "Boston");
+    HistoryHandler handler = new HistoryHandler(history);
+
+    Request request = mock(Request.class);
+    when(request.queryParams("user")).thenReturn("ada");
+    when(request.queryParams("limit")).thenReturn("1");
+    Map<String, Object> body =
+        Serializer.MAP.fromJson((String) handler.handle(request, mock(Response.class)));
+    assertEquals("success", body.get("type"));
+    Map<?, ?> data = (Map<?, ?>) body.get("data");
+    assertEquals(2.0, data.get("total"));
+    assertEquals(1.0, data.get("next"));
+    assertEquals("Boston", ((Map<?, ?>) ((List<?>) data.get("entries")).get(0)).get("place"));
+
+    when(request.queryParams("limit")).thenReturn("1000");
+    body = Serializer.MAP.fromJson((String) handler.handle(request, mock(Response.class)));
+    assertEquals("error", body.get("type"));
+    when(request.queryParams("limit")).thenReturn("ten");
+    body = Serializer.MAP.fromJson((String) handler.handle(request, mock(Response.class)));
+    assertEquals("bad_request", body.get("error_type"));
+  }
+}
@@ -0,0 +1,98 @@
+package edu.brown.cs.student.historyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import edu.brown.cs.student.main.Server.History.SuggestIndex;
+import edu.brown.cs.student.main.Server.History.Suggestion;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class SuggestIndexTest {
+
+  private static List<String> places(List<Suggestion> suggestions) {
+    return suggestions.stream().map(Suggestion::getPlace).collect(Collectors.toList());
+  }
+
+  // Test that suggestions are ranked by count, and reorder as counts change
+  @Test
+  public void testRanking() {
+    SuggestIndex index = new SuggestIndex(3, 100);
+    index.add("Providence, RI");
+    index.add("Portland, ME");
+    index.add("Portland, ME");
+    index.add("Paris");
+    index.add("  PROVIDENCE ,  ri");
+
+    assertEquals(List.of("Portland, ME", "Providence, RI", "Paris"), places(index.suggest("p", 5)));
+    assertEquals(List.of("Portland, ME", "Providence, RI"), places(index.suggest("P", 2)));
+    assertEquals(List.of("Providence, RI"), places(index.suggest("prov", 5)));
+    assertEquals(2, index.suggest("providence,ri", 5).get(0).getCount());
+
+    index.add("Paris");
+    index.add("Paris");
+    assertEquals("Paris", index.suggest("p", 1).get(0).getPlace());
+    assertEquals(3, index.suggest("pa", 1).get(0).getCount());
+    assertTrue(index.suggest("q", 5).isEmpty());
+  }
+
+  // Test the incrementally kept top lists against a full count of random searches
+  @Test
+  public void testMatchesFullCount() {
+    SuggestIndex index = new SuggestIndex(5, 10_000);
+    Map<String, Integer> counts = new HashMap<>();
+    Random random = new Random(7);
+    String[] words = {"new", "newark", "newport", "north", "nor", "boston", "bos", "bristol"};
+    for (int i = 0; i < 5000; i++) {
+      String place = words[random.nextInt(words.length)] + " " + random.nextInt(30);
+      // Skewed, so the ranking has clear winners
+      int repeats = 1 + (int) (Math.abs(random.nextGaussian()) * 3);
+      for (int r = 0; r < repeats; r++) {
+        index.add(place);
+        counts.merge(place, 1, Integer::sum);
+      }
+    }
+
+    for (String prefix : List.of("n", "new", "newp", "bo", "bristol 1", "nor")) {
+      List<Long> expected =
+          counts.entrySet().stream()
+              .filter(entry -> entry.getKey().startsWith(prefix))
+              .map(entry -> (long) entry.getValue())
+              .sorted(Comparator.reverseOrder())
+              .limit(5)
+              .collect(Collectors.toList());
+      List<Long> actual =
+          index.suggest(prefix, 5).stream().map(Suggestion::getCount).collect(Collectors.toList());
+      assertEquals(expected, actual, prefix);
+    }
+  }
+
+  // Test that once full, only known places are counted
+  @Test
+  public void testMaxPlaces() {
+    SuggestIndex index = new SuggestIndex(5, 2);
+    index.add("Boston");
+    index.add("Bristol");
+    index.add("Brooklyn");
+    index.add("Bristol");
+    assertEquals(2, index.size());
+    assertEquals(List.of("Bristol", "Boston"), places(index.suggest("b", 5)));
+  }
+
+  // Test that searches recorded in the history feed its suggestions
+  @Test
+  public void testFedByHistory() {
+    SearchHistory history = new SearchHistory(10);
+    history.record("ada", "Providence");
+    history.record("bob", "Providence");
+    history.record(SearchHistory.ANONYMOUS, "Portland");
+    List<Suggestion> suggestions = history.suggestions().suggest("p", 5);
+    assertEquals(List.of("Providence", "Portland"), places(suggestions));
+    assertEquals(2, suggestions.get(0).getCount());
+  }
+}
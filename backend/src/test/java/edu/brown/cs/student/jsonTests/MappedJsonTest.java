@@ -0,0 +1,136 @@
+package edu.brown.cs.student.jsonTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.json.JSONData;
+import edu.brown.cs.student.main.json.Serializer;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedJsonTest {
+  private final JSONData jsonData = JSONData.getInstance();
+
+  @TempDir Path dir;
+
+  private Path write(String name, String json) throws IOException {
+    Path tmp = dir.resolve(name + ".tmp");
+    Files.writeString(tmp, json, StandardCharsets.UTF_8);
+    Path file = dir.resolve(name);
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    return file;
+  }
+
+  private static String features(int count, String name) {
+    StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < count; i++) {
+      json.append(i == 0 ? "" : ",\n  ").append("{\"properties\":{\"name\":\"").append(name);
+      json.append(' ').append(i).append("\"},\"coordinates\":[").append(i).append(",-71.4]}");
+    }
+    return json.append("]}").toString();
+  }
+
+  // Test that a mapped file reads the same as one parsed onto the heap
+  @Test
+  public void testMatchesParsed() throws Exception {
+    String json =
+        " {\"a\": 1, \"s\": \"x\\\"y\\u00e9,]}\", \"nested\": {\"list\": [true, null, {}, []]},"
+            + " \"esc\\\"aped\": \"k\", \"café\": -2.5e3, \"empty\": []}\n";
+    Path file = write("small.json", json);
+    jsonData.loadJsonFromFileMapped(file.toString(), "mappedSmall");
+    jsonData.loadJsonFromString(json, "parsedSmall");
+
+    @SuppressWarnings("unchecked")
+    Map<String, Object> mapped = (Map<String, Object>) jsonData.getJsonData("mappedSmall");
+    assertEquals(jsonData.getJsonData("parsedSmall"), mapped);
+    assertEquals(
+        Serializer.ANY.toJson(jsonData.getJsonData("parsedSmall")), Serializer.ANY.toJson(mapped));
+    assertEquals(1.0, mapped.get("a"));
+    assertEquals("k", mapped.get("esc\"aped"));
+    assertNull(mapped.get("missing"));
+    assertThrows(UnsupportedOperationException.class, () -> mapped.put("b", 1));
+
+    // Keys come in file order, and can't be removed through the key set either
+    List<String> order = List.of("a", "s", "nested", "esc\"aped", "café", "empty");
+    assertEquals(order, new ArrayList<>(mapped.keySet()));
+    assertEquals(
+        order, mapped.entrySet().stream().map(Map.Entry::getKey).collect(Collectors.toList()));
+    assertTrue(mapped.keySet().contains("café"));
+    assertThrows(UnsupportedOperationException.class, () -> mapped.keySet().remove("a"));
+    assertThrows(UnsupportedOperationException.class, () -> mapped.keySet().clear());
+    assertEquals(6, mapped.size());
+  }
+
+  // Test that large arrays are indexed and read one element at a time
+  @Test
+  public void testLargeArrayIsIndexed() throws Exception {
+    Path file = write("large.json", features(20_000, "Place"));
+    jsonData.loadJsonFromFileMapped(file.toString(), "mappedLarge");
+
+    Map<?, ?> root = (Map<?, ?>) jsonData.getJsonData("mappedLarge");
+    assertEquals("FeatureCollection", root.get("type"));
+    List<?> features = (List<?>) root.get("features");
+    assertEquals(20_000, features.size());
+    assertSame(features, root.get("features"));
+    Map<?, ?> feature = (Map<?, ?>) features.get(12_345);
+    assertEquals("Place 12345", ((Map<?, ?>) feature.get("properties")).get("name"));
+    assertEquals(List.of(12345.0, -71.4), feature.get("coordinates"));
+    assertThrows(IndexOutOfBoundsException.class, () -> features.get(20_000));
+  }
+
+  // Test that a replaced file is picked up, while readers of the old one carry on
+  @Test
+  public void testReload() throws Exception {
+    Path file = write("reload.json", features(3, "Old"));
+    jsonData.loadJsonFromFileMapped(file.toString(), "reloaded");
+    assertFalse(jsonData.reloadIfChanged("reloaded"));
+    List<?> oldFeatures = (List<?>) ((Map<?, ?>) jsonData.getJsonData("reloaded")).get("features");
+
+    write("reload.json", features(5, "New"));
+    assertTrue(jsonData.reloadIfChanged("reloaded"));
+    List<?> newFeatures = (List<?>) ((Map<?, ?>) jsonData.getJsonData("reloaded")).get("features");
+    assertEquals(5, newFeatures.size());
+    assertEquals(3, oldFeatures.size());
+    assertEquals(
+        "Old 2", ((Map<?, ?>) ((Map<?, ?>) oldFeatures.get(2)).get("properties")).get("name"));
+
+    // A broken replacement is reported and the last good version kept
+    write("reload.json", "{\"features\": [");
+    assertThrows(IOException.class, () -> jsonData.reloadIfChanged("reloaded"));
+    assertEquals(newFeatures, ((Map<?, ?>) jsonData.getJsonData("reloaded")).get("features"));
+  }
+
+  // Test that malformed top levels and missing files are rejected
+  @Test
+  public void testInvalid() throws Exception {
+    for (String json :
+        new String[] {
+          "",
+          "{\"a\" 1}",
+          "[1 2]",
+          "[1,]",
+          "[\"x\"y]",
+          "[[1] 2]",
+          "{\"a\":1,}",
+          "{\"a\":1} x",
+          "{\"a\":[1,2}",
+          "{\"a\":1,\"a\":2}"
+        }) {
+      Path file = write("bad.json", json);
+      assertThrows(
+          IOException.class, () -> jsonData.loadJsonFromFileMapped(file.toString(), "bad"), json);
+    }
+    assertThrows(
+        IOException.class,
+        () -> jsonData.loadJsonFromFileMapped(dir.resolve("missing.json").toString(), "bad"));
+    assertNull(jsonData.getJsonData("bad"));
+  }
+}
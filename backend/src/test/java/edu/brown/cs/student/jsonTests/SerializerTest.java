@@ -0,0 +1,74 @@
+package edu.brown.cs.student.jsonTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.SafeTravels.AccessTokenResponse;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import edu.brown.cs.student.main.json.ErrorResponse;
+import edu.brown.cs.student.main.json.LoginResponse;
+import edu.brown.cs.student.main.json.Serializer;
+import edu.brown.cs.student.main.json.SuccessResponse;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class SerializerTest {
+
+  // Test that the safety envelope keeps the shape the frontend reads (data.data[...])
+  @Test
+  public void testSafetySuccess() throws Exception {
+    SafetyRatings ratings =
+        new SafetyRatings(
+            List.of(
+                new SafetyLocation(
+                    "Q1",
+                    "safety-rated-location",
+                    "CITY",
+                    "Barcelona",
+                    new SafetyLocation.GeoCode(41.38, 2.17),
+                    new SafetyLocation.SafetyScores(45, 39, 0, 36, 50, 44, 34))),
+            new SafetyRatings.Meta(3, 2, 1));
+    String json = Serializer.SAFETY_SUCCESS.toJson(new SuccessResponse<>(ratings));
+
+    Map<String, Object> parsed = Serializer.MAP.fromJson(json);
+    assertEquals("success", parsed.get("type"));
+    Map<?, ?> data = (Map<?, ?>) parsed.get("data");
+    Map<?, ?> location = (Map<?, ?>) ((List<?>) data.get("data")).get(0);
+    assertEquals("Barcelona", location.get("name"));
+    assertEquals(41.38, ((Map<?, ?>) location.get("geoCode")).get("latitude"));
+    assertEquals(34.0, ((Map<?, ?>) location.get("safetyScores")).get("women"));
+    assertEquals(true, ((Map<?, ?>) data.get("meta")).get("partial"));
+  }
+
+  // Test the error and login envelopes
+  @Test
+  public void testEnvelopes() throws Exception {
+    Map<String, Object> error =
+        Serializer.MAP.fromJson(Serializer.ERROR.toJson(new ErrorResponse("timeout", "slow")));
+    assertEquals(Map.of("type", "error", "error_type", "timeout", "details", "slow"), error);
+
+    assertEquals(
+        Map.of("type", "success", "message", "Login successful"),
+        Serializer.MAP.fromJson(
+            Serializer.LOGIN.toJson(LoginResponse.success("Login successful"))));
+    assertEquals(
+        Map.of("type", "fail", "error", "User not found"),
+        Serializer.MAP.fromJson(Serializer.LOGIN.toJson(LoginResponse.fail("User not found"))));
+  }
+
+  // Test that the token response is read whether expires_in is a number or a string
+  @Test
+  public void testAccessToken() throws Exception {
+    AccessTokenResponse token =
+        Serializer.ACCESS_TOKEN.fromJson(
+            "{\"type\":\"amadeusOAuth2Token\",\"access_token\":\"abc\",\"expires_in\":1799}");
+    assertEquals("abc", token.getAccessToken());
+    assertEquals(1799, token.getExpiresIn());
+    assertEquals(
+        60,
+        Serializer.ACCESS_TOKEN
+            .fromJson("{\"access_token\":\"x\",\"expires_in\":\"60\"}")
+            .getExpiresIn());
+  }
+}
@@ -0,0 +1,192 @@
+package edu.brown.cs.student.loginManagerTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.LoginHandler.DurableCredentialStore;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DurableCredentialStoreTest {
+  @TempDir Path dir;
+
+  private List<String> files() throws Exception {
+    try (Stream<Path> files = Files.list(dir)) {
+      return files.map(file -> file.getFileName().toString()).sorted().collect(Collectors.toList());
+    }
+  }
+
+  private static void awaitSnapshot(DurableCredentialStore store, int logged) throws Exception {
+    for (int i = 0; i < 200 && store.loggedSinceSnapshot() > logged; i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(store.loggedSinceSnapshot() <= logged, "snapshot never finished");
+  }
+
+  // Test that registered users survive a restart, and names stay unique
+  @Test
+  public void testSurvivesRestart() throws Exception {
+    DurableCredentialStore store = DurableCredentialStore.open(dir, 1000);
+    assertTrue(store.register("ada", "h1"));
+    assertTrue(store.register("bob", "h2"));
+    assertFalse(store.register("ada", "other"));
+    store.close();
+
+    DurableCredentialStore reopened = DurableCredentialStore.open(dir, 1000);
+    assertEquals("h1", reopened.get("ada"));
+    assertEquals("h2", reopened.get("bob"));
+    assertNull(reopened.get("cy"));
+    assertFalse(reopened.register("bob", "other"));
+    assertEquals(2, reopened.size());
+    reopened.close();
+  }
+
+  // Test that snapshots fold the log into the mapped table, and startup replays only the tail
+  @Test
+  public void testSnapshots() throws Exception {
+    DurableCredentialStore store = DurableCredentialStore.open(dir, 50);
+    for (int i = 0; i < 120; i++) {
+      assertTrue(store.register("user" + i, "hash" + i));
+    }
+    awaitSnapshot(store, 20);
+    assertFalse(store.register("user7", "again"));
+    assertEquals(120, store.size());
+    store.close();
+    assertTrue(files().contains("users.snapshot"));
+    assertTrue(
+        files().stream().filter(name -> name.endsWith(".wal")).count() <= 2, files().toString());
+
+    DurableCredentialStore reopened = DurableCredentialStore.open(dir, 50);
+    assertTrue(reopened.loggedSinceSnapshot() <= 20);
+    for (int i = 0; i < 120; i++) {
+      assertEquals("hash" + i, reopened.get("user" + i));
+    }
+    assertEquals(120, reopened.size());
+    reopened.close();
+  }
+
+  // Test that a record torn by a crash is dropped, and later registrations still replay
+  @Test
+  public void testTornRecord() throws Exception {
+    DurableCredentialStore store = DurableCredentialStore.open(dir, 1000);
+    store.register("ada", "h1");
+    store.register("bob", "h2");
+    store.close();
+
+    Path wal = dir.resolve(files().get(0));
+    try (RandomAccessFile file = new RandomAccessFile(wal.toFile(), "rw")) {
+      file.setLength(file.length() - 3);
+    }
+
+    DurableCredentialStore reopened = DurableCredentialStore.open(dir, 1000);
+    assertEquals("h1", reopened.get("ada"));
+    assertNull(reopened.get("bob"));
+    assertTrue(reopened.register("bob", "h3"));
+    reopened.close();
+    assertEquals("h3", DurableCredentialStore.open(dir, 1000).get("bob"));
+  }
+
+  // Test that concurrent registrations are all kept, across snapshots, and contested names are
+  // won once
+  @Test
+  public void testConcurrentRegistrations() throws Exception {
+    DurableCredentialStore store = DurableCredentialStore.open(dir, 500);
+    ExecutorService executor = Executors.newFixedThreadPool(16);
+    List<Future<Integer>> workers = new ArrayList<>();
+    for (int t = 0; t < 16; t++) {
+      int thread = t;
+      workers.add(
+          executor.submit(
+              () -> {
+                int wins = 0;
+                for (int i = 0; i < 200; i++) {
+                  assertTrue(store.register("user" + thread + "-" + i, "h"));
+                  wins += store.register("contested" + i, "h" + thread) ? 1 : 0;
+                }
+                return wins;
+              }));
+    }
+    int wins = 0;
+    for (Future<Integer> worker : workers) {
+      wins += worker.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+    assertEquals(200, wins);
+    assertEquals(16 * 200 + 200, store.size());
+    store.close();
+
+    DurableCredentialStore reopened = DurableCredentialStore.open(dir, 500);
+    assertEquals(16 * 200 + 200, reopened.size());
+    assertEquals("h", reopened.get("user15-199"));
+    reopened.close();
+  }
+
+  // Test that replaced hashes are logged, and only replace the hash the caller expected
+  @Test
+  public void testReplace() throws Exception {
+    DurableCredentialStore store = DurableCredentialStore.open(dir, 3);
+    store.register("ada", "old");
+    store.register("bob", "old");
+    store.register("cy", "old");
+    awaitSnapshot(store, 0);
+    assertTrue(store.replace("ada", "old", "new"));
+    assertFalse(store.replace("ada", "old", "newer"));
+    assertFalse(store.replace("nobody", "old", "new"));
+    assertTrue(store.replace("bob", "old", "new"));
+    assertEquals(3, store.size());
+    store.close();
+
+    DurableCredentialStore reopened = DurableCredentialStore.open(dir, 3);
+    assertEquals("new", reopened.get("ada"));
+    assertEquals("new", reopened.get("bob"));
+    assertEquals("old", reopened.get("cy"));
+    reopened.close();
+  }
+
+  // Test that registrations racing close() are either saved or refused, never left waiting
+  @Test
+  public void testCloseWhileRegistering() throws Exception {
+    DurableCredentialStore store = DurableCredentialStore.open(dir, 1000);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<List<String>>> saved = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      int thread = t;
+      saved.add(
+          pool.submit(
+              () -> {
+                List<String> users = new ArrayList<>();
+                try {
+                  for (int i = 0; ; i++) {
+                    String user = "user" + thread + "-" + i;
+                    store.register(user, "h");
+                    users.add(user);
+                  }
+                } catch (UncheckedIOException e) {
+                  return users;
+                }
+              }));
+    }
+    Thread.sleep(50);
+    store.close();
+
+    DurableCredentialStore reopened = DurableCredentialStore.open(dir, 1000);
+    for (Future<List<String>> users : saved) {
+      for (String user : users.get(5, TimeUnit.SECONDS)) {
+        assertEquals("h", reopened.get(user));
+      }
+    }
+    pool.shutdown();
+    reopened.close();
+  }
+}
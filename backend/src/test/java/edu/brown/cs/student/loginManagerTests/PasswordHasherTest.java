@@ -0,0 +1,91 @@
+package edu.brown.cs.student.loginManagerTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import edu.brown.cs.student.main.Server.LoginHandler.CredentialStore;
+import edu.brown.cs.student.main.Server.LoginHandler.LoginManager;
+import edu.brown.cs.student.main.Server.LoginHandler.PasswordHasher;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.jupiter.api.Test;
+import spark.Request;
+import spark.Response;
+
+public class PasswordHasherTest {
+
+  // Test that hashes are salted, versioned and verify only the right password
+  @Test
+  public void testHashAndVerify() {
+    PasswordHasher hasher = new PasswordHasher(1000, 1, 10);
+    String hash = hasher.hash("correct horse");
+    assertTrue(hash.startsWith("pbkdf2-sha256$1000$"), hash);
+    assertNotEquals(hash, hasher.hash("correct horse"));
+
+    PasswordHasher.Verification right = hasher.verify("correct horse", hash);
+    assertTrue(right.matches());
+    assertFalse(right.needsRehash());
+    assertFalse(hasher.verify("battery staple", hash).matches());
+    assertFalse(hasher.verify("correct horse", "pbkdf2-sha256$1000$!!$!!").matches());
+
+    // A closed hasher stops its threads and turns further work away
+    hasher.close();
+    assertThrows(RejectedExecutionException.class, () -> hasher.hashAsync("correct horse"));
+    assertSame(PasswordHasher.getShared(), PasswordHasher.getShared());
+  }
+
+  // Test that old hashes still verify but are flagged for an upgrade
+  @Test
+  public void testNeedsRehash() {
+    PasswordHasher current = new PasswordHasher(2000, 1, 10);
+    String weaker = new PasswordHasher(1000, 1, 10).hash("pw");
+    assertTrue(current.verify("pw", weaker).needsRehash());
+
+    String legacy = Integer.toString("pw".hashCode());
+    assertTrue(current.verify("pw", legacy).matches());
+    assertTrue(current.verify("pw", legacy).needsRehash());
+    assertFalse(current.verify("other", legacy).matches());
+  }
+
+  // Test that logging in with a legacy hash upgrades it in the background
+  @Test
+  public void testRehashOnLogin() throws Exception {
+    CredentialStore store = new CredentialStore();
+    store.register("ada", Integer.toString("lovelace".hashCode()));
+    LoginManager manager = new LoginManager(store, new PasswordHasher(1000, 1, 10));
+
+    manager.authenticateUser("ada", "lovelace");
+    for (int i = 0; i < 200 && !store.get("ada").startsWith("pbkdf2"); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue(store.get("ada").startsWith("pbkdf2-sha256$1000$"), store.get("ada"));
+    manager.authenticateUser("ada", "lovelace");
+    assertThrows(
+        LoginManager.AuthenticationException.class,
+        () -> manager.authenticateUser("ada", "babbage"));
+  }
+
+  // Test that once the queue is full, logins are turned away with 503 instead of waiting
+  @Test
+  public void testBackpressure() throws Exception {
+    PasswordHasher hasher = new PasswordHasher(3_000_000, 1, 1);
+    CompletableFuture<String> running = hasher.hashAsync("a");
+    CompletableFuture<String> queued = hasher.hashAsync("b");
+    assertThrows(RejectedExecutionException.class, () -> hasher.hashAsync("c"));
+
+    CredentialStore store = new CredentialStore();
+    store.register("ada", "pbkdf2-sha256$1000$AAAA$AAAA");
+    LoginManager manager = new LoginManager(store, hasher);
+    Request request = mock(Request.class);
+    Response response = mock(Response.class);
+    when(request.pathInfo()).thenReturn("/login");
+    when(request.queryParams("username")).thenReturn("ada");
+    when(request.queryParams("password")).thenReturn("pw");
+    String result = (String) manager.handle(request, response);
+    assertTrue(result.contains("Too many login attempts"), result);
+    verify(response).status(503);
+
+    running.join();
+    queued.join();
+  }
+}
@@ -0,0 +1,117 @@
+package edu.brown.cs.student.loginManagerTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.History.HistoryHandler;
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import edu.brown.cs.student.main.Server.LoginHandler.CredentialStore;
+import edu.brown.cs.student.main.Server.LoginHandler.LoginManager;
+import edu.brown.cs.student.main.Server.LoginHandler.PasswordHasher;
+import edu.brown.cs.student.main.Server.LoginHandler.SessionFilter;
+import edu.brown.cs.student.main.Server.LoginHandler.SessionTokens;
+import edu.brown.cs.student.main.json.Serializer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import spark.Service;
+
+public class SessionTokensTest {
+  private static final byte[] KEY = new byte[32];
+
+  // Test that a token names the user it was issued to
+  @Test
+  public void testRoundTrip() {
+    SessionTokens tokens = new SessionTokens(KEY, Duration.ofHours(1));
+    assertEquals("ada", tokens.verify(tokens.issue("ada")));
+    assertEquals("a.b$c d", tokens.verify(tokens.issue("a.b$c d")));
+  }
+
+  // Test that altered, foreign, malformed and expired tokens are all rejected
+  @Test
+  public void testRejected() {
+    SessionTokens tokens = new SessionTokens(KEY, Duration.ofHours(1));
+    String token = tokens.issue("ada");
+    String[] parts = token.split("\\.");
+
+    String otherUser = tokens.issue("bob").split("\\.")[0] + "." + parts[1] + "." + parts[2];
+    assertNull(tokens.verify(otherUser));
+    String laterExpiry = parts[0] + "." + (Long.parseLong(parts[1]) + 3600) + "." + parts[2];
+    assertNull(tokens.verify(laterExpiry));
+
+    byte[] otherKey = Arrays.copyOf(KEY, 32);
+    otherKey[0] = 1;
+    assertNull(new SessionTokens(otherKey, Duration.ofHours(1)).verify(token));
+
+    for (String malformed : new String[] {"", ".", "..", "a.b.c", "a.1.!!", "nodots"}) {
+      assertNull(tokens.verify(malformed), malformed);
+    }
+
+    SessionTokens expired = new SessionTokens(KEY, Duration.ofSeconds(-1));
+    assertNull(expired.verify(expired.issue("ada")));
+  }
+
+  // Test that a token from /login opens a route guarded by a session filter, and nothing else does
+  @Test
+  public void testFilter() throws Exception {
+    SessionTokens tokens = new SessionTokens(Duration.ofHours(1));
+    CredentialStore users = new CredentialStore();
+    LoginManager loginManager = new LoginManager(users, new PasswordHasher(1000, 1, 8), tokens);
+    loginManager.registerUser("ada", "pw");
+    SearchHistory history = new SearchHistory(10);
+    history.record("ada", "Providence");
+    history.record("bob", "Boston");
+
+    Service spark = Service.ignite().port(0);
+    try {
+      spark.before("/history", new SessionFilter(tokens, true));
+      spark.get("history", new HistoryHandler(history));
+      spark.get("login", loginManager);
+      spark.awaitInitialization();
+      String base = "http://localhost:" + spark.port();
+      HttpClient client = HttpClient.newHttpClient();
+
+      String login =
+          client
+              .send(
+                  HttpRequest.newBuilder(URI.create(base + "/login?username=ada&password=pw"))
+                      .build(),
+                  HttpResponse.BodyHandlers.ofString())
+              .body();
+      String token = Serializer.LOGIN.fromJson(login).getToken();
+      assertNotNull(token);
+
+      // The user comes from the token, whatever the parameter says
+      HttpResponse<String> mine =
+          client.send(
+              HttpRequest.newBuilder(URI.create(base + "/history?user=bob"))
+                  .header("Authorization", "Bearer " + token)
+                  .build(),
+              HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, mine.statusCode());
+      assertTrue(mine.body().contains("Providence"));
+      assertFalse(mine.body().contains("Boston"));
+
+      HttpResponse<String> query =
+          client.send(
+              HttpRequest.newBuilder(URI.create(base + "/history?token=" + token)).build(),
+              HttpResponse.BodyHandlers.ofString());
+      assertEquals(200, query.statusCode());
+
+      for (String url : new String[] {"/history?user=bob", "/history?token=" + token + "x"}) {
+        HttpResponse<String> rejected =
+            client.send(
+                HttpRequest.newBuilder(URI.create(base + url)).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(401, rejected.statusCode(), url);
+        assertTrue(rejected.body().contains("unauthorized"));
+      }
+    } finally {
+      spark.stop();
+      spark.awaitStop();
+    }
+  }
+}
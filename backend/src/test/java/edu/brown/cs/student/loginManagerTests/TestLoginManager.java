@@ -1,6 +1,18 @@
 package edu.brown.cs.student.loginManagerTests;
 
+import edu.brown.cs.student.main.Server.LoginHandler.CredentialStore;
 import edu.brown.cs.student.main.Server.LoginHandler.LoginManager;
+import edu.brown.cs.student.main.Server.LoginHandler.PasswordHasher;
+import edu.brown.cs.student.main.json.Serializer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mock;
@@ -18,12 +30,21 @@ public class TestLoginManager {
     @Mock
     private Response mockResponse;
 
+    private PasswordHasher hasher;
     private LoginManager loginManager;
 
     @BeforeEach
-    public void setUp() {
+    public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
-        loginManager = new LoginManager();
+        // Cheap hashing; the default 600,000 iterations would make each test take seconds
+        hasher = new PasswordHasher(100, 4, 1000);
+        loginManager = new LoginManager(new CredentialStore(), hasher);
+        loginManager.registerUser("test1", "test1");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        hasher.close();
     }
 
     // Test method for successful login
@@ -35,6 +56,8 @@ public class TestLoginManager {
 
         String result = (String) loginManager.handle(mockRequest, mockResponse);
         assertTrue(result.contains("Login successful"));
+        String token = Serializer.LOGIN.fromJson(result).getToken();
+        assertEquals("test1", loginManager.getSessions().verify(token));
     }
 
 
@@ -82,4 +105,60 @@ public class TestLoginManager {
         String result = (String) loginManager.handle(mockRequest, mockResponse);
         assertTrue(result.contains("Username already exists"));
     }
+
+    // Test that registering without a password fails instead of throwing
+    @Test
+    public void testMissingPassword() throws Exception {
+        when(mockRequest.queryParams("username")).thenReturn("newuser");
+        when(mockRequest.pathInfo()).thenReturn("/register");
+
+        String result = (String) loginManager.handle(mockRequest, mockResponse);
+        assertTrue(result.contains("Username and password are required"));
+    }
+
+    // Test that concurrent registrations and logins through two managers sharing one store lose
+    // no users, and a contested name is registered exactly once
+    @Test
+    public void testConcurrentRegistrations() throws Exception {
+        CredentialStore store = new CredentialStore();
+        LoginManager[] managers = {
+            new LoginManager(store, hasher), new LoginManager(store, hasher)};
+        int threads = 16;
+        int usersPerThread = 500;
+        CyclicBarrier start = new CyclicBarrier(threads);
+        AtomicInteger contestedWins = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            workers.add(executor.submit(() -> {
+                LoginManager manager = managers[thread % 2];
+                start.await();
+                for (int i = 0; i < usersPerThread; i++) {
+                    String user = "user" + thread + "-" + i;
+                    manager.registerUser(user, "pw" + i);
+                    manager.authenticateUser(user, "pw" + i);
+                    try {
+                        manager.registerUser("contested" + i, "pw");
+                        contestedWins.incrementAndGet();
+                    } catch (LoginManager.AuthenticationException e) {
+                        assertEquals("Username already exists", e.getMessage());
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(usersPerThread, contestedWins.get());
+        assertEquals(threads * usersPerThread + usersPerThread, store.size());
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < usersPerThread; i++) {
+                managers[(t + 1) % 2].authenticateUser("user" + t + "-" + i, "pw" + i);
+            }
+        }
+    }
 }
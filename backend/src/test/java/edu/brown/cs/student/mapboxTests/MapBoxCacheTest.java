@@ -0,0 +1,104 @@
+package edu.brown.cs.student.mapboxTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Maps.MapBoxCache;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class MapBoxCacheTest {
+
+  private static MapBoxCache.Entry entry(String body) {
+    return new MapBoxCache.Entry(200, "application/json", body.getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Test that concurrent misses for one place share a single request
+  @Test
+  public void testCoalescing() {
+    MapBoxCache cache = new MapBoxCache(1 << 20, 1 << 20, Duration.ofMinutes(5));
+    AtomicInteger loads = new AtomicInteger();
+    CompletableFuture<MapBoxCache.Entry> upstream = new CompletableFuture<>();
+    MapBoxCache.Loader loader =
+        place -> {
+          loads.incrementAndGet();
+          return upstream;
+        };
+
+    CompletableFuture<MapBoxCache.Entry> first = cache.get("Providence", "t", loader);
+    CompletableFuture<MapBoxCache.Entry> second = cache.get("PROVIDENCE ", "t", loader);
+    assertFalse(first.isDone());
+    upstream.complete(entry("{}"));
+    assertSame(first.join(), second.join());
+    assertSame(first.join(), cache.get("providence", "t", loader).join());
+    assertEquals(1, loads.get());
+    assertEquals(1, cache.size());
+  }
+
+  // Test that oversized responses are served but not kept, and the byte cap evicts; each entry
+  // also weighs its key, a 64-character token hash plus the place
+  @Test
+  public void testSizeLimits() {
+    MapBoxCache cache = new MapBoxCache(250, 60, Duration.ofMinutes(5));
+    AtomicInteger loads = new AtomicInteger();
+    MapBoxCache.Loader loader =
+        place -> {
+          loads.incrementAndGet();
+          return CompletableFuture.completedFuture(
+              entry(place.startsWith("big") ? "x".repeat(80) : "x".repeat(40)));
+        };
+
+    assertEquals(80, cache.get("big", "t", loader).join().getBody().length);
+    cache.get("big", "t", loader).join();
+    assertEquals(2, loads.get());
+    assertEquals(0, cache.size());
+
+    cache.get("a", "t", loader).join();
+    cache.get("b", "t", loader).join();
+    cache.get("c", "t", loader).join();
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.stats().evictionCount());
+  }
+
+  // Test that the advertised lifetime counts down from when the response arrived
+  @Test
+  public void testRemainingSeconds() {
+    MapBoxCache cache = new MapBoxCache(1 << 20, 1 << 20, Duration.ofSeconds(60));
+    long remaining = cache.remainingSeconds(entry("{}"));
+    assertTrue(remaining > 55 && remaining <= 60, Long.toString(remaining));
+  }
+
+  // Test that an expired response is served when Mapbox errors or answers 5xx, but not 4xx
+  @Test
+  public void testStaleFallback() throws Exception {
+    MapBoxCache cache =
+        new MapBoxCache(1 << 20, 1 << 20, Duration.ofMillis(50), Duration.ofHours(1));
+    MapBoxCache.Entry fresh = entry("{\"features\":[]}");
+    cache.get("Providence", "t", place -> CompletableFuture.completedFuture(fresh)).join();
+    Thread.sleep(100);
+
+    MapBoxCache.Entry unavailable = new MapBoxCache.Entry(503, null, new byte[0]);
+    assertSame(
+        fresh,
+        cache
+            .get("Providence", "t", place -> CompletableFuture.completedFuture(unavailable))
+            .join());
+    assertSame(
+        fresh,
+        cache
+            .get(
+                "Providence",
+                "t",
+                place -> CompletableFuture.failedFuture(new IllegalStateException()))
+            .join());
+    MapBoxCache.Entry unauthorized = new MapBoxCache.Entry(401, null, new byte[0]);
+    assertSame(
+        unauthorized,
+        cache
+            .get("Providence", "t", place -> CompletableFuture.completedFuture(unauthorized))
+            .join());
+    assertEquals(2, cache.staleHitCount());
+  }
+}
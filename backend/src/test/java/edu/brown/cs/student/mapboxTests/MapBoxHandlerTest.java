@@ -0,0 +1,245 @@
+package edu.brown.cs.student.mapboxTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.brown.cs.student.main.Server.History.SearchHistory;
+import edu.brown.cs.student.main.Server.Http.UpstreamClient;
+import edu.brown.cs.student.main.Server.Maps.MapBoxCache;
+import edu.brown.cs.student.main.Server.Maps.MapBoxHandler;
+import edu.brown.cs.student.main.Server.Server;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Service;
+
+public class MapBoxHandlerTest {
+  private HttpServer mapbox;
+  private Service spark;
+  private String proxyUrl;
+  private String cachedUrl;
+  private byte[] json;
+  private byte[] gzipped;
+  private final AtomicReference<String> upstreamAcceptEncoding = new AtomicReference<>();
+  private final AtomicInteger upstreamRequests = new AtomicInteger();
+  private final HttpClient client = HttpClient.newHttpClient();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    // A large geocoding response, so it can't fit in one write buffer
+    StringBuilder features = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+    for (int i = 0; i < 5000; i++) {
+      features.append(i == 0 ? "" : ",").append("{\"place_name\":\"Providence ").append(i);
+      features.append("\",\"center\":[-71.41,41.82]}");
+    }
+    json = features.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+      gzip.write(json);
+    }
+    gzipped = compressed.toByteArray();
+
+    mapbox = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    mapbox.createContext(
+        "/places/",
+        exchange -> {
+          String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+          upstreamAcceptEncoding.set(acceptEncoding);
+          upstreamRequests.incrementAndGet();
+          if (!exchange.getRequestURI().getQuery().equals("access_token=t")) {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+          }
+          if (exchange.getRequestURI().getPath().contains("nowhere")) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+          }
+          boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+          byte[] body = gzip ? gzipped : json;
+          exchange.getResponseHeaders().set("Content-Type", "application/vnd.geo+json");
+          if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+          }
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    mapbox.start();
+
+    UpstreamClient http = new UpstreamClient(Duration.ofSeconds(2), Duration.ofSeconds(5), 4);
+    String baseUrl = "http://localhost:" + mapbox.getAddress().getPort() + "/places/";
+    spark = Service.ignite().port(0);
+    spark.get("/mapbox", new MapBoxHandler(http, baseUrl, true));
+    MapBoxCache cache = new MapBoxCache(1 << 20, 1 << 20, Duration.ofMinutes(5));
+    spark.get("/cached", new MapBoxHandler(http, baseUrl, cache));
+    spark.awaitInitialization();
+    proxyUrl = "http://localhost:" + spark.port() + "/mapbox?accessToken=t&place=";
+    cachedUrl = "http://localhost:" + spark.port() + "/cached?place=";
+  }
+
+  @AfterEach
+  public void tearDown() {
+    spark.stop();
+    spark.awaitStop();
+    mapbox.stop(0);
+  }
+
+  private HttpResponse<byte[]> get(String place, String acceptEncoding) throws Exception {
+    HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(proxyUrl + place));
+    if (acceptEncoding != null) {
+      request.header("Accept-Encoding", acceptEncoding);
+    }
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  private HttpResponse<byte[]> getCached(String place, String ifNoneMatch) throws Exception {
+    return getCached(place, "t", ifNoneMatch);
+  }
+
+  private HttpResponse<byte[]> getCached(String place, String token, String ifNoneMatch)
+      throws Exception {
+    HttpRequest.Builder request =
+        HttpRequest.newBuilder(URI.create(cachedUrl + place + "&accessToken=" + token));
+    if (ifNoneMatch != null) {
+      request.header("If-None-Match", ifNoneMatch);
+    }
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+  }
+
+  // Test that gzip from Mapbox reaches the client byte for byte
+  @Test
+  public void testGzipPassesThrough() throws Exception {
+    HttpResponse<byte[]> response = get("Providence", "gzip, deflate");
+    assertEquals(200, response.statusCode());
+    assertEquals("gzip", upstreamAcceptEncoding.get());
+    assertEquals("gzip", response.headers().firstValue("Content-Encoding").orElse(null));
+    assertEquals(
+        "application/vnd.geo+json", response.headers().firstValue("Content-Type").orElse(null));
+    assertArrayEquals(gzipped, response.body());
+    try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(response.body()))) {
+      assertArrayEquals(json, in.readAllBytes());
+    }
+  }
+
+  // Test that clients without gzip get the plain body
+  @Test
+  public void testPlainBody() throws Exception {
+    HttpResponse<byte[]> response = get("Providence", null);
+    assertEquals(200, response.statusCode());
+    assertNull(upstreamAcceptEncoding.get());
+    assertTrue(response.headers().firstValue("Content-Encoding").isEmpty());
+    assertArrayEquals(json, response.body());
+  }
+
+  // Test that upstream errors are forwarded with their status
+  @Test
+  public void testStatusForwarded() throws Exception {
+    assertEquals(404, get("nowhere", null).statusCode());
+  }
+
+  // Test that repeated searches are answered from the cache with a stable ETag
+  @Test
+  public void testCachedSearches() throws Exception {
+    HttpResponse<byte[]> first = getCached("Providence", null);
+    HttpResponse<byte[]> second = getCached("%20providence%20", null);
+    assertEquals(200, second.statusCode());
+    assertArrayEquals(json, second.body());
+    assertEquals(1, upstreamRequests.get());
+
+    String etag = first.headers().firstValue("ETag").orElseThrow();
+    assertEquals(etag, second.headers().firstValue("ETag").orElse(null));
+    assertTrue(
+        second.headers().firstValue("Cache-Control").orElse("").startsWith("public, max-age="));
+  }
+
+  // Test that a client holding the current ETag gets 304 and no body
+  @Test
+  public void testConditionalRequest() throws Exception {
+    String etag = getCached("Providence", null).headers().firstValue("ETag").orElseThrow();
+
+    HttpResponse<byte[]> revalidated = getCached("Providence", "\"stale\", W/" + etag);
+    assertEquals(304, revalidated.statusCode());
+    assertEquals(0, revalidated.body().length);
+    assertEquals(etag, revalidated.headers().firstValue("ETag").orElse(null));
+
+    assertEquals(200, getCached("Providence", "\"stale\"").statusCode());
+    assertEquals(1, upstreamRequests.get());
+  }
+
+  // Test that upstream errors are forwarded but not cached
+  @Test
+  public void testErrorsNotCached() throws Exception {
+    assertEquals(404, getCached("nowhere", null).statusCode());
+    assertEquals(404, getCached("nowhere", null).statusCode());
+    assertEquals(2, upstreamRequests.get());
+  }
+
+  // Test that responses aren't shared between access tokens
+  @Test
+  public void testCacheKeyedByToken() throws Exception {
+    assertEquals(200, getCached("Providence", "t", null).statusCode());
+    assertEquals(401, getCached("Providence", "stolen", null).statusCode());
+    assertEquals(2, upstreamRequests.get());
+
+    // Nor are concurrent misses
+    CompletableFuture<HttpResponse<byte[]>> bad =
+        CompletableFuture.supplyAsync(() -> getUnchecked("Boston", "stolen"));
+    CompletableFuture<HttpResponse<byte[]>> good =
+        CompletableFuture.supplyAsync(() -> getUnchecked("Boston", "t"));
+    assertEquals(401, bad.join().statusCode());
+    assertEquals(200, good.join().statusCode());
+    assertEquals(4, upstreamRequests.get());
+  }
+
+  // Test that searches without a session are anonymous, and a user can't be claimed by parameter
+  @Test
+  public void testRecordsAnonymously() throws Exception {
+    int before = Server.getHistory().page(SearchHistory.ANONYMOUS, 0, 1).getTotal();
+    assertEquals(200, get("Providence", null).statusCode());
+    assertEquals(
+        "Providence",
+        Server.getHistory().page(SearchHistory.ANONYMOUS, 0, 1).getEntries().get(0).getPlace());
+    assertEquals(before + 1, Server.getHistory().page(SearchHistory.ANONYMOUS, 0, 1).getTotal());
+
+    assertEquals(400, get("Providence&user=alice", null).statusCode());
+    assertEquals(0, Server.getHistory().page("alice", 0, 1).getTotal());
+  }
+
+  // Test that the startup mode picks a handler, and a mistyped one fails rather than defaulting
+  @Test
+  public void testForMode() {
+    for (String mode : new String[] {"cached", "streaming", "buffered"}) {
+      assertNotNull(MapBoxHandler.forMode(mode));
+    }
+    assertThrows(IllegalArgumentException.class, () -> MapBoxHandler.forMode("stream"));
+  }
+
+  private HttpResponse<byte[]> getUnchecked(String place, String token) {
+    try {
+      return getCached(place, token, null);
+    } catch (Exception e) {
+      throw new CompletionException(e);
+    }
+  }
+}
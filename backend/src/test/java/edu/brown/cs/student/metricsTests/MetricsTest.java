@@ -0,0 +1,123 @@
+package edu.brown.cs.student.metricsTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Metrics.LatencyHistogram;
+import edu.brown.cs.student.main.Server.Metrics.MetricsHandler;
+import edu.brown.cs.student.main.Server.Metrics.MetricsRegistry;
+import edu.brown.cs.student.main.Server.Metrics.TimedRoute;
+import edu.brown.cs.student.main.Server.Metrics.Timing;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import spark.Service;
+
+public class MetricsTest {
+
+  // Test that percentiles are within a bucket's width of the recorded durations
+  @Test
+  public void testHistogram() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0, histogram.quantileSeconds(0.5));
+    for (int millis = 1; millis <= 1000; millis++) {
+      histogram.recordNanos(millis * 1_000_000L);
+    }
+    assertEquals(1000, histogram.count());
+    assertEquals(500.5, histogram.sumSeconds(), 1e-6);
+    assertEquals(0.5, histogram.quantileSeconds(0.5), 0.5 * 0.125);
+    assertEquals(0.99, histogram.quantileSeconds(0.99), 0.99 * 0.125);
+    assertEquals(1.0, histogram.quantileSeconds(1), 0.125);
+    assertEquals(100, histogram.countAtOrBelow(0.1), 100 * 0.125);
+    assertEquals(1000, histogram.countAtOrBelow(10));
+
+    // Out of range durations are clamped rather than lost
+    histogram.recordNanos(-5);
+    histogram.recordNanos(Long.MAX_VALUE);
+    assertEquals(1002, histogram.count());
+  }
+
+  // Test that timings count in-flight operations and failures, including async ones
+  @Test
+  public void testTiming() {
+    Timing timing = new Timing();
+    long start = timing.start();
+    assertEquals(1, timing.inFlight());
+    timing.stop(start, true);
+    assertEquals(0, timing.inFlight());
+    assertEquals(1, timing.errorCount());
+
+    CompletableFuture<Integer> pending = new CompletableFuture<>();
+    CompletableFuture<Integer> timed = timing.time(() -> pending, status -> status >= 500);
+    assertEquals(1, timing.inFlight());
+    pending.complete(503);
+    assertEquals(503, timed.join());
+    assertEquals(0, timing.inFlight());
+    assertEquals(2, timing.errorCount());
+    assertEquals(2, timing.getLatency().count());
+  }
+
+  // Test that routes are timed and exported in the Prometheus text format
+  @Test
+  public void testScrape() throws Exception {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.gauge("queue_depth", "Items waiting", "queue", "a\"b", () -> 2.5);
+    Service spark = Service.ignite().port(0);
+    try {
+      spark.get(
+          "/ok",
+          new TimedRoute(
+              (request, response) -> "ok",
+              registry.timing("http_request", "requests", "route", "/ok")));
+      spark.get(
+          "/fail",
+          new TimedRoute(
+              (request, response) -> {
+                response.status(500);
+                return "fail";
+              },
+              registry.timing("http_request", "requests", "route", "/fail")));
+      spark.get("/metrics", new MetricsHandler(registry));
+      spark.awaitInitialization();
+
+      HttpClient client = HttpClient.newHttpClient();
+      String base = "http://localhost:" + spark.port();
+      for (String path : new String[] {"/ok", "/ok", "/fail"}) {
+        client.send(
+            HttpRequest.newBuilder(URI.create(base + path)).build(),
+            HttpResponse.BodyHandlers.discarding());
+      }
+      HttpResponse<String> response =
+          client.send(
+              HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+              HttpResponse.BodyHandlers.ofString());
+
+      assertEquals(200, response.statusCode());
+      assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain"));
+      String body = response.body();
+      assertTrue(body.contains("# TYPE http_request_duration_seconds histogram\n"));
+      assertTrue(body.contains("http_request_duration_seconds_count{route=\"/ok\"} 2\n"));
+      assertTrue(
+          body.contains("http_request_duration_seconds_bucket{route=\"/ok\",le=\"+Inf\"} 2\n"));
+      assertTrue(body.contains("http_request_errors_total{route=\"/fail\"} 1\n"));
+      assertTrue(body.contains("http_request_errors_total{route=\"/ok\"} 0\n"));
+      assertTrue(body.contains("http_request_in_flight{route=\"/ok\"} 0\n"));
+      assertTrue(body.contains("queue_depth{queue=\"a\\\"b\"} 2.5\n"));
+    } finally {
+      spark.stop();
+      spark.awaitStop();
+    }
+  }
+
+  // Test that a name can't be reused for a different kind of metric
+  @Test
+  public void testConflictingTypes() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("things_total", "Things", "kind", "a", () -> 1);
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> registry.gauge("things_total", "Things", "kind", "b", () -> 1));
+  }
+}
@@ -0,0 +1,142 @@
+package edu.brown.cs.student.rateLimitTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.RateLimit.RateLimitFilter;
+import edu.brown.cs.student.main.Server.RateLimit.RateLimiter;
+import edu.brown.cs.student.main.Server.RateLimit.TokenBucket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import spark.Service;
+
+public class RateLimiterTest {
+
+  // Test that a bucket allows its burst, then refills at its rate
+  @Test
+  public void testBucket() throws Exception {
+    TokenBucket bucket = new TokenBucket(20, 3);
+    assertTrue(bucket.isFull());
+    for (int i = 0; i < 3; i++) {
+      assertTrue(bucket.tryAcquire());
+    }
+    assertFalse(bucket.tryAcquire());
+    assertFalse(bucket.isFull());
+    assertTrue(bucket.nanosUntilAvailable() > 0);
+
+    Thread.sleep(60);
+    assertTrue(bucket.tryAcquire());
+    Thread.sleep(200);
+    assertTrue(bucket.isFull());
+  }
+
+  // Test that racing threads never take more than the burst
+  @Test
+  public void testConcurrentAcquire() throws Exception {
+    TokenBucket bucket = new TokenBucket(0.001, 100);
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<Integer>> taken = new ArrayList<>();
+    for (int t = 0; t < 8; t++) {
+      taken.add(
+          pool.submit(
+              () -> {
+                int count = 0;
+                for (int i = 0; i < 1000; i++) {
+                  count += bucket.tryAcquire() ? 1 : 0;
+                }
+                return count;
+              }));
+    }
+    int total = 0;
+    for (Future<Integer> count : taken) {
+      total += count.get(5, TimeUnit.SECONDS);
+    }
+    pool.shutdown();
+    assertEquals(100, total);
+  }
+
+  // Test that clients are limited separately, and idle ones are forgotten
+  @Test
+  public void testPerClientAndEviction() throws Exception {
+    RateLimiter limiter = new RateLimiter(50, 2, 1000);
+    assertTrue(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("a"));
+    assertFalse(limiter.tryAcquire("a"));
+    assertTrue(limiter.tryAcquire("b"));
+    assertEquals(1, limiter.retryAfterSeconds("a"));
+    assertEquals(2, limiter.size());
+
+    Thread.sleep(100);
+    limiter.evictIdle();
+    assertEquals(0, limiter.size());
+
+    // Past the cap, idle clients are swept out on the next request
+    RateLimiter capped = new RateLimiter(1000, 1, 10);
+    for (int i = 0; i < 10; i++) {
+      capped.tryAcquire("client" + i);
+    }
+    Thread.sleep(20);
+    capped.tryAcquire("one more");
+    assertEquals(1, capped.size());
+  }
+
+  // Test that the client map stays capped while every client is busy, without sweeping on every
+  // request, and makes room once clients go idle
+  @Test
+  public void testCapWhileBusy() throws Exception {
+    RateLimiter capped = new RateLimiter(0.001, 2, 10);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(capped.tryAcquire("client" + i));
+    }
+    for (int i = 0; i < 10_000; i++) {
+      assertFalse(capped.tryAcquire("new" + i));
+    }
+    assertEquals(10, capped.size());
+    // Clients already tracked are still served
+    assertTrue(capped.tryAcquire("client3"));
+
+    RateLimiter quick = new RateLimiter(10, 1, 10);
+    for (int i = 0; i < 10; i++) {
+      quick.tryAcquire("client" + i);
+    }
+    // The first early sweep finds nobody idle, so the next one waits out the gap
+    assertFalse(quick.tryAcquire("first"));
+    Thread.sleep(250);
+    assertTrue(quick.tryAcquire("later"));
+    assertEquals(1, quick.size());
+  }
+
+  // Test that the filter answers 429 with Retry-After once a client's burst is spent
+  @Test
+  public void testFilter() throws Exception {
+    Service spark = Service.ignite().port(0);
+    try {
+      spark.before("/limited", new RateLimitFilter(new RateLimiter(0.1, 2, 100)));
+      spark.get("limited", (request, response) -> "ok");
+      spark.awaitInitialization();
+      HttpClient client = HttpClient.newHttpClient();
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create("http://localhost:" + spark.port() + "/limited"))
+              .build();
+
+      assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+      assertEquals(200, client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+      HttpResponse<String> limited = client.send(request, HttpResponse.BodyHandlers.ofString());
+      assertEquals(429, limited.statusCode());
+      assertTrue(limited.body().contains("rate_limited"));
+      long retryAfter = Long.parseLong(limited.headers().firstValue("Retry-After").orElseThrow());
+      assertTrue(retryAfter >= 1 && retryAfter <= 10, "Retry-After " + retryAfter);
+    } finally {
+      spark.stop();
+      spark.awaitStop();
+    }
+  }
+}
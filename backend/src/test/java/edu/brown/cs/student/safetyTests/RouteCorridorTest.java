@@ -0,0 +1,63 @@
+package edu.brown.cs.student.safetyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Exceptions.InvalidArgsException;
+import edu.brown.cs.student.main.Server.SafeTravels.GeoUtils;
+import edu.brown.cs.student.main.Server.SafeTravels.RouteCorridor;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class RouteCorridorTest {
+
+  // Test the haversine distance against a known value (Providence to Boston, ~66km)
+  @Test
+  public void testDistance() {
+    assertEquals(66.1, GeoUtils.distanceKm(41.824, -71.4128, 42.3601, -71.0589), 0.5);
+    assertEquals(0, GeoUtils.distanceKm(41.824, -71.4128, 41.824, -71.4128), 1e-9);
+  }
+
+  // Test that samples are evenly spaced along the great circle and include both ends
+  @Test
+  public void testGreatCircleSampling() {
+    List<double[]> samples =
+        RouteCorridor.sampleGreatCircle(41.824, -71.4128, 42.3601, -71.0589, 5, 100);
+    assertEquals(15, samples.size());
+    assertArrayEquals(new double[] {41.824, -71.4128}, samples.get(0), 1e-9);
+    assertArrayEquals(new double[] {42.3601, -71.0589}, samples.get(14), 1e-9);
+    for (int i = 0; i + 1 < samples.size(); i++) {
+      double[] a = samples.get(i);
+      double[] b = samples.get(i + 1);
+      assertEquals(66.1 / 14, GeoUtils.distanceKm(a[0], a[1], b[0], b[1]), 0.05);
+    }
+  }
+
+  // Test that long routes widen the spacing rather than exceed the sample cap
+  @Test
+  public void testMaxSamples() {
+    List<double[]> samples =
+        RouteCorridor.sampleGreatCircle(41.824, -71.4128, 42.3601, -71.0589, 0.1, 8);
+    assertEquals(8, samples.size());
+  }
+
+  // Test sampling a polyline with a corner
+  @Test
+  public void testPolylineSampling() throws InvalidArgsException {
+    List<double[]> path = RouteCorridor.parsePolyline("0,0;0,1;1,1");
+    List<double[]> samples = RouteCorridor.samplePolyline(path, 55.6, 100);
+    assertEquals(5, samples.size());
+    assertArrayEquals(new double[] {0, 1}, samples.get(2), 1e-6);
+    assertArrayEquals(new double[] {1, 1}, samples.get(4), 1e-6);
+  }
+
+  // Test that malformed paths are rejected
+  @Test
+  public void testParsePolylineErrors() {
+    assertThrows(InvalidArgsException.class, () -> RouteCorridor.parsePolyline("41.8,-71.4"));
+    assertThrows(InvalidArgsException.class, () -> RouteCorridor.parsePolyline("41.8;-71.4"));
+    assertThrows(InvalidArgsException.class, () -> RouteCorridor.parsePolyline("a,b;1,2"));
+    assertThrows(InvalidArgsException.class, () -> RouteCorridor.parsePolyline("91,0;1,2"));
+    assertThrows(InvalidArgsException.class, () -> RouteCorridor.parsePolyline("NaN,0;1,2"));
+    assertThrows(InvalidArgsException.class, () -> RouteCorridor.parsePolyline("0,Infinity;1,2"));
+  }
+}
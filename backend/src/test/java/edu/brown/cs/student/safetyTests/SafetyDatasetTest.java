@@ -0,0 +1,173 @@
+package edu.brown.cs.student.safetyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.SafeTravels.APIClient;
+import edu.brown.cs.student.main.Server.SafeTravels.AmadeusTokenManager;
+import edu.brown.cs.student.main.Server.SafeTravels.GeoUtils;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyDataset;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SafetyDatasetTest {
+  private static final String HEADER =
+      "id,subType,name,latitude,longitude,overall,lgbtq,medical,physicalHarm,politicalFreedom,"
+          + "theft,women\n";
+
+  @TempDir Path dir;
+
+  private final List<double[]> points = new ArrayList<>();
+  private SafetyDataset dataset;
+
+  @BeforeEach
+  public void setUp() {
+    SafetyDataset.Builder builder = new SafetyDataset.Builder();
+    Random random = new Random(42);
+    for (int i = 0; i < 20_000; i++) {
+      double[] point = {41.5 + random.nextDouble(), -72 + random.nextDouble()};
+      points.add(point);
+      builder.add(
+          "Q" + i, i % 2 == 0 ? "CITY" : "DISTRICT", "Place " + i, point[0], point[1], scores(i));
+    }
+    dataset = builder.build();
+  }
+
+  private static int[] scores(int i) {
+    return new int[] {i % 100, 1, 2, 3, 4, 5, 6};
+  }
+
+  private static Set<String> ids(SafetyRatings ratings) {
+    return ratings.getData().stream().map(SafetyLocation::getId).collect(Collectors.toSet());
+  }
+
+  // Test that radius queries match a linear scan and return whole locations
+  @Test
+  public void testWithinRadius() {
+    for (double radius : new double[] {0.5, 3, 20}) {
+      Set<String> expected = new HashSet<>();
+      for (int i = 0; i < points.size(); i++) {
+        if (GeoUtils.distanceKm(41.82, -71.41, points.get(i)[0], points.get(i)[1]) <= radius) {
+          expected.add("Q" + i);
+        }
+      }
+      assertEquals(expected, ids(dataset.withinRadius(41.82, -71.41, radius)), "radius " + radius);
+    }
+    assertTrue(dataset.withinRadius(0, 0, 20).getData().isEmpty());
+
+    SafetyLocation location =
+        dataset.withinRadius(points.get(7)[0], points.get(7)[1], 0.01).getData().stream()
+            .filter(l -> l.getId().equals("Q7"))
+            .findFirst()
+            .orElseThrow();
+    assertEquals("safety-rated-location", location.getType());
+    assertEquals("DISTRICT", location.getSubType());
+    assertEquals("Place 7", location.getName());
+    assertEquals(points.get(7)[0], location.getGeoCode().getLatitude());
+    assertArrayEquals(scores(7), location.getSafetyScores().toArray());
+  }
+
+  // Test that a location costs tens of bytes, not a map of boxed values
+  @Test
+  public void testCompact() {
+    assertEquals(20_000, dataset.size());
+    assertTrue(dataset.heapBytes() / dataset.size() < 64, dataset.heapBytes() + " bytes");
+  }
+
+  // Test that JSON and CSV exports load the same locations as the Amadeus response they mirror
+  @Test
+  public void testLoadExports() throws IOException {
+    Path json = dir.resolve("safety.json");
+    Files.writeString(
+        json,
+        "{\"meta\":{\"count\":2},\"data\":["
+            + "{\"id\":\"Q1\",\"type\":\"safety-rated-location\",\"subType\":\"CITY\","
+            + "\"name\":\"Barcelona\",\"geoCode\":{\"latitude\":41.38,\"longitude\":2.17},"
+            + "\"safetyScores\":{\"overall\":45,\"lgbtq\":37,\"medical\":0,\"physicalHarm\":36,"
+            + "\"politicalFreedom\":50,\"theft\":44,\"women\":34}},"
+            + "{\"id\":\"Q2\",\"name\":\"Nowhere\"},"
+            + "{\"id\":\"Q3\",\"subType\":\"DISTRICT\",\"name\":\"El Born\","
+            + "\"geoCode\":{\"latitude\":41.385,\"longitude\":2.18}}]}");
+    Path csv = dir.resolve("safety.csv");
+    Files.writeString(
+        csv,
+        "name,id,subType,latitude,longitude,overall,lgbtq,medical,physicalHarm,politicalFreedom,"
+            + "theft,women\n"
+            + "Barcelona,Q1,CITY,41.38,2.17,45,37,0,36,50,44,34\n"
+            + "\"El Born, \"\"old town\"\"\",Q3,DISTRICT,41.385,2.18,,,,,,,\n");
+
+    SafetyDataset fromJson = SafetyDataset.open(json);
+    SafetyDataset fromCsv = SafetyDataset.open(csv);
+    // The location without a position can't be queried, so it is dropped
+    assertEquals(2, fromJson.size());
+    assertEquals(2, fromCsv.size());
+    for (SafetyDataset loaded : List.of(fromJson, fromCsv)) {
+      SafetyRatings ratings = loaded.withinRadius(41.38, 2.17, 5);
+      assertEquals(Set.of("Q1", "Q3"), ids(ratings));
+      SafetyLocation barcelona =
+          ratings.getData().stream().filter(l -> l.getId().equals("Q1")).findFirst().orElseThrow();
+      assertArrayEquals(
+          new int[] {45, 37, 0, 36, 50, 44, 34}, barcelona.getSafetyScores().toArray());
+    }
+    assertEquals(
+        "El Born, \"old town\"",
+        fromCsv.withinRadius(41.385, 2.18, 0.1).getData().get(0).getName());
+
+    SafetyDataset fromRows =
+        SafetyDataset.fromRows(
+            List.of(
+                List.of(HEADER.trim().split(",")),
+                List.of("Q1,CITY,Barcelona,41.38,2.17,45,37,0,36,50,44,34".split(","))));
+    assertEquals(Set.of("Q1"), ids(fromRows.withinRadius(41.38, 2.17, 1)));
+
+    Files.writeString(dir.resolve("bad.csv"), "id,name\nQ1,Barcelona\n");
+    assertThrows(IOException.class, () -> SafetyDataset.open(dir.resolve("bad.csv")));
+    Files.writeString(
+        dir.resolve("bad2.csv"), HEADER + "Q1,CITY,Barcelona,north,2.17,1,1,1,1,1,1,1\n");
+    assertThrows(IOException.class, () -> SafetyDataset.open(dir.resolve("bad2.csv")));
+    Files.writeString(dir.resolve("bad.json"), "{\"data\":[{\"id\":\"Q1\"");
+    assertThrows(IOException.class, () -> SafetyDataset.open(dir.resolve("bad.json")));
+  }
+
+  // Test that a client with a dataset answers from it without Amadeus, and swaps atomically
+  @Test
+  public void testClientUsesDataset() throws Exception {
+    APIClient client =
+        new APIClient(
+            new AmadeusTokenManager(
+                () -> {
+                  throw new AssertionError("Amadeus should not be called");
+                }));
+    client.useDataset(dataset);
+    SafetyRatings ratings = client.getSafetyRatingsAsync(41.82, -71.41, 3).join();
+    assertEquals(ids(dataset.withinRadius(41.82, -71.41, 3)), ids(ratings));
+
+    Path csv = dir.resolve("nightly.csv");
+    Path tmp = dir.resolve("nightly.csv.tmp");
+    Files.writeString(csv, HEADER + "A,CITY,Providence,41.82,-71.41,1,1,1,1,1,1,1\n");
+    SafetyDataset first = SafetyDataset.open(csv);
+    client.useDataset(first);
+    assertFalse(first.changed());
+    assertEquals(Set.of("A"), ids(client.getSafetyRatingsAsync(41.82, -71.41, 3).join()));
+
+    Files.writeString(tmp, HEADER + "B,CITY,Providence,41.82,-71.41,2,2,2,2,2,2,2\n\n");
+    Files.move(tmp, csv, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    assertTrue(first.changed());
+    client.useDataset(SafetyDataset.open(csv));
+    assertEquals(Set.of("B"), ids(client.getSafetyRatingsAsync(41.82, -71.41, 3).join()));
+    // The old dataset still answers anyone holding it
+    assertEquals(Set.of("A"), ids(first.withinRadius(41.82, -71.41, 3)));
+  }
+}
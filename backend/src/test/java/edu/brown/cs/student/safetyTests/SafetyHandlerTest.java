@@ -0,0 +1,250 @@
+package edu.brown.cs.student.safetyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.SafeTravels.APIClient;
+import edu.brown.cs.student.main.Server.SafeTravels.AmadeusTokenManager;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyHandler;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Request;
+import spark.Response;
+
+public class SafetyHandlerTest {
+  private ExecutorService executor;
+  private Request request;
+  private Response response;
+
+  /** An APIClient whose upstream calls are answered locally. */
+  private class StubClient extends APIClient {
+    StubClient() {
+      super(new AmadeusTokenManager(() -> new AmadeusTokenManager.AccessToken("token", 1799)));
+    }
+
+    List<Double> lookup(String address) throws DatasourceException {
+      return address.equals("start") ? List.of(41.0, 2.0) : List.of(42.0, 3.0);
+    }
+
+    @Override
+    public CompletableFuture<List<Double>> getCoordinatesAsync(String address) {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            try {
+              return lookup(address);
+            } catch (DatasourceException e) {
+              throw new CompletionException(e);
+            }
+          },
+          executor);
+    }
+
+    @Override
+    public CompletableFuture<String> prefetchAccessToken() {
+      return CompletableFuture.completedFuture("token");
+    }
+
+    @Override
+    public CompletableFuture<SafetyRatings> getSafetyRatingsAsync(
+        double lat, double lon, int radius) {
+      return CompletableFuture.completedFuture(
+          new SafetyRatings(List.of(location("Q930402719", lat, lon))));
+    }
+  }
+
+  private static SafetyLocation location(String id, double lat, double lon) {
+    return new SafetyLocation(
+        id,
+        "safety-rated-location",
+        "CITY",
+        "Barcelona",
+        new SafetyLocation.GeoCode(lat, lon),
+        new SafetyLocation.SafetyScores(40, 30, 20, 10, 50, 60, 70));
+  }
+
+  @BeforeEach
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+    request = mock(Request.class);
+    response = mock(Response.class);
+    when(request.queryParams("start")).thenReturn("start");
+    when(request.queryParams("end")).thenReturn("end");
+  }
+
+  @AfterEach
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  // Test that the start and end lookups run at the same time
+  @Test
+  public void testGeocodesRunInParallel() throws Exception {
+    CyclicBarrier bothStarted = new CyclicBarrier(2);
+    APIClient client =
+        new StubClient() {
+          @Override
+          List<Double> lookup(String address) throws DatasourceException {
+            try {
+              // Only passes if the other lookup is running too
+              bothStarted.await(2, TimeUnit.SECONDS);
+            } catch (Exception e) {
+              throw new DatasourceException("lookups ran one after the other");
+            }
+            return super.lookup(address);
+          }
+        };
+    SafetyHandler handler = new SafetyHandler(client, Duration.ofSeconds(5));
+
+    String result = (String) handler.handle(request, response);
+    assertTrue(result.contains("\"type\":\"success\""), result);
+    assertTrue(result.contains("Q930402719"));
+    assertTrue(result.contains("41.5"), "safety lookup should be at the midpoint");
+  }
+
+  // Test that a slow upstream is cut off at the deadline
+  @Test
+  public void testDeadline() throws Exception {
+    CountDownLatch never = new CountDownLatch(1);
+    APIClient client =
+        new StubClient() {
+          @Override
+          List<Double> lookup(String address) {
+            try {
+              never.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return List.of(0.0, 0.0);
+          }
+        };
+    SafetyHandler handler = new SafetyHandler(client, Duration.ofMillis(200));
+
+    long start = System.nanoTime();
+    String result = (String) handler.handle(request, response);
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    assertTrue(result.contains("\"error_type\":\"timeout\""), result);
+    never.countDown();
+  }
+
+  // Test that upstream failures are reported as datasource errors
+  @Test
+  public void testDatasourceError() throws Exception {
+    APIClient client =
+        new StubClient() {
+          @Override
+          List<Double> lookup(String address) throws DatasourceException {
+            throw new DatasourceException("No results found");
+          }
+        };
+    SafetyHandler handler = new SafetyHandler(client, Duration.ofSeconds(5));
+
+    String result = (String) handler.handle(request, response);
+    assertTrue(result.contains("\"error_type\":\"datasource\""), result);
+    assertTrue(result.contains("No results found"));
+  }
+
+  // Test that corridor mode samples the whole path and merges overlapping results
+  @Test
+  public void testCorridorMerge() throws Exception {
+    List<double[]> queried = new CopyOnWriteArrayList<>();
+    APIClient client =
+        new StubClient() {
+          @Override
+          public CompletableFuture<SafetyRatings> getSafetyRatingsAsync(
+              double lat, double lon, int radius) {
+            queried.add(new double[] {lat, lon, radius});
+            // Neighbouring samples see the same locations
+            int bucket = (int) Math.round(lat * 100);
+            return CompletableFuture.completedFuture(
+                new SafetyRatings(
+                    List.of(
+                        location("L" + bucket, lat, lon), location("L" + (bucket + 1), lat, lon))));
+          }
+        };
+    when(request.queryParams("start")).thenReturn(null);
+    when(request.queryParams("end")).thenReturn(null);
+    when(request.queryParams("mode")).thenReturn("corridor");
+    when(request.queryParams("path")).thenReturn("41.80,-71.40;41.84,-71.40;41.88,-71.40");
+    when(request.queryParams("spacing")).thenReturn("1");
+    SafetyHandler handler = new SafetyHandler(client, Duration.ofSeconds(5));
+
+    String result = (String) handler.handle(request, response);
+    assertTrue(result.contains("\"type\":\"success\""), result);
+    // ~8.9km at 1km spacing: 10 samples, covering both ends
+    assertEquals(10, queried.size());
+    assertEquals(41.80, queried.get(0)[0], 1e-6);
+    assertEquals(41.88, queried.get(queried.size() - 1)[0], 1e-6);
+    for (double[] sample : queried) {
+      assertEquals(1, sample[2]);
+    }
+    // Every id is listed once
+    for (int bucket = 4180; bucket <= 4189; bucket++) {
+      String id = "\"L" + bucket + "\"";
+      int first = result.indexOf(id);
+      assertEquals(first, result.lastIndexOf(id), id + " listed twice");
+    }
+    assertTrue(result.contains("\"partial\":false"), result);
+  }
+
+  // Test that corridor lookups slower than the budget are left out instead of failing the route
+  @Test
+  public void testCorridorBudget() throws Exception {
+    APIClient client =
+        new StubClient() {
+          @Override
+          public CompletableFuture<SafetyRatings> getSafetyRatingsAsync(
+              double lat, double lon, int radius) {
+            if (lat > 41.85) {
+              return new CompletableFuture<>();
+            }
+            return CompletableFuture.completedFuture(
+                new SafetyRatings(List.of(location("A", lat, lon))));
+          }
+        };
+    when(request.queryParams("mode")).thenReturn("corridor");
+    when(request.queryParams("path")).thenReturn("41.80,-71.40;41.90,-71.40");
+    SafetyHandler handler =
+        new SafetyHandler(client, Duration.ofSeconds(5), 2.0, 25, Duration.ofMillis(200));
+
+    String result = (String) handler.handle(request, response);
+    assertTrue(result.contains("\"type\":\"success\""), result);
+    assertTrue(result.contains("\"partial\":true"), result);
+  }
+
+  // Test that missing parameters are rejected before anything goes upstream
+  @Test
+  public void testMissingParams() throws Exception {
+    when(request.queryParams("end")).thenReturn(null);
+    SafetyHandler handler = new SafetyHandler(new StubClient(), Duration.ofSeconds(5));
+
+    String result = (String) handler.handle(request, response);
+    assertTrue(result.contains("bad_request"), result);
+  }
+
+  // Test that a spacing that isn't a positive, finite distance is rejected
+  @Test
+  public void testBadSpacing() throws Exception {
+    when(request.queryParams("mode")).thenReturn("corridor");
+    when(request.queryParams("path")).thenReturn("41.80,-71.40;41.90,-71.40");
+    SafetyHandler handler = new SafetyHandler(new StubClient(), Duration.ofSeconds(5));
+    for (String spacing : new String[] {"0", "-1", "Infinity", "NaN"}) {
+      when(request.queryParams("spacing")).thenReturn(spacing);
+      String result = (String) handler.handle(request, response);
+      assertTrue(result.contains("bad_request"), spacing + ": " + result);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package edu.brown.cs.student.safetyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.SafeTravels.GeoUtils;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyIndex;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SafetyIndexTest {
+  private static final int[] NO_SCORES = new int[0];
+
+  private final List<double[]> points = new ArrayList<>();
+  private final List<Object> records = new ArrayList<>();
+  private SafetyIndex<Object> index;
+
+  @BeforeEach
+  public void setUp() {
+    index = new SafetyIndex<>(0.01);
+    Random random = new Random(42);
+    for (int i = 0; i < 5000; i++) {
+      double[] point = {41.7 + random.nextDouble() * 0.3, -71.6 + random.nextDouble() * 0.4};
+      points.add(point);
+      records.add(i);
+      index.put(Integer.toString(i), point[0], point[1], NO_SCORES, records.get(i));
+    }
+  }
+
+  private Set<Object> bruteForceWithin(double lat, double lon, double radiusKm) {
+    Set<Object> expected = new HashSet<>();
+    for (int i = 0; i < points.size(); i++) {
+      if (GeoUtils.distanceKm(lat, lon, points.get(i)[0], points.get(i)[1]) <= radiusKm) {
+        expected.add(i);
+      }
+    }
+    return expected;
+  }
+
+  // Test that range queries match a linear scan
+  @Test
+  public void testWithinRadius() {
+    Set<Object> expected = bruteForceWithin(41.82, -71.41, 3);
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, new HashSet<>(index.withinRadius(41.82, -71.41, 3)));
+    assertTrue(index.withinRadius(0, 0, 3).isEmpty());
+  }
+
+  // Test that nearest-neighbour queries return the closest points in order
+  @Test
+  public void testNearest() {
+    List<Object> nearest = index.nearest(41.82, -71.41, 10);
+    assertEquals(10, nearest.size());
+    double previous = 0;
+    for (Object i : nearest) {
+      double[] point = points.get((int) i);
+      double distance = GeoUtils.distanceKm(41.82, -71.41, point[0], point[1]);
+      assertTrue(distance >= previous);
+      previous = distance;
+    }
+    // Nothing left out is closer than the farthest returned
+    assertEquals(10, bruteForceWithin(41.82, -71.41, previous).size());
+
+    // Points far from everything still find their neighbours
+    assertEquals(3, index.nearest(0, 0, 3).size());
+  }
+
+  // Test that corridor queries find points near any leg of the route
+  @Test
+  public void testWithinCorridor() {
+    List<double[]> route =
+        List.of(
+            new double[] {41.75, -71.55},
+            new double[] {41.82, -71.41},
+            new double[] {41.95, -71.3});
+    Set<Object> found = new HashSet<>(index.withinCorridor(route, 1));
+    assertFalse(found.isEmpty());
+    // Every point near a route vertex is in the corridor
+    assertTrue(found.containsAll(bruteForceWithin(41.82, -71.41, 0.9)));
+    assertTrue(found.containsAll(bruteForceWithin(41.95, -71.3, 0.9)));
+    // Nothing far from the route is
+    assertTrue(index.withinCorridor(route, 1).size() < points.size() / 4);
+  }
+
+  // Test that updates and removals are reflected in queries
+  @Test
+  public void testIncrementalUpdates() {
+    index.put("new", 10, 10, new int[] {55, 1, 2, 3, 4, 5, 6}, "new");
+    assertEquals(List.of("new"), index.withinRadius(10, 10, 1));
+    assertEquals(55, index.score("new", "overall"));
+    assertEquals(6, index.score("new", "women"));
+
+    // Moving a location replaces it
+    index.put("new", 20, 20, NO_SCORES, "moved");
+    assertTrue(index.withinRadius(10, 10, 1).isEmpty());
+    assertEquals(List.of("moved"), index.withinRadius(20, 20, 1));
+
+    // Removal with a stale record does nothing
+    index.remove("new", "new");
+    assertEquals(List.of("moved"), index.withinRadius(20, 20, 1));
+    index.remove("new", "moved");
+    assertTrue(index.withinRadius(20, 20, 1).isEmpty());
+    assertEquals(-1, index.score("new", "overall"));
+
+    // Removing most points compacts the index without losing the rest
+    for (int i = 0; i < 4000; i++) {
+      index.remove(Integer.toString(i), records.get(i));
+    }
+    assertEquals(1000, index.size());
+    Set<Object> expected = new HashSet<>();
+    for (Object i : bruteForceWithin(41.82, -71.41, 3)) {
+      if ((int) i >= 4000) {
+        expected.add(i);
+      }
+    }
+    assertEquals(expected, new HashSet<>(index.withinRadius(41.82, -71.41, 3)));
+  }
+
+  // Test that replacing locations over and over doesn't pile up dead slots
+  @Test
+  public void testReplacementsCompact() {
+    for (int round = 0; round < 10; round++) {
+      for (int i = 0; i < points.size(); i++) {
+        Object record = round + ":" + i;
+        index.put(Integer.toString(i), points.get(i)[0], points.get(i)[1], NO_SCORES, record);
+      }
+    }
+    assertEquals(points.size(), index.size());
+    assertTrue(index.slotCount() <= 2 * points.size() + 1, index.slotCount() + " slots");
+    assertEquals(
+        bruteForceWithin(41.82, -71.41, 3).size(), index.withinRadius(41.82, -71.41, 3).size());
+  }
+}
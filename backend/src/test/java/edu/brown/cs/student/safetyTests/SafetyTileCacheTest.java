@@ -0,0 +1,145 @@
+package edu.brown.cs.student.safetyTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyTileCache;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SafetyTileCacheTest {
+  // A grid of rated locations every ~0.01 degrees around Providence
+  private final List<SafetyLocation> world = new ArrayList<>();
+  private AtomicInteger fetches;
+  private SafetyTileCache.Fetcher fetcher;
+
+  private static SafetyLocation location(String id, double lat, double lon) {
+    return new SafetyLocation(id, null, null, null, new SafetyLocation.GeoCode(lat, lon), null);
+  }
+
+  @BeforeEach
+  public void setUp() {
+    for (int i = -30; i <= 30; i++) {
+      for (int j = -30; j <= 30; j++) {
+        world.add(location(i + ":" + j, 41.82 + i * 0.01, -71.41 + j * 0.01));
+      }
+    }
+    fetches = new AtomicInteger();
+    fetcher =
+        (lat, lon, radius) -> {
+          fetches.incrementAndGet();
+          List<SafetyLocation> found = new ArrayList<>();
+          for (SafetyLocation location : world) {
+            double dLat = location.getGeoCode().getLatitude() - lat;
+            double dLon =
+                (location.getGeoCode().getLongitude() - lon) * Math.cos(Math.toRadians(lat));
+            if (Math.sqrt(dLat * dLat + dLon * dLon) * 111.2 <= radius) {
+              found.add(location);
+            }
+          }
+          return CompletableFuture.completedFuture(new SafetyRatings(found));
+        };
+  }
+
+  private static Set<String> ids(SafetyRatings response) {
+    Set<String> ids = new HashSet<>();
+    for (SafetyLocation location : response.getData()) {
+      ids.add(location.getId());
+    }
+    return ids;
+  }
+
+  // Test that cached tiles answer the same query as upstream would
+  @Test
+  public void testMatchesUpstream() {
+    SafetyTileCache cache = new SafetyTileCache(13, Duration.ofHours(1), 100_000, 16);
+    SafetyRatings cached = cache.get(41.82, -71.41, 2, fetcher).join();
+    Set<String> expected = ids(fetcher.fetch(41.82, -71.41, 2).join());
+    assertFalse(expected.isEmpty());
+    assertEquals(expected, ids(cached));
+  }
+
+  // Test that a nearby query is served from memory
+  @Test
+  public void testNearbyQueryHitsCache() {
+    SafetyTileCache cache = new SafetyTileCache(13, Duration.ofHours(1), 100_000, 16);
+    cache.get(41.82, -71.41, 2, fetcher).join();
+    int coldFetches = fetches.get();
+    assertTrue(coldFetches > 0);
+
+    cache.get(41.821, -71.409, 1, fetcher).join();
+    assertEquals(coldFetches, fetches.get());
+    assertTrue(cache.stats().hitCount() > 0);
+  }
+
+  // Test that queries touching too many tiles go straight upstream
+  @Test
+  public void testWideQueryBypasses() {
+    SafetyTileCache cache = new SafetyTileCache(13, Duration.ofHours(1), 100_000, 16);
+    cache.get(41.82, -71.41, 20, fetcher).join();
+    assertEquals(1, fetches.get());
+    assertEquals(1, cache.bypassCount());
+    assertEquals(0, cache.size());
+  }
+
+  // Test that failed tile fetches aren't cached
+  @Test
+  public void testFailuresNotCached() {
+    SafetyTileCache cache = new SafetyTileCache(13, Duration.ofHours(1), 100_000, 16);
+    SafetyTileCache.Fetcher failing =
+        (lat, lon, radius) ->
+            CompletableFuture.failedFuture(
+                new DatasourceException("Failed to fetch safety ratings"));
+    CompletionException e =
+        assertThrows(CompletionException.class, () -> cache.get(41.82, -71.41, 1, failing).join());
+    assertTrue(e.getCause() instanceof DatasourceException);
+    assertEquals(0, cache.size());
+
+    cache.get(41.82, -71.41, 1, fetcher).join();
+    assertTrue(fetches.get() > 0);
+  }
+
+  // Test that the cache stays within its location budget
+  @Test
+  public void testMemoryCap() {
+    SafetyTileCache cache = new SafetyTileCache(13, Duration.ofHours(1), 200, 16);
+    cache.get(41.82, -71.41, 2, fetcher).join();
+    cache.get(41.62, -71.21, 2, fetcher).join();
+    cache.get(42.02, -71.61, 2, fetcher).join();
+    assertTrue(cache.stats().evictionCount() > 0);
+  }
+
+  // Test that tiles upstream lists only in part answer the query but aren't cached
+  @Test
+  public void testIncompleteTilesNotCached() {
+    SafetyTileCache cache = new SafetyTileCache(13, Duration.ofHours(1), 100_000, 16);
+    SafetyTileCache.Fetcher truncating =
+        (lat, lon, radius) -> {
+          List<SafetyLocation> all = fetcher.fetch(lat, lon, radius).join().getData();
+          return CompletableFuture.completedFuture(
+              new SafetyRatings(all.subList(0, all.size() / 2), false));
+        };
+    SafetyRatings partial = cache.get(41.82, -71.41, 1, truncating).join();
+    assertFalse(partial.isComplete());
+    assertFalse(partial.getData().isEmpty());
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.index().size());
+
+    int before = fetches.get();
+    SafetyRatings full = cache.get(41.82, -71.41, 1, fetcher).join();
+    assertTrue(fetches.get() > before);
+    assertTrue(full.isComplete());
+    assertTrue(ids(full).containsAll(ids(partial)));
+    assertTrue(full.getData().size() > partial.getData().size());
+  }
+}
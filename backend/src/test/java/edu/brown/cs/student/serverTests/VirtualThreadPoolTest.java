@@ -0,0 +1,36 @@
+package edu.brown.cs.student.serverTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.VirtualThreadPool;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadPoolTest {
+
+  // Test that the pool exists exactly when the runtime has virtual threads, and runs tasks on them
+  @Test
+  public void testCreate() throws Exception {
+    VirtualThreadPool pool = VirtualThreadPool.create();
+    if (Runtime.version().feature() < 21) {
+      assertNull(pool);
+      return;
+    }
+    assertNotNull(pool);
+    pool.start();
+    CountDownLatch ran = new CountDownLatch(1);
+    AtomicBoolean virtual = new AtomicBoolean();
+    assertTrue(
+        pool.tryExecute(
+            () -> {
+              virtual.set(Thread.currentThread().toString().contains("Virtual"));
+              ran.countDown();
+            }));
+    assertTrue(ran.await(5, TimeUnit.SECONDS));
+    assertTrue(virtual.get());
+    assertFalse(pool.isLowOnThreads());
+    pool.stop();
+  }
+}
@@ -0,0 +1,163 @@
+package edu.brown.cs.student.upstreamTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.brown.cs.student.main.Server.Exceptions.QuotaExceededException;
+import edu.brown.cs.student.main.Server.Http.UpstreamClient;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamClientTest {
+  private HttpServer server;
+  private String baseUrl;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newFixedThreadPool(16));
+    server.createContext(
+        "/ok",
+        exchange -> {
+          byte[] body = "{\"status\":\"OK\"}".getBytes(StandardCharsets.UTF_8);
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    server.createContext(
+        "/slow",
+        exchange -> {
+          maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+          try {
+            Thread.sleep(100);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          inFlight.decrementAndGet();
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    server.start();
+    baseUrl = "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  // Test a plain request against the stub server
+  @Test
+  public void testSend() throws IOException {
+    UpstreamClient client = new UpstreamClient(Duration.ofSeconds(1), Duration.ofSeconds(1), 4);
+    HttpResponse<String> response =
+        client.send(
+            client.newRequest(baseUrl + "/ok").GET().build(), HttpResponse.BodyHandlers.ofString());
+    assertEquals(200, response.statusCode());
+    assertEquals("{\"status\":\"OK\"}", response.body());
+  }
+
+  // Test that no more than the configured number of requests reach one host at once
+  @Test
+  public void testMaxConcurrentPerHost() throws Exception {
+    UpstreamClient client = new UpstreamClient(Duration.ofSeconds(1), Duration.ofSeconds(5), 2);
+    List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      responses.add(
+          client.sendAsync(
+              client.newRequest(baseUrl + "/slow").GET().build(),
+              HttpResponse.BodyHandlers.discarding()));
+    }
+    for (CompletableFuture<HttpResponse<Void>> response : responses) {
+      assertEquals(200, response.get(5, TimeUnit.SECONDS).statusCode());
+    }
+    assertTrue(maxInFlight.get() <= 2, "saw " + maxInFlight.get() + " requests at once");
+  }
+
+  // Test that requests past the queue bound fail at once, and ones that wait out their timeout are
+  // never sent
+  @Test
+  public void testWaitingRequests() throws Exception {
+    UpstreamClient client =
+        new UpstreamClient(HttpClient.newHttpClient(), Duration.ofSeconds(5), 1, 1);
+    CompletableFuture<HttpResponse<Void>> first =
+        client.sendAsync(
+            client.newRequest(baseUrl + "/slow").GET().build(),
+            HttpResponse.BodyHandlers.discarding());
+    CompletableFuture<HttpResponse<Void>> expiring =
+        client.sendAsync(
+            client.newRequest(baseUrl + "/slow").timeout(Duration.ofMillis(20)).GET().build(),
+            HttpResponse.BodyHandlers.discarding());
+    CompletableFuture<HttpResponse<Void>> rejected =
+        client.sendAsync(
+            client.newRequest(baseUrl + "/slow").GET().build(),
+            HttpResponse.BodyHandlers.discarding());
+    assertTrue(rejected.isCompletedExceptionally());
+
+    assertEquals(200, first.get(5, TimeUnit.SECONDS).statusCode());
+    ExecutionException error =
+        assertThrows(ExecutionException.class, () -> expiring.get(5, TimeUnit.SECONDS));
+    assertTrue(error.getCause() instanceof HttpTimeoutException);
+    assertTrue(error.getCause().getMessage().contains("waiting"), error.getCause().getMessage());
+    assertEquals(1, maxInFlight.get());
+    assertEquals(0, inFlight.get());
+  }
+
+  // Test that a response slower than the request timeout fails instead of hanging
+  @Test
+  public void testRequestTimeout() {
+    UpstreamClient client = new UpstreamClient(Duration.ofSeconds(1), Duration.ofMillis(20), 4);
+    assertThrows(
+        IOException.class,
+        () ->
+            client.send(
+                client.newRequest(baseUrl + "/slow").GET().build(),
+                HttpResponse.BodyHandlers.discarding()));
+  }
+
+  // Test that requests over a host's rate fail without reaching it
+  @Test
+  public void testHostRateLimit() throws Exception {
+    UpstreamClient client = new UpstreamClient(Duration.ofSeconds(1), Duration.ofSeconds(1), 4);
+    client.limitRate("localhost", 0.5, 2);
+    AtomicInteger served = new AtomicInteger();
+    server.createContext(
+        "/counted",
+        exchange -> {
+          served.incrementAndGet();
+          exchange.sendResponseHeaders(200, -1);
+          exchange.close();
+        });
+    for (int i = 0; i < 2; i++) {
+      client.send(
+          client.newRequest(baseUrl + "/counted").GET().build(),
+          HttpResponse.BodyHandlers.discarding());
+    }
+    assertThrows(
+        QuotaExceededException.class,
+        () ->
+            client.send(
+                client.newRequest(baseUrl + "/counted").GET().build(),
+                HttpResponse.BodyHandlers.discarding()));
+    assertEquals(2, served.get());
+  }
+}
@@ -0,0 +1,142 @@
+package edu.brown.cs.student.upstreamTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.squareup.moshi.JsonReader;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.Server.Exceptions.DatasourceException;
+import edu.brown.cs.student.main.Server.SafeTravels.GeocodeCache;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyLocation;
+import edu.brown.cs.student.main.Server.SafeTravels.SafetyRatings;
+import edu.brown.cs.student.main.Server.SafeTravels.UpstreamParsers;
+import java.util.Map;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamParsersTest {
+  static final String GEOCODE =
+      "{\"results\":[{\"address_components\":[{\"long_name\":\"24\",\"types\":[\"street_number\"]}],"
+          + "\"formatted_address\":\"24 Sussex Dr, Ottawa\","
+          + "\"geometry\":{\"bounds\":{\"northeast\":{\"lat\":1,\"lng\":2}},"
+          + "\"location\":{\"lat\":45.4444101,\"lng\":-75.6938779},\"location_type\":\"ROOFTOP\"},"
+          + "\"place_id\":\"abc\",\"types\":[\"premise\"]},"
+          + "{\"geometry\":{\"location\":{\"lat\":0,\"lng\":0}}}],\"status\":\"OK\"}";
+
+  static final String SAFETY =
+      "{\"data\":[{\"type\":\"safety-rated-location\",\"id\":\"Q930402719\","
+          + "\"self\":{\"type\":\"https://test.api.amadeus.com/v1/safety/safety-rated-locations\","
+          + "\"methods\":[\"GET\"]},\"subType\":\"CITY\",\"name\":\"Barcelona\","
+          + "\"geoCode\":{\"latitude\":41.385064,\"longitude\":2.173404},"
+          + "\"safetyScores\":{\"lgbtq\":39,\"medical\":0,\"overall\":45,\"physicalHarm\":36,"
+          + "\"politicalFreedom\":50,\"theft\":44,\"women\":34}},"
+          + "{\"type\":\"safety-rated-location\",\"id\":\"Q2\",\"name\":null}],"
+          + "\"meta\":{\"count\":2,\"links\":{\"self\":\"https://example\"}}}";
+
+  private static JsonReader reader(String json) {
+    return JsonReader.of(new Buffer().writeUtf8(json));
+  }
+
+  // Test that only the first result's location is read
+  @Test
+  public void testReadCoordinates() throws Exception {
+    double[] location = UpstreamParsers.readCoordinates(reader(GEOCODE));
+    assertEquals(45.4444101, location[0], 1e-9);
+    assertEquals(-75.6938779, location[1], 1e-9);
+  }
+
+  // Test that empty and malformed geocoding responses are reported
+  @Test
+  public void testCoordinateErrors() {
+    DatasourceException empty =
+        assertThrows(
+            DatasourceException.class,
+            () ->
+                UpstreamParsers.readCoordinates(
+                    reader("{\"results\":[],\"status\":\"ZERO_RESULTS\"}")));
+    assertEquals(GeocodeCache.NO_RESULTS, empty.getMessage());
+    assertThrows(
+        DatasourceException.class,
+        () -> UpstreamParsers.readCoordinates(reader("{\"error_message\":\"denied\"}")));
+    assertThrows(
+        DatasourceException.class,
+        () -> UpstreamParsers.readCoordinates(reader("{\"results\":[{\"geometry\":{}}]}")));
+    assertThrows(
+        DatasourceException.class,
+        () -> UpstreamParsers.readCoordinates(reader("{\"results\":\"none\"}")));
+  }
+
+  // Test that quota and key errors are reported as errors, not as an address with no results
+  @Test
+  public void testCoordinateErrorStatus() throws Exception {
+    String overQuota =
+        "{\"error_message\":\"You have exceeded your daily request quota\",\"results\":[],"
+            + "\"status\":\"OVER_QUERY_LIMIT\"}";
+    DatasourceException error =
+        assertThrows(
+            DatasourceException.class, () -> UpstreamParsers.readCoordinates(reader(overQuota)));
+    assertNotEquals(GeocodeCache.NO_RESULTS, error.getMessage());
+    assertTrue(error.getMessage().contains("OVER_QUERY_LIMIT"), error.getMessage());
+
+    assertEquals("OVER_QUERY_LIMIT", UpstreamParsers.readGeocodeStatus(reader(overQuota)));
+    assertEquals("OK", UpstreamParsers.readGeocodeStatus(reader(GEOCODE)));
+    assertNull(UpstreamParsers.readGeocodeStatus(reader("{\"results\":[]}")));
+    assertTrue(UpstreamParsers.isGeocodeFault("OVER_QUERY_LIMIT"));
+    assertTrue(UpstreamParsers.isGeocodeFault("REQUEST_DENIED"));
+    assertFalse(UpstreamParsers.isGeocodeFault("OK"));
+    assertFalse(UpstreamParsers.isGeocodeFault("ZERO_RESULTS"));
+    assertFalse(UpstreamParsers.isGeocodeFault(null));
+  }
+
+  // Test that the safety fields are read and everything else is skipped
+  @Test
+  public void testReadSafetyRatings() throws Exception {
+    SafetyRatings ratings = UpstreamParsers.readSafetyRatings(reader(SAFETY));
+    assertEquals(2, ratings.getData().size());
+    SafetyLocation barcelona = ratings.getData().get(0);
+    assertEquals("Q930402719", barcelona.getId());
+    assertEquals("CITY", barcelona.getSubType());
+    assertEquals("Barcelona", barcelona.getName());
+    assertEquals(41.385064, barcelona.getGeoCode().getLatitude(), 1e-9);
+    assertEquals(45, barcelona.getSafetyScores().getOverall());
+    assertEquals(34, barcelona.getSafetyScores().getWomen());
+
+    SafetyLocation unnamed = ratings.getData().get(1);
+    assertNull(unnamed.getName());
+    assertNull(unnamed.getGeoCode());
+    assertNull(unnamed.getSafetyScores());
+
+    assertTrue(UpstreamParsers.readSafetyRatings(reader("{\"errors\":[]}")).getData().isEmpty());
+    assertTrue(ratings.isComplete());
+  }
+
+  // Test that a link to a next page marks the ratings incomplete
+  @Test
+  public void testReadSafetyRatingsPaged() throws Exception {
+    SafetyRatings paged =
+        UpstreamParsers.readSafetyRatings(
+            reader(SAFETY.replace("\"links\":{", "\"links\":{\"next\":\"https://example/2\",")));
+    assertEquals(2, paged.getData().size());
+    assertFalse(paged.isComplete());
+    assertTrue(
+        UpstreamParsers.readSafetyRatings(
+                reader("{\"data\":[],\"meta\":{\"links\":{\"next\":null}}}"))
+            .isComplete());
+  }
+
+  // Test that typed ratings serialize into the shape the frontend reads
+  @Test
+  public void testSerializedShape() throws Exception {
+    SafetyRatings ratings = UpstreamParsers.readSafetyRatings(reader(SAFETY));
+    String json =
+        new Moshi.Builder()
+            .build()
+            .adapter(Types.newParameterizedType(Map.class, String.class, Object.class))
+            .toJson(Map.of("data", ratings));
+    assertTrue(json.contains("\"geoCode\":{\"latitude\":41.385064,\"longitude\":2.173404}"), json);
+    assertTrue(json.contains("\"overall\":45"), json);
+    assertTrue(json.contains("\"name\":\"Barcelona\""), json);
+    assertFalse(json.contains("\"meta\""), json);
+    assertFalse(json.contains("complete"), json);
+  }
+}
@@ -0,0 +1,178 @@
+package edu.brown.cs.student.upstreamTests;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import edu.brown.cs.student.main.Server.Exceptions.CircuitOpenException;
+import edu.brown.cs.student.main.Server.Exceptions.QuotaExceededException;
+import edu.brown.cs.student.main.Server.Http.CircuitBreaker;
+import edu.brown.cs.student.main.Server.Http.UpstreamPolicy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class UpstreamPolicyTest {
+
+  private static UpstreamPolicy policy(CircuitBreaker breaker, int attempts, Duration hedge) {
+    return new UpstreamPolicy(
+        "test", breaker, attempts, Duration.ofMillis(1), Duration.ofMillis(5), hedge);
+  }
+
+  private static CircuitBreaker breaker() {
+    return new CircuitBreaker(10, 4, 0.5, Duration.ofMillis(100));
+  }
+
+  // Test that the breaker opens on failures, turns calls away, and closes after a good probe
+  @Test
+  public void testBreaker() throws Exception {
+    CircuitBreaker breaker = breaker();
+    for (int i = 0; i < 3; i++) {
+      assertTrue(breaker.tryAcquire());
+      breaker.recordFailure();
+    }
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    assertTrue(breaker.tryAcquire());
+    breaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    assertFalse(breaker.tryAcquire());
+
+    Thread.sleep(150);
+    assertTrue(breaker.tryAcquire());
+    assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+    assertFalse(breaker.tryAcquire(), "only one probe at a time");
+    breaker.recordFailure();
+    assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+    Thread.sleep(150);
+    assertTrue(breaker.tryAcquire());
+    breaker.recordSuccess();
+    assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    assertEquals(0, breaker.failureRate());
+    assertEquals(2, breaker.openedCount());
+    assertEquals(2, breaker.rejectedCount());
+  }
+
+  // Test that failed requests and faulty responses are retried, and other answers are not
+  @Test
+  public void testRetries() {
+    UpstreamPolicy policy =
+        policy(new CircuitBreaker(100, 50, 0.5, Duration.ofSeconds(1)), 3, null);
+    AtomicInteger attempts = new AtomicInteger();
+    String answer =
+        policy
+            .call(
+                () ->
+                    attempts.incrementAndGet() < 3
+                        ? CompletableFuture.failedFuture(new IOException("reset"))
+                        : CompletableFuture.completedFuture("ok"))
+            .join();
+    assertEquals("ok", answer);
+    assertEquals(2, policy.retryCount());
+
+    attempts.set(0);
+    int status =
+        policy
+            .call(
+                () -> CompletableFuture.completedFuture(500 + attempts.incrementAndGet()),
+                code -> code >= 500)
+            .join();
+    assertEquals(503, status, "the last faulty response is returned");
+
+    attempts.set(0);
+    CompletionException error =
+        assertThrows(
+            CompletionException.class,
+            () ->
+                policy
+                    .call(
+                        () -> {
+                          attempts.incrementAndGet();
+                          return CompletableFuture.failedFuture(new IllegalStateException("bug"));
+                        })
+                    .join());
+    assertTrue(error.getCause() instanceof IllegalStateException);
+    assertEquals(1, attempts.get());
+  }
+
+  // Test that an open breaker fails calls at once without sending them
+  @Test
+  public void testFailFast() {
+    UpstreamPolicy policy = policy(breaker(), 2, null);
+    AtomicInteger sent = new AtomicInteger();
+    for (int i = 0; i < 2; i++) {
+      policy
+          .call(
+              () -> {
+                sent.incrementAndGet();
+                return CompletableFuture.failedFuture(new IOException("timed out"));
+              })
+          .exceptionally(error -> null)
+          .join();
+    }
+    assertEquals(4, sent.get());
+    assertEquals(CircuitBreaker.State.OPEN, policy.getBreaker().state());
+
+    CompletionException error =
+        assertThrows(
+            CompletionException.class,
+            () -> policy.call(() -> CompletableFuture.completedFuture("ok")).join());
+    assertTrue(error.getCause() instanceof CircuitOpenException);
+    assertEquals(4, sent.get());
+  }
+
+  // Test that a probe rejected by our own quota leaves the breaker half open for the next one
+  @Test
+  public void testQuotaRejectedProbe() throws Exception {
+    UpstreamPolicy policy = policy(breaker(), 1, null);
+    for (int i = 0; i < 4; i++) {
+      policy
+          .call(() -> CompletableFuture.failedFuture(new IOException("timed out")))
+          .exceptionally(error -> null)
+          .join();
+    }
+    assertEquals(CircuitBreaker.State.OPEN, policy.getBreaker().state());
+
+    Thread.sleep(150);
+    CompletionException error =
+        assertThrows(
+            CompletionException.class,
+            () ->
+                policy
+                    .call(() -> CompletableFuture.failedFuture(new QuotaExceededException("test")))
+                    .join());
+    assertTrue(error.getCause() instanceof QuotaExceededException);
+    assertEquals(CircuitBreaker.State.HALF_OPEN, policy.getBreaker().state());
+
+    assertEquals("ok", policy.call(() -> CompletableFuture.completedFuture("ok")).join());
+    assertEquals(CircuitBreaker.State.CLOSED, policy.getBreaker().state());
+  }
+
+  // Test that a request slower than recent ones is hedged, and the faster answer wins
+  @Test
+  public void testHedging() throws Exception {
+    UpstreamPolicy policy =
+        policy(new CircuitBreaker(100, 50, 0.5, Duration.ofSeconds(1)), 1, Duration.ofMillis(20));
+    for (int i = 0; i < 40; i++) {
+      policy.call(() -> CompletableFuture.completedFuture("fast")).join();
+    }
+    assertEquals(0, policy.hedgeCount());
+
+    AtomicInteger sent = new AtomicInteger();
+    CompletableFuture<String> stuck = new CompletableFuture<>();
+    String answer =
+        policy
+            .call(
+                () ->
+                    sent.incrementAndGet() == 1
+                        ? stuck
+                        : CompletableFuture.completedFuture("hedge"))
+            .get(2, TimeUnit.SECONDS);
+    assertEquals("hedge", answer);
+    assertEquals(2, sent.get());
+    assertEquals(1, policy.hedgeCount());
+    assertEquals(1, policy.hedgeWinCount());
+  }
+}